@@ -40,6 +40,30 @@ public @interface CacheNamespace {
 
   int size() default 1024;
 
+  /**
+   * Budget in bytes for the estimated size of the cached values, replaces the size limit when set.
+   * @since 3.4.7
+   */
+  long maxBytes() default 0;
+
+  /**
+   * Milliseconds after which each entry expires, unlike flushInterval which clears the whole cache.
+   * @since 3.4.7
+   */
+  long timeToLive() default 0;
+
+  /**
+   * Fraction of the time to live that may be randomly cut off so that entries do not all expire together.
+   * @since 3.4.7
+   */
+  double timeToLiveJitter() default 0;
+
+  /**
+   * Reload entries read shortly before they expire in the background.
+   * @since 3.4.7
+   */
+  boolean refreshAhead() default false;
+
   boolean readWrite() default true;
   
   boolean blocking() default false;
@@ -63,4 +63,10 @@ public @interface Options {
   String keyColumn() default "";
   
   String resultSets() default "";
+
+  /**
+   * Comma separated names of the tables read or written, found in the SQL when empty.
+   * @since 3.4.7
+   */
+  String tables() default "";
 }
@@ -16,7 +16,9 @@
 package org.apache.ibatis.builder;
 
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
 
@@ -63,6 +65,20 @@ public abstract class BaseBuilder {
     return new HashSet<String>(Arrays.asList(value.split(",")));
   }
 
+  protected Map<String, Integer> integerMapValueOf(String value) {
+    Map<String, Integer> map = new HashMap<String, Integer>();
+    if (value != null) {
+      for (String entry : value.split(",")) {
+        String[] keyValue = entry.split("=");
+        if (keyValue.length != 2) {
+          throw new BuilderException("Error parsing '" + value + "'. Expected comma separated key=value pairs.");
+        }
+        map.put(keyValue[0].trim(), Integer.valueOf(keyValue[1].trim()));
+      }
+    }
+    return map;
+  }
+
   protected JdbcType resolveJdbcType(String alias) {
     if (alias == null) {
       return null;
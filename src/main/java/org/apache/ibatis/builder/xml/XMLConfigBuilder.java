@@ -239,15 +239,25 @@ public class XMLConfigBuilder extends BaseBuilder {
     configuration.setAutoMappingBehavior(AutoMappingBehavior.valueOf(props.getProperty("autoMappingBehavior", "PARTIAL")));
     configuration.setAutoMappingUnknownColumnBehavior(AutoMappingUnknownColumnBehavior.valueOf(props.getProperty("autoMappingUnknownColumnBehavior", "NONE")));
     configuration.setCacheEnabled(booleanValueOf(props.getProperty("cacheEnabled"), true));
+    configuration.setCacheMBeansEnabled(booleanValueOf(props.getProperty("cacheMBeansEnabled"), false));
     configuration.setProxyFactory((ProxyFactory) createInstance(props.getProperty("proxyFactory")));
     configuration.setLazyLoadingEnabled(booleanValueOf(props.getProperty("lazyLoadingEnabled"), false));
     configuration.setAggressiveLazyLoading(booleanValueOf(props.getProperty("aggressiveLazyLoading"), false));
     configuration.setMultipleResultSetsEnabled(booleanValueOf(props.getProperty("multipleResultSetsEnabled"), true));
     configuration.setUseColumnLabel(booleanValueOf(props.getProperty("useColumnLabel"), true));
+    configuration.setColumnIndexReadsEnabled(booleanValueOf(props.getProperty("columnIndexReadsEnabled"), false));
     configuration.setUseGeneratedKeys(booleanValueOf(props.getProperty("useGeneratedKeys"), false));
     configuration.setDefaultExecutorType(ExecutorType.valueOf(props.getProperty("defaultExecutorType", "SIMPLE")));
     configuration.setDefaultStatementTimeout(integerValueOf(props.getProperty("defaultStatementTimeout"), null));
     configuration.setDefaultFetchSize(integerValueOf(props.getProperty("defaultFetchSize"), null));
+    configuration.setMaxBatchSize(integerValueOf(props.getProperty("maxBatchSize"), null));
+    configuration.setMaxBatchBufferedParameters(integerValueOf(props.getProperty("maxBatchBufferedParameters"), null));
+    configuration.setMaxInFlightBatches(integerValueOf(props.getProperty("maxInFlightBatches"), null));
+    configuration.setBatchParametersRetained(booleanValueOf(props.getProperty("batchParametersRetained"), true));
+    configuration.setBatchReorderingEnabled(booleanValueOf(props.getProperty("batchReorderingEnabled"), false));
+    configuration.setMultiRowInsertEnabled(booleanValueOf(props.getProperty("multiRowInsertEnabled"), false));
+    configuration.setMultiRowInsertParameterLimit(integerValueOf(props.getProperty("multiRowInsertParameterLimit"), 999));
+    configuration.setMultiRowInsertParameterLimits(integerMapValueOf(props.getProperty("multiRowInsertParameterLimits")));
     configuration.setMapUnderscoreToCamelCase(booleanValueOf(props.getProperty("mapUnderscoreToCamelCase"), false));
     configuration.setSafeRowBoundsEnabled(booleanValueOf(props.getProperty("safeRowBoundsEnabled"), false));
     configuration.setLocalCacheScope(LocalCacheScope.valueOf(props.getProperty("localCacheScope", "SESSION")));
@@ -204,10 +204,14 @@ public class XMLMapperBuilder extends BaseBuilder {
       Class<? extends Cache> evictionClass = typeAliasRegistry.resolveAlias(eviction);
       Long flushInterval = context.getLongAttribute("flushInterval");
       Integer size = context.getIntAttribute("size");
+      Long maxBytes = context.getLongAttribute("maxBytes");
+      Long timeToLive = context.getLongAttribute("timeToLive");
+      Double timeToLiveJitter = context.getDoubleAttribute("timeToLiveJitter");
+      boolean refreshAhead = context.getBooleanAttribute("refreshAhead", false);
       boolean readWrite = !context.getBooleanAttribute("readOnly", false);
       boolean blocking = context.getBooleanAttribute("blocking", false);
       Properties props = context.getChildrenAsProperties();
-      builderAssistant.useNewCache(typeClass, evictionClass, flushInterval, size, readWrite, blocking, props);
+      builderAssistant.useNewCache(typeClass, evictionClass, flushInterval, size, maxBytes, timeToLive, timeToLiveJitter, refreshAhead, readWrite, blocking, props);
     }
   }
 
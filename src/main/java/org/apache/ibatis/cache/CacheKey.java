@@ -16,56 +16,73 @@
 package org.apache.ibatis.cache;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 import org.apache.ibatis.reflection.ArrayUtil;
 
 /**
+ * Key made of the successive values it is updated with.
+ * <p>
+ * The values are kept in an array, sized up front when the number of values is known, and a 64 bit hash
+ * is mixed in as each value is added, so comparing keys that differ rarely needs to look at the values.
+ * Once {@link #freeze() frozen} a key cannot be updated anymore, which is how the keys of the cached
+ * entries are protected; {@link #clone()} returns an updatable copy.
+ *
  * @author Clinton Begin
  */
 public class CacheKey implements Cloneable, Serializable {
 
-  private static final long serialVersionUID = 1146682552656046210L;
+  private static final long serialVersionUID = 6052574584187284618L;
 
   public static final CacheKey NULL_CACHE_KEY = new NullCacheKey();
 
-  private static final int DEFAULT_MULTIPLYER = 37;
-  private static final int DEFAULT_HASHCODE = 17;
+  private static final int DEFAULT_CAPACITY = 8;
+  private static final Object[] EMPTY = new Object[0];
+
+  private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+  private static final long MIX = 0xC2B2AE3D27D4EB4FL;
 
-  private final int multiplier;
+  private long hash;
+  // computed when frozen, derived from hash before that
   private int hashcode;
-  private long checksum;
   private int count;
+  private boolean frozen;
   // 8/21/2017 - Sonarlint flags this as needing to be marked transient.  While true if content is not serializable, this is not always true and thus should not be marked transient.
-  private List<Object> updateList;
+  private Object[] components;
 
   public CacheKey() {
-    this.hashcode = DEFAULT_HASHCODE;
-    this.multiplier = DEFAULT_MULTIPLYER;
-    this.count = 0;
-    this.updateList = new ArrayList<Object>();
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param expectedUpdates the number of values the key will be updated with, more are accepted
+   * @since 3.4.7
+   */
+  public CacheKey(int expectedUpdates) {
+    this.components = expectedUpdates == 0 ? EMPTY : new Object[expectedUpdates];
   }
 
   public CacheKey(Object[] objects) {
-    this();
+    this(objects.length);
     updateAll(objects);
   }
 
   public int getUpdateCount() {
-    return updateList.size();
+    return count;
   }
 
   public void update(Object object) {
-    int baseHashCode = object == null ? 1 : ArrayUtil.hashCode(object); 
-
-    count++;
-    checksum += baseHashCode;
-    baseHashCode *= count;
+    if (frozen) {
+      throw new CacheException("Not allowed to update a frozen CacheKey instance.");
+    }
+    int baseHashCode = object == null ? 1 : ArrayUtil.hashCode(object);
 
-    hashcode = multiplier * hashcode + baseHashCode;
+    hash = Long.rotateLeft(hash ^ (baseHashCode * MIX), 31) * MULTIPLIER + count;
 
-    updateList.add(object);
+    if (count == components.length) {
+      components = Arrays.copyOf(components, Math.max(DEFAULT_CAPACITY, count * 2));
+    }
+    components[count++] = object;
   }
 
   public void updateAll(Object[] objects) {
@@ -74,6 +91,30 @@ public class CacheKey implements Cloneable, Serializable {
     }
   }
 
+  /**
+   * Makes this key immutable and trims its storage, for keys that are kept in a cache.
+   *
+   * @return this key
+   * @since 3.4.7
+   */
+  public CacheKey freeze() {
+    if (!frozen) {
+      if (components.length != count) {
+        components = count == 0 ? EMPTY : Arrays.copyOf(components, count);
+      }
+      hashcode = finish(hash);
+      frozen = true;
+    }
+    return this;
+  }
+
+  /**
+   * @since 3.4.7
+   */
+  public boolean isFrozen() {
+    return frozen;
+  }
+
   @Override
   public boolean equals(Object object) {
     if (this == object) {
@@ -85,20 +126,17 @@ public class CacheKey implements Cloneable, Serializable {
 
     final CacheKey cacheKey = (CacheKey) object;
 
-    if (hashcode != cacheKey.hashcode) {
-      return false;
-    }
-    if (checksum != cacheKey.checksum) {
+    if (hash != cacheKey.hash) {
       return false;
     }
     if (count != cacheKey.count) {
       return false;
     }
 
-    for (int i = 0; i < updateList.size(); i++) {
-      Object thisObject = updateList.get(i);
-      Object thatObject = cacheKey.updateList.get(i);
-      if (!ArrayUtil.equals(thisObject, thatObject)) {
+    for (int i = 0; i < count; i++) {
+      Object thisObject = components[i];
+      Object thatObject = cacheKey.components[i];
+      if (thisObject != thatObject && !ArrayUtil.equals(thisObject, thatObject)) {
         return false;
       }
     }
@@ -107,14 +145,14 @@ public class CacheKey implements Cloneable, Serializable {
 
   @Override
   public int hashCode() {
-    return hashcode;
+    return frozen ? hashcode : finish(hash);
   }
 
   @Override
   public String toString() {
-    StringBuilder returnValue = new StringBuilder().append(hashcode).append(':').append(checksum);
-    for (Object object : updateList) {
-      returnValue.append(':').append(ArrayUtil.toString(object));
+    StringBuilder returnValue = new StringBuilder().append(hashCode()).append(':').append(Long.toHexString(hash));
+    for (int i = 0; i < count; i++) {
+      returnValue.append(':').append(ArrayUtil.toString(components[i]));
     }
     return returnValue.toString();
   }
@@ -122,8 +160,14 @@ public class CacheKey implements Cloneable, Serializable {
   @Override
   public CacheKey clone() throws CloneNotSupportedException {
     CacheKey clonedCacheKey = (CacheKey) super.clone();
-    clonedCacheKey.updateList = new ArrayList<Object>(updateList);
+    clonedCacheKey.components = Arrays.copyOf(components, Math.max(count + 1, components.length));
+    clonedCacheKey.frozen = false;
     return clonedCacheKey;
   }
 
+  private static int finish(long hash) {
+    long h = (hash ^ (hash >>> 33)) * MIX;
+    return (int) (h ^ (h >>> 32));
+  }
+
 }
@@ -0,0 +1,258 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.ibatis.util.StripedCounter;
+
+/**
+ * Hits, misses, puts, evictions and load time of a cache, along with its size and the estimated heap
+ * retained by its values.
+ * <p>
+ * Every cache built from a mapper keeps statistics in its {@code LoggingCache} decorator, and the eviction
+ * policies underneath report the entries they evict. They are read with {@link #of(Cache)} from the caches
+ * returned by {@code Configuration.getCaches()}, or through JMX when the {@code cacheMBeansEnabled} setting
+ * is on. The counters are striped so that threads hitting the cache do not contend on them, and are only
+ * incremented: reading them while the cache is in use gives figures that may be slightly apart from each
+ * other but never torn.
+ * <p>
+ * The estimated heap is not computed when values are put, which may happen under the lock of the cache. One
+ * put in eight keeps a weak reference to its value among a few pending samples, which the thread reading the
+ * estimate walks; values that left the cache meanwhile are not held back. The estimate is the average of the
+ * last samples walked times the size of the cache, so it follows values whose size changes over time.
+ * <p>
+ * Statistics registered with {@link #registerMBean(String)} stay registered until {@link #unregisterMBean()}
+ * is called, which {@code Configuration.unregisterCacheMBeans()} does for all the caches of a configuration.
+ *
+ * @since 3.4.7
+ */
+public class CacheStatistics implements CacheStatisticsMXBean {
+
+  // one put in SAMPLE_INTERVAL has its value sampled, up to SAMPLES samples wait to be estimated and the
+  // estimate averages the last SAMPLES of them
+  private static final int SAMPLE_INTERVAL = 8;
+  private static final int SAMPLES = 16;
+
+  private final Cache cache;
+  private final StripedCounter hits = new StripedCounter();
+  private final StripedCounter misses = new StripedCounter();
+  private final StripedCounter puts = new StripedCounter();
+  private final StripedCounter evictions = new StripedCounter();
+  private final StripedCounter loads = new StripedCounter();
+  private final StripedCounter loadNanos = new StripedCounter();
+  private final AtomicReferenceArray<WeakReference<Object>> samples = new AtomicReferenceArray<WeakReference<Object>>(SAMPLES);
+  // racy on purpose, a lost update only shifts the sampling
+  private int unsampledPuts;
+  // guarded by samples
+  private final long[] sampledBytes = new long[SAMPLES];
+  private long sampleCount;
+  private ObjectName mbeanName;
+
+  /**
+   * @param cache the cache whose size is reported
+   */
+  public CacheStatistics(Cache cache) {
+    this.cache = cache;
+  }
+
+  /**
+   * @return the statistics kept by {@code cache} or by the cache it decorates, null if there are none
+   */
+  public static CacheStatistics of(Cache cache) {
+    return cache instanceof CacheStatisticsProvider ? ((CacheStatisticsProvider) cache).getStatistics() : null;
+  }
+
+  public void recordHit() {
+    hits.increment();
+  }
+
+  public void recordMiss() {
+    misses.increment();
+  }
+
+  public void recordPut(Object value) {
+    puts.increment();
+    int count = unsampledPuts++;
+    if (count % SAMPLE_INTERVAL == 0 && value != null) {
+      samples.lazySet((count / SAMPLE_INTERVAL) & (SAMPLES - 1), new WeakReference<Object>(value));
+    }
+  }
+
+  public void recordEviction() {
+    evictions.increment();
+  }
+
+  public void recordLoad(long nanos) {
+    loads.increment();
+    loadNanos.add(nanos);
+  }
+
+  @Override
+  public String getId() {
+    return cache.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return cache.getSize();
+  }
+
+  @Override
+  public long getHits() {
+    return hits.get();
+  }
+
+  @Override
+  public long getMisses() {
+    return misses.get();
+  }
+
+  @Override
+  public double getHitRatio() {
+    long hitCount = hits.get();
+    long requestCount = hitCount + misses.get();
+    return requestCount == 0 ? 0 : (double) hitCount / (double) requestCount;
+  }
+
+  @Override
+  public long getPuts() {
+    return puts.get();
+  }
+
+  @Override
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  @Override
+  public long getLoadTime() {
+    return TimeUnit.NANOSECONDS.toMillis(loadNanos.get());
+  }
+
+  @Override
+  public double getAverageLoadTime() {
+    long loadCount = loads.get();
+    return loadCount == 0 ? 0 : loadNanos.get() / 1000000d / loadCount;
+  }
+
+  /**
+   * Estimates the pending samples that are still reachable, outside of the lock of the cache.
+   */
+  @Override
+  public long getEstimatedBytes() {
+    synchronized (samples) {
+      for (int i = 0; i < SAMPLES; i++) {
+        WeakReference<Object> sample = samples.getAndSet(i, null);
+        Object value = sample == null ? null : sample.get();
+        if (value != null) {
+          sampledBytes[(int) (sampleCount++ % SAMPLES)] = ObjectSizeEstimator.estimate(value);
+        }
+      }
+      int count = (int) Math.min(sampleCount, SAMPLES);
+      if (count == 0) {
+        return 0;
+      }
+      long bytes = 0;
+      for (int i = 0; i < count; i++) {
+        bytes += sampledBytes[i];
+      }
+      return bytes / count * getSize();
+    }
+  }
+
+  @Override
+  public void reset() {
+    hits.reset();
+    misses.reset();
+    puts.reset();
+    evictions.reset();
+    loads.reset();
+    loadNanos.reset();
+    synchronized (samples) {
+      for (int i = 0; i < SAMPLES; i++) {
+        samples.set(i, null);
+      }
+      sampleCount = 0;
+    }
+    unsampledPuts = 0;
+  }
+
+  /**
+   * Registers these statistics with the platform MBean server. When the statistics of a cache with the same id and
+   * environment are already registered, for instance by another configuration, an {@code instance} key tells them
+   * apart.
+   *
+   * @param environment the id of the environment the cache belongs to, may be null
+   * @return the name the statistics are registered under
+   */
+  public synchronized ObjectName registerMBean(String environment) {
+    if (mbeanName != null) {
+      return mbeanName;
+    }
+    try {
+      String name = "org.apache.ibatis:type=CacheStatistics,environment="
+          + ObjectName.quote(environment == null ? "default" : environment) + ",id=" + ObjectName.quote(getId());
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName objectName = new ObjectName(name);
+      for (int instance = 2; mbeanName == null; instance++) {
+        try {
+          server.registerMBean(this, objectName);
+          mbeanName = objectName;
+        } catch (InstanceAlreadyExistsException e) {
+          objectName = new ObjectName(name + ",instance=" + instance);
+        }
+      }
+      return mbeanName;
+    } catch (JMException e) {
+      throw new CacheException("Could not register the statistics of cache '" + getId() + "'.  Cause: " + e, e);
+    }
+  }
+
+  /**
+   * Unregisters these statistics from the platform MBean server, if {@link #registerMBean(String)} registered them.
+   */
+  public synchronized void unregisterMBean() {
+    if (mbeanName == null) {
+      return;
+    }
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+    } catch (InstanceNotFoundException e) {
+      // unregistered by somebody else
+    } catch (JMException e) {
+      throw new CacheException("Could not unregister the statistics of cache '" + getId() + "'.  Cause: " + e, e);
+    }
+    mbeanName = null;
+  }
+
+  @Override
+  public String toString() {
+    return "CacheStatistics [id=" + getId() + ", size=" + getSize() + ", hits=" + getHits() + ", misses=" + getMisses()
+        + ", puts=" + getPuts() + ", evictions=" + getEvictions() + ", loadTime=" + getLoadTime()
+        + ", estimatedBytes=" + getEstimatedBytes() + "]";
+  }
+
+}
@@ -0,0 +1,56 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+/**
+ * Management interface of the {@link CacheStatistics} of a cache.
+ *
+ * @since 3.4.7
+ */
+public interface CacheStatisticsMXBean {
+
+  String getId();
+
+  int getSize();
+
+  long getHits();
+
+  long getMisses();
+
+  double getHitRatio();
+
+  long getPuts();
+
+  long getEvictions();
+
+  /**
+   * @return the time spent loading the values that missed, in milliseconds
+   */
+  long getLoadTime();
+
+  /**
+   * @return the average time spent loading a value that missed, in milliseconds
+   */
+  double getAverageLoadTime();
+
+  /**
+   * @return the heap retained by the cached values, estimated from a sample of them
+   */
+  long getEstimatedBytes();
+
+  void reset();
+
+}
@@ -0,0 +1,256 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.security.CodeSource;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Estimates the heap retained by a cached value, used by caches bounded with {@code maxBytes}.
+ * <p>
+ * A byte array (what {@code SerializedCache} stores) weighs exactly its length. Other values are
+ * walked field by field assuming a 64-bit JVM with compressed references. The collections and maps of the
+ * JDK, whose fields cannot be read on recent JVMs, are walked through their elements instead, with their
+ * backing storage estimated from their size. Large arrays and collections, and so large result lists, are
+ * sampled rather than walked completely. Objects of MyBatis classes met along the way
+ * (such as the handler of a lazy loading proxy) are shared by all the cached values and are not counted.
+ */
+public final class ObjectSizeEstimator {
+
+  private static final int OBJECT_HEADER = 12;
+  private static final int ARRAY_HEADER = 16;
+  private static final int REFERENCE = 4;
+  // a hash map node: a header, the hash and three references
+  private static final int MAP_ENTRY = 32;
+  private static final int ARRAY_SAMPLE = 64;
+  private static final int MAX_OBJECTS = 65536;
+
+  private static final Map<Class<?>, ClassLayout> layouts = new ConcurrentHashMap<Class<?>, ClassLayout>();
+
+  private ObjectSizeEstimator() {
+    // Prevent Instantiation
+  }
+
+  public static long estimate(Object value) {
+    if (value == null) {
+      return 0;
+    }
+    if (value instanceof byte[]) {
+      return align(ARRAY_HEADER + ((byte[]) value).length);
+    }
+    Map<Object, Object> visited = new IdentityHashMap<Object, Object>();
+    Deque<Object> pending = new ArrayDeque<Object>();
+    Deque<Double> weights = new ArrayDeque<Double>();
+    pending.push(value);
+    weights.push(1d);
+    double total = 0;
+    while (!pending.isEmpty() && visited.size() < MAX_OBJECTS) {
+      Object object = pending.pop();
+      double weight = weights.pop();
+      if (visited.put(object, object) != null || isShared(object)) {
+        continue;
+      }
+      Class<?> type = object.getClass();
+      if (type == String.class) {
+        total += weight * (align(OBJECT_HEADER + 12) + align(ARRAY_HEADER + 2 * ((String) object).length()));
+      } else if (type.isArray()) {
+        int length = Array.getLength(object);
+        Class<?> componentType = type.getComponentType();
+        if (componentType.isPrimitive()) {
+          total += weight * align(ARRAY_HEADER + (long) length * sizeOf(componentType));
+        } else {
+          total += weight * align(ARRAY_HEADER + (long) length * REFERENCE);
+          Object[] array = (Object[]) object;
+          int step = Math.max(1, length / ARRAY_SAMPLE);
+          double elementWeight = weight * step;
+          for (int i = 0; i < length; i += step) {
+            if (array[i] != null) {
+              pending.push(array[i]);
+              weights.push(elementWeight);
+            }
+          }
+        }
+      } else if (isJdkContainer(type) && object instanceof Collection) {
+        Collection<?> collection = (Collection<?>) object;
+        int size = collection.size();
+        total += weight * (layoutOf(type).shallowSize + align(ARRAY_HEADER + (long) size * REFERENCE));
+        pushSample(collection, size, weight, pending, weights);
+      } else if (isJdkContainer(type)) {
+        Map<?, ?> map = (Map<?, ?>) object;
+        int size = map.size();
+        total += weight * (layoutOf(type).shallowSize + align(ARRAY_HEADER + (long) size * REFERENCE)
+            + (long) size * MAP_ENTRY);
+        pushSample(map.keySet(), size, weight, pending, weights);
+        pushSample(map.values(), size, weight, pending, weights);
+      } else {
+        ClassLayout layout = layoutOf(type);
+        // the value itself is always weighed, even when it is a MyBatis wrapper
+        if (layout.framework && object != value) {
+          continue;
+        }
+        total += weight * layout.shallowSize;
+        for (Field field : layout.referenceFields) {
+          Object child;
+          try {
+            child = field.get(object);
+          } catch (IllegalAccessException e) {
+            continue;
+          }
+          if (child != null) {
+            pending.push(child);
+            weights.push(weight);
+          }
+        }
+      }
+    }
+    return (long) total;
+  }
+
+  /*
+   * Pushes every element of a collection, or an evenly spread sample of a large one weighing for the others.
+   */
+  private static void pushSample(Collection<?> elements, int size, double weight, Deque<Object> pending,
+      Deque<Double> weights) {
+    int step = Math.max(1, size / ARRAY_SAMPLE);
+    double elementWeight = weight * step;
+    try {
+      if (elements instanceof List && elements instanceof RandomAccess) {
+        List<?> list = (List<?>) elements;
+        for (int i = 0; i < size; i += step) {
+          push(list.get(i), elementWeight, pending, weights);
+        }
+      } else {
+        Iterator<?> iterator = elements.iterator();
+        for (int i = 0; iterator.hasNext(); i++) {
+          Object element = iterator.next();
+          if (i % step == 0) {
+            push(element, elementWeight, pending, weights);
+          }
+        }
+      }
+    } catch (RuntimeException e) {
+      // changed while walked, what was pushed will have to do
+    }
+  }
+
+  private static void push(Object element, double weight, Deque<Object> pending, Deque<Double> weights) {
+    if (element != null) {
+      pending.push(element);
+      weights.push(weight);
+    }
+  }
+
+  private static boolean isJdkContainer(Class<?> type) {
+    return type.getClassLoader() == null
+        && (Collection.class.isAssignableFrom(type) || Map.class.isAssignableFrom(type));
+  }
+
+  private static boolean isShared(Object object) {
+    return object instanceof Class
+        || object instanceof ClassLoader
+        || object instanceof Thread
+        || object instanceof Enum;
+  }
+
+  private static boolean isFramework(Class<?> type) {
+    if (!type.getName().startsWith("org.apache.ibatis.")) {
+      return false;
+    }
+    try {
+      CodeSource codeSource = type.getProtectionDomain().getCodeSource();
+      CodeSource frameworkSource = ObjectSizeEstimator.class.getProtectionDomain().getCodeSource();
+      if (codeSource == null || frameworkSource == null) {
+        return codeSource == frameworkSource;
+      }
+      return String.valueOf(codeSource.getLocation()).equals(String.valueOf(frameworkSource.getLocation()));
+    } catch (SecurityException e) {
+      return true;
+    }
+  }
+
+  private static ClassLayout layoutOf(Class<?> type) {
+    ClassLayout layout = layouts.get(type);
+    if (layout == null) {
+      layout = new ClassLayout(type, !isJdkContainer(type));
+      layouts.put(type, layout);
+    }
+    return layout;
+  }
+
+  private static int sizeOf(Class<?> primitive) {
+    if (primitive == long.class || primitive == double.class) {
+      return 8;
+    } else if (primitive == int.class || primitive == float.class) {
+      return 4;
+    } else if (primitive == char.class || primitive == short.class) {
+      return 2;
+    } else {
+      return 1;
+    }
+  }
+
+  private static long align(long size) {
+    return (size + 7) & ~7L;
+  }
+
+  private static class ClassLayout {
+    private final boolean framework;
+    private final long shallowSize;
+    private final List<Field> referenceFields = new ArrayList<Field>();
+
+    ClassLayout(Class<?> type, boolean walked) {
+      this.framework = isFramework(type);
+      long size = OBJECT_HEADER;
+      boolean accessible = walked;
+      for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+        for (Field field : c.getDeclaredFields()) {
+          if (Modifier.isStatic(field.getModifiers())) {
+            continue;
+          }
+          if (field.getType().isPrimitive()) {
+            size += sizeOf(field.getType());
+          } else {
+            size += REFERENCE;
+            if (accessible) {
+              try {
+                field.setAccessible(true);
+                referenceFields.add(field);
+              } catch (RuntimeException e) {
+                // cannot look inside, the shallow size will have to do
+                accessible = false;
+                referenceFields.clear();
+              }
+            }
+          }
+        }
+      }
+      this.shallowSize = align(size);
+    }
+  }
+
+}
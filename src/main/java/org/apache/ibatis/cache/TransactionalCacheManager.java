@@ -18,6 +18,7 @@ package org.apache.ibatis.cache;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.ibatis.cache.decorators.TableInvalidationCache.Dependencies;
 import org.apache.ibatis.cache.decorators.TransactionalCache;
 
 /**
@@ -31,6 +32,13 @@ public class TransactionalCacheManager {
     getTransactionalCache(cache).clear();
   }
 
+  /**
+   * @since 3.4.7
+   */
+  public void invalidate(Cache cache, String[] tables) {
+    getTransactionalCache(cache).invalidate(tables);
+  }
+
   public Object getObject(Cache cache, CacheKey key) {
     return getTransactionalCache(cache).getObject(key);
   }
@@ -39,6 +47,13 @@ public class TransactionalCacheManager {
     getTransactionalCache(cache).putObject(key, value);
   }
 
+  /**
+   * @since 3.4.7
+   */
+  public void putObject(Cache cache, CacheKey key, Object value, Dependencies dependencies) {
+    getTransactionalCache(cache).putObject(key, value, dependencies);
+  }
+
   public void commit() {
     for (TransactionalCache txCache : transactionalCaches.values()) {
       txCache.commit();
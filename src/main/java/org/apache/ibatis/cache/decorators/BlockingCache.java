@@ -16,33 +16,39 @@
 package org.apache.ibatis.cache.decorators;
 
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheStatistics;
+import org.apache.ibatis.cache.CacheStatisticsProvider;
 
 /**
  * Simple blocking decorator 
  * 
- * Simple and inefficient version of EhCache's BlockingCache decorator.
- * It sets a lock over a cache key when the element is not found in cache.
- * This way, other threads will wait until this element is filled instead of hitting the database.
+ * Simple version of EhCache's BlockingCache decorator.
+ * When an element is not found in cache, the thread that missed it is in charge of loading it
+ * and the other threads requesting the same key wait until it is filled instead of hitting the database.
+ * <p>
+ * Only the keys being loaded are tracked: the loading thread releases its key when it puts the element,
+ * or calls {@link #removeObject(Object)} when it gives up, so the memory used stays bounded by the
+ * number of concurrent loads, whatever the number of distinct keys. Hits do not block unless the key
+ * is being loaded.
  * 
  * @author Eduardo Macarron
  *
  */
-public class BlockingCache implements Cache {
+public class BlockingCache implements Cache, CacheStatisticsProvider {
 
   private long timeout;
   private final Cache delegate;
-  private final ConcurrentHashMap<Object, ReentrantLock> locks;
+  private final ConcurrentHashMap<Object, Load> loads;
 
   public BlockingCache(Cache delegate) {
     this.delegate = delegate;
-    this.locks = new ConcurrentHashMap<Object, ReentrantLock>();
+    this.loads = new ConcurrentHashMap<Object, Load>();
   }
 
   @Override
@@ -60,24 +66,38 @@ public class BlockingCache implements Cache {
     try {
       delegate.putObject(key, value);
     } finally {
-      releaseLock(key);
+      releaseLoad(key);
     }
   }
 
   @Override
   public Object getObject(Object key) {
-    acquireLock(key);
-    Object value = delegate.getObject(key);
-    if (value != null) {
-      releaseLock(key);
-    }        
-    return value;
+    Thread current = Thread.currentThread();
+    while (true) {
+      Load load = loads.get(key);
+      if (load == null) {
+        Object value = delegate.getObject(key);
+        if (value != null) {
+          return value;
+        }
+        load = loads.putIfAbsent(key, new Load(current));
+        if (load == null) {
+          // the caller loads the element, then puts or removes it
+          return null;
+        }
+      }
+      if (load.owner == current) {
+        // missed again before putting it
+        return null;
+      }
+      awaitLoad(key, load);
+    }
   }
 
   @Override
   public Object removeObject(Object key) {
     // despite of its name, this method is called only to release locks
-    releaseLock(key);
+    releaseLoad(key);
     return null;
   }
 
@@ -86,37 +106,36 @@ public class BlockingCache implements Cache {
     delegate.clear();
   }
 
+  @Override
+  public CacheStatistics getStatistics() {
+    return CacheStatistics.of(delegate);
+  }
+
   @Override
   public ReadWriteLock getReadWriteLock() {
     return null;
   }
-  
-  private ReentrantLock getLockForKey(Object key) {
-    ReentrantLock lock = new ReentrantLock();
-    ReentrantLock previous = locks.putIfAbsent(key, lock);
-    return previous == null ? lock : previous;
-  }
-  
-  private void acquireLock(Object key) {
-    Lock lock = getLockForKey(key);
-    if (timeout > 0) {
-      try {
-        boolean acquired = lock.tryLock(timeout, TimeUnit.MILLISECONDS);
-        if (!acquired) {
+
+  private void awaitLoad(Object key, Load load) {
+    try {
+      if (timeout > 0) {
+        boolean loaded = load.done.await(timeout, TimeUnit.MILLISECONDS);
+        if (!loaded) {
           throw new CacheException("Couldn't get a lock in " + timeout + " for the key " +  key + " at the cache " + delegate.getId());  
         }
-      } catch (InterruptedException e) {
-        throw new CacheException("Got interrupted while trying to acquire lock for key " + key, e);
+      } else {
+        load.done.await();
       }
-    } else {
-      lock.lock();
+    } catch (InterruptedException e) {
+      throw new CacheException("Got interrupted while trying to acquire lock for key " + key, e);
     }
   }
-  
-  private void releaseLock(Object key) {
-    ReentrantLock lock = locks.get(key);
-    if (lock.isHeldByCurrentThread()) {
-      lock.unlock();
+
+  private void releaseLoad(Object key) {
+    Load load = loads.get(key);
+    if (load != null && load.owner == Thread.currentThread()) {
+      loads.remove(key, load);
+      load.done.countDown();
     }
   }
 
@@ -126,5 +145,15 @@ public class BlockingCache implements Cache {
 
   public void setTimeout(long timeout) {
     this.timeout = timeout;
-  }  
-}
\ No newline at end of file
+  }
+
+  private static class Load {
+
+    private final Thread owner;
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    Load(Thread owner) {
+      this.owner = owner;
+    }
+  }
+}
@@ -0,0 +1,85 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.apache.ibatis.cache.Cache;
+
+/**
+ * Stores deep copies of the cached objects and hands out deep copies of them, so that every reader gets
+ * its own copy, like {@link SerializedCache} does but without serializing.
+ * <p>
+ * The copies are made through the properties of the cached beans, which is much cheaper than a Java
+ * serialization round trip for the lists, maps and nested result objects that queries return. Objects
+ * that cannot be copied that way, such as lazy loading proxies, are still copied with Java serialization.
+ *
+ * @since 3.4.7
+ */
+public class DeepCopyCache implements Cache {
+
+  private final Cache delegate;
+
+  public DeepCopyCache(Cache delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public void putObject(Object key, Object object) {
+    delegate.putObject(key, ObjectCopier.copy(object));
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    return ObjectCopier.copy(delegate.getObject(key));
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    return delegate.removeObject(key);
+  }
+
+  @Override
+  public void clear() {
+    delegate.clear();
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  @Override
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+}
@@ -0,0 +1,187 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.apache.ibatis.cache.Cache;
+
+/**
+ * Expires every entry on its own, a given time after it was put, instead of clearing the whole cache
+ * at once like {@link ScheduledCache}.
+ * <p>
+ * The time to live of each entry is shortened by a random part of up to {@code timeToLiveJitter} of it,
+ * so that entries loaded together do not all expire together. With refresh ahead enabled, the first
+ * read of an entry in the last fifth of its life asks the caller to reload it in the background (see
+ * {@link #isRefreshRequested(Object)}), so that frequently read entries are replaced before they expire.
+ */
+public class ExpiringCache implements Cache {
+
+  private static final double REFRESH_AHEAD_RATIO = 0.8;
+  private static final ThreadLocal<Object> refreshRequests = new ThreadLocal<Object>();
+  private static final AtomicIntegerFieldUpdater<Entry> refreshing = AtomicIntegerFieldUpdater.newUpdater(Entry.class, "refreshing");
+
+  private final Cache delegate;
+  private long timeToLive = 60 * 60 * 1000; // 1 hour
+  private double timeToLiveJitter;
+  private boolean refreshAhead;
+
+  public ExpiringCache(Cache delegate) {
+    this.delegate = delegate;
+  }
+
+  public void setTimeToLive(long timeToLive) {
+    this.timeToLive = timeToLive;
+  }
+
+  /**
+   * @param timeToLiveJitter the fraction (between 0 and 1) of the time to live that may be randomly cut off
+   */
+  public void setTimeToLiveJitter(double timeToLiveJitter) {
+    this.timeToLiveJitter = Math.min(Math.max(timeToLiveJitter, 0), 1);
+  }
+
+  public void setRefreshAhead(boolean refreshAhead) {
+    this.refreshAhead = refreshAhead;
+  }
+
+  /**
+   * Tells whether the last read of the given key by the current thread found an entry close to its
+   * expiration, and forgets the request. Only one reader is asked to refresh a given entry.
+   */
+  public static boolean isRefreshRequested(Object key) {
+    Object requested = refreshRequests.get();
+    if (requested == null) {
+      return false;
+    }
+    refreshRequests.remove();
+    return requested.equals(key);
+  }
+
+  /**
+   * Asks the current thread to reload the given key, for the caches that keep the expiration of their
+   * entries on their own instead of being wrapped in an {@code ExpiringCache}.
+   */
+  public static void requestRefresh(Object key) {
+    refreshRequests.set(key);
+  }
+
+  /**
+   * The time to live of an entry put now, shortened by a random part of up to {@code timeToLiveJitter} of it.
+   */
+  public static long timeToLiveOf(Object key, long now, long timeToLive, double timeToLiveJitter) {
+    return (long) (timeToLive * (1 - timeToLiveJitter * random(key, now)));
+  }
+
+  /**
+   * The time from which the first read of an entry asks for its refresh, when refresh ahead is enabled.
+   */
+  public static long refreshTimeOf(long putAt, long timeToLive) {
+    return putAt + (long) (timeToLive * REFRESH_AHEAD_RATIO);
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public void putObject(Object key, Object object) {
+    if (object == null) {
+      delegate.putObject(key, null);
+      return;
+    }
+    long now = System.currentTimeMillis();
+    long ttl = timeToLiveOf(key, now, timeToLive, timeToLiveJitter);
+    long refreshAt = refreshAhead ? refreshTimeOf(now, ttl) : Long.MAX_VALUE;
+    delegate.putObject(key, new Entry(object, now + ttl, refreshAt));
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Object value = delegate.getObject(key);
+    if (!(value instanceof Entry)) {
+      return value;
+    }
+    Entry entry = (Entry) value;
+    long now = System.currentTimeMillis();
+    if (now >= entry.expiresAt) {
+      delegate.removeObject(key);
+      return null;
+    }
+    if (now >= entry.refreshAt && refreshing.compareAndSet(entry, 0, 1)) {
+      requestRefresh(key);
+    }
+    return entry.value;
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    Object value = delegate.removeObject(key);
+    return value instanceof Entry ? ((Entry) value).value : value;
+  }
+
+  @Override
+  public void clear() {
+    delegate.clear();
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  @Override
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+  /*
+   * A number between 0 and 1 that is cheap to compute and does not need a shared Random.
+   */
+  private static double random(Object key, long now) {
+    long x = System.nanoTime() ^ (key.hashCode() * 0x9E3779B97F4A7C15L) ^ now;
+    x ^= x >>> 33;
+    x *= 0xff51afd7ed558ccdL;
+    x ^= x >>> 33;
+    return (x >>> 11) * 0x1.0p-53;
+  }
+
+  static final class Entry {
+    private final Object value;
+    private final long expiresAt;
+    private final long refreshAt;
+    volatile int refreshing;
+
+    Entry(Object value, long expiresAt, long refreshAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+      this.refreshAt = refreshAt;
+    }
+  }
+
+}
@@ -18,22 +18,26 @@ package org.apache.ibatis.cache.decorators;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheStatistics;
+import org.apache.ibatis.cache.CacheStatisticsProvider;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 
 /**
+ * Keeps the {@link CacheStatistics} of the cache and logs its hit ratio.
+ *
  * @author Clinton Begin
  */
-public class LoggingCache implements Cache {
+public class LoggingCache implements Cache, CacheStatisticsProvider {
 
   private final Log log;
   private final Cache delegate;
-  protected int requests = 0;
-  protected int hits = 0;
+  private final CacheStatistics statistics;
 
   public LoggingCache(Cache delegate) {
     this.delegate = delegate;
     this.log = LogFactory.getLog(getId());
+    this.statistics = new CacheStatistics(delegate);
   }
 
   @Override
@@ -49,17 +53,19 @@ public class LoggingCache implements Cache {
   @Override
   public void putObject(Object key, Object object) {
     delegate.putObject(key, object);
+    statistics.recordPut(object);
   }
 
   @Override
   public Object getObject(Object key) {
-    requests++;
     final Object value = delegate.getObject(key);
     if (value != null) {
-      hits++;
+      statistics.recordHit();
+    } else {
+      statistics.recordMiss();
     }
     if (log.isDebugEnabled()) {
-      log.debug("Cache Hit Ratio [" + getId() + "]: " + getHitRatio());
+      log.debug("Cache Hit Ratio [" + getId() + "]: " + statistics.getHitRatio());
     }
     return value;
   }
@@ -79,6 +85,14 @@ public class LoggingCache implements Cache {
     return null;
   }
 
+  /**
+   * @since 3.4.7
+   */
+  @Override
+  public CacheStatistics getStatistics() {
+    return statistics;
+  }
+
   @Override
   public int hashCode() {
     return delegate.hashCode();
@@ -89,8 +103,4 @@ public class LoggingCache implements Cache {
     return delegate.equals(obj);
   }
 
-  private double getHitRatio() {
-    return (double) hits / (double) requests;
-  }
-
 }
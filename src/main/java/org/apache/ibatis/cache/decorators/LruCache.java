@@ -15,11 +15,14 @@
  */
 package org.apache.ibatis.cache.decorators;
 
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheStatistics;
+import org.apache.ibatis.cache.ObjectSizeEstimator;
 
 /**
  * Lru (least recently used) cache decorator
@@ -31,6 +34,9 @@ public class LruCache implements Cache {
   private final Cache delegate;
   private Map<Object, Object> keyMap;
   private Object eldestKey;
+  private long maxBytes;
+  private long bytes;
+  private CacheStatistics statistics;
 
   public LruCache(Cache delegate) {
     this.delegate = delegate;
@@ -53,7 +59,7 @@ public class LruCache implements Cache {
 
       @Override
       protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
-        boolean tooBig = size() > size;
+        boolean tooBig = maxBytes <= 0 && size() > size;
         if (tooBig) {
           eldestKey = eldest.getKey();
         }
@@ -62,10 +68,33 @@ public class LruCache implements Cache {
     };
   }
 
+  /**
+   * Bounds the cache by the estimated heap size of its values instead of their number.
+   *
+   * @param maxBytes the budget in bytes, the size limit is ignored when it is positive
+   * @since 3.4.7
+   * @see ObjectSizeEstimator
+   */
+  public void setMaxBytes(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * @param statistics the statistics the evicted entries are reported to
+   * @since 3.4.7
+   */
+  public void setStatistics(CacheStatistics statistics) {
+    this.statistics = statistics;
+  }
+
   @Override
   public void putObject(Object key, Object value) {
     delegate.putObject(key, value);
-    cycleKeyList(key);
+    if (maxBytes > 0) {
+      cycleWeightedKeyList(key, ObjectSizeEstimator.estimate(value));
+    } else {
+      cycleKeyList(key);
+    }
   }
 
   @Override
@@ -76,6 +105,10 @@ public class LruCache implements Cache {
 
   @Override
   public Object removeObject(Object key) {
+    Object weight = keyMap.remove(key);
+    if (maxBytes > 0 && weight != null) {
+      bytes -= (Long) weight;
+    }
     return delegate.removeObject(key);
   }
 
@@ -83,6 +116,7 @@ public class LruCache implements Cache {
   public void clear() {
     delegate.clear();
     keyMap.clear();
+    bytes = 0;
   }
 
   @Override
@@ -95,6 +129,30 @@ public class LruCache implements Cache {
     if (eldestKey != null) {
       delegate.removeObject(eldestKey);
       eldestKey = null;
+      recordEviction();
+    }
+  }
+
+  private void cycleWeightedKeyList(Object key, long weight) {
+    Object previous = keyMap.put(key, weight);
+    if (previous != null) {
+      bytes -= (Long) previous;
+    }
+    bytes += weight;
+    // a value larger than the whole budget evicts everything, itself included
+    Iterator<Map.Entry<Object, Object>> eldest = keyMap.entrySet().iterator();
+    while (bytes > maxBytes && eldest.hasNext()) {
+      Map.Entry<Object, Object> entry = eldest.next();
+      bytes -= (Long) entry.getValue();
+      eldest.remove();
+      delegate.removeObject(entry.getKey());
+      recordEviction();
+    }
+  }
+
+  private void recordEviction() {
+    if (statistics != null) {
+      statistics.recordEviction();
     }
   }
 
@@ -0,0 +1,261 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.serializer.CacheSerializer;
+import org.apache.ibatis.cache.serializer.JavaSerializer;
+import org.apache.ibatis.reflection.DefaultReflectorFactory;
+import org.apache.ibatis.reflection.Reflector;
+import org.apache.ibatis.reflection.ReflectorFactory;
+import org.apache.ibatis.reflection.invoker.Invoker;
+
+/**
+ * Deep copies object graphs through the property model of the {@link Reflector}.
+ * <p>
+ * Immutable values are shared, dates and arrays are cloned, the common collections and maps are rebuilt
+ * with copies of their elements, and beans are created with their default constructor and filled with
+ * copies of their readable and writable properties, the ones a result map can populate. Shared references
+ * and cycles are preserved. Anything else (lazy loading proxies, classes without a default constructor,
+ * other JDK classes...) is copied with a Java serialization round trip.
+ */
+final class ObjectCopier {
+
+  private static final Object[] NO_ARGUMENTS = new Object[0];
+
+  private static final ReflectorFactory reflectorFactory = new DefaultReflectorFactory();
+  private static final Map<Class<?>, CopyPlan> plans = new ConcurrentHashMap<Class<?>, CopyPlan>();
+
+  private static final CacheSerializer javaSerializer = new JavaSerializer();
+
+  private ObjectCopier() {
+    // Prevent Instantiation of Static Class
+  }
+
+  static Object copy(Object value) {
+    try {
+      return copy(value, new IdentityHashMap<Object, Object>());
+    } catch (CacheException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new CacheException("Error copying object.  Cause: " + e, e);
+    }
+  }
+
+  private static Object copy(Object value, Map<Object, Object> copies) throws Exception {
+    if (value == null || isImmutable(value)) {
+      return value;
+    }
+    Object copy = copies.get(value);
+    if (copy != null) {
+      return copy;
+    }
+    Class<?> type = value.getClass();
+    if (value instanceof Date) {
+      copy = ((Date) value).clone();
+      copies.put(value, copy);
+    } else if (type.isArray()) {
+      copy = copyArray(value, type, copies);
+    } else if (value instanceof Collection) {
+      copy = copyCollection((Collection<?>) value, type, copies);
+    } else if (value instanceof Map) {
+      copy = copyMap((Map<?, ?>) value, type, copies);
+    } else {
+      copy = copyBean(value, type, copies);
+    }
+    return copy;
+  }
+
+  private static boolean isImmutable(Object value) {
+    Class<?> type = value.getClass();
+    return type == String.class
+        || type == Integer.class
+        || type == Long.class
+        || type == Boolean.class
+        || type == Double.class
+        || type == Float.class
+        || type == Short.class
+        || type == Byte.class
+        || type == Character.class
+        || type == BigDecimal.class
+        || type == BigInteger.class
+        || type == UUID.class
+        || type == Locale.class
+        || type == Class.class
+        || value instanceof Enum;
+  }
+
+  private static Object copyArray(Object array, Class<?> type, Map<Object, Object> copies) throws Exception {
+    int length = Array.getLength(array);
+    Object copy = Array.newInstance(type.getComponentType(), length);
+    copies.put(array, copy);
+    if (type.getComponentType().isPrimitive()) {
+      System.arraycopy(array, 0, copy, 0, length);
+    } else {
+      Object[] source = (Object[]) array;
+      Object[] target = (Object[]) copy;
+      for (int i = 0; i < length; i++) {
+        target[i] = copy(source[i], copies);
+      }
+    }
+    return copy;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Object copyCollection(Collection<?> collection, Class<?> type, Map<Object, Object> copies) throws Exception {
+    Collection<Object> copy;
+    if (type == ArrayList.class) {
+      copy = new ArrayList<Object>(collection.size());
+    } else if (type == LinkedList.class) {
+      copy = new LinkedList<Object>();
+    } else if (type == HashSet.class) {
+      copy = new HashSet<Object>(Math.max((int) (collection.size() / .75f) + 1, 16));
+    } else if (type == LinkedHashSet.class) {
+      copy = new LinkedHashSet<Object>(Math.max((int) (collection.size() / .75f) + 1, 16));
+    } else if (type == TreeSet.class) {
+      copy = new TreeSet<Object>(((TreeSet<Object>) collection).comparator());
+    } else {
+      return copySerializable(collection, copies);
+    }
+    copies.put(collection, copy);
+    for (Object element : collection) {
+      copy.add(copy(element, copies));
+    }
+    return copy;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Object copyMap(Map<?, ?> map, Class<?> type, Map<Object, Object> copies) throws Exception {
+    Map<Object, Object> copy;
+    if (type == HashMap.class) {
+      copy = new HashMap<Object, Object>(Math.max((int) (map.size() / .75f) + 1, 16));
+    } else if (type == LinkedHashMap.class) {
+      copy = new LinkedHashMap<Object, Object>(Math.max((int) (map.size() / .75f) + 1, 16));
+    } else if (type == TreeMap.class) {
+      copy = new TreeMap<Object, Object>(((TreeMap<Object, Object>) map).comparator());
+    } else {
+      return copySerializable(map, copies);
+    }
+    copies.put(map, copy);
+    for (Map.Entry<?, ?> entry : map.entrySet()) {
+      copy.put(copy(entry.getKey(), copies), copy(entry.getValue(), copies));
+    }
+    return copy;
+  }
+
+  private static Object copyBean(Object bean, Class<?> type, Map<Object, Object> copies) throws Exception {
+    CopyPlan plan = plans.get(type);
+    if (plan == null) {
+      plan = new CopyPlan(type);
+      plans.put(type, plan);
+    }
+    if (!plan.copyable) {
+      return copySerializable(bean, copies);
+    }
+    Object copy = plan.constructor.newInstance();
+    copies.put(bean, copy);
+    Object[] argument = new Object[1];
+    for (int i = 0; i < plan.getters.length; i++) {
+      argument[0] = copy(plan.getters[i].invoke(bean, NO_ARGUMENTS), copies);
+      plan.setters[i].invoke(copy, argument);
+    }
+    return copy;
+  }
+
+  /*
+   * The copy does not share any reference with the rest of the graph.
+   */
+  private static Object copySerializable(Object value, Map<Object, Object> copies) {
+    Object copy = javaSerializer.deserialize(javaSerializer.serialize(value));
+    copies.put(value, copy);
+    return copy;
+  }
+
+  private static class CopyPlan {
+
+    private boolean copyable;
+    private Constructor<?> constructor;
+    private Invoker[] getters;
+    private Invoker[] setters;
+
+    CopyPlan(Class<?> type) {
+      if (Proxy.isProxyClass(type)
+          || type.getName().startsWith("java.")
+          || replacesItself(type)) {
+        return;
+      }
+      try {
+        Reflector reflector = reflectorFactory.findForClass(type);
+        if (!reflector.hasDefaultConstructor()) {
+          return;
+        }
+        constructor = reflector.getDefaultConstructor();
+        List<Invoker> getterList = new ArrayList<Invoker>();
+        List<Invoker> setterList = new ArrayList<Invoker>();
+        for (String property : reflector.getGetablePropertyNames()) {
+          if (reflector.hasSetter(property)) {
+            getterList.add(reflector.getGetInvoker(property));
+            setterList.add(reflector.getSetInvoker(property));
+          }
+        }
+        getters = getterList.toArray(new Invoker[getterList.size()]);
+        setters = setterList.toArray(new Invoker[setterList.size()]);
+        copyable = true;
+      } catch (RuntimeException e) {
+        // not a plain bean, Java serialization will do
+        copyable = false;
+      }
+    }
+
+    /*
+     * Lazy loading proxies replace themselves when serialized, their properties must not be read.
+     */
+    private static boolean replacesItself(Class<?> type) {
+      for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+        for (Method method : c.getDeclaredMethods()) {
+          if ("writeReplace".equals(method.getName()) && method.getParameterTypes().length == 0) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+  }
+
+}
@@ -15,29 +15,66 @@
  */
 package org.apache.ibatis.cache.decorators;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.ObjectStreamClass;
 import java.io.Serializable;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.serializer.BinarySerializer;
+import org.apache.ibatis.cache.serializer.CacheSerializer;
+import org.apache.ibatis.cache.serializer.CacheSerializers;
+import org.apache.ibatis.cache.serializer.CompressingSerializer;
+import org.apache.ibatis.cache.serializer.JavaSerializer;
 import org.apache.ibatis.io.Resources;
 
 /**
+ * Stores serialized copies of the cached objects, so that every reader gets its own copy.
+ * <p>
+ * The copies are made with Java serialization unless the {@code serializer} property names another
+ * {@link CacheSerializer}: {@code binary} for the faster built-in {@link BinarySerializer}, or the class
+ * name of a custom one. Setting the {@code compression} property to true compresses the copies.
+ *
  * @author Clinton Begin
  */
 public class SerializedCache implements Cache {
 
   private final Cache delegate;
+  private CacheSerializer serializer;
+  private boolean compression;
+  private CacheSerializer codec;
 
   public SerializedCache(Cache delegate) {
+    this(delegate, new JavaSerializer());
+  }
+
+  /**
+   * @since 3.4.7
+   */
+  public SerializedCache(Cache delegate, CacheSerializer serializer) {
     this.delegate = delegate;
+    this.serializer = serializer;
+    this.codec = serializer;
+  }
+
+  /**
+   * @param serializer {@code java}, {@code binary} or the name of a class implementing {@link CacheSerializer}
+   * @since 3.4.7
+   */
+  public void setSerializer(String serializer) {
+    this.serializer = CacheSerializers.forName(serializer);
+    setCompression(compression);
+  }
+
+  /**
+   * @since 3.4.7
+   */
+  public void setCompression(boolean compression) {
+    this.compression = compression;
+    this.codec = compression ? new CompressingSerializer(serializer) : serializer;
   }
 
   @Override
@@ -53,7 +90,7 @@ public class SerializedCache implements Cache {
   @Override
   public void putObject(Object key, Object object) {
     if (object == null || object instanceof Serializable) {
-      delegate.putObject(key, serialize((Serializable) object));
+      delegate.putObject(key, codec.serialize(object));
     } else {
       throw new CacheException("SharedCache failed to make a copy of a non-serializable object: " + object);
     }
@@ -62,7 +99,7 @@ public class SerializedCache implements Cache {
   @Override
   public Object getObject(Object key) {
     Object object = delegate.getObject(key);
-    return object == null ? null : deserialize((byte[]) object);
+    return object == null ? null : codec.deserialize((byte[]) object);
   }
 
   @Override
@@ -90,32 +127,6 @@ public class SerializedCache implements Cache {
     return delegate.equals(obj);
   }
 
-  private byte[] serialize(Serializable value) {
-    try {
-      ByteArrayOutputStream bos = new ByteArrayOutputStream();
-      ObjectOutputStream oos = new ObjectOutputStream(bos);
-      oos.writeObject(value);
-      oos.flush();
-      oos.close();
-      return bos.toByteArray();
-    } catch (Exception e) {
-      throw new CacheException("Error serializing object.  Cause: " + e, e);
-    }
-  }
-
-  private Serializable deserialize(byte[] value) {
-    Serializable result;
-    try {
-      ByteArrayInputStream bis = new ByteArrayInputStream(value);
-      ObjectInputStream ois = new CustomObjectInputStream(bis);
-      result = (Serializable) ois.readObject();
-      ois.close();
-    } catch (Exception e) {
-      throw new CacheException("Error deserializing object.  Cause: " + e, e);
-    }
-    return result;
-  }
-
   public static class CustomObjectInputStream extends ObjectInputStream {
 
     public CustomObjectInputStream(InputStream in) throws IOException {
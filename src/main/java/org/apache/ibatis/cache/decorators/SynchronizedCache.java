@@ -18,11 +18,13 @@ package org.apache.ibatis.cache.decorators;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheStatistics;
+import org.apache.ibatis.cache.CacheStatisticsProvider;
 
 /**
  * @author Clinton Begin
  */
-public class SynchronizedCache implements Cache {
+public class SynchronizedCache implements Cache, CacheStatisticsProvider {
 
   private final Cache delegate;
   
@@ -70,6 +72,11 @@ public class SynchronizedCache implements Cache {
     return delegate.equals(obj);
   }
 
+  @Override
+  public CacheStatistics getStatistics() {
+    return CacheStatistics.of(delegate);
+  }
+
   @Override
   public ReadWriteLock getReadWriteLock() {
     return null;
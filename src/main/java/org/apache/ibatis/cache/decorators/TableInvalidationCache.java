@@ -0,0 +1,361 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheStatistics;
+import org.apache.ibatis.cache.CacheStatisticsProvider;
+
+/**
+ * Invalidates the cached entries that read the tables a statement writes, instead of clearing the
+ * whole cache.
+ * <p>
+ * Every table has a version, bumped when a statement writing it commits. The entries are stored with
+ * the versions of the tables they read, taken before running their query, and are treated as missing
+ * once one of those versions has changed; they are then replaced or evicted as usual. Entries put
+ * without knowing their tables depend on every table, and writes whose tables are unknown clear the
+ * whole cache.
+ * <p>
+ * The tables are declared on the statements, or found in their SQL by {@link #tablesOf(String)}. The
+ * statements reading views, functions or procedures must declare the tables behind them, or their
+ * entries are not invalidated by the writes to those tables and are served stale.
+ *
+ * @since 3.4.7
+ */
+public class TableInvalidationCache implements Cache, CacheStatisticsProvider {
+
+  private static final Set<String> TABLE_KEYWORDS = new HashSet<String>(Arrays.asList(
+      "from", "join", "into", "update", "using", "table"));
+  private static final Set<String> RESERVED_WORDS = new HashSet<String>(Arrays.asList(
+      "as", "on", "where", "set", "values", "select", "join", "inner", "left", "right", "full", "outer", "cross",
+      "natural", "straight_join", "group", "order", "having", "limit", "offset", "fetch", "union", "intersect",
+      "except", "minus", "with", "for", "of", "nowait", "skip", "lateral", "returning", "window", "default",
+      "only", "ignore", "low_priority", "high_priority", "delayed", "quick", "use", "force", "partition",
+      "if", "exists", "not", "cascade", "restrict", "when", "then", "and", "or"));
+
+  private final Cache delegate;
+  private final ConcurrentHashMap<String, AtomicLong> versions = new ConcurrentHashMap<String, AtomicLong>();
+  // bumped by every write, entries whose tables are unknown depend on it
+  private final AtomicLong writes = new AtomicLong();
+  // bumped by the writes whose tables are unknown
+  private final AtomicLong clears = new AtomicLong();
+
+  public TableInvalidationCache(Cache delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  /*
+   * The entry depends on every table.
+   */
+  @Override
+  public void putObject(Object key, Object value) {
+    putObject(key, value, dependencies(null));
+  }
+
+  /**
+   * Puts an entry that read the tables of the dependencies, taken before it was queried.
+   */
+  public void putObject(Object key, Object value, Dependencies dependencies) {
+    delegate.putObject(key, value == null ? null : new Entry(value, dependencies));
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Entry entry = (Entry) delegate.getObject(key);
+    return entry == null || !isCurrent(entry.dependencies) ? null : entry.value;
+  }
+
+  /**
+   * Gets an entry unless it read one of the excluded tables, which the caller is writing.
+   */
+  public Object getObject(Object key, Collection<String> excludedTables) {
+    Entry entry = (Entry) delegate.getObject(key);
+    if (entry == null || !isCurrent(entry.dependencies)) {
+      return null;
+    }
+    if (!excludedTables.isEmpty()) {
+      if (entry.dependencies.tables == null) {
+        return null;
+      }
+      for (String table : entry.dependencies.tables) {
+        if (excludedTables.contains(table)) {
+          return null;
+        }
+      }
+    }
+    return entry.value;
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    return delegate.removeObject(key);
+  }
+
+  @Override
+  public void clear() {
+    clears.incrementAndGet();
+    writes.incrementAndGet();
+    delegate.clear();
+  }
+
+  /**
+   * Invalidates the entries that read any of the tables, or all of them when the tables are not known.
+   */
+  public void invalidate(Collection<String> tables) {
+    if (tables == null) {
+      clear();
+      return;
+    }
+    for (String table : tables) {
+      AtomicLong version = versions.get(table);
+      if (version == null) {
+        AtomicLong newVersion = new AtomicLong();
+        version = versions.putIfAbsent(table, newVersion);
+        if (version == null) {
+          version = newVersion;
+        }
+      }
+      version.incrementAndGet();
+    }
+    writes.incrementAndGet();
+  }
+
+  /**
+   * The current versions of the tables, or of the whole cache when the tables are not known.
+   * To be taken before querying the entry that will be put with them.
+   */
+  public Dependencies dependencies(String[] tables) {
+    if (tables == null) {
+      return new Dependencies(null, null, writes.get());
+    }
+    long epoch = clears.get();
+    long[] tableVersions = new long[tables.length];
+    for (int i = 0; i < tables.length; i++) {
+      tableVersions[i] = versionOf(tables[i]);
+    }
+    return new Dependencies(tables, tableVersions, epoch);
+  }
+
+  @Override
+  public CacheStatistics getStatistics() {
+    return CacheStatistics.of(delegate);
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  @Override
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+  private boolean isCurrent(Dependencies dependencies) {
+    if (dependencies.tables == null) {
+      return dependencies.epoch == writes.get();
+    }
+    if (dependencies.epoch != clears.get()) {
+      return false;
+    }
+    for (int i = 0; i < dependencies.tables.length; i++) {
+      if (dependencies.versions[i] != versionOf(dependencies.tables[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private long versionOf(String table) {
+    AtomicLong version = versions.get(table);
+    return version == null ? 0 : version.get();
+  }
+
+  /**
+   * Finds the tables a SQL statement reads or writes: the names following FROM, JOIN, INTO, UPDATE and
+   * USING, in lower case and without their schema. The names of views, common table expressions or table
+   * functions are returned as they are: the tables they read are not, and neither are the tables read by
+   * functions called in the statement or written by triggers. A query reading them through a view is thus
+   * not invalidated by the writes to those tables; such statements must declare their tables.
+   *
+   * @return the table names or null when none could be found, for example in a procedure call
+   */
+  public static String[] tablesOf(String sql) {
+    List<String> tokens = tokenize(sql);
+    Set<String> tables = new LinkedHashSet<String>();
+    for (int i = 0; i < tokens.size(); i++) {
+      String keyword = tokens.get(i);
+      if (!TABLE_KEYWORDS.contains(keyword)) {
+        continue;
+      }
+      int j = i + 1;
+      while (j < tokens.size() && isName(tokens.get(j))) {
+        tables.add(unqualified(tokens.get(j++)));
+        // alias
+        if (j < tokens.size() && "as".equals(tokens.get(j))) {
+          j++;
+        }
+        if (j < tokens.size() && isName(tokens.get(j))) {
+          j++;
+        }
+        if ("from".equals(keyword) && j < tokens.size() && ",".equals(tokens.get(j))) {
+          j++;
+        } else {
+          break;
+        }
+      }
+    }
+    return tables.isEmpty() ? null : tables.toArray(new String[tables.size()]);
+  }
+
+  private static boolean isName(String token) {
+    char first = token.charAt(0);
+    return (Character.isLetter(first) || first == '_' || first == '"')
+        && !RESERVED_WORDS.contains(token) && !TABLE_KEYWORDS.contains(token);
+  }
+
+  private static String unqualified(String name) {
+    String table = name.substring(name.lastIndexOf('.') + 1);
+    return table.startsWith("\"") ? table.substring(1, table.length() - 1) : table;
+  }
+
+  /*
+   * Lower case words, with their schema and with quoted identifiers as "name", and punctuation.
+   * String literals and comments are skipped.
+   */
+  private static List<String> tokenize(String sql) {
+    List<String> tokens = new ArrayList<String>();
+    String lowerCaseSql = sql.toLowerCase(Locale.ENGLISH);
+    int length = sql.length();
+    int i = 0;
+    while (i < length) {
+      char c = lowerCaseSql.charAt(i);
+      if (c == '\'') {
+        i = lowerCaseSql.indexOf('\'', i + 1);
+        i = i < 0 ? length : i + 1;
+      } else if (c == '-' && lowerCaseSql.startsWith("--", i)) {
+        i = lowerCaseSql.indexOf('\n', i);
+        i = i < 0 ? length : i + 1;
+      } else if (c == '/' && lowerCaseSql.startsWith("/*", i)) {
+        i = lowerCaseSql.indexOf("*/", i + 2);
+        i = i < 0 ? length : i + 2;
+      } else if (isIdentifierPart(c) || isQuote(c)) {
+        StringBuilder name = new StringBuilder();
+        while (i < length) {
+          c = lowerCaseSql.charAt(i);
+          if (isQuote(c)) {
+            int end = lowerCaseSql.indexOf(closingQuote(c), i + 1);
+            end = end < 0 ? length : end;
+            name.append('"').append(lowerCaseSql, i + 1, end).append('"');
+            i = end + 1;
+          } else if (isIdentifierPart(c) || c == '.') {
+            name.append(c);
+            i++;
+          } else {
+            break;
+          }
+        }
+        tokens.add(name.toString());
+      } else {
+        if (!Character.isWhitespace(c)) {
+          tokens.add(String.valueOf(c));
+        }
+        i++;
+      }
+    }
+    return tokens;
+  }
+
+  private static boolean isIdentifierPart(char c) {
+    return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '#';
+  }
+
+  private static boolean isQuote(char c) {
+    return c == '"' || c == '`' || c == '[';
+  }
+
+  private static char closingQuote(char c) {
+    return c == '[' ? ']' : c;
+  }
+
+  /**
+   * The versions of the tables read by an entry when it was queried.
+   */
+  public static final class Dependencies implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String[] tables;
+    private long[] versions;
+    private long epoch;
+
+    private Dependencies() {
+      // for copies
+    }
+
+    Dependencies(String[] tables, long[] versions, long epoch) {
+      this.tables = tables;
+      this.versions = versions;
+      this.epoch = epoch;
+    }
+  }
+
+  private static final class Entry implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Object value;
+    private Dependencies dependencies;
+
+    private Entry() {
+      // for copies
+    }
+
+    Entry(Object value, Dependencies dependencies) {
+      this.value = value;
+      this.dependencies = dependencies;
+    }
+  }
+
+}
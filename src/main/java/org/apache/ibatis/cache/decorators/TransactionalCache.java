@@ -15,6 +15,7 @@
  */
 package org.apache.ibatis.cache.decorators;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -22,6 +23,7 @@ import java.util.Set;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.decorators.TableInvalidationCache.Dependencies;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 
@@ -32,6 +34,8 @@ import org.apache.ibatis.logging.LogFactory;
  * Entries are sent to the cache when commit is called or discarded if the Session is rolled back. 
  * Blocking cache support has been added. Therefore any get() that returns a cache miss 
  * will be followed by a put() so any lock associated with the key can be released. 
+ * When the cache is a {@link TableInvalidationCache}, writes invalidate the tables they touch on commit
+ * instead of clearing the cache.
  * 
  * @author Clinton Begin
  * @author Eduardo Macarron
@@ -41,15 +45,21 @@ public class TransactionalCache implements Cache {
   private static final Log log = LogFactory.getLog(TransactionalCache.class);
 
   private final Cache delegate;
+  private final TableInvalidationCache tableCache;
   private boolean clearOnCommit;
   private final Map<Object, Object> entriesToAddOnCommit;
+  private final Map<Object, Dependencies> dependenciesToAddOnCommit;
   private final Set<Object> entriesMissedInCache;
+  private final Set<String> tablesToInvalidateOnCommit;
 
   public TransactionalCache(Cache delegate) {
     this.delegate = delegate;
+    this.tableCache = delegate instanceof TableInvalidationCache ? (TableInvalidationCache) delegate : null;
     this.clearOnCommit = false;
     this.entriesToAddOnCommit = new HashMap<Object, Object>();
+    this.dependenciesToAddOnCommit = new HashMap<Object, Dependencies>();
     this.entriesMissedInCache = new HashSet<Object>();
+    this.tablesToInvalidateOnCommit = new HashSet<String>();
   }
 
   @Override
@@ -65,7 +75,8 @@ public class TransactionalCache implements Cache {
   @Override
   public Object getObject(Object key) {
     // issue #116
-    Object object = delegate.getObject(key);
+    Object object = tablesToInvalidateOnCommit.isEmpty()
+        ? delegate.getObject(key) : tableCache.getObject(key, tablesToInvalidateOnCommit);
     if (object == null) {
       entriesMissedInCache.add(key);
     }
@@ -87,6 +98,16 @@ public class TransactionalCache implements Cache {
     entriesToAddOnCommit.put(key, object);
   }
 
+  /**
+   * @since 3.4.7
+   */
+  public void putObject(Object key, Object object, Dependencies dependencies) {
+    entriesToAddOnCommit.put(key, object);
+    if (dependencies != null) {
+      dependenciesToAddOnCommit.put(key, dependencies);
+    }
+  }
+
   @Override
   public Object removeObject(Object key) {
     return null;
@@ -96,11 +117,27 @@ public class TransactionalCache implements Cache {
   public void clear() {
     clearOnCommit = true;
     entriesToAddOnCommit.clear();
+    dependenciesToAddOnCommit.clear();
+  }
+
+  /**
+   * Invalidates the tables on commit, or clears the cache when they are not known or the cache
+   * does not track tables.
+   * @since 3.4.7
+   */
+  public void invalidate(String[] tables) {
+    if (tableCache == null || tables == null) {
+      clear();
+    } else if (!clearOnCommit) {
+      tablesToInvalidateOnCommit.addAll(Arrays.asList(tables));
+    }
   }
 
   public void commit() {
     if (clearOnCommit) {
       delegate.clear();
+    } else if (!tablesToInvalidateOnCommit.isEmpty()) {
+      tableCache.invalidate(tablesToInvalidateOnCommit);
     }
     flushPendingEntries();
     reset();
@@ -114,12 +151,19 @@ public class TransactionalCache implements Cache {
   private void reset() {
     clearOnCommit = false;
     entriesToAddOnCommit.clear();
+    dependenciesToAddOnCommit.clear();
     entriesMissedInCache.clear();
+    tablesToInvalidateOnCommit.clear();
   }
 
   private void flushPendingEntries() {
     for (Map.Entry<Object, Object> entry : entriesToAddOnCommit.entrySet()) {
-      delegate.putObject(entry.getKey(), entry.getValue());
+      Dependencies dependencies = dependenciesToAddOnCommit.get(entry.getKey());
+      if (dependencies != null) {
+        tableCache.putObject(entry.getKey(), entry.getValue(), dependencies);
+      } else {
+        delegate.putObject(entry.getKey(), entry.getValue());
+      }
     }
     for (Object entry : entriesMissedInCache) {
       if (!entriesToAddOnCommit.containsKey(entry)) {
@@ -0,0 +1,122 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+/**
+ * Count-min sketch estimating how often keys were seen recently, used as the admission filter of
+ * {@link TinyLfuCache}.
+ * <p>
+ * Each key owns four 4-bit counters picked from a table of longs. When the number of increments
+ * reaches ten times the cache capacity every counter is halved, so that old popularity fades away.
+ * Not thread safe, callers must hold the eviction lock.
+ */
+class FrequencySketch {
+
+  private static final long[] SEEDS = {
+      0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+  private static final long RESET_MASK = 0x7777777777777777L;
+  private static final long ONE_MASK = 0x1111111111111111L;
+
+  private long[] table;
+  private int tableMask;
+  private int sampleSize;
+  private int additions;
+
+  FrequencySketch(int maximumSize) {
+    ensureCapacity(maximumSize);
+  }
+
+  /*
+   * Resizes the table to fit the given cache capacity, forgetting every recorded frequency if it changes.
+   */
+  void ensureCapacity(int maximumSize) {
+    int length = ceilingPowerOfTwo(Math.max(maximumSize, 16));
+    if (table != null && table.length == length) {
+      return;
+    }
+    table = new long[length];
+    tableMask = length - 1;
+    sampleSize = (int) Math.min(10L * Math.max(maximumSize, 16), Integer.MAX_VALUE);
+    additions = 0;
+  }
+
+  int frequency(Object key) {
+    int hash = spread(key.hashCode());
+    int start = (hash & 3) << 2;
+    int frequency = Integer.MAX_VALUE;
+    for (int i = 0; i < 4; i++) {
+      int index = indexOf(hash, i);
+      int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+      frequency = Math.min(frequency, count);
+    }
+    return frequency;
+  }
+
+  void increment(Object key) {
+    int hash = spread(key.hashCode());
+    int start = (hash & 3) << 2;
+    boolean added = false;
+    for (int i = 0; i < 4; i++) {
+      added |= incrementAt(indexOf(hash, i), start + i);
+    }
+    if (added && ++additions == sampleSize) {
+      reset();
+    }
+  }
+
+  void clear() {
+    for (int i = 0; i < table.length; i++) {
+      table[i] = 0L;
+    }
+    additions = 0;
+  }
+
+  private boolean incrementAt(int index, int counter) {
+    int offset = counter << 2;
+    long mask = 0xfL << offset;
+    if ((table[index] & mask) != mask) {
+      table[index] += 1L << offset;
+      return true;
+    }
+    return false;
+  }
+
+  private void reset() {
+    int odd = 0;
+    for (int i = 0; i < table.length; i++) {
+      odd += Long.bitCount(table[i] & ONE_MASK);
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+    additions = (additions >>> 1) - (odd >>> 2);
+  }
+
+  private int indexOf(int hash, int depth) {
+    long h = (hash + SEEDS[depth]) * SEEDS[depth];
+    h += h >>> 32;
+    return ((int) h) & tableMask;
+  }
+
+  private static int spread(int x) {
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    return (x >>> 16) ^ x;
+  }
+
+  private static int ceilingPowerOfTwo(int x) {
+    return x >= (1 << 30) ? 1 << 30 : 1 << (32 - Integer.numberOfLeadingZeros(x - 1));
+  }
+
+}
@@ -0,0 +1,630 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheStatistics;
+import org.apache.ibatis.cache.decorators.ExpiringCache;
+import org.apache.ibatis.cache.serializer.BinarySerializer;
+import org.apache.ibatis.cache.serializer.CacheSerializer;
+import org.apache.ibatis.cache.serializer.CacheSerializers;
+import org.apache.ibatis.cache.serializer.CompressingSerializer;
+
+/**
+ * Cache storing its values serialized outside of the Java heap, so that large caches do not slow
+ * down garbage collection.
+ * <p>
+ * The memory is allocated in slabs of {@code slabSize} bytes, direct buffers or regions of a memory
+ * mapped {@code file}, up to {@code maxBytes}. Like memcached, each slab is cut into chunks of one size
+ * class, the values being stored in the smallest chunks they fit in. When a size class is full and all
+ * the slabs are in use, its least recently used entry is evicted, unless another size class has an older
+ * one: the slab of that entry is then emptied and given to the full size class. Values larger than a
+ * slab are not cached. Only the keys and an index of the chunks
+ * stay on the heap.
+ * <p>
+ * Values are serialized with the {@link BinarySerializer} unless the {@code serializer} property names
+ * another one, and can be compressed by setting {@code compression} to true. Every read returns a new
+ * copy, so the cache is never wrapped in a {@code SerializedCache}; it is thread safe on its own. Null
+ * values are not stored.
+ * <p>
+ * Entries expire on their own after {@code timeToLive} milliseconds, with the jitter and refresh ahead of
+ * {@link ExpiringCache}. Their expiration is kept on the heap next to their index, as the cache is not
+ * wrapped in an {@code ExpiringCache}: the entries it puts would be serialized with the values.
+ * <p>
+ * A {@code file} is opened, locked and emptied when the first entry is put, and grows up to {@code maxBytes}.
+ * Only one cache may use a file at a time, in this JVM or another: the others fail to open it. It stays
+ * locked until the cache is {@linkplain #close() closed} or the JVM exits, and is never deleted.
+ *
+ * @since 3.4.7
+ */
+public class OffHeapCache implements Cache, Closeable {
+
+  private static final int MIN_CHUNK_SIZE = 64;
+  private static final double GROWTH_FACTOR = 1.25;
+
+  private final String id;
+  private final ReentrantLock lock = new ReentrantLock();
+  private CacheSerializer serializer = new BinarySerializer();
+  private boolean compression;
+  private CacheSerializer codec = serializer;
+  private long maxBytes = 64L * 1024 * 1024;
+  private int slabSize = 1024 * 1024;
+  private String file;
+  private CacheStatistics statistics;
+  private long timeToLive;
+  private double timeToLiveJitter;
+  private boolean refreshAhead;
+
+  // guarded by lock
+  private final Map<Object, Slot> index = new HashMap<Object, Slot>();
+  private final List<ByteBuffer> slabs = new ArrayList<ByteBuffer>();
+  private final List<SizeClass> slabOwners = new ArrayList<SizeClass>();
+  private final List<Slot[]> slabSlots = new ArrayList<Slot[]>();
+  private final List<Integer> freeSlabs = new ArrayList<Integer>();
+  private SizeClass[] sizeClasses;
+  private int maxSlabs;
+  private FileChannel channel;
+  private long clock;
+
+  public OffHeapCache(String id) {
+    this.id = id;
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  public void setMaxBytes(long maxBytes) {
+    checkNotStarted();
+    this.maxBytes = maxBytes;
+  }
+
+  public void setSlabSize(int slabSize) {
+    checkNotStarted();
+    if (slabSize < MIN_CHUNK_SIZE) {
+      throw new CacheException("The slab size of cache '" + id + "' must be at least " + MIN_CHUNK_SIZE + " bytes.");
+    }
+    this.slabSize = slabSize;
+  }
+
+  /**
+   * @param file path of a file to map the slabs to, instead of direct buffers
+   */
+  public void setFile(String file) {
+    checkNotStarted();
+    this.file = file;
+  }
+
+  /**
+   * @param serializer {@code java}, {@code binary} or the name of a class implementing {@link CacheSerializer}
+   */
+  public void setSerializer(String serializer) {
+    this.serializer = CacheSerializers.forName(serializer);
+    setCompression(compression);
+  }
+
+  public void setCompression(boolean compression) {
+    this.compression = compression;
+    this.codec = compression ? new CompressingSerializer(serializer) : serializer;
+  }
+
+  /**
+   * @param timeToLive the milliseconds the entries live, or 0 to keep them until evicted
+   */
+  public void setTimeToLive(long timeToLive) {
+    this.timeToLive = timeToLive;
+  }
+
+  /**
+   * @param timeToLiveJitter the fraction (between 0 and 1) of the time to live that may be randomly cut off
+   */
+  public void setTimeToLiveJitter(double timeToLiveJitter) {
+    this.timeToLiveJitter = Math.min(Math.max(timeToLiveJitter, 0), 1);
+  }
+
+  public void setRefreshAhead(boolean refreshAhead) {
+    this.refreshAhead = refreshAhead;
+  }
+
+  /**
+   * @param statistics the statistics the evicted entries are reported to
+   * @since 3.4.7
+   */
+  public void setStatistics(CacheStatistics statistics) {
+    this.statistics = statistics;
+  }
+
+  @Override
+  public int getSize() {
+    lock.lock();
+    try {
+      return index.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    if (value == null) {
+      removeObject(key);
+      return;
+    }
+    byte[] data = codec.serialize(value);
+    long expiresAt = Long.MAX_VALUE;
+    long refreshAt = Long.MAX_VALUE;
+    if (timeToLive > 0) {
+      long now = System.currentTimeMillis();
+      long ttl = ExpiringCache.timeToLiveOf(key, now, timeToLive, timeToLiveJitter);
+      expiresAt = now + ttl;
+      refreshAt = refreshAhead ? ExpiringCache.refreshTimeOf(now, ttl) : Long.MAX_VALUE;
+    }
+    lock.lock();
+    try {
+      start();
+      Slot previous = index.remove(key);
+      if (previous != null) {
+        free(previous);
+      }
+      SizeClass sizeClass = sizeClassFor(data.length);
+      if (sizeClass == null) {
+        // larger than a slab
+        return;
+      }
+      long chunk = allocate(sizeClass);
+      if (chunk < 0) {
+        return;
+      }
+      Slot slot = new Slot(key, (int) (chunk >>> 32), (int) chunk, data.length, sizeClass);
+      slot.lastAccess = ++clock;
+      slot.expiresAt = expiresAt;
+      slot.refreshAt = refreshAt;
+      ByteBuffer slab = slabs.get(slot.slab);
+      slab.position(slot.offset);
+      slab.put(data);
+      slabSlots.get(slot.slab)[slot.offset / sizeClass.chunkSize] = slot;
+      sizeClass.addFirst(slot);
+      index.put(key, slot);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    byte[] data;
+    lock.lock();
+    try {
+      Slot slot = index.get(key);
+      if (slot == null) {
+        return null;
+      }
+      if (slot.expiresAt != Long.MAX_VALUE) {
+        long now = System.currentTimeMillis();
+        if (now >= slot.expiresAt) {
+          index.remove(key);
+          free(slot);
+          return null;
+        }
+        if (now >= slot.refreshAt) {
+          // only one reader is asked to refresh the entry
+          slot.refreshAt = Long.MAX_VALUE;
+          ExpiringCache.requestRefresh(key);
+        }
+      }
+      slot.lastAccess = ++clock;
+      slot.sizeClass.unlink(slot);
+      slot.sizeClass.addFirst(slot);
+      data = new byte[slot.length];
+      ByteBuffer slab = slabs.get(slot.slab);
+      slab.position(slot.offset);
+      slab.get(data);
+    } finally {
+      lock.unlock();
+    }
+    return codec.deserialize(data);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    lock.lock();
+    try {
+      Slot slot = index.remove(key);
+      if (slot != null) {
+        free(slot);
+      }
+      return null;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void clear() {
+    lock.lock();
+    try {
+      index.clear();
+      if (sizeClasses == null) {
+        return;
+      }
+      for (SizeClass sizeClass : sizeClasses) {
+        sizeClass.reset();
+      }
+      freeSlabs.clear();
+      for (int i = 0; i < slabs.size(); i++) {
+        slabOwners.set(i, null);
+        slabSlots.set(i, null);
+        freeSlabs.add(i);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Frees the slabs and releases the file, if any. The cache can still be used afterwards: it then
+   * allocates new slabs and opens the file again.
+   */
+  @Override
+  public void close() {
+    lock.lock();
+    try {
+      clear();
+      slabs.clear();
+      slabOwners.clear();
+      slabSlots.clear();
+      freeSlabs.clear();
+      sizeClasses = null;
+      if (channel != null) {
+        try {
+          // releases the lock, the mapped slabs are unmapped once collected
+          channel.close();
+        } catch (IOException e) {
+          // ignore
+        }
+        channel = null;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Cache)) {
+      return false;
+    }
+    Cache otherCache = (Cache) o;
+    return getId().equals(otherCache.getId());
+  }
+
+  @Override
+  public int hashCode() {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    return getId().hashCode();
+  }
+
+  private void checkNotStarted() {
+    if (sizeClasses != null) {
+      throw new CacheException("The off heap cache '" + id + "' cannot be configured once in use.");
+    }
+  }
+
+  /*
+   * The slabs are only configured when the first entry is put, after the properties are set.
+   */
+  private void start() {
+    if (sizeClasses != null) {
+      return;
+    }
+    if (file != null) {
+      channel = openFile();
+    }
+    maxSlabs = (int) Math.min(Integer.MAX_VALUE, Math.max(1, maxBytes / slabSize));
+    List<SizeClass> classes = new ArrayList<SizeClass>();
+    int chunkSize = MIN_CHUNK_SIZE;
+    while (chunkSize < slabSize / 2) {
+      classes.add(new SizeClass(chunkSize, slabSize / chunkSize));
+      chunkSize = (int) Math.ceil(chunkSize * GROWTH_FACTOR / 8) * 8;
+    }
+    classes.add(new SizeClass(slabSize, 1));
+    sizeClasses = classes.toArray(new SizeClass[classes.size()]);
+  }
+
+  private FileChannel openFile() {
+    FileChannel fileChannel = null;
+    boolean opened = false;
+    try {
+      fileChannel = new RandomAccessFile(file, "rw").getChannel();
+      FileLock fileLock;
+      try {
+        fileLock = fileChannel.tryLock();
+      } catch (OverlappingFileLockException e) {
+        // locked by another channel of this JVM
+        fileLock = null;
+      }
+      if (fileLock == null) {
+        throw new CacheException("The file '" + file + "' of the off heap cache '" + id
+            + "' is used by another cache.");
+      }
+      // the slabs of a previous cache are never read
+      fileChannel.truncate(0);
+      opened = true;
+      return fileChannel;
+    } catch (IOException e) {
+      throw new CacheException("Could not open the file of the off heap cache '" + id + "'.  Cause: " + e, e);
+    } finally {
+      if (!opened && fileChannel != null) {
+        try {
+          fileChannel.close();
+        } catch (IOException e) {
+          // ignore
+        }
+      }
+    }
+  }
+
+  private SizeClass sizeClassFor(int length) {
+    int low = 0;
+    int high = sizeClasses.length - 1;
+    if (length > sizeClasses[high].chunkSize) {
+      return null;
+    }
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (sizeClasses[middle].chunkSize < length) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return sizeClasses[low];
+  }
+
+  /*
+   * A free chunk of the size class, as the slab number in the high int and the offset in the low int,
+   * or -1 when none could be found.
+   */
+  private long allocate(SizeClass sizeClass) {
+    if (sizeClass.freeCount > 0) {
+      return sizeClass.pop();
+    }
+    int slab = newSlab();
+    if (slab < 0) {
+      SizeClass victim = victimOf(sizeClass);
+      if (sizeClass.tail != null
+          && (victim == null || victim.tail == null || sizeClass.tail.lastAccess < victim.tail.lastAccess)) {
+        Slot evicted = sizeClass.tail;
+        index.remove(evicted.key);
+        free(evicted);
+        recordEviction();
+        return sizeClass.pop();
+      }
+      if (victim == null) {
+        return -1;
+      }
+      slab = takeSlab(victim);
+    }
+    assign(slab, sizeClass);
+    return sizeClass.pop();
+  }
+
+  private int newSlab() {
+    if (!freeSlabs.isEmpty()) {
+      return freeSlabs.remove(freeSlabs.size() - 1);
+    }
+    if (slabs.size() >= maxSlabs) {
+      return -1;
+    }
+    ByteBuffer slab;
+    if (channel != null) {
+      try {
+        slab = channel.map(FileChannel.MapMode.READ_WRITE, (long) slabs.size() * slabSize, slabSize);
+      } catch (IOException e) {
+        throw new CacheException("Could not map the file of the off heap cache '" + id + "'.  Cause: " + e, e);
+      }
+    } else {
+      slab = ByteBuffer.allocateDirect(slabSize);
+    }
+    slabs.add(slab);
+    slabOwners.add(null);
+    slabSlots.add(null);
+    return slabs.size() - 1;
+  }
+
+  /*
+   * The other size class whose least recently used entry is the oldest, or one holding only free chunks.
+   */
+  private SizeClass victimOf(SizeClass sizeClass) {
+    SizeClass victim = null;
+    for (SizeClass candidate : sizeClasses) {
+      if (candidate == sizeClass || candidate.slabCount == 0) {
+        continue;
+      }
+      if (candidate.tail == null) {
+        return candidate;
+      }
+      if (victim == null || candidate.tail.lastAccess < victim.tail.lastAccess) {
+        victim = candidate;
+      }
+    }
+    return victim;
+  }
+
+  /*
+   * Evicts the entries of the slab holding the least recently used entry of the size class,
+   * to give it to another size class.
+   */
+  private int takeSlab(SizeClass victim) {
+    int slab = victim.tail != null ? victim.tail.slab : slabOwners.indexOf(victim);
+    for (Slot slot : slabSlots.get(slab)) {
+      if (slot != null) {
+        index.remove(slot.key);
+        victim.unlink(slot);
+        recordEviction();
+      }
+    }
+    victim.removeChunks(slab);
+    victim.slabCount--;
+    return slab;
+  }
+
+  private void recordEviction() {
+    if (statistics != null) {
+      statistics.recordEviction();
+    }
+  }
+
+  private void assign(int slab, SizeClass sizeClass) {
+    slabOwners.set(slab, sizeClass);
+    slabSlots.set(slab, new Slot[sizeClass.chunksPerSlab]);
+    sizeClass.slabCount++;
+    for (int i = sizeClass.chunksPerSlab - 1; i >= 0; i--) {
+      sizeClass.push(((long) slab << 32) | (i * sizeClass.chunkSize));
+    }
+  }
+
+  private void free(Slot slot) {
+    slot.sizeClass.unlink(slot);
+    slabSlots.get(slot.slab)[slot.offset / slot.sizeClass.chunkSize] = null;
+    slot.sizeClass.push(((long) slot.slab << 32) | slot.offset);
+  }
+
+  private static final class Slot {
+    private final Object key;
+    private final int slab;
+    private final int offset;
+    private final int length;
+    private final SizeClass sizeClass;
+    private long lastAccess;
+    private long expiresAt;
+    private long refreshAt;
+    private Slot previous;
+    private Slot next;
+
+    Slot(Object key, int slab, int offset, int length, SizeClass sizeClass) {
+      this.key = key;
+      this.slab = slab;
+      this.offset = offset;
+      this.length = length;
+      this.sizeClass = sizeClass;
+    }
+  }
+
+  /*
+   * The free chunks and the entries, most recently used first, of the slabs of a chunk size.
+   */
+  private static final class SizeClass {
+    private final int chunkSize;
+    private final int chunksPerSlab;
+    private long[] freeChunks = new long[16];
+    private int freeCount;
+    private int slabCount;
+    private Slot head;
+    private Slot tail;
+
+    SizeClass(int chunkSize, int chunksPerSlab) {
+      this.chunkSize = chunkSize;
+      this.chunksPerSlab = chunksPerSlab;
+    }
+
+    void push(long chunk) {
+      if (freeCount == freeChunks.length) {
+        long[] grown = new long[freeCount * 2];
+        System.arraycopy(freeChunks, 0, grown, 0, freeCount);
+        freeChunks = grown;
+      }
+      freeChunks[freeCount++] = chunk;
+    }
+
+    long pop() {
+      return freeChunks[--freeCount];
+    }
+
+    void removeChunks(int slab) {
+      int kept = 0;
+      for (int i = 0; i < freeCount; i++) {
+        if ((int) (freeChunks[i] >>> 32) != slab) {
+          freeChunks[kept++] = freeChunks[i];
+        }
+      }
+      freeCount = kept;
+    }
+
+    void addFirst(Slot slot) {
+      slot.previous = null;
+      slot.next = head;
+      if (head != null) {
+        head.previous = slot;
+      } else {
+        tail = slot;
+      }
+      head = slot;
+    }
+
+    void unlink(Slot slot) {
+      if (slot.previous != null) {
+        slot.previous.next = slot.next;
+      } else {
+        head = slot.next;
+      }
+      if (slot.next != null) {
+        slot.next.previous = slot.previous;
+      } else {
+        tail = slot.previous;
+      }
+      slot.previous = null;
+      slot.next = null;
+    }
+
+    void reset() {
+      freeCount = 0;
+      slabCount = 0;
+      head = null;
+      tail = null;
+    }
+  }
+
+}
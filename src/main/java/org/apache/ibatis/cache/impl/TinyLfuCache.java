@@ -0,0 +1,470 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheStatistics;
+import org.apache.ibatis.cache.ObjectSizeEstimator;
+
+/**
+ * Bounded cache safe for concurrent use, evicting with the W-TinyLFU policy.
+ * <p>
+ * Entries live in a {@link ConcurrentHashMap} so reads never block: a hit is only recorded in a
+ * small lossy per-thread buffer that is replayed later under the eviction lock. New entries go to a
+ * small LRU window (1% of the size); entries leaving it compete with the oldest entry of the main
+ * segmented LRU and the one a {@link FrequencySketch} reports as used less often is evicted. This
+ * keeps popular entries in the cache when a burst of one-off queries goes through it.
+ * <p>
+ * As the cache is thread safe it is not wrapped in a {@code SynchronizedCache} when selected with
+ * {@code <cache eviction="TINYLFU"/>}. Null values are not stored. When {@code maxBytes} is set the
+ * entries are weighed with {@link ObjectSizeEstimator} and the cache is bounded by their total weight.
+ */
+public class TinyLfuCache implements Cache {
+
+  private static final int NEW = 0;
+  private static final int WINDOW = 1;
+  private static final int PROBATION = 2;
+  private static final int PROTECTED = 3;
+  private static final int DEAD = 4;
+
+  private static final int READ_BUFFERS = readBuffers();
+
+  private final String id;
+  private final ConcurrentHashMap<Object, Node> data = new ConcurrentHashMap<Object, Node>();
+  private final ReadBuffer[] readBuffers = new ReadBuffer[READ_BUFFERS];
+  private final AtomicLong misses = new AtomicLong();
+  private final ReentrantLock evictionLock = new ReentrantLock();
+  private volatile long evictions;
+  private CacheStatistics statistics;
+
+  // guarded by evictionLock
+  private final Node window = new Node(null, null, 0);
+  private final Node probation = new Node(null, null, 0);
+  private final Node protectedSegment = new Node(null, null, 0);
+  private final FrequencySketch sketch;
+  private int maximumSize;
+  private long maxBytes;
+  private long maximum;
+  private long windowMaximum;
+  private long protectedMaximum;
+  private long weightedSize;
+  private long windowSize;
+  private long protectedSize;
+
+  public TinyLfuCache(String id) {
+    this.id = id;
+    for (int i = 0; i < READ_BUFFERS; i++) {
+      readBuffers[i] = new ReadBuffer();
+    }
+    this.sketch = new FrequencySketch(1024);
+    setSize(1024);
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  @Override
+  public int getSize() {
+    return data.size();
+  }
+
+  public void setSize(int size) {
+    if (size < 1) {
+      throw new CacheException("The size of cache '" + id + "' must be positive but was " + size);
+    }
+    evictionLock.lock();
+    try {
+      maximumSize = size;
+      sketch.ensureCapacity(size);
+      resize();
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  /**
+   * Bounds the cache by the estimated heap size of its values instead of their number.
+   *
+   * @param maxBytes the budget in bytes, the size limit is ignored when it is positive
+   * @since 3.4.7
+   */
+  public void setMaxBytes(long maxBytes) {
+    evictionLock.lock();
+    try {
+      this.maxBytes = maxBytes;
+      resize();
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  /**
+   * @param statistics the statistics the evicted entries are reported to
+   * @since 3.4.7
+   */
+  public void setStatistics(CacheStatistics statistics) {
+    this.statistics = statistics;
+  }
+
+  private void resize() {
+    maximum = maxBytes > 0 ? maxBytes : maximumSize;
+    windowMaximum = Math.max(1, maximum / 100);
+    protectedMaximum = (long) ((maximum - windowMaximum) * 0.8);
+    while (protectedSize > protectedMaximum) {
+      demoteProtected();
+    }
+    evict();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    if (value == null) {
+      removeObject(key);
+      return;
+    }
+    Node node = new Node(key, value, maxBytes > 0 ? ObjectSizeEstimator.estimate(value) : 1);
+    Node prior = data.put(key, node);
+    evictionLock.lock();
+    try {
+      if (prior != null) {
+        unlink(prior);
+      }
+      // a concurrent remove or clear may already have dropped it from the map
+      if (data.get(key) == node) {
+        sketch.increment(key);
+        node.queue = WINDOW;
+        linkLast(window, node);
+        windowSize += node.weight;
+        weightedSize += node.weight;
+        evict();
+      }
+      drainReadBuffers();
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Node node = data.get(key);
+    if (node == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+    ReadBuffer buffer = readBuffers[bufferOf(Thread.currentThread())];
+    buffer.hits.incrementAndGet();
+    if (buffer.offer(node) && evictionLock.tryLock()) {
+      try {
+        drainReadBuffers();
+      } finally {
+        evictionLock.unlock();
+      }
+    }
+    return node.value;
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    Node node = data.remove(key);
+    if (node == null) {
+      return null;
+    }
+    evictionLock.lock();
+    try {
+      unlink(node);
+    } finally {
+      evictionLock.unlock();
+    }
+    return node.value;
+  }
+
+  @Override
+  public void clear() {
+    evictionLock.lock();
+    try {
+      data.clear();
+      for (Node head : new Node[] { window, probation, protectedSegment }) {
+        for (Node node = head.next; node != head; node = node.next) {
+          node.queue = DEAD;
+        }
+        head.prev = head;
+        head.next = head;
+      }
+      weightedSize = 0;
+      windowSize = 0;
+      protectedSize = 0;
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  public long getHitCount() {
+    long hits = 0;
+    for (ReadBuffer buffer : readBuffers) {
+      hits += buffer.hits.get();
+    }
+    return hits;
+  }
+
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  public long getEvictionCount() {
+    return evictions;
+  }
+
+  public double getHitRatio() {
+    long hits = getHitCount();
+    long requests = hits + getMissCount();
+    return requests == 0 ? 0 : (double) hits / requests;
+  }
+
+  private void drainReadBuffers() {
+    for (ReadBuffer buffer : readBuffers) {
+      long reads = buffer.reads;
+      long writes = buffer.writes.get();
+      for (; reads < writes; reads++) {
+        int index = (int) reads & ReadBuffer.MASK;
+        Node node = buffer.slots.get(index);
+        if (node == null) {
+          // the writer has not published it yet
+          break;
+        }
+        buffer.slots.lazySet(index, null);
+        onAccess(node);
+      }
+      buffer.reads = reads;
+    }
+  }
+
+  private void onAccess(Node node) {
+    switch (node.queue) {
+      case WINDOW:
+        sketch.increment(node.key);
+        unlinkFromQueue(node);
+        linkLast(window, node);
+        break;
+      case PROBATION:
+        sketch.increment(node.key);
+        unlinkFromQueue(node);
+        node.queue = PROTECTED;
+        linkLast(protectedSegment, node);
+        protectedSize += node.weight;
+        while (protectedSize > protectedMaximum) {
+          demoteProtected();
+        }
+        break;
+      case PROTECTED:
+        sketch.increment(node.key);
+        unlinkFromQueue(node);
+        linkLast(protectedSegment, node);
+        break;
+      default:
+        // removed or not linked yet
+    }
+  }
+
+  private void demoteProtected() {
+    Node node = protectedSegment.next;
+    unlinkFromQueue(node);
+    protectedSize -= node.weight;
+    node.queue = PROBATION;
+    linkLast(probation, node);
+  }
+
+  /*
+   * Moves the entries overflowing the window to the probation segment, then evicts until the cache fits
+   * its maximum size. Each entry coming from the window is only kept if it is used more often than the
+   * eldest entry of the main segments.
+   */
+  private void evict() {
+    Node candidate = null;
+    while (windowSize > windowMaximum) {
+      Node node = window.next;
+      unlinkFromQueue(node);
+      windowSize -= node.weight;
+      node.queue = PROBATION;
+      linkLast(probation, node);
+      if (candidate == null) {
+        candidate = node;
+      }
+    }
+    while (weightedSize > maximum) {
+      Node victim = probation.next;
+      if (victim == probation || victim == candidate) {
+        victim = protectedSegment.next != protectedSegment ? protectedSegment.next : null;
+      }
+      if (candidate == null) {
+        evict(victim != null ? victim : window.next);
+      } else {
+        Node next = candidate.next != probation ? candidate.next : null;
+        if (victim != null && sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+          evict(victim);
+          if (victim == next) {
+            next = null;
+          }
+        } else {
+          evict(candidate);
+        }
+        candidate = next;
+      }
+    }
+  }
+
+  private void evict(Node node) {
+    unlink(node);
+    data.remove(node.key, node);
+    evictions++;
+    if (statistics != null) {
+      statistics.recordEviction();
+    }
+  }
+
+  private void unlink(Node node) {
+    switch (node.queue) {
+      case WINDOW:
+        windowSize -= node.weight;
+        break;
+      case PROTECTED:
+        protectedSize -= node.weight;
+        break;
+      case PROBATION:
+        break;
+      default:
+        node.queue = DEAD;
+        return;
+    }
+    unlinkFromQueue(node);
+    node.queue = DEAD;
+    weightedSize -= node.weight;
+  }
+
+  private static void linkLast(Node head, Node node) {
+    node.prev = head.prev;
+    node.next = head;
+    head.prev.next = node;
+    head.prev = node;
+  }
+
+  private static void unlinkFromQueue(Node node) {
+    node.prev.next = node.next;
+    node.next.prev = node.prev;
+    node.prev = null;
+    node.next = null;
+  }
+
+  private static int bufferOf(Thread thread) {
+    long id = thread.getId();
+    int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+    return (hash >>> 16) & (READ_BUFFERS - 1);
+  }
+
+  private static int readBuffers() {
+    int wanted = Math.min(64, Runtime.getRuntime().availableProcessors() * 2);
+    int buffers = 1;
+    while (buffers < wanted) {
+      buffers <<= 1;
+    }
+    return buffers;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Cache)) {
+      return false;
+    }
+
+    Cache otherCache = (Cache) o;
+    return getId().equals(otherCache.getId());
+  }
+
+  @Override
+  public int hashCode() {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    return getId().hashCode();
+  }
+
+  private static final class Node {
+    final Object key;
+    final Object value;
+    final long weight;
+    // guarded by evictionLock
+    int queue = NEW;
+    Node prev = this;
+    Node next = this;
+
+    Node(Object key, Object value, long weight) {
+      this.key = key;
+      this.value = value;
+      this.weight = weight;
+    }
+  }
+
+  /*
+   * Bounded ring of recent hits filled by readers without locking. When it is full further hits are
+   * simply not recorded, which only makes the eviction policy slightly less accurate.
+   */
+  private static final class ReadBuffer {
+    static final int SIZE = 16;
+    static final int MASK = SIZE - 1;
+
+    final AtomicReferenceArray<Node> slots = new AtomicReferenceArray<Node>(SIZE);
+    final AtomicLong writes = new AtomicLong();
+    final AtomicLong hits = new AtomicLong();
+    // written under evictionLock only
+    volatile long reads;
+
+    /*
+     * @return true when the buffer should be drained
+     */
+    boolean offer(Node node) {
+      long w = writes.get();
+      long pending = w - reads;
+      if (pending >= SIZE) {
+        return true;
+      }
+      if (writes.compareAndSet(w, w + 1)) {
+        slots.lazySet((int) w & MASK, node);
+        return pending + 1 >= SIZE / 2;
+      }
+      return false;
+    }
+  }
+
+}
@@ -0,0 +1,825 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.serializer;
+
+import java.io.Externalizable;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.reflection.DefaultReflectorFactory;
+import org.apache.ibatis.reflection.Reflector;
+import org.apache.ibatis.reflection.ReflectorFactory;
+
+/**
+ * Compact binary serializer, much faster than Java serialization for the beans, lists and maps that
+ * queries return.
+ * <p>
+ * Strings, numbers, dates, the common collections and maps are written with dedicated short encodings.
+ * Beans are written field by field, like Java serialization would (non static and non transient fields
+ * of their serializable classes), and created back through the default constructor found by the
+ * {@link Reflector}; the fields of each class are looked up once. Shared references and cycles are
+ * preserved. Objects that customize their serialization ({@code writeObject}, {@code writeReplace},
+ * {@link Externalizable}...), proxies and classes without a default constructor are written with Java
+ * serialization, in which case the references they share with the rest of the graph are copied.
+ * <p>
+ * Each thread reuses its output buffer, so serializing does not allocate more than the result.
+ *
+ * @since 3.4.7
+ */
+public class BinarySerializer implements CacheSerializer {
+
+  private static final int NULL = 0;
+  private static final int REFERENCE = 1;
+  private static final int STRING = 2;
+  private static final int INTEGER = 3;
+  private static final int LONG = 4;
+  private static final int TRUE = 5;
+  private static final int FALSE = 6;
+  private static final int DOUBLE = 7;
+  private static final int FLOAT = 8;
+  private static final int SHORT = 9;
+  private static final int BYTE = 10;
+  private static final int CHARACTER = 11;
+  private static final int BIG_DECIMAL = 12;
+  private static final int BIG_INTEGER = 13;
+  private static final int DATE = 14;
+  private static final int SQL_DATE = 15;
+  private static final int SQL_TIME = 16;
+  private static final int SQL_TIMESTAMP = 17;
+  private static final int BYTE_ARRAY = 18;
+  private static final int OBJECT_ARRAY = 19;
+  private static final int ENUM = 20;
+  private static final int ARRAY_LIST = 21;
+  private static final int LINKED_LIST = 22;
+  private static final int HASH_SET = 23;
+  private static final int LINKED_HASH_SET = 24;
+  private static final int TREE_SET = 25;
+  private static final int HASH_MAP = 26;
+  private static final int LINKED_HASH_MAP = 27;
+  private static final int TREE_MAP = 28;
+  private static final int OBJECT = 29;
+  private static final int JAVA = 30;
+
+  private static final int MAX_RETAINED_BUFFER = 1 << 20;
+
+  private static final ReflectorFactory reflectorFactory = new DefaultReflectorFactory();
+  private static final Map<Class<?>, ClassLayout> layouts = new ConcurrentHashMap<Class<?>, ClassLayout>();
+
+  private final CacheSerializer javaSerializer = new JavaSerializer();
+  private final ThreadLocal<Output> outputs = new ThreadLocal<Output>() {
+    @Override
+    protected Output initialValue() {
+      return new Output();
+    }
+  };
+
+  @Override
+  public byte[] serialize(Object value) {
+    Output out = outputs.get();
+    try {
+      writeObject(out, value);
+      return Arrays.copyOf(out.buffer, out.position);
+    } catch (CacheException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new CacheException("Error serializing object.  Cause: " + e, e);
+    } finally {
+      out.reset();
+    }
+  }
+
+  @Override
+  public Object deserialize(byte[] data) {
+    try {
+      return readObject(new Input(data));
+    } catch (CacheException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new CacheException("Error deserializing object.  Cause: " + e, e);
+    }
+  }
+
+  private void writeObject(Output out, Object value) throws IllegalAccessException {
+    if (value == null) {
+      out.writeByte(NULL);
+      return;
+    }
+    Class<?> type = value.getClass();
+    if (type == String.class) {
+      out.writeByte(STRING);
+      out.writeString((String) value);
+    } else if (type == Integer.class) {
+      out.writeByte(INTEGER);
+      out.writeVarInt(zigZag((Integer) value));
+    } else if (type == Long.class) {
+      out.writeByte(LONG);
+      out.writeVarLong(zigZag((Long) value));
+    } else if (type == Boolean.class) {
+      out.writeByte((Boolean) value ? TRUE : FALSE);
+    } else if (type == Double.class) {
+      out.writeByte(DOUBLE);
+      out.writeLong(Double.doubleToRawLongBits((Double) value));
+    } else if (type == Float.class) {
+      out.writeByte(FLOAT);
+      out.writeInt(Float.floatToRawIntBits((Float) value));
+    } else if (type == Short.class) {
+      out.writeByte(SHORT);
+      out.writeVarInt(zigZag((Short) value));
+    } else if (type == Byte.class) {
+      out.writeByte(BYTE);
+      out.writeByte((Byte) value);
+    } else if (type == Character.class) {
+      out.writeByte(CHARACTER);
+      out.writeVarInt((Character) value);
+    } else if (type == BigDecimal.class) {
+      BigDecimal decimal = (BigDecimal) value;
+      out.writeByte(BIG_DECIMAL);
+      out.writeBytes(decimal.unscaledValue().toByteArray());
+      out.writeVarInt(zigZag(decimal.scale()));
+    } else if (type == BigInteger.class) {
+      out.writeByte(BIG_INTEGER);
+      out.writeBytes(((BigInteger) value).toByteArray());
+    } else if (type == Date.class) {
+      out.writeByte(DATE);
+      out.writeVarLong(zigZag(((Date) value).getTime()));
+    } else if (type == java.sql.Date.class) {
+      out.writeByte(SQL_DATE);
+      out.writeVarLong(zigZag(((Date) value).getTime()));
+    } else if (type == Time.class) {
+      out.writeByte(SQL_TIME);
+      out.writeVarLong(zigZag(((Date) value).getTime()));
+    } else if (type == Timestamp.class) {
+      out.writeByte(SQL_TIMESTAMP);
+      out.writeVarLong(zigZag(((Timestamp) value).getTime()));
+      out.writeVarInt(((Timestamp) value).getNanos());
+    } else if (value instanceof Enum) {
+      out.writeByte(ENUM);
+      out.writeClass(((Enum<?>) value).getDeclaringClass());
+      out.writeVarInt(((Enum<?>) value).ordinal());
+    } else if (!writeReference(out, value)) {
+      writeTrackedObject(out, type, value);
+    }
+  }
+
+  /*
+   * Objects that may be shared are numbered in the order they are met, the reader numbers them in the same order.
+   */
+  private boolean writeReference(Output out, Object value) {
+    Integer reference = out.references.get(value);
+    if (reference != null) {
+      out.writeByte(REFERENCE);
+      out.writeVarInt(reference);
+      return true;
+    }
+    return false;
+  }
+
+  private void writeTrackedObject(Output out, Class<?> type, Object value) throws IllegalAccessException {
+    int tag = tagOf(type, value);
+    if (tag == JAVA) {
+      // written separately, cannot be referenced
+      out.writeByte(JAVA);
+      out.writeBytes(javaSerializer.serialize(value));
+      return;
+    }
+    out.references.put(value, out.references.size());
+    out.writeByte(tag);
+    switch (tag) {
+      case BYTE_ARRAY:
+        out.writeBytes((byte[]) value);
+        break;
+      case OBJECT_ARRAY:
+        Object[] array = (Object[]) value;
+        out.writeClass(type.getComponentType());
+        out.writeVarInt(array.length);
+        for (Object element : array) {
+          writeObject(out, element);
+        }
+        break;
+      case HASH_MAP:
+      case LINKED_HASH_MAP:
+      case TREE_MAP:
+        Map<?, ?> map = (Map<?, ?>) value;
+        out.writeVarInt(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+          writeObject(out, entry.getKey());
+          writeObject(out, entry.getValue());
+        }
+        break;
+      case OBJECT:
+        ClassLayout layout = layoutOf(type);
+        out.writeClass(type);
+        for (int i = 0; i < layout.fields.length; i++) {
+          writeField(out, layout.fields[i], layout.kinds[i], value);
+        }
+        break;
+      default:
+        Collection<?> collection = (Collection<?>) value;
+        out.writeVarInt(collection.size());
+        for (Object element : collection) {
+          writeObject(out, element);
+        }
+    }
+  }
+
+  private int tagOf(Class<?> type, Object value) {
+    if (type == ArrayList.class) {
+      return ARRAY_LIST;
+    } else if (type == HashMap.class) {
+      return HASH_MAP;
+    } else if (type == LinkedHashMap.class) {
+      return LINKED_HASH_MAP;
+    } else if (type == LinkedList.class) {
+      return LINKED_LIST;
+    } else if (type == HashSet.class) {
+      return HASH_SET;
+    } else if (type == LinkedHashSet.class) {
+      return LINKED_HASH_SET;
+    } else if (type == TreeSet.class) {
+      return ((SortedSet<?>) value).comparator() == null ? TREE_SET : JAVA;
+    } else if (type == TreeMap.class) {
+      return ((SortedMap<?, ?>) value).comparator() == null ? TREE_MAP : JAVA;
+    } else if (type == byte[].class) {
+      return BYTE_ARRAY;
+    } else if (type.isArray()) {
+      return type.getComponentType().isPrimitive() ? JAVA : OBJECT_ARRAY;
+    } else {
+      return layoutOf(type).eligible ? OBJECT : JAVA;
+    }
+  }
+
+  private void writeField(Output out, Field field, int kind, Object target) throws IllegalAccessException {
+    switch (kind) {
+      case INTEGER:
+        out.writeVarInt(zigZag(field.getInt(target)));
+        break;
+      case LONG:
+        out.writeVarLong(zigZag(field.getLong(target)));
+        break;
+      case TRUE:
+        out.writeByte(field.getBoolean(target) ? 1 : 0);
+        break;
+      case DOUBLE:
+        out.writeLong(Double.doubleToRawLongBits(field.getDouble(target)));
+        break;
+      case FLOAT:
+        out.writeInt(Float.floatToRawIntBits(field.getFloat(target)));
+        break;
+      case SHORT:
+        out.writeVarInt(zigZag(field.getShort(target)));
+        break;
+      case BYTE:
+        out.writeByte(field.getByte(target));
+        break;
+      case CHARACTER:
+        out.writeVarInt(field.getChar(target));
+        break;
+      default:
+        writeObject(out, field.get(target));
+    }
+  }
+
+  private Object readObject(Input in) throws Exception {
+    int tag = in.readByte();
+    switch (tag) {
+      case NULL:
+        return null;
+      case REFERENCE:
+        return in.references.get(in.readVarInt());
+      case STRING:
+        return in.readString();
+      case INTEGER:
+        return unZigZag(in.readVarInt());
+      case LONG:
+        return unZigZag(in.readVarLong());
+      case TRUE:
+        return Boolean.TRUE;
+      case FALSE:
+        return Boolean.FALSE;
+      case DOUBLE:
+        return Double.longBitsToDouble(in.readLong());
+      case FLOAT:
+        return Float.intBitsToFloat(in.readInt());
+      case SHORT:
+        return (short) unZigZag(in.readVarInt());
+      case BYTE:
+        return (byte) in.readByte();
+      case CHARACTER:
+        return (char) in.readVarInt();
+      case BIG_DECIMAL:
+        return new BigDecimal(new BigInteger(in.readBytes()), unZigZag(in.readVarInt()));
+      case BIG_INTEGER:
+        return new BigInteger(in.readBytes());
+      case DATE:
+        return new Date(unZigZag(in.readVarLong()));
+      case SQL_DATE:
+        return new java.sql.Date(unZigZag(in.readVarLong()));
+      case SQL_TIME:
+        return new Time(unZigZag(in.readVarLong()));
+      case SQL_TIMESTAMP:
+        Timestamp timestamp = new Timestamp(unZigZag(in.readVarLong()));
+        timestamp.setNanos(in.readVarInt());
+        return timestamp;
+      case ENUM:
+        return in.readClass().getEnumConstants()[in.readVarInt()];
+      case JAVA:
+        return javaSerializer.deserialize(in.readBytes());
+      case BYTE_ARRAY:
+        return in.track(in.readBytes());
+      case OBJECT_ARRAY:
+        Class<?> componentType = in.readClass();
+        Object[] array = (Object[]) in.track(Array.newInstance(componentType, in.readVarInt()));
+        for (int i = 0; i < array.length; i++) {
+          array[i] = readObject(in);
+        }
+        return array;
+      case HASH_MAP:
+      case LINKED_HASH_MAP:
+      case TREE_MAP:
+        return readMap(in, tag);
+      case ARRAY_LIST:
+      case LINKED_LIST:
+      case HASH_SET:
+      case LINKED_HASH_SET:
+      case TREE_SET:
+        return readCollection(in, tag);
+      case OBJECT:
+        return readBean(in);
+      default:
+        throw new CacheException("Error deserializing object.  Cause: unknown tag " + tag);
+    }
+  }
+
+  private Object readCollection(Input in, int tag) throws Exception {
+    int reference = in.reserve();
+    int size = in.readVarInt();
+    Collection<Object> collection;
+    if (tag == ARRAY_LIST) {
+      collection = new ArrayList<Object>(size);
+    } else if (tag == LINKED_LIST) {
+      collection = new LinkedList<Object>();
+    } else if (tag == HASH_SET) {
+      collection = new HashSet<Object>(Math.max((int) (size / .75f) + 1, 16));
+    } else if (tag == LINKED_HASH_SET) {
+      collection = new LinkedHashSet<Object>(Math.max((int) (size / .75f) + 1, 16));
+    } else {
+      collection = new TreeSet<Object>();
+    }
+    in.references.set(reference, collection);
+    for (int i = 0; i < size; i++) {
+      collection.add(readObject(in));
+    }
+    return collection;
+  }
+
+  private Object readMap(Input in, int tag) throws Exception {
+    int reference = in.reserve();
+    int size = in.readVarInt();
+    Map<Object, Object> map;
+    if (tag == HASH_MAP) {
+      map = new HashMap<Object, Object>(Math.max((int) (size / .75f) + 1, 16));
+    } else if (tag == LINKED_HASH_MAP) {
+      map = new LinkedHashMap<Object, Object>(Math.max((int) (size / .75f) + 1, 16));
+    } else {
+      map = new TreeMap<Object, Object>();
+    }
+    in.references.set(reference, map);
+    for (int i = 0; i < size; i++) {
+      Object key = readObject(in);
+      map.put(key, readObject(in));
+    }
+    return map;
+  }
+
+  private Object readBean(Input in) throws Exception {
+    int reference = in.reserve();
+    Class<?> type = in.readClass();
+    ClassLayout layout = layoutOf(type);
+    if (!layout.eligible) {
+      throw new CacheException("Error deserializing object.  Cause: " + type + " cannot be read field by field");
+    }
+    Object bean = layout.constructor.newInstance();
+    in.references.set(reference, bean);
+    for (int i = 0; i < layout.fields.length; i++) {
+      readField(in, layout.fields[i], layout.kinds[i], bean);
+    }
+    return bean;
+  }
+
+  private void readField(Input in, Field field, int kind, Object target) throws Exception {
+    switch (kind) {
+      case INTEGER:
+        field.setInt(target, unZigZag(in.readVarInt()));
+        break;
+      case LONG:
+        field.setLong(target, unZigZag(in.readVarLong()));
+        break;
+      case TRUE:
+        field.setBoolean(target, in.readByte() != 0);
+        break;
+      case DOUBLE:
+        field.setDouble(target, Double.longBitsToDouble(in.readLong()));
+        break;
+      case FLOAT:
+        field.setFloat(target, Float.intBitsToFloat(in.readInt()));
+        break;
+      case SHORT:
+        field.setShort(target, (short) unZigZag(in.readVarInt()));
+        break;
+      case BYTE:
+        field.setByte(target, (byte) in.readByte());
+        break;
+      case CHARACTER:
+        field.setChar(target, (char) in.readVarInt());
+        break;
+      default:
+        field.set(target, readObject(in));
+    }
+  }
+
+  private static ClassLayout layoutOf(Class<?> type) {
+    ClassLayout layout = layouts.get(type);
+    if (layout == null) {
+      layout = new ClassLayout(type);
+      layouts.put(type, layout);
+    }
+    return layout;
+  }
+
+  private static int zigZag(int value) {
+    return (value << 1) ^ (value >> 31);
+  }
+
+  private static long zigZag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static int unZigZag(int value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private static long unZigZag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /*
+   * The fields written for a class, in a fixed order, and how to create it back.
+   */
+  private static class ClassLayout {
+    private static final Field[] NO_FIELDS = new Field[0];
+
+    private boolean eligible;
+    private Constructor<?> constructor;
+    private Field[] fields = NO_FIELDS;
+    private int[] kinds;
+
+    ClassLayout(Class<?> type) {
+      if (!Serializable.class.isAssignableFrom(type)
+          || Externalizable.class.isAssignableFrom(type)
+          || Proxy.isProxyClass(type)
+          || customizesSerialization(type)) {
+        return;
+      }
+      try {
+        Reflector reflector = reflectorFactory.findForClass(type);
+        if (!reflector.hasDefaultConstructor()) {
+          return;
+        }
+        constructor = reflector.getDefaultConstructor();
+        List<Field> serializableFields = new ArrayList<Field>();
+        for (Class<?> c : hierarchyOf(type)) {
+          List<Field> declared = new ArrayList<Field>();
+          for (Field field : c.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+              field.setAccessible(true);
+              declared.add(field);
+            }
+          }
+          Collections.sort(declared, FIELD_ORDER);
+          serializableFields.addAll(declared);
+        }
+        fields = serializableFields.toArray(new Field[serializableFields.size()]);
+        kinds = new int[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+          kinds[i] = kindOf(fields[i].getType());
+        }
+        eligible = true;
+      } catch (RuntimeException e) {
+        // not a plain bean, Java serialization will do
+        eligible = false;
+      }
+    }
+
+    private static final Comparator<Field> FIELD_ORDER = new Comparator<Field>() {
+      @Override
+      public int compare(Field f1, Field f2) {
+        return f1.getName().compareTo(f2.getName());
+      }
+    };
+
+    /*
+     * The serializable classes of the hierarchy, from the topmost one.
+     */
+    private static List<Class<?>> hierarchyOf(Class<?> type) {
+      LinkedList<Class<?>> hierarchy = new LinkedList<Class<?>>();
+      for (Class<?> c = type; c != null && Serializable.class.isAssignableFrom(c); c = c.getSuperclass()) {
+        hierarchy.addFirst(c);
+      }
+      return hierarchy;
+    }
+
+    private static boolean customizesSerialization(Class<?> type) {
+      for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+        for (Method method : c.getDeclaredMethods()) {
+          String name = method.getName();
+          if ("writeReplace".equals(name) || "readResolve".equals(name)) {
+            if (method.getParameterTypes().length == 0) {
+              return true;
+            }
+          } else if ("writeObject".equals(name) || "readObject".equals(name)) {
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            if (parameterTypes.length == 1
+                && (parameterTypes[0] == ObjectOutputStream.class || parameterTypes[0] == ObjectInputStream.class)) {
+              return true;
+            }
+          } else if ("readObjectNoData".equals(name) && method.getParameterTypes().length == 0) {
+            return true;
+          }
+        }
+        try {
+          c.getDeclaredField("serialPersistentFields");
+          return true;
+        } catch (NoSuchFieldException e) {
+          // the usual case
+        }
+      }
+      return false;
+    }
+
+    private static int kindOf(Class<?> type) {
+      if (type == int.class) {
+        return INTEGER;
+      } else if (type == long.class) {
+        return LONG;
+      } else if (type == boolean.class) {
+        return TRUE;
+      } else if (type == double.class) {
+        return DOUBLE;
+      } else if (type == float.class) {
+        return FLOAT;
+      } else if (type == short.class) {
+        return SHORT;
+      } else if (type == byte.class) {
+        return BYTE;
+      } else if (type == char.class) {
+        return CHARACTER;
+      }
+      return OBJECT;
+    }
+  }
+
+  private static class Output {
+    private byte[] buffer = new byte[256];
+    private int position;
+    private IdentityHashMap<Object, Integer> references = new IdentityHashMap<Object, Integer>();
+    private IdentityHashMap<Class<?>, Integer> classes = new IdentityHashMap<Class<?>, Integer>();
+
+    void reset() {
+      position = 0;
+      if (buffer.length > MAX_RETAINED_BUFFER) {
+        buffer = new byte[256];
+      }
+      // clearing a map that grew large costs as much as allocating a new one
+      if (references.size() > 1024) {
+        references = new IdentityHashMap<Object, Integer>();
+      } else {
+        references.clear();
+      }
+      classes.clear();
+    }
+
+    void writeClass(Class<?> type) {
+      Integer index = classes.get(type);
+      if (index != null) {
+        writeVarInt(index + 1);
+      } else {
+        classes.put(type, classes.size());
+        writeVarInt(0);
+        writeString(type.getName());
+      }
+    }
+
+    void writeByte(int b) {
+      ensure(1);
+      buffer[position++] = (byte) b;
+    }
+
+    void writeBytes(byte[] bytes) {
+      writeVarInt(bytes.length);
+      ensure(bytes.length);
+      System.arraycopy(bytes, 0, buffer, position, bytes.length);
+      position += bytes.length;
+    }
+
+    void writeInt(int value) {
+      ensure(4);
+      buffer[position++] = (byte) value;
+      buffer[position++] = (byte) (value >>> 8);
+      buffer[position++] = (byte) (value >>> 16);
+      buffer[position++] = (byte) (value >>> 24);
+    }
+
+    void writeLong(long value) {
+      writeInt((int) value);
+      writeInt((int) (value >>> 32));
+    }
+
+    void writeVarInt(int value) {
+      ensure(5);
+      while ((value & ~0x7f) != 0) {
+        buffer[position++] = (byte) ((value & 0x7f) | 0x80);
+        value >>>= 7;
+      }
+      buffer[position++] = (byte) value;
+    }
+
+    void writeVarLong(long value) {
+      ensure(10);
+      while ((value & ~0x7fL) != 0) {
+        buffer[position++] = (byte) ((value & 0x7f) | 0x80);
+        value >>>= 7;
+      }
+      buffer[position++] = (byte) value;
+    }
+
+    void writeString(String value) {
+      int length = value.length();
+      writeVarInt(length);
+      ensure(length * 3);
+      byte[] buffer = this.buffer;
+      int position = this.position;
+      for (int i = 0; i < length; i++) {
+        char c = value.charAt(i);
+        if (c < 0x80) {
+          buffer[position++] = (byte) c;
+        } else if (c < 0x800) {
+          buffer[position++] = (byte) (0xc0 | (c >> 6));
+          buffer[position++] = (byte) (0x80 | (c & 0x3f));
+        } else {
+          buffer[position++] = (byte) (0xe0 | (c >> 12));
+          buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+          buffer[position++] = (byte) (0x80 | (c & 0x3f));
+        }
+      }
+      this.position = position;
+    }
+
+    private void ensure(int length) {
+      if (position + length > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.max(position + length, buffer.length * 2));
+      }
+    }
+  }
+
+  private static class Input {
+    private final byte[] data;
+    private int position;
+    private final List<Object> references = new ArrayList<Object>();
+    private final List<Class<?>> classes = new ArrayList<Class<?>>();
+
+    Input(byte[] data) {
+      this.data = data;
+    }
+
+    Object track(Object value) {
+      references.add(value);
+      return value;
+    }
+
+    /*
+     * Numbers an object before it is created, so that the references it holds to itself can be resolved.
+     */
+    int reserve() {
+      references.add(null);
+      return references.size() - 1;
+    }
+
+    Class<?> readClass() throws ClassNotFoundException {
+      int index = readVarInt();
+      if (index > 0) {
+        return classes.get(index - 1);
+      }
+      Class<?> type = Resources.classForName(readString());
+      classes.add(type);
+      return type;
+    }
+
+    int readByte() {
+      return data[position++] & 0xff;
+    }
+
+    byte[] readBytes() {
+      int length = readVarInt();
+      byte[] bytes = Arrays.copyOfRange(data, position, position + length);
+      position += length;
+      return bytes;
+    }
+
+    int readInt() {
+      return (data[position++] & 0xff) | ((data[position++] & 0xff) << 8) | ((data[position++] & 0xff) << 16)
+          | ((data[position++] & 0xff) << 24);
+    }
+
+    long readLong() {
+      return (readInt() & 0xffffffffL) | ((long) readInt() << 32);
+    }
+
+    int readVarInt() {
+      int value = 0;
+      for (int shift = 0;; shift += 7) {
+        byte b = data[position++];
+        value |= (b & 0x7f) << shift;
+        if (b >= 0) {
+          return value;
+        }
+      }
+    }
+
+    long readVarLong() {
+      long value = 0;
+      for (int shift = 0;; shift += 7) {
+        byte b = data[position++];
+        value |= (long) (b & 0x7f) << shift;
+        if (b >= 0) {
+          return value;
+        }
+      }
+    }
+
+    String readString() {
+      int length = readVarInt();
+      char[] chars = new char[length];
+      byte[] data = this.data;
+      int position = this.position;
+      for (int i = 0; i < length; i++) {
+        int b = data[position++] & 0xff;
+        if (b < 0x80) {
+          chars[i] = (char) b;
+        } else if ((b & 0xe0) == 0xc0) {
+          chars[i] = (char) (((b & 0x1f) << 6) | (data[position++] & 0x3f));
+        } else {
+          chars[i] = (char) (((b & 0x0f) << 12) | ((data[position++] & 0x3f) << 6) | (data[position++] & 0x3f));
+        }
+      }
+      this.position = position;
+      return new String(chars);
+    }
+  }
+
+}
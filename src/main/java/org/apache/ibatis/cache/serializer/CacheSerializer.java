@@ -0,0 +1,34 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.serializer;
+
+/**
+ * Turns the objects stored by {@code SerializedCache} into bytes and back, so that every reader gets
+ * its own copy.
+ * <p>
+ * Implementations must be thread safe and have a public no-arg constructor to be selected with
+ * {@code <property name="serializer" value="com.example.MySerializer"/>} in the {@code <cache>} element.
+ * Failures are reported with a {@link org.apache.ibatis.cache.CacheException}.
+ *
+ * @since 3.4.7
+ */
+public interface CacheSerializer {
+
+  byte[] serialize(Object value);
+
+  Object deserialize(byte[] data);
+
+}
@@ -0,0 +1,49 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.serializer;
+
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.io.Resources;
+
+/**
+ * Creates the serializers named in cache properties.
+ *
+ * @since 3.4.7
+ */
+public final class CacheSerializers {
+
+  private CacheSerializers() {
+    // Prevent Instantiation of Static Class
+  }
+
+  /**
+   * @param name {@code java}, {@code binary} or the name of a class implementing {@link CacheSerializer}
+   */
+  public static CacheSerializer forName(String name) {
+    if ("java".equalsIgnoreCase(name)) {
+      return new JavaSerializer();
+    } else if ("binary".equalsIgnoreCase(name)) {
+      return new BinarySerializer();
+    } else {
+      try {
+        return (CacheSerializer) Resources.classForName(name).newInstance();
+      } catch (Exception e) {
+        throw new CacheException("Could not create cache serializer '" + name + "'.  Cause: " + e, e);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,124 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.serializer;
+
+import org.apache.ibatis.cache.CacheException;
+
+/**
+ * Compresses what another serializer produces with an LZ4 style compressor. Values shorter than 64
+ * bytes, or that do not shrink, are stored as they are behind a one byte header.
+ *
+ * @since 3.4.7
+ */
+public class CompressingSerializer implements CacheSerializer {
+
+  private static final int RAW = 0;
+  private static final int LZ4 = 1;
+  private static final int MIN_LENGTH = 64;
+  private static final int MAX_RETAINED_BUFFER = 1 << 20;
+
+  private final CacheSerializer delegate;
+  private final ThreadLocal<Buffers> buffers = new ThreadLocal<Buffers>() {
+    @Override
+    protected Buffers initialValue() {
+      return new Buffers();
+    }
+  };
+
+  public CompressingSerializer(CacheSerializer delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public byte[] serialize(Object value) {
+    byte[] raw = delegate.serialize(value);
+    if (raw.length >= MIN_LENGTH) {
+      Buffers buffers = this.buffers.get();
+      byte[] out = buffers.output(Lz4.maxCompressedLength(raw.length) + 6);
+      out[0] = LZ4;
+      int headerLength = writeVarInt(out, 1, raw.length);
+      int compressedLength = Lz4.compress(raw, raw.length, out, headerLength, buffers.table);
+      int total = headerLength + compressedLength;
+      if (total < raw.length + 1) {
+        byte[] result = new byte[total];
+        System.arraycopy(out, 0, result, 0, total);
+        buffers.release();
+        return result;
+      }
+      buffers.release();
+    }
+    byte[] result = new byte[raw.length + 1];
+    result[0] = RAW;
+    System.arraycopy(raw, 0, result, 1, raw.length);
+    return result;
+  }
+
+  @Override
+  public Object deserialize(byte[] data) {
+    byte[] raw;
+    if (data[0] == RAW) {
+      raw = new byte[data.length - 1];
+      System.arraycopy(data, 1, raw, 0, raw.length);
+    } else if (data[0] == LZ4) {
+      int length = 0;
+      int position = 1;
+      for (int shift = 0;; shift += 7) {
+        byte b = data[position++];
+        length |= (b & 0x7f) << shift;
+        if (b >= 0) {
+          break;
+        }
+      }
+      raw = new byte[length];
+      try {
+        Lz4.decompress(data, position, raw, length);
+      } catch (RuntimeException e) {
+        throw new CacheException("Error decompressing object.  Cause: " + e, e);
+      }
+    } else {
+      throw new CacheException("Error decompressing object.  Cause: unknown header " + data[0]);
+    }
+    return delegate.deserialize(raw);
+  }
+
+  private static int writeVarInt(byte[] out, int position, int value) {
+    while ((value & ~0x7f) != 0) {
+      out[position++] = (byte) ((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    out[position++] = (byte) value;
+    return position;
+  }
+
+  private static class Buffers {
+    final int[] table = Lz4.newHashTable();
+    byte[] output = new byte[256];
+
+    byte[] output(int length) {
+      if (output.length < length) {
+        output = new byte[Math.max(length, output.length * 2)];
+      }
+      return output;
+    }
+
+    void release() {
+      if (output.length > MAX_RETAINED_BUFFER) {
+        output = new byte[256];
+      }
+    }
+  }
+
+}
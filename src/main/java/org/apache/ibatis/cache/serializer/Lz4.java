@@ -0,0 +1,161 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.serializer;
+
+import java.util.Arrays;
+
+/**
+ * Compressor writing the LZ4 block format: a greedy search for 4-byte matches within the last 64KB
+ * through a small hash table, which favours speed over compression ratio.
+ */
+final class Lz4 {
+
+  private static final int MIN_MATCH = 4;
+  private static final int HASH_LOG = 12;
+  private static final int MAX_DISTANCE = 65535;
+  private static final int LAST_LITERALS = 5;
+  private static final int MATCH_FIND_LIMIT = 12;
+
+  private Lz4() {
+    // Prevent Instantiation
+  }
+
+  static int maxCompressedLength(int length) {
+    return length + length / 255 + 16;
+  }
+
+  static int[] newHashTable() {
+    return new int[1 << HASH_LOG];
+  }
+
+  /*
+   * @param table a table from newHashTable, its content is overwritten
+   * @return the number of bytes written to dest, which must hold maxCompressedLength(length) bytes
+   */
+  static int compress(byte[] src, int length, byte[] dest, int destOffset, int[] table) {
+    Arrays.fill(table, 0);
+    int anchor = 0;
+    int ip = 0;
+    int op = destOffset;
+    int limit = length - MATCH_FIND_LIMIT;
+    while (ip < limit) {
+      int sequence = readInt(src, ip);
+      int hash = (sequence * -1640531535) >>> (32 - HASH_LOG);
+      int ref = table[hash] - 1;
+      table[hash] = ip + 1;
+      if (ref < 0 || ip - ref > MAX_DISTANCE || readInt(src, ref) != sequence) {
+        ip++;
+        continue;
+      }
+      while (ip > anchor && ref > 0 && src[ip - 1] == src[ref - 1]) {
+        ip--;
+        ref--;
+      }
+      int matchLength = MIN_MATCH;
+      int maxMatchLength = length - LAST_LITERALS - ip;
+      while (matchLength < maxMatchLength && src[ip + matchLength] == src[ref + matchLength]) {
+        matchLength++;
+      }
+      op = writeSequence(src, anchor, ip - anchor, dest, op, ip - ref, matchLength);
+      ip += matchLength;
+      anchor = ip;
+    }
+    return writeSequence(src, anchor, length - anchor, dest, op, 0, 0) - destOffset;
+  }
+
+  static void decompress(byte[] src, int srcOffset, byte[] dest, int length) {
+    int ip = srcOffset;
+    int op = 0;
+    while (true) {
+      int token = src[ip++] & 0xff;
+      int literalLength = token >>> 4;
+      if (literalLength == 15) {
+        int b;
+        do {
+          b = src[ip++] & 0xff;
+          literalLength += b;
+        } while (b == 255);
+      }
+      System.arraycopy(src, ip, dest, op, literalLength);
+      ip += literalLength;
+      op += literalLength;
+      if (op >= length) {
+        return;
+      }
+      int offset = (src[ip++] & 0xff) | ((src[ip++] & 0xff) << 8);
+      int matchLength = token & 0x0f;
+      if (matchLength == 15) {
+        int b;
+        do {
+          b = src[ip++] & 0xff;
+          matchLength += b;
+        } while (b == 255);
+      }
+      matchLength += MIN_MATCH;
+      int ref = op - offset;
+      if (offset >= matchLength) {
+        System.arraycopy(dest, ref, dest, op, matchLength);
+      } else {
+        // overlapping match, the bytes just copied are repeated
+        for (int i = 0; i < matchLength; i++) {
+          dest[op + i] = dest[ref + i];
+        }
+      }
+      op += matchLength;
+    }
+  }
+
+  private static int writeSequence(byte[] src, int literalOffset, int literalLength, byte[] dest, int op, int offset,
+      int matchLength) {
+    int token = op++;
+    if (literalLength >= 15) {
+      dest[token] = (byte) (15 << 4);
+      op = writeLength(dest, op, literalLength - 15);
+    } else {
+      dest[token] = (byte) (literalLength << 4);
+    }
+    System.arraycopy(src, literalOffset, dest, op, literalLength);
+    op += literalLength;
+    if (matchLength == 0) {
+      // last literals
+      return op;
+    }
+    dest[op++] = (byte) offset;
+    dest[op++] = (byte) (offset >>> 8);
+    int length = matchLength - MIN_MATCH;
+    if (length >= 15) {
+      dest[token] |= 15;
+      op = writeLength(dest, op, length - 15);
+    } else {
+      dest[token] |= length;
+    }
+    return op;
+  }
+
+  private static int writeLength(byte[] dest, int op, int length) {
+    while (length >= 255) {
+      dest[op++] = (byte) 255;
+      length -= 255;
+    }
+    dest[op++] = (byte) length;
+    return op;
+  }
+
+  private static int readInt(byte[] src, int i) {
+    return (src[i] & 0xff) | ((src[i + 1] & 0xff) << 8) | ((src[i + 2] & 0xff) << 16) | ((src[i + 3] & 0xff) << 24);
+  }
+
+}
@@ -0,0 +1,228 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free container of pooled connections used when the concurrent bag mode of
+ * {@link PooledDataSource} is enabled.
+ * <p>
+ * Every connection lives in a shared copy-on-write list for its whole life and moves between
+ * states with a CAS, so borrowing and returning never take a lock. A thread first looks at the
+ * connections it returned recently (thread-local affinity), then scans the shared list and finally
+ * waits on a fair hand-off queue that returning threads feed directly.
+ *
+ * @see PooledDataSource#setPoolConcurrentBagEnabled(boolean)
+ */
+class ConcurrentBag {
+
+  static final int STATE_NOT_IN_USE = 0;
+  static final int STATE_IN_USE = 1;
+  static final int STATE_REMOVED = -1;
+  static final int STATE_RESERVED = -2;
+
+  private static final int MAX_THREAD_LOCAL_CONNECTIONS = 16;
+
+  private final CopyOnWriteArrayList<PooledConnection> sharedList = new CopyOnWriteArrayList<PooledConnection>();
+  private final SynchronousQueue<PooledConnection> handoffQueue = new SynchronousQueue<PooledConnection>(true);
+  private final AtomicInteger waiters = new AtomicInteger();
+  private final AtomicInteger slots = new AtomicInteger();
+  private final ThreadLocal<List<WeakReference<PooledConnection>>> threadList = new ThreadLocal<List<WeakReference<PooledConnection>>>() {
+    @Override
+    protected List<WeakReference<PooledConnection>> initialValue() {
+      return new ArrayList<WeakReference<PooledConnection>>(MAX_THREAD_LOCAL_CONNECTIONS);
+    }
+  };
+
+  /*
+   * Borrows an idle connection, waiting at most the given time for another thread to return one.
+   *
+   * @param timeout how long to wait, 0 to only take what is idle right now
+   * @param unit the unit of the timeout
+   * @return the borrowed connection, already in STATE_IN_USE, or null if the time elapsed
+   */
+  PooledConnection borrow(long timeout, TimeUnit unit) throws InterruptedException {
+    List<WeakReference<PooledConnection>> list = threadList.get();
+    for (int i = list.size() - 1; i >= 0; i--) {
+      PooledConnection conn = list.remove(i).get();
+      if (conn != null && conn.compareAndSetBagState(STATE_NOT_IN_USE, STATE_IN_USE)) {
+        return conn;
+      }
+    }
+
+    waiters.incrementAndGet();
+    try {
+      for (PooledConnection conn : sharedList) {
+        if (conn.compareAndSetBagState(STATE_NOT_IN_USE, STATE_IN_USE)) {
+          return conn;
+        }
+      }
+
+      long remaining = unit.toNanos(timeout);
+      while (remaining > 0) {
+        long start = System.nanoTime();
+        PooledConnection conn = handoffQueue.poll(remaining, TimeUnit.NANOSECONDS);
+        if (conn == null || conn.compareAndSetBagState(STATE_NOT_IN_USE, STATE_IN_USE)) {
+          return conn;
+        }
+        remaining -= System.nanoTime() - start;
+      }
+      return null;
+    } finally {
+      waiters.decrementAndGet();
+    }
+  }
+
+  /*
+   * Returns a borrowed connection to the bag, handing it directly to a waiting thread if there is one.
+   *
+   * @param conn the connection to return
+   */
+  void requite(PooledConnection conn) {
+    if (conn.compareAndSetBagState(STATE_IN_USE, STATE_NOT_IN_USE)) {
+      offer(conn);
+    }
+    // otherwise it was reclaimed or removed meanwhile
+  }
+
+  /*
+   * Makes a reserved connection available again.
+   */
+  void unreserve(PooledConnection conn) {
+    if (conn.compareAndSetBagState(STATE_RESERVED, STATE_NOT_IN_USE)) {
+      offer(conn);
+    }
+  }
+
+  private void offer(PooledConnection conn) {
+    for (int i = 0; waiters.get() > 0; i++) {
+      if (conn.getBagState() != STATE_NOT_IN_USE || handoffQueue.offer(conn)) {
+        return;
+      } else if ((i & 0xff) == 0xff) {
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(10));
+      } else {
+        Thread.yield();
+      }
+    }
+
+    List<WeakReference<PooledConnection>> list = threadList.get();
+    if (list.size() < MAX_THREAD_LOCAL_CONNECTIONS) {
+      list.add(new WeakReference<PooledConnection>(conn));
+    }
+  }
+
+  /*
+   * Reserves room for one more connection, the slot must then be filled with add or given back with releaseSlot.
+   *
+   * @param maximum the maximum number of connections the bag may hold
+   * @return false if the bag is full
+   */
+  boolean reserveSlot(int maximum) {
+    for (;;) {
+      int current = slots.get();
+      if (current >= maximum) {
+        return false;
+      }
+      if (slots.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  void releaseSlot() {
+    slots.decrementAndGet();
+  }
+
+  /*
+   * Adds a new connection to the bag in the given state, filling a previously reserved slot.
+   */
+  void add(PooledConnection conn, int state) {
+    conn.setBagState(state);
+    sharedList.add(conn);
+    if (state == STATE_NOT_IN_USE) {
+      // give a waiting thread the chance to pick it up
+      while (waiters.get() > 0 && conn.getBagState() == STATE_NOT_IN_USE && !handoffQueue.offer(conn)) {
+        Thread.yield();
+      }
+    }
+  }
+
+  /*
+   * Removes a connection that the caller has borrowed or reserved.
+   *
+   * @return false if the connection was not in the bag any more
+   */
+  boolean remove(PooledConnection conn) {
+    if (!conn.compareAndSetBagState(STATE_IN_USE, STATE_REMOVED)
+        && !conn.compareAndSetBagState(STATE_RESERVED, STATE_REMOVED)
+        && !conn.compareAndSetBagState(STATE_NOT_IN_USE, STATE_REMOVED)) {
+      return false;
+    }
+    slots.decrementAndGet();
+    return sharedList.remove(conn);
+  }
+
+  /*
+   * Marks an idle connection as reserved so that no borrower can take it.
+   */
+  boolean reserve(PooledConnection conn) {
+    return conn.compareAndSetBagState(STATE_NOT_IN_USE, STATE_RESERVED);
+  }
+
+  /*
+   * Snapshot of the connections currently in the given state.
+   */
+  List<PooledConnection> values(int state) {
+    List<PooledConnection> result = new ArrayList<PooledConnection>();
+    for (PooledConnection conn : sharedList) {
+      if (conn.getBagState() == state) {
+        result.add(conn);
+      }
+    }
+    return result;
+  }
+
+  List<PooledConnection> values() {
+    return new ArrayList<PooledConnection>(sharedList);
+  }
+
+  int getCount(int state) {
+    int count = 0;
+    for (PooledConnection conn : sharedList) {
+      if (conn.getBagState() == state) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  int size() {
+    return sharedList.size();
+  }
+
+  int getWaitingThreadCount() {
+    return waiters.get();
+  }
+
+}
@@ -0,0 +1,155 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.ibatis.util.StripedCounter;
+
+/**
+ * Lock-free histogram of non negative values (typically latencies in microseconds).
+ * <p>
+ * Values are counted in log-linear buckets: every power of two is split in 16 sub-buckets, so a
+ * recorded value is reported with a relative error below 6.25% whatever its magnitude. Recording
+ * increments a bucket and adds to a striped total, so that threads recording at once seldom contend; the
+ * maximum is only written when it grows. Percentiles are read from a {@link Snapshot}.
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+  private final StripedCounter total = new StripedCounter();
+  private final AtomicLong max = new AtomicLong();
+
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    buckets.incrementAndGet(indexOf(value));
+    total.add(value);
+    long currentMax = max.get();
+    while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+      currentMax = max.get();
+    }
+  }
+
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      buckets.set(i, 0);
+    }
+    total.reset();
+    max.set(0);
+  }
+
+  public Snapshot snapshot() {
+    long[] counts = new long[BUCKET_COUNT];
+    long count = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      counts[i] = buckets.get(i);
+      count += counts[i];
+    }
+    return new Snapshot(counts, count, total.get(), max.get());
+  }
+
+  static int indexOf(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+    return SUB_BUCKET_COUNT + (exponent - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT + subBucket;
+  }
+
+  static long highestValueOf(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int exponent = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT + SUB_BUCKET_BITS;
+    long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+    return ((SUB_BUCKET_COUNT + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+  }
+
+  /**
+   * Immutable copy of a histogram. The count and the percentiles come from the same set of bucket counts;
+   * the total and the maximum are read apart from them, so while values are being recorded the mean is
+   * approximate and the maximum may already include a value the buckets do not.
+   */
+  public static class Snapshot {
+
+    private final long[] counts;
+    private final long count;
+    private final long total;
+    private final long max;
+
+    Snapshot(long[] counts, long count, long total, long max) {
+      this.counts = counts;
+      this.count = count;
+      this.total = total;
+      this.max = max;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getTotal() {
+      return total;
+    }
+
+    public long getMax() {
+      return max;
+    }
+
+    public long getMean() {
+      return count == 0 ? 0 : total / count;
+    }
+
+    /*
+     * The value below which the given percentage of the recorded values fall.
+     *
+     * @param percentile between 0 and 100
+     * @return the upper bound of the bucket holding that value, never more than the recorded maximum
+     */
+    public long getValueAtPercentile(double percentile) {
+      if (count == 0) {
+        return 0;
+      }
+      long rank = (long) Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100 * count);
+      if (rank < 1) {
+        rank = 1;
+      }
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank) {
+          return Math.min(highestValueOf(i), max);
+        }
+      }
+      return max;
+    }
+
+    @Override
+    public String toString() {
+      return "count=" + count + ", mean=" + getMean() + ", p50=" + getValueAtPercentile(50)
+          + ", p99=" + getValueAtPercentile(99) + ", max=" + max;
+    }
+  }
+
+}
@@ -15,10 +15,21 @@
  */
 package org.apache.ibatis.datasource.pooled;
 
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.ibatis.util.StripedCounter;
 
 /**
+ * Connections and statistics of a {@link PooledDataSource}.
+ * <p>
+ * Statistics are kept in striped counters and histograms that are updated without holding the pool
+ * lock, so reading them never blocks a checkout. Use {@link #getStatistics()} to read all of them at once.
+ *
  * @author Clinton Begin
  */
 public class PoolState {
@@ -27,63 +38,153 @@ public class PoolState {
 
   protected final List<PooledConnection> idleConnections = new ArrayList<PooledConnection>();
   protected final List<PooledConnection> activeConnections = new ArrayList<PooledConnection>();
-  protected long requestCount = 0;
-  protected long accumulatedRequestTime = 0;
-  protected long accumulatedCheckoutTime = 0;
-  protected long claimedOverdueConnectionCount = 0;
-  protected long accumulatedCheckoutTimeOfOverdueConnections = 0;
-  protected long accumulatedWaitTime = 0;
-  protected long hadToWaitCount = 0;
-  protected long badConnectionCount = 0;
+  protected final Deque<Waiter> waiters = new LinkedList<Waiter>();
+  protected int pendingConnectionCount;
+  protected int handedOffConnectionCount;
+  protected final ConcurrentBag connectionBag = new ConcurrentBag();
+  protected final StripedCounter requestCount = new StripedCounter();
+  protected final StripedCounter accumulatedRequestTime = new StripedCounter();
+  protected final StripedCounter accumulatedCheckoutTime = new StripedCounter();
+  protected final StripedCounter claimedOverdueConnectionCount = new StripedCounter();
+  protected final StripedCounter accumulatedCheckoutTimeOfOverdueConnections = new StripedCounter();
+  protected final StripedCounter accumulatedWaitTime = new StripedCounter();
+  protected final StripedCounter hadToWaitCount = new StripedCounter();
+  protected final StripedCounter badConnectionCount = new StripedCounter();
+  protected final StripedCounter statementCacheHitCount = new StripedCounter();
+  protected final StripedCounter statementCacheMissCount = new StripedCounter();
+  protected final LatencyHistogram waitTimeHistogram = new LatencyHistogram();
+  protected final LatencyHistogram checkoutTimeHistogram = new LatencyHistogram();
+  protected final LatencyHistogram creationTimeHistogram = new LatencyHistogram();
 
   public PoolState(PooledDataSource dataSource) {
     this.dataSource = dataSource;
   }
 
-  public synchronized long getRequestCount() {
-    return requestCount;
+  public long getRequestCount() {
+    return requestCount.get();
+  }
+
+  public long getAverageRequestTime() {
+    long requests = requestCount.get();
+    return requests == 0 ? 0 : accumulatedRequestTime.get() / requests;
+  }
+
+  public long getAverageWaitTime() {
+    long waits = hadToWaitCount.get();
+    return waits == 0 ? 0 : accumulatedWaitTime.get() / waits;
+
+  }
+
+  /*
+   * Distribution of the time the threads that had to wait spent waiting for a connection, in microseconds.
+   */
+  public LatencyHistogram.Snapshot getWaitTimeHistogram() {
+    return waitTimeHistogram.snapshot();
+  }
+
+  /*
+   * Distribution of the time connections were kept by the application before being returned, in microseconds.
+   */
+  public LatencyHistogram.Snapshot getCheckoutTimeHistogram() {
+    return checkoutTimeHistogram.snapshot();
   }
 
-  public synchronized long getAverageRequestTime() {
-    return requestCount == 0 ? 0 : accumulatedRequestTime / requestCount;
+  /*
+   * Distribution of the time the driver took to open a new physical connection, in microseconds.
+   */
+  public LatencyHistogram.Snapshot getCreationTimeHistogram() {
+    return creationTimeHistogram.snapshot();
   }
 
-  public synchronized long getAverageWaitTime() {
-    return hadToWaitCount == 0 ? 0 : accumulatedWaitTime / hadToWaitCount;
+  public int getWaitingThreadCount() {
+    if (dataSource.poolConcurrentBagEnabled) {
+      return connectionBag.getWaitingThreadCount();
+    }
+    // a plain read of the size, no need to hold the pool lock for monitoring
+    return waiters.size();
+  }
+
+  public long getHadToWaitCount() {
+    return hadToWaitCount.get();
+  }
 
+  public long getBadConnectionCount() {
+    return badConnectionCount.get();
   }
 
-  public synchronized long getHadToWaitCount() {
-    return hadToWaitCount;
+  public long getClaimedOverdueConnectionCount() {
+    return claimedOverdueConnectionCount.get();
   }
 
-  public synchronized long getBadConnectionCount() {
-    return badConnectionCount;
+  public long getAverageOverdueCheckoutTime() {
+    long claimed = claimedOverdueConnectionCount.get();
+    return claimed == 0 ? 0 : accumulatedCheckoutTimeOfOverdueConnections.get() / claimed;
   }
 
-  public synchronized long getClaimedOverdueConnectionCount() {
-    return claimedOverdueConnectionCount;
+  /*
+   * Number of prepared statements taken from the statement cache of a connection.
+   */
+  public long getStatementCacheHitCount() {
+    return statementCacheHitCount.get();
   }
 
-  public synchronized long getAverageOverdueCheckoutTime() {
-    return claimedOverdueConnectionCount == 0 ? 0 : accumulatedCheckoutTimeOfOverdueConnections / claimedOverdueConnectionCount;
+  /*
+   * Number of statements prepared by the driver while the statement cache was enabled.
+   */
+  public long getStatementCacheMissCount() {
+    return statementCacheMissCount.get();
   }
 
-  public synchronized long getAverageCheckoutTime() {
-    return requestCount == 0 ? 0 : accumulatedCheckoutTime / requestCount;
+  public long getAverageCheckoutTime() {
+    long requests = requestCount.get();
+    return requests == 0 ? 0 : accumulatedCheckoutTime.get() / requests;
   }
 
 
-  public synchronized int getIdleConnectionCount() {
+  public int getIdleConnectionCount() {
+    if (dataSource.poolConcurrentBagEnabled) {
+      return connectionBag.getCount(ConcurrentBag.STATE_NOT_IN_USE);
+    }
     return idleConnections.size();
   }
 
-  public synchronized int getActiveConnectionCount() {
+  public int getActiveConnectionCount() {
+    if (dataSource.poolConcurrentBagEnabled) {
+      return connectionBag.getCount(ConcurrentBag.STATE_IN_USE);
+    }
     return activeConnections.size();
   }
 
+  /*
+   * Reads every statistic at once without blocking the pool.
+   *
+   * @return an immutable copy of the statistics
+   */
+  public PoolStatistics getStatistics() {
+    return new PoolStatistics(this);
+  }
+
+  /*
+   * Sets all the counters and histograms back to zero, connections are not affected.
+   */
+  public void resetStatistics() {
+    requestCount.reset();
+    accumulatedRequestTime.reset();
+    accumulatedCheckoutTime.reset();
+    claimedOverdueConnectionCount.reset();
+    accumulatedCheckoutTimeOfOverdueConnections.reset();
+    accumulatedWaitTime.reset();
+    hadToWaitCount.reset();
+    badConnectionCount.reset();
+    statementCacheHitCount.reset();
+    statementCacheMissCount.reset();
+    waitTimeHistogram.reset();
+    checkoutTimeHistogram.reset();
+    creationTimeHistogram.reset();
+  }
+
   @Override
-  public synchronized String toString() {
+  public String toString() {
     StringBuilder builder = new StringBuilder();
     builder.append("\n===CONFINGURATION==============================================");
     builder.append("\n jdbcDriver                     ").append(dataSource.getDriver());
@@ -94,9 +195,17 @@ public class PoolState {
     builder.append("\n poolMaxIdleConnections         ").append(dataSource.poolMaximumIdleConnections);
     builder.append("\n poolMaxCheckoutTime            ").append(dataSource.poolMaximumCheckoutTime);
     builder.append("\n poolTimeToWait                 ").append(dataSource.poolTimeToWait);
+    builder.append("\n poolMaximumWaitTime            ").append(dataSource.poolMaximumWaitTime);
     builder.append("\n poolPingEnabled                ").append(dataSource.poolPingEnabled);
     builder.append("\n poolPingQuery                  ").append(dataSource.poolPingQuery);
     builder.append("\n poolPingConnectionsNotUsedFor  ").append(dataSource.poolPingConnectionsNotUsedFor);
+    builder.append("\n poolConcurrentBagEnabled       ").append(dataSource.poolConcurrentBagEnabled);
+    builder.append("\n poolMaintenanceInterval        ").append(dataSource.poolMaintenanceInterval);
+    builder.append("\n poolMinimumIdleConnections     ").append(dataSource.poolMinimumIdleConnections);
+    builder.append("\n poolMaximumIdleTime            ").append(dataSource.poolMaximumIdleTime);
+    builder.append("\n poolMaximumLifetime            ").append(dataSource.poolMaximumLifetime);
+    builder.append("\n poolConnectionCreatorThreads   ").append(dataSource.poolConnectionCreatorThreads);
+    builder.append("\n poolPreparedStatementCacheSize ").append(dataSource.poolPreparedStatementCacheSize);
     builder.append("\n ---STATUS-----------------------------------------------------");
     builder.append("\n activeConnections              ").append(getActiveConnectionCount());
     builder.append("\n idleConnections                ").append(getIdleConnectionCount());
@@ -107,9 +216,55 @@ public class PoolState {
     builder.append("\n averageOverdueCheckoutTime     ").append(getAverageOverdueCheckoutTime());
     builder.append("\n hadToWait                      ").append(getHadToWaitCount());
     builder.append("\n averageWaitTime                ").append(getAverageWaitTime());
+    builder.append("\n waitingThreads                 ").append(getWaitingThreadCount());
+    builder.append("\n statementCacheHits             ").append(getStatementCacheHitCount());
+    builder.append("\n statementCacheMisses           ").append(getStatementCacheMissCount());
+    builder.append("\n waitTimeMicros                 ").append(getWaitTimeHistogram());
+    builder.append("\n checkoutTimeMicros             ").append(getCheckoutTimeHistogram());
+    builder.append("\n creationTimeMicros             ").append(getCreationTimeHistogram());
     builder.append("\n badConnectionCount             ").append(getBadConnectionCount());
     builder.append("\n===============================================================");
     return builder.toString();
   }
 
+  /*
+   * A thread waiting in line for a connection, guarded by the PoolState monitor.
+   */
+  static final class Waiter {
+
+    private final Thread thread = Thread.currentThread();
+    PooledConnection connection;
+    SQLException error;
+
+    void handOff(PooledConnection connection) {
+      this.connection = connection;
+      LockSupport.unpark(thread);
+    }
+
+    void fail(SQLException error) {
+      this.error = error;
+      LockSupport.unpark(thread);
+    }
+
+    void wakeUp() {
+      LockSupport.unpark(thread);
+    }
+  }
+
+  /*
+   * Gives a connection to the oldest waiting thread. It counts against the size of the pool until that thread
+   * has taken it, so that nobody opens another one meanwhile.
+   */
+  void handOffToFirstWaiter(PooledConnection connection) {
+    waiters.poll().handOff(connection);
+    handedOffConnectionCount++;
+  }
+
+  void wakeUpFirstWaiter() {
+    Waiter waiter = waiters.peek();
+    if (waiter != null) {
+      waiter.wakeUp();
+    }
+  }
+
 }
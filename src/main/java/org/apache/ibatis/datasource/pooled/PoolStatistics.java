@@ -0,0 +1,138 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+/**
+ * Immutable copy of the statistics of a pool, taken by {@link PoolState#getStatistics()}.
+ * <p>
+ * Every counter is read exactly once, so averages are computed from the same figures that are reported.
+ * Times are in milliseconds, histograms in microseconds.
+ */
+public class PoolStatistics {
+
+  private final int activeConnectionCount;
+  private final int idleConnectionCount;
+  private final int waitingThreadCount;
+  private final long requestCount;
+  private final long accumulatedRequestTime;
+  private final long accumulatedCheckoutTime;
+  private final long claimedOverdueConnectionCount;
+  private final long accumulatedCheckoutTimeOfOverdueConnections;
+  private final long accumulatedWaitTime;
+  private final long hadToWaitCount;
+  private final long badConnectionCount;
+  private final long statementCacheHitCount;
+  private final long statementCacheMissCount;
+  private final LatencyHistogram.Snapshot waitTimeHistogram;
+  private final LatencyHistogram.Snapshot checkoutTimeHistogram;
+  private final LatencyHistogram.Snapshot creationTimeHistogram;
+
+  PoolStatistics(PoolState state) {
+    this.activeConnectionCount = state.getActiveConnectionCount();
+    this.idleConnectionCount = state.getIdleConnectionCount();
+    this.waitingThreadCount = state.getWaitingThreadCount();
+    this.requestCount = state.requestCount.get();
+    this.accumulatedRequestTime = state.accumulatedRequestTime.get();
+    this.accumulatedCheckoutTime = state.accumulatedCheckoutTime.get();
+    this.claimedOverdueConnectionCount = state.claimedOverdueConnectionCount.get();
+    this.accumulatedCheckoutTimeOfOverdueConnections = state.accumulatedCheckoutTimeOfOverdueConnections.get();
+    this.accumulatedWaitTime = state.accumulatedWaitTime.get();
+    this.hadToWaitCount = state.hadToWaitCount.get();
+    this.badConnectionCount = state.badConnectionCount.get();
+    this.statementCacheHitCount = state.statementCacheHitCount.get();
+    this.statementCacheMissCount = state.statementCacheMissCount.get();
+    this.waitTimeHistogram = state.waitTimeHistogram.snapshot();
+    this.checkoutTimeHistogram = state.checkoutTimeHistogram.snapshot();
+    this.creationTimeHistogram = state.creationTimeHistogram.snapshot();
+  }
+
+  public int getActiveConnectionCount() {
+    return activeConnectionCount;
+  }
+
+  public int getIdleConnectionCount() {
+    return idleConnectionCount;
+  }
+
+  public int getWaitingThreadCount() {
+    return waitingThreadCount;
+  }
+
+  public long getRequestCount() {
+    return requestCount;
+  }
+
+  public long getAverageRequestTime() {
+    return requestCount == 0 ? 0 : accumulatedRequestTime / requestCount;
+  }
+
+  public long getAverageCheckoutTime() {
+    return requestCount == 0 ? 0 : accumulatedCheckoutTime / requestCount;
+  }
+
+  public long getClaimedOverdueConnectionCount() {
+    return claimedOverdueConnectionCount;
+  }
+
+  public long getAverageOverdueCheckoutTime() {
+    return claimedOverdueConnectionCount == 0 ? 0 : accumulatedCheckoutTimeOfOverdueConnections / claimedOverdueConnectionCount;
+  }
+
+  public long getHadToWaitCount() {
+    return hadToWaitCount;
+  }
+
+  public long getAverageWaitTime() {
+    return hadToWaitCount == 0 ? 0 : accumulatedWaitTime / hadToWaitCount;
+  }
+
+  public long getBadConnectionCount() {
+    return badConnectionCount;
+  }
+
+  public long getStatementCacheHitCount() {
+    return statementCacheHitCount;
+  }
+
+  public long getStatementCacheMissCount() {
+    return statementCacheMissCount;
+  }
+
+  public LatencyHistogram.Snapshot getWaitTimeHistogram() {
+    return waitTimeHistogram;
+  }
+
+  public LatencyHistogram.Snapshot getCheckoutTimeHistogram() {
+    return checkoutTimeHistogram;
+  }
+
+  public LatencyHistogram.Snapshot getCreationTimeHistogram() {
+    return creationTimeHistogram;
+  }
+
+  @Override
+  public String toString() {
+    return "PoolStatistics [active=" + activeConnectionCount + ", idle=" + idleConnectionCount
+        + ", waiting=" + waitingThreadCount + ", requests=" + requestCount
+        + ", averageRequestTime=" + getAverageRequestTime() + ", averageCheckoutTime=" + getAverageCheckoutTime()
+        + ", claimedOverdue=" + claimedOverdueConnectionCount + ", hadToWait=" + hadToWaitCount
+        + ", averageWaitTime=" + getAverageWaitTime() + ", badConnections=" + badConnectionCount
+        + ", statementCacheHits=" + statementCacheHitCount + ", statementCacheMisses=" + statementCacheMissCount
+        + ", waitTimeMicros={" + waitTimeHistogram + "}, checkoutTimeMicros={" + checkoutTimeHistogram
+        + "}, creationTimeMicros={" + creationTimeHistogram + "}]";
+  }
+
+}
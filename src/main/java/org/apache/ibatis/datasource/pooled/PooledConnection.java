@@ -20,6 +20,7 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import org.apache.ibatis.reflection.ExceptionUtil;
 
@@ -29,17 +30,23 @@ import org.apache.ibatis.reflection.ExceptionUtil;
 class PooledConnection implements InvocationHandler {
 
   private static final String CLOSE = "close";
+  private static final String PREPARE_STATEMENT = "prepareStatement";
+  private static final String PREPARE_CALL = "prepareCall";
   private static final Class<?>[] IFACES = new Class<?>[] { Connection.class };
+  private static final AtomicIntegerFieldUpdater<PooledConnection> BAG_STATE_UPDATER =
+      AtomicIntegerFieldUpdater.newUpdater(PooledConnection.class, "bagState");
 
   private final int hashCode;
   private final PooledDataSource dataSource;
   private final Connection realConnection;
-  private final Connection proxyConnection;
-  private long checkoutTimestamp;
-  private long createdTimestamp;
-  private long lastUsedTimestamp;
-  private int connectionTypeCode;
-  private boolean valid;
+  private volatile Connection proxyConnection;
+  private volatile long checkoutTimestamp;
+  private volatile long createdTimestamp;
+  private volatile long lastUsedTimestamp;
+  private volatile int connectionTypeCode;
+  private volatile boolean valid;
+  private volatile int bagState;
+  private volatile PreparedStatementCache statementCache;
 
   /*
    * Constructor for SimplePooledConnection that uses the Connection and PooledDataSource passed in
@@ -57,6 +64,52 @@ class PooledConnection implements InvocationHandler {
     this.proxyConnection = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), IFACES, this);
   }
 
+  /*
+   * Hands out a fresh proxy for this connection, so that proxies obtained by a
+   * previous borrower can no longer be used to reach the real connection.
+   * Used by the concurrent bag which keeps the same PooledConnection for the whole
+   * life of the physical connection.
+   */
+  void renewProxyConnection() {
+    this.proxyConnection = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), IFACES, this);
+  }
+
+  int getBagState() {
+    return bagState;
+  }
+
+  void setBagState(int bagState) {
+    this.bagState = bagState;
+  }
+
+  boolean compareAndSetBagState(int expect, int update) {
+    return BAG_STATE_UPDATER.compareAndSet(this, expect, update);
+  }
+
+  /*
+   * The prepared statements cached for the real connection, created on first use when the data source
+   * caches statements. Kept by the PooledConnection wrapping the real connection next.
+   */
+  PreparedStatementCache getStatementCache() {
+    return statementCache;
+  }
+
+  void setStatementCache(PreparedStatementCache statementCache) {
+    this.statementCache = statementCache;
+  }
+
+  /*
+   * Closes the cached statements, for a connection taken away from its borrower. The statements
+   * still in use are closed when given back.
+   */
+  void closeStatementCache() {
+    PreparedStatementCache cache = statementCache;
+    statementCache = null;
+    if (cache != null) {
+      cache.close();
+    }
+  }
+
   /*
    * Invalidates the connection
    */
@@ -232,8 +285,15 @@ class PooledConnection implements InvocationHandler {
   @Override
   public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
     String methodName = method.getName();
+    boolean stale = proxy != proxyConnection;
     if (CLOSE.hashCode() == methodName.hashCode() && CLOSE.equals(methodName)) {
-      dataSource.pushConnection(this);
+      if (!stale) {
+        PreparedStatementCache cache = statementCache;
+        if (cache != null) {
+          cache.releaseAll();
+        }
+        dataSource.pushConnection(this);
+      }
       return null;
     } else {
       try {
@@ -241,6 +301,13 @@ class PooledConnection implements InvocationHandler {
           // issue #579 toString() should never fail
           // throw an SQLException instead of a Runtime
           checkConnection();
+          if (stale) {
+            throw new SQLException("Error accessing PooledConnection. Connection has already been returned to the pool.");
+          }
+        }
+        if (dataSource.poolPreparedStatementCacheSize > 0
+            && (PREPARE_STATEMENT.equals(methodName) || PREPARE_CALL.equals(methodName))) {
+          return statementCache().prepare((Connection) proxy, method, args);
         }
         return method.invoke(realConnection, args);
       } catch (Throwable t) {
@@ -249,6 +316,22 @@ class PooledConnection implements InvocationHandler {
     }
   }
 
+  private PreparedStatementCache statementCache() {
+    PreparedStatementCache cache = statementCache;
+    if (cache == null) {
+      // a second cache would leak the statements of the first until the connection is closed
+      synchronized (this) {
+        cache = statementCache;
+        if (cache == null) {
+          cache = new PreparedStatementCache(realConnection, dataSource.poolPreparedStatementCacheSize,
+              dataSource.getPoolState());
+          statementCache = cache;
+        }
+      }
+    }
+    return cache;
+  }
+
   private void checkConnection() throws SQLException {
     if (!valid) {
       throw new SQLException("Error accessing PooledConnection. Connection is invalid.");
@@ -16,6 +16,7 @@
 package org.apache.ibatis.datasource.pooled;
 
 import java.io.PrintWriter;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
 import java.sql.Connection;
@@ -23,7 +24,18 @@ import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Logger;
 
 import javax.sql.DataSource;
@@ -50,10 +62,21 @@ public class PooledDataSource implements DataSource {
   protected int poolMaximumIdleConnections = 5;
   protected int poolMaximumCheckoutTime = 20000;
   protected int poolTimeToWait = 20000;
+  protected int poolMaximumWaitTime;
   protected int poolMaximumLocalBadConnectionTolerance = 3;
   protected String poolPingQuery = "NO PING QUERY SET";
   protected boolean poolPingEnabled;
   protected int poolPingConnectionsNotUsedFor;
+  protected volatile boolean poolConcurrentBagEnabled;
+  protected int poolMaintenanceInterval;
+  protected int poolMinimumIdleConnections;
+  protected int poolMaximumIdleTime;
+  protected int poolMaximumLifetime;
+  protected int poolConnectionCreatorThreads;
+  protected int poolPreparedStatementCacheSize;
+
+  private volatile ScheduledExecutorService maintenanceExecutor;
+  private volatile ThreadPoolExecutor connectionCreator;
 
   private int expectedConnectionTypeCode;
 
@@ -87,12 +110,13 @@ public class PooledDataSource implements DataSource {
 
   @Override
   public Connection getConnection() throws SQLException {
-    return popConnection(dataSource.getUsername(), dataSource.getPassword()).getProxyConnection();
+    return getConnection(dataSource.getUsername(), dataSource.getPassword());
   }
 
   @Override
   public Connection getConnection(String username, String password) throws SQLException {
-    return popConnection(username, password).getProxyConnection();
+    PooledConnection conn = poolConcurrentBagEnabled ? popConnectionFromBag(username, password) : popConnection(username, password);
+    return conn.getProxyConnection();
   }
 
   @Override
@@ -170,6 +194,18 @@ public class PooledDataSource implements DataSource {
     forceCloseAll();
   }
 
+  /*
+   * The overall time a thread may wait for a connection before giving up with an exception,
+   * whatever the number of times it wakes up after poolTimeToWait. 0 waits forever.
+   *
+   * @param poolMaximumWaitTime The maximum time to wait for a connection
+   *
+   * @since 3.4.7
+   */
+  public void setPoolMaximumWaitTime(int poolMaximumWaitTime) {
+    this.poolMaximumWaitTime = poolMaximumWaitTime;
+  }
+
   /*
    * The maximum number of tolerance for bad connection happens in one thread
     * which are applying for new {@link PooledConnection}
@@ -236,6 +272,118 @@ public class PooledDataSource implements DataSource {
     forceCloseAll();
   }
 
+  /*
+   * Switches the pool to the lock-free concurrent bag, where connections are checked out and
+   * returned with CAS operations and a direct hand-off to waiting threads instead of going
+   * through a single pool-wide monitor.
+   *
+   * @param poolConcurrentBagEnabled True to use the concurrent bag
+   *
+   * @since 3.4.7
+   */
+  public void setPoolConcurrentBagEnabled(boolean poolConcurrentBagEnabled) {
+    this.poolConcurrentBagEnabled = poolConcurrentBagEnabled;
+    forceCloseAll();
+  }
+
+  /*
+   * Starts a background thread that runs every given number of milliseconds to validate idle connections with
+   * the ping query, evict the ones past poolMaximumIdleTime or poolMaximumLifetime and open new ones up to
+   * poolMinimumIdleConnections. While it runs the ping query is no longer executed on checkout.
+   *
+   * @param poolMaintenanceInterval the interval in milliseconds, 0 to stop the thread
+   *
+   * @since 3.4.7
+   */
+  public void setPoolMaintenanceInterval(int poolMaintenanceInterval) {
+    this.poolMaintenanceInterval = poolMaintenanceInterval;
+    stopMaintenance();
+    if (poolMaintenanceInterval > 0) {
+      startMaintenance();
+    }
+  }
+
+  /*
+   * The number of idle connections the maintenance thread keeps open
+   *
+   * @param poolMinimumIdleConnections The minimum number of idle connections
+   *
+   * @since 3.4.7
+   */
+  public void setPoolMinimumIdleConnections(int poolMinimumIdleConnections) {
+    this.poolMinimumIdleConnections = poolMinimumIdleConnections;
+  }
+
+  /*
+   * Idle connections not used for this many milliseconds are closed by the maintenance thread,
+   * as long as poolMinimumIdleConnections remain. 0 keeps them.
+   *
+   * @param poolMaximumIdleTime The maximum idle time
+   *
+   * @since 3.4.7
+   */
+  public void setPoolMaximumIdleTime(int poolMaximumIdleTime) {
+    this.poolMaximumIdleTime = poolMaximumIdleTime;
+  }
+
+  /*
+   * Connections opened more than this many milliseconds ago are closed when returned to the pool,
+   * or by the maintenance thread when idle. 0 keeps them forever.
+   *
+   * @param poolMaximumLifetime The maximum lifetime
+   *
+   * @since 3.4.7
+   */
+  public void setPoolMaximumLifetime(int poolMaximumLifetime) {
+    this.poolMaximumLifetime = poolMaximumLifetime;
+  }
+
+  /*
+   * Opens new physical connections on this many background threads instead of the requesting thread.
+   * A thread that finds the pool empty queues up and gets whichever connection becomes available first,
+   * a new one or a returned one, and one connection is requested for every queued thread.
+   *
+   * @param poolConnectionCreatorThreads The number of threads, 0 to open connections in the requesting thread
+   *
+   * @since 3.4.7
+   */
+  public void setPoolConnectionCreatorThreads(int poolConnectionCreatorThreads) {
+    this.poolConnectionCreatorThreads = poolConnectionCreatorThreads;
+    ThreadPoolExecutor executor = connectionCreator;
+    connectionCreator = null;
+    if (executor != null) {
+      executor.shutdown();
+    }
+    if (poolConnectionCreatorThreads > 0) {
+      executor = new ThreadPoolExecutor(poolConnectionCreatorThreads, poolConnectionCreatorThreads, 60, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+              Thread thread = new Thread(runnable, "mybatis-pool-connection-creator");
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+      executor.allowCoreThreadTimeOut(true);
+      connectionCreator = executor;
+    }
+  }
+
+  /*
+   * Keeps up to this many prepared statements open on each connection, least recently used first out,
+   * so that the sessions borrowing the connection one after another do not prepare the same SQL again.
+   * Statements are keyed by their SQL, result set type and concurrency and generated keys option.
+   * Hits and misses are counted in the pool state.
+   *
+   * @param poolPreparedStatementCacheSize The number of statements per connection, 0 to disable the cache
+   *
+   * @since 3.4.7
+   */
+  public void setPoolPreparedStatementCacheSize(int poolPreparedStatementCacheSize) {
+    this.poolPreparedStatementCacheSize = poolPreparedStatementCacheSize;
+    forceCloseAll();
+  }
+
   public String getDriver() {
     return dataSource.getDriver();
   }
@@ -284,6 +432,10 @@ public class PooledDataSource implements DataSource {
     return poolTimeToWait;
   }
 
+  public int getPoolMaximumWaitTime() {
+    return poolMaximumWaitTime;
+  }
+
   public String getPoolPingQuery() {
     return poolPingQuery;
   }
@@ -296,6 +448,34 @@ public class PooledDataSource implements DataSource {
     return poolPingConnectionsNotUsedFor;
   }
 
+  public boolean isPoolConcurrentBagEnabled() {
+    return poolConcurrentBagEnabled;
+  }
+
+  public int getPoolMaintenanceInterval() {
+    return poolMaintenanceInterval;
+  }
+
+  public int getPoolMinimumIdleConnections() {
+    return poolMinimumIdleConnections;
+  }
+
+  public int getPoolMaximumIdleTime() {
+    return poolMaximumIdleTime;
+  }
+
+  public int getPoolMaximumLifetime() {
+    return poolMaximumLifetime;
+  }
+
+  public int getPoolConnectionCreatorThreads() {
+    return poolConnectionCreatorThreads;
+  }
+
+  public int getPoolPreparedStatementCacheSize() {
+    return poolPreparedStatementCacheSize;
+  }
+
   /*
    * Closes all active and idle connections in the pool
    */
@@ -330,6 +510,17 @@ public class PooledDataSource implements DataSource {
           // ignore
         }
       }
+      // queued threads may now open new connections
+      for (PoolState.Waiter waiter : state.waiters) {
+        waiter.wakeUp();
+      }
+    }
+    ConcurrentBag bag = state.connectionBag;
+    for (PooledConnection conn : bag.values()) {
+      if (bag.remove(conn)) {
+        conn.invalidate();
+        closeQuietly(conn);
+      }
     }
     if (log.isDebugEnabled()) {
       log.debug("PooledDataSource forcefully closed/removed all connections.");
@@ -346,25 +537,41 @@ public class PooledDataSource implements DataSource {
 
   protected void pushConnection(PooledConnection conn) throws SQLException {
 
+    // connections of the synchronous pool never leave the initial bag state
+    if (conn.getBagState() != ConcurrentBag.STATE_NOT_IN_USE) {
+      pushConnectionToBag(conn);
+      return;
+    }
+
     synchronized (state) {
       state.activeConnections.remove(conn);
       if (conn.isValid()) {
-        if (state.idleConnections.size() < poolMaximumIdleConnections && conn.getConnectionTypeCode() == expectedConnectionTypeCode) {
-          state.accumulatedCheckoutTime += conn.getCheckoutTime();
+        PoolState.Waiter waiter = state.waiters.peek();
+        if ((waiter != null || state.idleConnections.size() < poolMaximumIdleConnections)
+            && conn.getConnectionTypeCode() == expectedConnectionTypeCode && !isExpired(conn)) {
+          recordCheckoutTime(conn.getCheckoutTime());
           if (!conn.getRealConnection().getAutoCommit()) {
             conn.getRealConnection().rollback();
           }
           PooledConnection newConn = new PooledConnection(conn.getRealConnection(), this);
-          state.idleConnections.add(newConn);
           newConn.setCreatedTimestamp(conn.getCreatedTimestamp());
           newConn.setLastUsedTimestamp(conn.getLastUsedTimestamp());
+          newConn.setStatementCache(conn.getStatementCache());
           conn.invalidate();
-          if (log.isDebugEnabled()) {
-            log.debug("Returned connection " + newConn.getRealHashCode() + " to pool.");
+          if (waiter != null) {
+            // the oldest waiting thread gets it, nobody else is woken up
+            state.handOffToFirstWaiter(newConn);
+            if (log.isDebugEnabled()) {
+              log.debug("Handed connection " + newConn.getRealHashCode() + " over to a waiting thread.");
+            }
+          } else {
+            state.idleConnections.add(newConn);
+            if (log.isDebugEnabled()) {
+              log.debug("Returned connection " + newConn.getRealHashCode() + " to pool.");
+            }
           }
-          state.notifyAll();
         } else {
-          state.accumulatedCheckoutTime += conn.getCheckoutTime();
+          recordCheckoutTime(conn.getCheckoutTime());
           if (!conn.getRealConnection().getAutoCommit()) {
             conn.getRealConnection().rollback();
           }
@@ -373,90 +580,128 @@ public class PooledDataSource implements DataSource {
             log.debug("Closed connection " + conn.getRealHashCode() + ".");
           }
           conn.invalidate();
+          state.wakeUpFirstWaiter();
         }
       } else {
         if (log.isDebugEnabled()) {
           log.debug("A bad connection (" + conn.getRealHashCode() + ") attempted to return to the pool, discarding connection.");
         }
-        state.badConnectionCount++;
+        state.badConnectionCount.increment();
+        state.wakeUpFirstWaiter();
       }
     }
   }
 
   private PooledConnection popConnection(String username, String password) throws SQLException {
     boolean countedWait = false;
+    boolean timedOut = false;
     PooledConnection conn = null;
+    PoolState.Waiter waiter = null;
     long t = System.currentTimeMillis();
+    long waitStarted = 0;
+    long deadline = poolMaximumWaitTime > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(poolMaximumWaitTime) : 0;
     int localBadConnectionCount = 0;
+    PooledConnection created = null;
 
     while (conn == null) {
+      long parkNanos = 0;
+      boolean create = false;
       synchronized (state) {
-        if (!state.idleConnections.isEmpty()) {
+        // Threads that are already queued go first, newcomers may not overtake them
+        boolean firstInLine = state.waiters.isEmpty() || state.waiters.peek() == waiter;
+        boolean canGrow = state.activeConnections.size() + state.pendingConnectionCount + state.handedOffConnectionCount
+            < poolMaximumActiveConnections;
+        if (created != null) {
+          // Opened by this thread outside of the lock
+          conn = created;
+          created = null;
+          state.pendingConnectionCount--;
+        } else if (waiter != null && waiter.error != null) {
+          // The connection opened for us in the background could not be created
+          throw waiter.error;
+        } else if (waiter != null && waiter.connection != null) {
+          // A returning thread handed its connection over
+          conn = waiter.connection;
+          waiter.connection = null;
+          state.handedOffConnectionCount--;
+          if (log.isDebugEnabled()) {
+            log.debug("Checked out connection " + conn.getRealHashCode() + " handed over by a returning thread.");
+          }
+        } else if (firstInLine && !state.idleConnections.isEmpty()) {
           // Pool has available connection
           conn = state.idleConnections.remove(0);
           if (log.isDebugEnabled()) {
             log.debug("Checked out connection " + conn.getRealHashCode() + " from pool.");
           }
-        } else {
-          // Pool does not have available connection
-          if (state.activeConnections.size() < poolMaximumActiveConnections) {
-            // Can create new connection
-            conn = new PooledConnection(dataSource.getConnection(), this);
-            if (log.isDebugEnabled()) {
-              log.debug("Created connection " + conn.getRealHashCode() + ".");
-            }
-          } else {
-            // Cannot create new connection
-            PooledConnection oldestActiveConnection = state.activeConnections.get(0);
-            long longestCheckoutTime = oldestActiveConnection.getCheckoutTime();
-            if (longestCheckoutTime > poolMaximumCheckoutTime) {
-              // Can claim overdue connection
-              state.claimedOverdueConnectionCount++;
-              state.accumulatedCheckoutTimeOfOverdueConnections += longestCheckoutTime;
-              state.accumulatedCheckoutTime += longestCheckoutTime;
-              state.activeConnections.remove(oldestActiveConnection);
-              if (!oldestActiveConnection.getRealConnection().getAutoCommit()) {
-                try {
-                  oldestActiveConnection.getRealConnection().rollback();
-                } catch (SQLException e) {
-                  /*
-                     Just log a message for debug and continue to execute the following
-                     statement like nothing happend.
-                     Wrap the bad connection with a new PooledConnection, this will help
-                     to not intterupt current executing thread and give current thread a
-                     chance to join the next competion for another valid/good database
-                     connection. At the end of this loop, bad {@link @conn} will be set as null.
-                   */
-                  log.debug("Bad connection. Could not roll back");
-                }  
-              }
-              conn = new PooledConnection(oldestActiveConnection.getRealConnection(), this);
-              conn.setCreatedTimestamp(oldestActiveConnection.getCreatedTimestamp());
-              conn.setLastUsedTimestamp(oldestActiveConnection.getLastUsedTimestamp());
-              oldestActiveConnection.invalidate();
-              if (log.isDebugEnabled()) {
-                log.debug("Claimed overdue connection " + conn.getRealHashCode() + ".");
-              }
-            } else {
-              // Must wait
-              try {
-                if (!countedWait) {
-                  state.hadToWaitCount++;
-                  countedWait = true;
-                }
-                if (log.isDebugEnabled()) {
-                  log.debug("Waiting as long as " + poolTimeToWait + " milliseconds for connection.");
-                }
-                long wt = System.currentTimeMillis();
-                state.wait(poolTimeToWait);
-                state.accumulatedWaitTime += System.currentTimeMillis() - wt;
-              } catch (InterruptedException e) {
-                break;
-              }
+        } else if (firstInLine && canGrow && connectionCreator == null) {
+          // Can create new connection, the driver is called once the lock is released
+          state.pendingConnectionCount++;
+          if (waiter != null) {
+            state.waiters.remove(waiter);
+          }
+          create = true;
+        } else if (firstInLine && !canGrow && !state.activeConnections.isEmpty()
+            && state.activeConnections.get(0).getCheckoutTime() > poolMaximumCheckoutTime) {
+          // Can claim overdue connection
+          PooledConnection oldestActiveConnection = state.activeConnections.get(0);
+          long longestCheckoutTime = oldestActiveConnection.getCheckoutTime();
+          state.claimedOverdueConnectionCount.increment();
+          state.accumulatedCheckoutTimeOfOverdueConnections.add(longestCheckoutTime);
+          recordCheckoutTime(longestCheckoutTime);
+          state.activeConnections.remove(oldestActiveConnection);
+          if (!oldestActiveConnection.getRealConnection().getAutoCommit()) {
+            try {
+              oldestActiveConnection.getRealConnection().rollback();
+            } catch (SQLException e) {
+              /*
+                 Just log a message for debug and continue to execute the following
+                 statement like nothing happend.
+                 Wrap the bad connection with a new PooledConnection, this will help
+                 to not intterupt current executing thread and give current thread a
+                 chance to join the next competion for another valid/good database
+                 connection. At the end of this loop, bad {@link @conn} will be set as null.
+               */
+              log.debug("Bad connection. Could not roll back");
             }
           }
+          conn = new PooledConnection(oldestActiveConnection.getRealConnection(), this);
+          conn.setCreatedTimestamp(oldestActiveConnection.getCreatedTimestamp());
+          conn.setLastUsedTimestamp(oldestActiveConnection.getLastUsedTimestamp());
+          oldestActiveConnection.invalidate();
+          // the statements may still be used by the former borrower
+          oldestActiveConnection.closeStatementCache();
+          if (log.isDebugEnabled()) {
+            log.debug("Claimed overdue connection " + conn.getRealHashCode() + ".");
+          }
+        } else {
+          // Must wait
+          if (waiter == null) {
+            waiter = new PoolState.Waiter();
+            state.waiters.add(waiter);
+            waitStarted = System.nanoTime();
+          }
+          if (!countedWait) {
+            state.hadToWaitCount.increment();
+            countedWait = true;
+          }
+          if (connectionCreator != null) {
+            requestConnections();
+          }
+          long remaining = deadline == 0 ? Long.MAX_VALUE : deadline - System.nanoTime();
+          if (remaining <= 0) {
+            state.waiters.remove(waiter);
+            timedOut = true;
+            break;
+          } else if (Thread.currentThread().isInterrupted()) {
+            state.waiters.remove(waiter);
+            break;
+          }
+          parkNanos = poolTimeToWait > 0 ? Math.min(TimeUnit.MILLISECONDS.toNanos(poolTimeToWait), remaining) : remaining;
         }
         if (conn != null) {
+          if (waiter != null) {
+            state.waiters.remove(waiter);
+          }
           // ping to server and check the connection is valid or not
           if (conn.isValid()) {
             if (!conn.getRealConnection().getAutoCommit()) {
@@ -466,13 +711,16 @@ public class PooledDataSource implements DataSource {
             conn.setCheckoutTimestamp(System.currentTimeMillis());
             conn.setLastUsedTimestamp(System.currentTimeMillis());
             state.activeConnections.add(conn);
-            state.requestCount++;
-            state.accumulatedRequestTime += System.currentTimeMillis() - t;
+            state.requestCount.increment();
+            state.accumulatedRequestTime.add(System.currentTimeMillis() - t);
+            if (waiter != null) {
+              state.waitTimeHistogram.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - waitStarted));
+            }
           } else {
             if (log.isDebugEnabled()) {
               log.debug("A bad connection (" + conn.getRealHashCode() + ") was returned from the pool, getting another connection.");
             }
-            state.badConnectionCount++;
+            state.badConnectionCount.increment();
             localBadConnectionCount++;
             conn = null;
             if (localBadConnectionCount > (poolMaximumIdleConnections + poolMaximumLocalBadConnectionTolerance)) {
@@ -481,10 +729,53 @@ public class PooledDataSource implements DataSource {
               }
               throw new SQLException("PooledDataSource: Could not get a good connection to the database.");
             }
+            if (waiter != null) {
+              // back in line ahead of everybody else, so that the next pass may use the room the bad connection
+              // left instead of parking with nobody to wake it up
+              state.waiters.addFirst(waiter);
+            }
+          }
+        }
+      }
+
+      if (create) {
+        boolean opened = false;
+        try {
+          created = openConnection();
+          opened = true;
+          if (log.isDebugEnabled()) {
+            log.debug("Created connection " + created.getRealHashCode() + ".");
+          }
+        } finally {
+          if (!opened) {
+            synchronized (state) {
+              state.pendingConnectionCount--;
+              state.wakeUpFirstWaiter();
+            }
           }
         }
+        continue;
+      }
+
+      if (parkNanos > 0) {
+        if (log.isDebugEnabled()) {
+          log.debug("Waiting as long as " + TimeUnit.NANOSECONDS.toMillis(parkNanos) + " milliseconds for connection.");
+        }
+        long wt = System.nanoTime();
+        if (parkNanos == Long.MAX_VALUE) {
+          LockSupport.park(state);
+        } else {
+          LockSupport.parkNanos(state, parkNanos);
+        }
+        state.accumulatedWaitTime.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - wt));
       }
+    }
 
+    if (timedOut) {
+      if (log.isDebugEnabled()) {
+        log.debug("PooledDataSource: Timed out after waiting " + poolMaximumWaitTime + " milliseconds for a connection.");
+      }
+      throw new SQLException("PooledDataSource: Timed out after waiting " + poolMaximumWaitTime + " milliseconds for a connection.");
     }
 
     if (conn == null) {
@@ -497,6 +788,520 @@ public class PooledDataSource implements DataSource {
     return conn;
   }
 
+  private void pushConnectionToBag(PooledConnection conn) throws SQLException {
+    ConcurrentBag bag = state.connectionBag;
+    if (conn.isValid()) {
+      recordCheckoutTime(conn.getCheckoutTime());
+      if (!conn.getRealConnection().getAutoCommit()) {
+        conn.getRealConnection().rollback();
+      }
+      if (conn.getConnectionTypeCode() == expectedConnectionTypeCode && !isExpired(conn)
+          && (bag.getWaitingThreadCount() > 0 || bag.getCount(ConcurrentBag.STATE_NOT_IN_USE) < poolMaximumIdleConnections)) {
+        // the proxy held by the caller must not reach the connection any more
+        conn.renewProxyConnection();
+        bag.requite(conn);
+        if (log.isDebugEnabled()) {
+          log.debug("Returned connection " + conn.getRealHashCode() + " to pool.");
+        }
+      } else {
+        if (bag.remove(conn)) {
+          conn.invalidate();
+          conn.getRealConnection().close();
+          if (log.isDebugEnabled()) {
+            log.debug("Closed connection " + conn.getRealHashCode() + ".");
+          }
+        }
+      }
+    } else {
+      if (log.isDebugEnabled()) {
+        log.debug("A bad connection (" + conn.getRealHashCode() + ") attempted to return to the pool, discarding connection.");
+      }
+      state.badConnectionCount.increment();
+      if (bag.remove(conn)) {
+        closeQuietly(conn);
+      }
+    }
+  }
+
+  private PooledConnection popConnectionFromBag(String username, String password) throws SQLException {
+    ConcurrentBag bag = state.connectionBag;
+    boolean countedWait = false;
+    long t = System.currentTimeMillis();
+    long waitStarted = 0;
+    long deadline = poolMaximumWaitTime > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(poolMaximumWaitTime) : 0;
+    int localBadConnectionCount = 0;
+
+    while (true) {
+      PooledConnection conn;
+      try {
+        conn = bag.borrow(0, TimeUnit.MILLISECONDS);
+        boolean requested = false;
+        if (conn == null) {
+          if (connectionCreator == null) {
+            conn = createBagConnection();
+          } else {
+            requested = requestBagConnection();
+          }
+        }
+        if (conn == null && !requested) {
+          conn = claimOverdueBagConnection();
+        }
+        if (conn == null) {
+          if (!countedWait) {
+            state.hadToWaitCount.increment();
+            countedWait = true;
+            waitStarted = System.nanoTime();
+          }
+          long remaining = deadline == 0 ? Long.MAX_VALUE : deadline - System.nanoTime();
+          if (remaining <= 0) {
+            if (log.isDebugEnabled()) {
+              log.debug("PooledDataSource: Timed out after waiting " + poolMaximumWaitTime + " milliseconds for a connection.");
+            }
+            throw new SQLException("PooledDataSource: Timed out after waiting " + poolMaximumWaitTime + " milliseconds for a connection.");
+          }
+          long waitNanos = poolTimeToWait > 0 ? Math.min(TimeUnit.MILLISECONDS.toNanos(poolTimeToWait), remaining) : remaining;
+          if (log.isDebugEnabled()) {
+            log.debug("Waiting as long as " + TimeUnit.NANOSECONDS.toMillis(waitNanos) + " milliseconds for connection.");
+          }
+          long wt = System.nanoTime();
+          conn = bag.borrow(waitNanos, TimeUnit.NANOSECONDS);
+          state.accumulatedWaitTime.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - wt));
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+      if (conn == null) {
+        continue;
+      }
+      if (conn.isValid()) {
+        if (!conn.getRealConnection().getAutoCommit()) {
+          conn.getRealConnection().rollback();
+        }
+        conn.setConnectionTypeCode(assembleConnectionTypeCode(dataSource.getUrl(), username, password));
+        conn.setCheckoutTimestamp(System.currentTimeMillis());
+        conn.setLastUsedTimestamp(System.currentTimeMillis());
+        state.requestCount.increment();
+        state.accumulatedRequestTime.add(System.currentTimeMillis() - t);
+        if (countedWait) {
+          state.waitTimeHistogram.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - waitStarted));
+        }
+        if (log.isDebugEnabled()) {
+          log.debug("Checked out connection " + conn.getRealHashCode() + " from pool.");
+        }
+        return conn;
+      }
+      if (log.isDebugEnabled()) {
+        log.debug("A bad connection (" + conn.getRealHashCode() + ") was returned from the pool, getting another connection.");
+      }
+      state.badConnectionCount.increment();
+      if (bag.remove(conn)) {
+        conn.invalidate();
+        closeQuietly(conn);
+      }
+      localBadConnectionCount++;
+      if (localBadConnectionCount > (poolMaximumIdleConnections + poolMaximumLocalBadConnectionTolerance)) {
+        if (log.isDebugEnabled()) {
+          log.debug("PooledDataSource: Could not get a good connection to the database.");
+        }
+        throw new SQLException("PooledDataSource: Could not get a good connection to the database.");
+      }
+    }
+
+    if (log.isDebugEnabled()) {
+      log.debug("PooledDataSource: Unknown severe error condition.  The connection pool returned a null connection.");
+    }
+    throw new SQLException("PooledDataSource: Unknown severe error condition.  The connection pool returned a null connection.");
+  }
+
+  private PooledConnection createBagConnection() throws SQLException {
+    ConcurrentBag bag = state.connectionBag;
+    if (!bag.reserveSlot(poolMaximumActiveConnections)) {
+      return null;
+    }
+    boolean created = false;
+    try {
+      PooledConnection conn = openConnection();
+      bag.add(conn, ConcurrentBag.STATE_IN_USE);
+      created = true;
+      if (log.isDebugEnabled()) {
+        log.debug("Created connection " + conn.getRealHashCode() + ".");
+      }
+      return conn;
+    } finally {
+      if (!created) {
+        bag.releaseSlot();
+      }
+    }
+  }
+
+  private PooledConnection claimOverdueBagConnection() {
+    ConcurrentBag bag = state.connectionBag;
+    for (PooledConnection conn : bag.values(ConcurrentBag.STATE_IN_USE)) {
+      long checkoutTime = conn.getCheckoutTime();
+      if (checkoutTime > poolMaximumCheckoutTime && conn.compareAndSetBagState(ConcurrentBag.STATE_IN_USE, ConcurrentBag.STATE_RESERVED)) {
+        state.claimedOverdueConnectionCount.increment();
+        state.accumulatedCheckoutTimeOfOverdueConnections.add(checkoutTime);
+        recordCheckoutTime(checkoutTime);
+        try {
+          if (!conn.getRealConnection().getAutoCommit()) {
+            conn.getRealConnection().rollback();
+          }
+        } catch (SQLException e) {
+          // same as the synchronous pool, the validity check right after will discard it if it is really bad
+          log.debug("Bad connection. Could not roll back");
+        }
+        conn.renewProxyConnection();
+        // the statements may still be used by the former borrower
+        conn.closeStatementCache();
+        conn.setBagState(ConcurrentBag.STATE_IN_USE);
+        if (log.isDebugEnabled()) {
+          log.debug("Claimed overdue connection " + conn.getRealHashCode() + ".");
+        }
+        return conn;
+      }
+    }
+    return null;
+  }
+
+  private PooledConnection openConnection() throws SQLException {
+    long start = System.nanoTime();
+    Connection realConn = dataSource.getConnection();
+    state.creationTimeHistogram.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+    return new PooledConnection(realConn, this);
+  }
+
+  private void recordCheckoutTime(long checkoutTime) {
+    state.accumulatedCheckoutTime.add(checkoutTime);
+    state.checkoutTimeHistogram.record(TimeUnit.MILLISECONDS.toMicros(checkoutTime));
+  }
+
+  private void closeQuietly(PooledConnection conn) {
+    try {
+      Connection realConn = conn.getRealConnection();
+      if (!realConn.getAutoCommit()) {
+        realConn.rollback();
+      }
+      realConn.close();
+    } catch (Exception e) {
+      // ignore
+    }
+  }
+
+  private void startMaintenance() {
+    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "mybatis-pool-maintenance");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    executor.scheduleWithFixedDelay(new MaintenanceTask(this, executor), 0, poolMaintenanceInterval, TimeUnit.MILLISECONDS);
+    maintenanceExecutor = executor;
+  }
+
+  private void stopMaintenance() {
+    ScheduledExecutorService executor = maintenanceExecutor;
+    if (executor != null) {
+      maintenanceExecutor = null;
+      executor.shutdownNow();
+    }
+  }
+
+  /*
+   * One run of the maintenance thread: validates and evicts idle connections,
+   * then tops the pool up to poolMinimumIdleConnections.
+   */
+  void maintainPool() {
+    if (poolConcurrentBagEnabled) {
+      maintainBag();
+    } else {
+      maintainIdleConnections();
+    }
+    fillPool();
+  }
+
+  private void maintainIdleConnections() {
+    List<PooledConnection> evicted = new ArrayList<PooledConnection>();
+    int toValidate = 0;
+    synchronized (state) {
+      int idle = state.idleConnections.size();
+      for (Iterator<PooledConnection> it = state.idleConnections.iterator(); it.hasNext();) {
+        PooledConnection conn = it.next();
+        if (isExpired(conn) || (isIdleTooLong(conn) && idle > poolMinimumIdleConnections)) {
+          it.remove();
+          idle--;
+          evicted.add(conn);
+        } else if (needsValidation(conn)) {
+          toValidate++;
+        }
+      }
+    }
+    for (PooledConnection conn : evicted) {
+      conn.invalidate();
+      closeQuietly(conn);
+      if (log.isDebugEnabled()) {
+        log.debug("Evicted idle connection " + conn.getRealHashCode() + ".");
+      }
+    }
+    // take them out one at a time so that the pool is never short of more than one connection
+    for (int i = 0; i < toValidate; i++) {
+      PooledConnection conn = null;
+      synchronized (state) {
+        for (Iterator<PooledConnection> it = state.idleConnections.iterator(); it.hasNext();) {
+          PooledConnection candidate = it.next();
+          if (needsValidation(candidate)) {
+            it.remove();
+            conn = candidate;
+            break;
+          }
+        }
+      }
+      if (conn == null) {
+        break;
+      }
+      boolean good = pingConnection(conn, true);
+      synchronized (state) {
+        if (good) {
+          conn.setLastUsedTimestamp(System.currentTimeMillis());
+          returnIdleConnection(conn);
+        } else {
+          state.badConnectionCount.increment();
+          state.wakeUpFirstWaiter();
+        }
+      }
+      if (!good) {
+        conn.invalidate();
+        closeQuietly(conn);
+      }
+    }
+  }
+
+  private void maintainBag() {
+    ConcurrentBag bag = state.connectionBag;
+    List<PooledConnection> idleConnections = bag.values(ConcurrentBag.STATE_NOT_IN_USE);
+    int idle = idleConnections.size();
+    for (PooledConnection conn : idleConnections) {
+      if (!bag.reserve(conn)) {
+        continue;
+      }
+      if (isExpired(conn) || (isIdleTooLong(conn) && idle > poolMinimumIdleConnections)) {
+        if (bag.remove(conn)) {
+          idle--;
+          conn.invalidate();
+          closeQuietly(conn);
+          if (log.isDebugEnabled()) {
+            log.debug("Evicted idle connection " + conn.getRealHashCode() + ".");
+          }
+        }
+      } else if (needsValidation(conn) && !pingConnection(conn, true)) {
+        state.badConnectionCount.increment();
+        if (bag.remove(conn)) {
+          conn.invalidate();
+          closeQuietly(conn);
+        }
+      } else {
+        if (needsValidation(conn)) {
+          conn.setLastUsedTimestamp(System.currentTimeMillis());
+        }
+        bag.unreserve(conn);
+      }
+    }
+  }
+
+  private void fillPool() {
+    ConcurrentBag bag = state.connectionBag;
+    int minimumIdle = Math.min(poolMinimumIdleConnections, poolMaximumIdleConnections);
+    while (true) {
+      if (poolConcurrentBagEnabled) {
+        if (bag.getCount(ConcurrentBag.STATE_NOT_IN_USE) >= minimumIdle
+            || !bag.reserveSlot(poolMaximumActiveConnections)) {
+          return;
+        }
+      } else {
+        synchronized (state) {
+          if (state.idleConnections.size() >= minimumIdle
+              || state.activeConnections.size() + state.idleConnections.size() + state.pendingConnectionCount
+                  + state.handedOffConnectionCount >= poolMaximumActiveConnections) {
+            return;
+          }
+          state.pendingConnectionCount++;
+        }
+      }
+      PooledConnection conn = null;
+      try {
+        conn = openConnection();
+        conn.setConnectionTypeCode(expectedConnectionTypeCode);
+        if (log.isDebugEnabled()) {
+          log.debug("Created idle connection " + conn.getRealHashCode() + ".");
+        }
+      } catch (SQLException e) {
+        log.warn("Could not open an idle connection: " + e.getMessage());
+      }
+      if (poolConcurrentBagEnabled) {
+        if (conn == null) {
+          bag.releaseSlot();
+          return;
+        }
+        bag.add(conn, ConcurrentBag.STATE_NOT_IN_USE);
+      } else {
+        synchronized (state) {
+          state.pendingConnectionCount--;
+          if (conn == null) {
+            state.wakeUpFirstWaiter();
+            return;
+          }
+          returnIdleConnection(conn);
+        }
+      }
+    }
+  }
+
+  /*
+   * Gives an idle connection to the oldest waiting thread or puts it back into the idle list,
+   * must be called holding the state monitor.
+   */
+  private void returnIdleConnection(PooledConnection conn) {
+    PoolState.Waiter waiter = state.waiters.peek();
+    if (conn.getConnectionTypeCode() != expectedConnectionTypeCode
+        || (waiter == null && state.idleConnections.size() >= poolMaximumIdleConnections)) {
+      // the pool was reset meanwhile or nobody needs it
+      conn.invalidate();
+      closeQuietly(conn);
+      state.wakeUpFirstWaiter();
+    } else if (waiter != null) {
+      state.handOffToFirstWaiter(conn);
+    } else {
+      state.idleConnections.add(conn);
+    }
+  }
+
+  /*
+   * Asks the creator threads for one new connection per queued thread that is not already expecting one,
+   * must be called holding the state monitor.
+   */
+  private void requestConnections() {
+    while (state.waiters.size() > state.pendingConnectionCount
+        && state.activeConnections.size() + state.idleConnections.size() + state.pendingConnectionCount
+            + state.handedOffConnectionCount < poolMaximumActiveConnections) {
+      state.pendingConnectionCount++;
+      try {
+        connectionCreator.execute(new Runnable() {
+          @Override
+          public void run() {
+            openIdleConnection();
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        // creator threads were just stopped, the waiter will open the connection itself
+        state.pendingConnectionCount--;
+        return;
+      }
+    }
+  }
+
+  private void openIdleConnection() {
+    PooledConnection conn = null;
+    SQLException error = null;
+    try {
+      conn = openConnection();
+      conn.setConnectionTypeCode(expectedConnectionTypeCode);
+      if (log.isDebugEnabled()) {
+        log.debug("Created connection " + conn.getRealHashCode() + " in the background.");
+      }
+    } catch (SQLException e) {
+      error = e;
+    } catch (RuntimeException e) {
+      error = new SQLException("PooledDataSource: Could not open a connection. Cause: " + e, e);
+    }
+    synchronized (state) {
+      state.pendingConnectionCount--;
+      if (conn != null) {
+        returnIdleConnection(conn);
+      } else {
+        PoolState.Waiter waiter = state.waiters.poll();
+        if (waiter != null) {
+          waiter.fail(error);
+        }
+      }
+    }
+  }
+
+  /*
+   * Asks the creator threads for one new connection that will be handed to the first thread waiting on the bag.
+   *
+   * @return false if the pool is already full
+   */
+  private boolean requestBagConnection() {
+    final ConcurrentBag bag = state.connectionBag;
+    if (!bag.reserveSlot(poolMaximumActiveConnections)) {
+      return false;
+    }
+    try {
+      connectionCreator.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            PooledConnection conn = openConnection();
+            conn.setConnectionTypeCode(expectedConnectionTypeCode);
+            bag.add(conn, ConcurrentBag.STATE_NOT_IN_USE);
+            if (log.isDebugEnabled()) {
+              log.debug("Created connection " + conn.getRealHashCode() + " in the background.");
+            }
+          } catch (Exception e) {
+            bag.releaseSlot();
+            log.warn("Could not open a connection: " + e.getMessage());
+          }
+        }
+      });
+      return true;
+    } catch (RejectedExecutionException e) {
+      bag.releaseSlot();
+      return false;
+    }
+  }
+
+  private boolean isExpired(PooledConnection conn) {
+    return poolMaximumLifetime > 0 && conn.getAge() > poolMaximumLifetime;
+  }
+
+  private boolean isIdleTooLong(PooledConnection conn) {
+    return poolMaximumIdleTime > 0 && conn.getTimeElapsedSinceLastUse() > poolMaximumIdleTime;
+  }
+
+  private boolean needsValidation(PooledConnection conn) {
+    return poolPingEnabled && poolPingConnectionsNotUsedFor >= 0 && conn.getTimeElapsedSinceLastUse() > poolPingConnectionsNotUsedFor;
+  }
+
+  /*
+   * Holds the data source weakly so that an abandoned pool can still be garbage collected.
+   */
+  private static class MaintenanceTask implements Runnable {
+
+    private final WeakReference<PooledDataSource> dataSource;
+    private final ScheduledExecutorService executor;
+
+    MaintenanceTask(PooledDataSource dataSource, ScheduledExecutorService executor) {
+      this.dataSource = new WeakReference<PooledDataSource>(dataSource);
+      this.executor = executor;
+    }
+
+    @Override
+    public void run() {
+      PooledDataSource ds = dataSource.get();
+      if (ds == null) {
+        executor.shutdown();
+        return;
+      }
+      try {
+        ds.maintainPool();
+      } catch (Exception e) {
+        log.warn("Pool maintenance failed: " + e.getMessage());
+      }
+    }
+  }
+
   /*
    * Method to check to see if a connection is still usable
    *
@@ -504,6 +1309,11 @@ public class PooledDataSource implements DataSource {
    * @return True if the connection is still usable
    */
   protected boolean pingConnection(PooledConnection conn) {
+    // when the maintenance thread is running it validates idle connections, keep the ping query off the request path
+    return pingConnection(conn, maintenanceExecutor == null);
+  }
+
+  private boolean pingConnection(PooledConnection conn, boolean runPingQuery) {
     boolean result = true;
 
     try {
@@ -516,7 +1326,7 @@ public class PooledDataSource implements DataSource {
     }
 
     if (result) {
-      if (poolPingEnabled) {
+      if (poolPingEnabled && runPingQuery) {
         if (poolPingConnectionsNotUsedFor >= 0 && conn.getTimeElapsedSinceLastUse() > poolPingConnectionsNotUsedFor) {
           try {
             if (log.isDebugEnabled()) {
@@ -569,6 +1379,8 @@ public class PooledDataSource implements DataSource {
   }
 
   protected void finalize() throws Throwable {
+    stopMaintenance();
+    setPoolConnectionCreatorThreads(0);
     forceCloseAll();
     super.finalize();
   }
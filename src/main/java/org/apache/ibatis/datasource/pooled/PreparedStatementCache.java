@@ -0,0 +1,349 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.reflection.ExceptionUtil;
+
+/**
+ * The least recently used prepared statements of a physical connection, kept open for all the sessions that
+ * borrow it.
+ * <p>
+ * A cached statement is handed out behind a proxy whose close() clears its parameters and gives it back
+ * instead of closing it. The proxy stops working once closed, even if the statement is handed out again, and
+ * its getConnection() returns the pooled connection it was prepared through. The settings of the statement a
+ * borrower changes are restored when it is given back; a statement whose settings cannot be read back, such
+ * as its escape processing or cursor name, is closed instead.
+ * A statement is never handed out twice at the same time: preparing the same SQL while it is in use returns a
+ * statement of its own which is closed as usual. A statement evicted while in use is closed when given back.
+ */
+class PreparedStatementCache {
+
+  private static final Class<?>[] PREPARED_STATEMENT = new Class<?>[] { PreparedStatement.class };
+  private static final Class<?>[] CALLABLE_STATEMENT = new Class<?>[] { CallableStatement.class };
+  // the settings restored when a statement is given back, by setter, and how to read them
+  private static final Map<String, String> RESTORED_SETTINGS = new HashMap<String, String>();
+
+  static {
+    RESTORED_SETTINGS.put("setFetchSize", "getFetchSize");
+    RESTORED_SETTINGS.put("setFetchDirection", "getFetchDirection");
+    RESTORED_SETTINGS.put("setQueryTimeout", "getQueryTimeout");
+    RESTORED_SETTINGS.put("setMaxRows", "getMaxRows");
+    RESTORED_SETTINGS.put("setMaxFieldSize", "getMaxFieldSize");
+    RESTORED_SETTINGS.put("setPoolable", "isPoolable");
+  }
+
+  private final Connection realConnection;
+  private final PoolState state;
+  private final Map<Key, CachedStatement> statements;
+  private boolean closed;
+
+  PreparedStatementCache(Connection realConnection, final int size, PoolState state) {
+    this.realConnection = realConnection;
+    this.state = state;
+    this.statements = new LinkedHashMap<Key, CachedStatement>(16, .75F, true) {
+      private static final long serialVersionUID = 2463916316823713538L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, CachedStatement> eldest) {
+        boolean tooBig = size() > size;
+        if (tooBig) {
+          evict(eldest.getValue());
+        }
+        return tooBig;
+      }
+    };
+  }
+
+  /*
+   * Prepares a statement with one of the prepareStatement or prepareCall methods of the connection,
+   * reusing a cached one when available.
+   */
+  Object prepare(Connection connection, Method method, Object[] args) throws Throwable {
+    Key key = Key.of(method, args);
+    if (key == null) {
+      return invokeMethod(realConnection, method, args);
+    }
+    synchronized (this) {
+      CachedStatement cached = closed ? null : statements.get(key);
+      if (cached != null && !cached.inUse) {
+        state.statementCacheHitCount.increment();
+        return cached.checkout(connection);
+      }
+      state.statementCacheMissCount.increment();
+      PreparedStatement statement = (PreparedStatement) invokeMethod(realConnection, method, args);
+      if (cached != null || closed) {
+        return statement;
+      }
+      cached = new CachedStatement(key, statement);
+      statements.put(key, cached);
+      return cached.checkout(connection);
+    }
+  }
+
+  /*
+   * Gives back the statements the borrower of the connection did not close.
+   */
+  synchronized void releaseAll() {
+    for (CachedStatement cached : new ArrayList<CachedStatement>(statements.values())) {
+      if (cached.inUse) {
+        release(cached, cached.proxy);
+      }
+    }
+  }
+
+  /*
+   * Closes the statements that are not in use, the others are closed when given back.
+   */
+  synchronized void close() {
+    closed = true;
+    for (CachedStatement cached : statements.values()) {
+      cached.evicted = true;
+      if (!cached.inUse) {
+        closeQuietly(cached.statement);
+      }
+    }
+    statements.clear();
+  }
+
+  synchronized int size() {
+    return statements.size();
+  }
+
+  private synchronized void release(CachedStatement cached, Object proxy) {
+    if (proxy != cached.proxy) {
+      // already given back through another proxy
+      return;
+    }
+    cached.proxy = null;
+    cached.connection = null;
+    cached.inUse = false;
+    if (!cached.evicted) {
+      try {
+        if (cached.reset()) {
+          return;
+        }
+      } catch (Throwable t) {
+        // closed below
+      }
+      statements.remove(cached.key);
+    }
+    closeQuietly(cached.statement);
+  }
+
+  private void evict(CachedStatement cached) {
+    cached.evicted = true;
+    if (!cached.inUse) {
+      closeQuietly(cached.statement);
+    }
+  }
+
+  private static Object invokeMethod(Object target, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (Throwable t) {
+      throw ExceptionUtil.unwrapThrowable(t);
+    }
+  }
+
+  private static void closeQuietly(Statement statement) {
+    try {
+      statement.close();
+    } catch (SQLException e) {
+      // ignore
+    }
+  }
+
+  private class CachedStatement implements InvocationHandler {
+
+    private final Key key;
+    private final PreparedStatement statement;
+    // guarded by the cache
+    private Object proxy;
+    private Connection connection;
+    private boolean inUse;
+    private boolean evicted;
+    // only touched by the borrower
+    private final Map<Method, Object> changedSettings = new HashMap<Method, Object>();
+    private boolean settingsLost;
+    private boolean batched;
+
+    CachedStatement(Key key, PreparedStatement statement) {
+      this.key = key;
+      this.statement = statement;
+    }
+
+    Object checkout(Connection connection) {
+      inUse = true;
+      this.connection = connection;
+      proxy = Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+          key.callable ? CALLABLE_STATEMENT : PREPARED_STATEMENT, this);
+      return proxy;
+    }
+
+    /*
+     * Makes the statement as it was prepared for the next borrower, false if it cannot be.
+     */
+    boolean reset() throws Throwable {
+      if (settingsLost) {
+        return false;
+      }
+      if (batched) {
+        statement.clearBatch();
+        batched = false;
+      }
+      statement.clearParameters();
+      statement.clearWarnings();
+      for (Map.Entry<Method, Object> setting : changedSettings.entrySet()) {
+        invokeMethod(statement, setting.getKey(), new Object[] { setting.getValue() });
+      }
+      changedSettings.clear();
+      return true;
+    }
+
+    private void settingChanged(Method setter) throws Throwable {
+      String getter = RESTORED_SETTINGS.get(setter.getName());
+      if (getter == null) {
+        settingsLost = true;
+      } else if (!changedSettings.containsKey(setter)) {
+        changedSettings.put(setter, invokeMethod(statement, Statement.class.getMethod(getter), null));
+      }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String methodName = method.getName();
+      if (Object.class.equals(method.getDeclaringClass())) {
+        if ("equals".equals(methodName)) {
+          return proxy == args[0];
+        } else if ("hashCode".equals(methodName)) {
+          return System.identityHashCode(proxy);
+        }
+        return invokeMethod(statement, method, args);
+      }
+      if ("close".equals(methodName)) {
+        release(this, proxy);
+        return null;
+      }
+      boolean stale;
+      Connection connection;
+      synchronized (PreparedStatementCache.this) {
+        stale = proxy != this.proxy;
+        connection = this.connection;
+      }
+      if ("isClosed".equals(methodName)) {
+        return stale || statement.isClosed();
+      } else if (stale) {
+        throw new SQLException("Error accessing PreparedStatement. Statement has already been closed.");
+      } else if ("getConnection".equals(methodName)) {
+        return connection;
+      } else if (Statement.class.equals(method.getDeclaringClass())
+          && (methodName.startsWith("set") || "closeOnCompletion".equals(methodName))) {
+        settingChanged(method);
+      } else if ("addBatch".equals(methodName)) {
+        batched = true;
+      }
+      return invokeMethod(statement, method, args);
+    }
+  }
+
+  /*
+   * The SQL and the options a statement was prepared with.
+   */
+  private static final class Key {
+
+    private final String sql;
+    private final boolean callable;
+    private final int resultSetType;
+    private final int resultSetConcurrency;
+    private final int autoGeneratedKeys;
+    private final List<String> columnNames;
+
+    private Key(String sql, boolean callable, int resultSetType, int resultSetConcurrency, int autoGeneratedKeys,
+        List<String> columnNames) {
+      this.sql = sql;
+      this.callable = callable;
+      this.resultSetType = resultSetType;
+      this.resultSetConcurrency = resultSetConcurrency;
+      this.autoGeneratedKeys = autoGeneratedKeys;
+      this.columnNames = columnNames;
+    }
+
+    /*
+     * The key of a prepareStatement or prepareCall call, null for the overloads that are not cached.
+     */
+    static Key of(Method method, Object[] args) {
+      boolean callable = "prepareCall".equals(method.getName());
+      Class<?>[] types = method.getParameterTypes();
+      String sql = (String) args[0];
+      if (sql == null) {
+        return null;
+      } else if (types.length == 1) {
+        return new Key(sql, callable, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY,
+            Statement.NO_GENERATED_KEYS, null);
+      } else if (types.length == 3 && types[1] == int.class && types[2] == int.class) {
+        return new Key(sql, callable, (Integer) args[1], (Integer) args[2], Statement.NO_GENERATED_KEYS, null);
+      } else if (!callable && types.length == 2 && types[1] == int.class) {
+        return new Key(sql, false, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, (Integer) args[1], null);
+      } else if (!callable && types.length == 2 && types[1] == String[].class && args[1] != null) {
+        return new Key(sql, false, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY,
+            Statement.RETURN_GENERATED_KEYS, Arrays.asList((String[]) args[1]));
+      }
+      return null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return sql.equals(other.sql) && callable == other.callable && resultSetType == other.resultSetType
+          && resultSetConcurrency == other.resultSetConcurrency && autoGeneratedKeys == other.autoGeneratedKeys
+          && (columnNames == null ? other.columnNames == null : columnNames.equals(other.columnNames));
+    }
+
+    @Override
+    public int hashCode() {
+      int result = sql.hashCode();
+      result = 31 * result + (callable ? 1 : 0);
+      result = 31 * result + resultSetType;
+      result = 31 * result + resultSetConcurrency;
+      result = 31 * result + autoGeneratedKeys;
+      result = 31 * result + (columnNames == null ? 0 : columnNames.hashCode());
+      return result;
+    }
+  }
+
+}
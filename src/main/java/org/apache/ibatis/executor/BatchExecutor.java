@@ -20,9 +20,22 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.ibatis.cache.decorators.TableInvalidationCache;
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
@@ -30,6 +43,7 @@ import org.apache.ibatis.executor.keygen.NoKeyGenerator;
 import org.apache.ibatis.executor.statement.StatementHandler;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
@@ -43,7 +57,17 @@ public class BatchExecutor extends BaseExecutor {
   public static final int BATCH_UPDATE_RETURN_VALUE = Integer.MIN_VALUE + 1002;
 
   private final List<Statement> statementList = new ArrayList<Statement>();
+  private final List<MultiRowInsert> multiRowInsertList = new ArrayList<MultiRowInsert>();
   private final List<BatchResult> batchResultList = new ArrayList<BatchResult>();
+  private final List<BatchResult> flushedResultList = new ArrayList<BatchResult>();
+  private int bufferedParameterCount;
+  private final Map<String, Integer> insertBatchIndexes = new HashMap<String, Integer>();
+  // the table each pending batch inserts into, null for the other statements
+  private final List<String> insertedTables = new ArrayList<String>();
+  private final Map<String, List<String>> insertTables = new HashMap<String, List<String>>();
+  private final LinkedList<Future<List<BatchResult>>> inFlightBatches = new LinkedList<Future<List<BatchResult>>>();
+  private volatile boolean inFlightBatchesDiscarded;
+  private ExecutorService flusher;
   private String currentSql;
   private MappedStatement currentStatement;
 
@@ -58,27 +82,125 @@ public class BatchExecutor extends BaseExecutor {
     final BoundSql boundSql = handler.getBoundSql();
     final String sql = boundSql.getSql();
     final Statement stmt;
-    if (sql.equals(currentSql) && ms.equals(currentStatement)) {
-      int last = statementList.size() - 1;
-      stmt = statementList.get(last);
-      applyTransactionTimeout(stmt);
-     handler.parameterize(stmt);//fix Issues 322
-      BatchResult batchResult = batchResultList.get(last);
+    final MultiRowInsert multiRowInsert;
+    final int index = findBatch(ms, sql);
+    final BatchResult batchResult;
+    if (index >= 0) {
+      stmt = statementList.get(index);
+      multiRowInsert = multiRowInsertList.get(index);
+      if (multiRowInsert == null) {
+        applyTransactionTimeout(stmt);
+       handler.parameterize(stmt);//fix Issues 322
+      } else {
+        multiRowInsert.addRow(boundSql);
+      }
+      batchResult = batchResultList.get(index);
       batchResult.addParameterObject(parameterObject);
     } else {
-      Connection connection = getConnection(ms.getStatementLog());
-      stmt = handler.prepare(connection, transaction.getTimeout());
-      handler.parameterize(stmt);    //fix Issues 322
+      multiRowInsert = configuration.isMultiRowInsertEnabled() ? MultiRowInsert.of(ms, boundSql) : null;
+      if (multiRowInsert == null) {
+        Connection connection = getConnection(ms.getStatementLog());
+        stmt = handler.prepare(connection, transaction.getTimeout());
+        handler.parameterize(stmt);    //fix Issues 322
+      } else {
+        stmt = null;
+        multiRowInsert.addRow(boundSql);
+      }
       currentSql = sql;
       currentStatement = ms;
+      batchResult = new BatchResult(ms, sql, parameterObject);
+      if (configuration.isBatchReorderingEnabled()) {
+        if (ms.getSqlCommandType() == SqlCommandType.INSERT) {
+          insertBatchIndexes.put(sql, statementList.size());
+          List<String> tables = tablesOf(ms, sql);
+          insertedTables.add(tables.isEmpty() ? null : tables.get(0));
+        } else {
+          insertBatchIndexes.clear();
+          insertedTables.add(null);
+        }
+      }
       statementList.add(stmt);
-      batchResultList.add(new BatchResult(ms, sql, parameterObject));
+      multiRowInsertList.add(multiRowInsert);
+      batchResultList.add(batchResult);
     }
   // handler.parameterize(stmt);
-    handler.batch(stmt);
+    if (multiRowInsert == null) {
+      handler.batch(stmt);
+    }
+    bufferedParameterCount++;
+    if (isBatchFull(batchResult)) {
+      if (canFlushInBackground()) {
+        flushInBackground();
+      } else {
+        flushedResultList.addAll(flushStatements());
+      }
+    }
     return BATCH_UPDATE_RETURN_VALUE;
   }
 
+  /**
+   * Returns the index of the pending statement the update can be added to, or -1 when it needs a new one.
+   * <p>
+   * By default only the last statement is reused, so that updates run exactly in the order they were added.
+   * With batch reordering, an insert also joins the earlier insert with the same SQL, as long as no update
+   * or delete has been added since and none of the batches added after it inserts into a table of the insert.
+   * The tables of an insert are those found in its SQL, the one it inserts into first, and those declared on
+   * its statement: an insert referencing another table must declare it, or it may be executed before a row
+   * it references that was added earlier. Otherwise each SQL is executed where it first appeared.
+   */
+  private int findBatch(MappedStatement ms, String sql) {
+    if (sql.equals(currentSql) && ms.equals(currentStatement)) {
+      return statementList.size() - 1;
+    }
+    if (configuration.isBatchReorderingEnabled() && ms.getSqlCommandType() == SqlCommandType.INSERT) {
+      Integer index = insertBatchIndexes.get(sql);
+      if (index != null && ms.equals(batchResultList.get(index).getMappedStatement())
+          && !insertsIntoTablesOf(ms, sql, index + 1)) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  /*
+   * Whether a pending batch from the given one on inserts into one of the tables of the insert.
+   */
+  private boolean insertsIntoTablesOf(MappedStatement ms, String sql, int fromIndex) {
+    List<String> tables = tablesOf(ms, sql);
+    for (int i = fromIndex; i < insertedTables.size(); i++) {
+      String table = insertedTables.get(i);
+      if (table != null && tables.contains(table)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private List<String> tablesOf(MappedStatement ms, String sql) {
+    List<String> tables = insertTables.get(sql);
+    if (tables == null) {
+      tables = new ArrayList<String>();
+      String[] found = TableInvalidationCache.tablesOf(sql);
+      if (found != null) {
+        tables.addAll(Arrays.asList(found));
+      }
+      if (ms.getTables() != null) {
+        tables.addAll(Arrays.asList(ms.getTables()));
+      }
+      insertTables.put(sql, tables);
+    }
+    return tables;
+  }
+
+  private boolean isBatchFull(BatchResult batchResult) {
+    Integer maxBatchSize = configuration.getMaxBatchSize();
+    if (maxBatchSize != null && batchResult.getParameterObjects().size() >= maxBatchSize) {
+      return true;
+    }
+    Integer maxBatchBufferedParameters = configuration.getMaxBatchBufferedParameters();
+    return maxBatchBufferedParameters != null && bufferedParameterCount >= maxBatchBufferedParameters;
+  }
+
   @Override
   public <E> List<E> doQuery(MappedStatement ms, Object parameterObject, RowBounds rowBounds, ResultHandler resultHandler, BoundSql boundSql)
       throws SQLException {
@@ -110,18 +232,53 @@ public class BatchExecutor extends BaseExecutor {
   @Override
   public List<BatchResult> doFlushStatements(boolean isRollback) throws SQLException {
     try {
-      List<BatchResult> results = new ArrayList<BatchResult>();
+      awaitInFlightBatches(isRollback);
       if (isRollback) {
+        flushedResultList.clear();
         return Collections.emptyList();
       }
-      for (int i = 0, n = statementList.size(); i < n; i++) {
-        Statement stmt = statementList.get(i);
-        applyTransactionTimeout(stmt);
-        BatchResult batchResult = batchResultList.get(i);
-        try {
+      List<BatchResult> results = new ArrayList<BatchResult>(flushedResultList);
+      flushedResultList.clear();
+      executeBatches(statementList, multiRowInsertList, batchResultList, results);
+      return results;
+    } finally {
+      for (Statement stmt : statementList) {
+        closeStatement(stmt);
+      }
+      clearPendingBatches();
+    }
+  }
+
+  @Override
+  public void close(boolean forceRollback) {
+    try {
+      // nothing may run on the connection once it is rolled back and closed
+      discardInFlightBatches();
+      super.close(forceRollback);
+    } finally {
+      if (flusher != null) {
+        flusher.shutdown();
+        flusher = null;
+      }
+    }
+  }
+
+  private void executeBatches(List<Statement> statements, List<MultiRowInsert> multiRowInserts,
+      List<BatchResult> batchResults, List<BatchResult> results) throws SQLException {
+    boolean retainParameters = configuration.isBatchParametersRetained();
+    for (int i = 0, n = statements.size(); i < n; i++) {
+      Statement stmt = statements.get(i);
+      MultiRowInsert multiRowInsert = multiRowInserts.get(i);
+      BatchResult batchResult = batchResults.get(i);
+      try {
+        MappedStatement ms = batchResult.getMappedStatement();
+        List<Object> parameterObjects = batchResult.getParameterObjects();
+        if (multiRowInsert != null) {
+          batchResult.setUpdateCounts(multiRowInsert.execute(wrapper, getConnection(ms.getStatementLog()),
+              transaction.getTimeout(), parameterObjects, configuration.getMultiRowInsertParameterLimit()));
+        } else {
+          applyTransactionTimeout(stmt);
           batchResult.setUpdateCounts(stmt.executeBatch());
-          MappedStatement ms = batchResult.getMappedStatement();
-          List<Object> parameterObjects = batchResult.getParameterObjects();
           KeyGenerator keyGenerator = ms.getKeyGenerator();
           if (Jdbc3KeyGenerator.class.equals(keyGenerator.getClass())) {
             Jdbc3KeyGenerator jdbc3KeyGenerator = (Jdbc3KeyGenerator) keyGenerator;
@@ -131,32 +288,171 @@ public class BatchExecutor extends BaseExecutor {
               keyGenerator.processAfter(this, ms, stmt, parameter);
             }
           }
-          // Close statement to close cursor #1109
-          closeStatement(stmt);
-        } catch (BatchUpdateException e) {
-          StringBuilder message = new StringBuilder();
-          message.append(batchResult.getMappedStatement().getId())
-              .append(" (batch index #")
-              .append(i + 1)
-              .append(")")
-              .append(" failed.");
-          if (i > 0) {
-            message.append(" ")
-                .append(i)
-                .append(" prior sub executor(s) completed successfully, but will be rolled back.");
+        }
+        if (!retainParameters) {
+          batchResult.clearParameterObjects();
+        }
+        // Close statement to close cursor #1109
+        closeStatement(stmt);
+      } catch (BatchUpdateException e) {
+        StringBuilder message = new StringBuilder();
+        message.append(batchResult.getMappedStatement().getId())
+            .append(" (batch index #")
+            .append(i + 1)
+            .append(")")
+            .append(" failed.");
+        if (i > 0) {
+          message.append(" ")
+              .append(i)
+              .append(" prior sub executor(s) completed successfully, but will be rolled back.");
+        }
+        throw new BatchExecutorException(message.toString(), e, results, batchResult);
+      }
+      results.add(batchResult);
+    }
+  }
+
+  private void clearPendingBatches() {
+    currentSql = null;
+    insertBatchIndexes.clear();
+    insertedTables.clear();
+    insertTables.clear();
+    bufferedParameterCount = 0;
+    statementList.clear();
+    multiRowInsertList.clear();
+    batchResultList.clear();
+  }
+
+  /*
+   * The pending statements can be executed by the flusher thread only when nothing but the statements themselves
+   * is needed to complete them: a SelectKeyGenerator runs its own query through this executor, and a multi row
+   * insert prepares its statement on the connection, which may only be used by the thread of the session.
+   */
+  private boolean canFlushInBackground() {
+    Integer maxInFlightBatches = configuration.getMaxInFlightBatches();
+    if (maxInFlightBatches == null || maxInFlightBatches <= 0) {
+      return false;
+    }
+    for (MultiRowInsert multiRowInsert : multiRowInsertList) {
+      if (multiRowInsert != null) {
+        return false;
+      }
+    }
+    for (BatchResult batchResult : batchResultList) {
+      Class<?> keyGeneratorType = batchResult.getMappedStatement().getKeyGenerator().getClass();
+      if (!Jdbc3KeyGenerator.class.equals(keyGeneratorType) && !NoKeyGenerator.class.equals(keyGeneratorType)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void flushInBackground() throws SQLException {
+    while (inFlightBatches.size() >= configuration.getMaxInFlightBatches()) {
+      awaitOldestInFlightBatch();
+    }
+    final List<Statement> statements = new ArrayList<Statement>(statementList);
+    final List<MultiRowInsert> multiRowInserts = new ArrayList<MultiRowInsert>(multiRowInsertList);
+    final List<BatchResult> batchResults = new ArrayList<BatchResult>(batchResultList);
+    clearPendingBatches();
+    inFlightBatches.add(flusher().submit(new Callable<List<BatchResult>>() {
+      @Override
+      public List<BatchResult> call() throws SQLException {
+        try {
+          List<BatchResult> results = new ArrayList<BatchResult>();
+          if (!inFlightBatchesDiscarded) {
+            executeBatches(statements, multiRowInserts, batchResults, results);
+          }
+          return results;
+        } finally {
+          for (Statement stmt : statements) {
+            closeStatement(stmt);
           }
-          throw new BatchExecutorException(message.toString(), e, results, batchResult);
         }
-        results.add(batchResult);
       }
-      return results;
+    }));
+  }
+
+  private ExecutorService flusher() {
+    if (flusher == null) {
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+              Thread thread = new Thread(runnable, "mybatis-batch-flusher");
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+      executor.allowCoreThreadTimeOut(true);
+      flusher = executor;
+    }
+    return flusher;
+  }
+
+  private void awaitInFlightBatches(boolean discard) throws SQLException {
+    if (discard) {
+      discardInFlightBatches();
+    }
+    while (!inFlightBatches.isEmpty()) {
+      awaitOldestInFlightBatch();
+    }
+  }
+
+  private void awaitOldestInFlightBatch() throws SQLException {
+    Future<List<BatchResult>> future = inFlightBatches.removeFirst();
+    try {
+      flushedResultList.addAll(future.get());
+    } catch (InterruptedException e) {
+      // the batch may still be running, it is waited for with the others
+      inFlightBatches.addFirst(future);
+      Thread.currentThread().interrupt();
+      discardInFlightBatches();
+      throw new ExecutorException("Interrupted while waiting for a batch to be flushed.", e);
+    } catch (ExecutionException e) {
+      discardInFlightBatches();
+      Throwable cause = e.getCause();
+      if (cause instanceof BatchExecutorException) {
+        // the successful results of a failed flush include those of the batches flushed before it
+        ((BatchExecutorException) cause).getSuccessfulBatchResults().addAll(0, flushedResultList);
+      }
+      flushedResultList.clear();
+      if (cause instanceof SQLException) {
+        throw (SQLException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new ExecutorException("Error flushing a batch.  Cause: " + cause, cause);
+    }
+  }
+
+  /*
+   * Batches queued after a failed or discarded one only close their statements, so that nothing
+   * runs out of order. The batch the flusher is running is waited for even when interrupted: the
+   * connection is rolled back or closed next, which may not happen while the batch still uses it.
+   */
+  private void discardInFlightBatches() {
+    inFlightBatchesDiscarded = true;
+    boolean interrupted = false;
+    try {
+      while (!inFlightBatches.isEmpty()) {
+        try {
+          inFlightBatches.getFirst().get();
+          inFlightBatches.removeFirst();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        } catch (ExecutionException e) {
+          // already failing or rolling back
+          inFlightBatches.removeFirst();
+        }
+      }
     } finally {
-      for (Statement stmt : statementList) {
-        closeStatement(stmt);
+      inFlightBatchesDiscarded = false;
+      if (interrupted) {
+        Thread.currentThread().interrupt();
       }
-      currentSql = null;
-      statementList.clear();
-      batchResultList.clear();
     }
   }
 
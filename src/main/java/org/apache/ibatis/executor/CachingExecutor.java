@@ -17,17 +17,30 @@ package org.apache.ibatis.executor;
 
 import java.sql.SQLException;
 import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cache.CacheStatistics;
 import org.apache.ibatis.cache.TransactionalCacheManager;
+import org.apache.ibatis.cache.decorators.ExpiringCache;
+import org.apache.ibatis.cache.decorators.TableInvalidationCache;
+import org.apache.ibatis.cache.decorators.TableInvalidationCache.Dependencies;
 import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
 import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.mapping.ParameterMapping;
 import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.mapping.SqlCommandType;
 import org.apache.ibatis.mapping.StatementType;
 import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.transaction.Transaction;
@@ -38,6 +51,8 @@ import org.apache.ibatis.transaction.Transaction;
  */
 public class CachingExecutor implements Executor {
 
+  private static final Log log = LogFactory.getLog(CachingExecutor.class);
+
   private final Executor delegate;
   private final TransactionalCacheManager tcm = new TransactionalCacheManager();
 
@@ -72,7 +87,7 @@ public class CachingExecutor implements Executor {
 
   @Override
   public int update(MappedStatement ms, Object parameterObject) throws SQLException {
-    flushCacheIfRequired(ms);
+    flushCacheIfRequired(ms, parameterObject);
     return delegate.update(ms, parameterObject);
   }
 
@@ -85,7 +100,7 @@ public class CachingExecutor implements Executor {
 
   @Override
   public <E> Cursor<E> queryCursor(MappedStatement ms, Object parameter, RowBounds rowBounds) throws SQLException {
-    flushCacheIfRequired(ms);
+    flushCacheIfRequired(ms, parameter);
     return delegate.queryCursor(ms, parameter, rowBounds);
   }
 
@@ -94,14 +109,22 @@ public class CachingExecutor implements Executor {
       throws SQLException {
     Cache cache = ms.getCache();
     if (cache != null) {
-      flushCacheIfRequired(ms);
+      flushCacheIfRequired(ms, parameterObject);
       if (ms.isUseCache() && resultHandler == null) {
         ensureNoOutParams(ms, boundSql);
         @SuppressWarnings("unchecked")
         List<E> list = (List<E>) tcm.getObject(cache, key);
         if (list == null) {
+          Dependencies dependencies = dependenciesOf(cache, ms, boundSql);
+          CacheStatistics statistics = CacheStatistics.of(cache);
+          long start = statistics != null ? System.nanoTime() : 0;
           list = delegate.<E> query(ms, parameterObject, rowBounds, resultHandler, key, boundSql);
-          tcm.putObject(cache, key, list); // issue #578 and #116
+          if (statistics != null) {
+            statistics.recordLoad(System.nanoTime() - start);
+          }
+          tcm.putObject(cache, key, list, dependencies); // issue #578 and #116
+        } else if (ExpiringCache.isRefreshRequested(key)) {
+          refreshAhead(ms, parameterObject, rowBounds, key, boundSql);
         }
         return list;
       }
@@ -161,11 +184,69 @@ public class CachingExecutor implements Executor {
     delegate.clearLocalCache();
   }
 
-  private void flushCacheIfRequired(MappedStatement ms) {
+  /*
+   * Reloads an entry that is about to expire on a background thread, with its own executor and
+   * transaction, and puts the fresh result straight into the shared cache.
+   */
+  private void refreshAhead(final MappedStatement ms, final Object parameterObject, final RowBounds rowBounds,
+      final CacheKey key, final BoundSql boundSql) {
+    final Configuration configuration = ms.getConfiguration();
+    final Environment environment = configuration.getEnvironment();
+    if (environment == null) {
+      return;
+    }
+    RefreshAheadExecutor.INSTANCE.execute(new Runnable() {
+      @Override
+      public void run() {
+        Transaction tx = environment.getTransactionFactory().newTransaction(environment.getDataSource(), null, false);
+        Executor executor = new SimpleExecutor(configuration, tx);
+        try {
+          Cache cache = ms.getCache();
+          Dependencies dependencies = dependenciesOf(cache, ms, boundSql);
+          List<Object> list = executor.query(ms, parameterObject, rowBounds, NO_RESULT_HANDLER, key, boundSql);
+          if (dependencies != null) {
+            ((TableInvalidationCache) cache).putObject(key, list, dependencies);
+          } else {
+            cache.putObject(key, list);
+          }
+        } catch (Exception e) {
+          if (log.isDebugEnabled()) {
+            log.debug("Could not refresh cache entry of " + ms.getId() + ", it will expire.  Cause: " + e);
+          }
+        } finally {
+          executor.close(false);
+        }
+      }
+    });
+  }
+
+  private void flushCacheIfRequired(MappedStatement ms, Object parameterObject) {
     Cache cache = ms.getCache();
     if (cache != null && ms.isFlushCacheRequired()) {      
-      tcm.clear(cache);
+      if (cache instanceof TableInvalidationCache && ms.getSqlCommandType() != SqlCommandType.SELECT) {
+        tcm.invalidate(cache, tablesOf(ms, ms.getBoundSql(parameterObject)));
+      } else {
+        tcm.clear(cache);
+      }
+    }
+  }
+
+  /*
+   * The versions of the tables read by a query, to be taken before running it.
+   */
+  private static Dependencies dependenciesOf(Cache cache, MappedStatement ms, BoundSql boundSql) {
+    if (cache instanceof TableInvalidationCache) {
+      return ((TableInvalidationCache) cache).dependencies(tablesOf(ms, boundSql));
+    }
+    return null;
+  }
+
+  private static String[] tablesOf(MappedStatement ms, BoundSql boundSql) {
+    if (ms.getTables() != null) {
+      return ms.getTables();
     }
+    // the tables of stored procedures are not known
+    return ms.getStatementType() == StatementType.CALLABLE ? null : TableInvalidationCache.tablesOf(boundSql.getSql());
   }
 
   @Override
@@ -173,4 +254,24 @@ public class CachingExecutor implements Executor {
     throw new UnsupportedOperationException("This method should not be called");
   }
 
+  private static class RefreshAheadExecutor {
+    // refreshes that do not fit in the queue are dropped, their entries simply expire
+    static final ThreadPoolExecutor INSTANCE = newExecutor();
+
+    private static ThreadPoolExecutor newExecutor() {
+      int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<Runnable>(1024), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+              Thread thread = new Thread(runnable, "mybatis-cache-refresh");
+              thread.setDaemon(true);
+              return thread;
+            }
+          }, new ThreadPoolExecutor.DiscardPolicy());
+      executor.allowCoreThreadTimeOut(true);
+      return executor;
+    }
+  }
+
 }
@@ -0,0 +1,253 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
+import org.apache.ibatis.executor.keygen.KeyGenerator;
+import org.apache.ibatis.executor.keygen.NoKeyGenerator;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.mapping.StatementType;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.type.TypeHandlerRegistry;
+
+/**
+ * The rows added to a batch by a single row {@code INSERT ... VALUES (...)}, executed as statements inserting
+ * as many rows each as the parameter limit of the database allows.
+ * <p>
+ * The values of a row are read from its parameter object when the row is added, as a batched statement binds
+ * them, so the object can be reused for the next row. Each multi row statement is prepared through a
+ * {@link StatementHandler}, and the keys it generates are set by {@link Jdbc3KeyGenerator#processBatch}.
+ */
+class MultiRowInsert {
+
+  private static final Pattern INSERT_INTO = Pattern.compile("^\\s*insert\\s+into\\s", Pattern.CASE_INSENSITIVE);
+  private static final Pattern VALUES = Pattern.compile("(?<![\\w$])values\\s*$", Pattern.CASE_INSENSITIVE);
+
+  private final MappedStatement mappedStatement;
+  private final String prefix;
+  private final String values;
+  private final List<ParameterMapping> parameterMappings;
+  private final List<Object[]> rows = new ArrayList<Object[]>();
+
+  private MultiRowInsert(MappedStatement mappedStatement, String prefix, String values,
+      List<ParameterMapping> parameterMappings) {
+    this.mappedStatement = mappedStatement;
+    this.prefix = prefix;
+    this.values = values;
+    this.parameterMappings = parameterMappings;
+  }
+
+  /**
+   * Returns an empty multi row insert for the statement, or null when its SQL is not a single row insert
+   * whose rows can be repeated: anything after the values, parameters outside of them, output parameters or
+   * keys generated by a query.
+   */
+  static MultiRowInsert of(MappedStatement ms, BoundSql boundSql) {
+    KeyGenerator keyGenerator = ms.getKeyGenerator();
+    if (ms.getSqlCommandType() != SqlCommandType.INSERT || ms.getStatementType() != StatementType.PREPARED
+        || !(keyGenerator instanceof Jdbc3KeyGenerator || keyGenerator instanceof NoKeyGenerator)) {
+      return null;
+    }
+    List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
+    for (ParameterMapping parameterMapping : parameterMappings) {
+      if (parameterMapping.getMode() != ParameterMode.IN) {
+        return null;
+      }
+    }
+    String sql = boundSql.getSql().trim();
+    if (!INSERT_INTO.matcher(sql).find() || !sql.endsWith(")")) {
+      return null;
+    }
+    int start = openingParenthesis(sql);
+    if (start < 0 || !VALUES.matcher(sql.substring(0, start)).find()
+        || countParameters(sql, 0, start) > 0
+        || countParameters(sql, start, sql.length()) != parameterMappings.size()) {
+      return null;
+    }
+    return new MultiRowInsert(ms, sql.substring(0, start), sql.substring(start), parameterMappings);
+  }
+
+  /*
+   * Returns the index of the parenthesis matching the one the SQL ends with, or -1 when quotes or
+   * parentheses are unbalanced.
+   */
+  private static int openingParenthesis(String sql) {
+    int depth = 0;
+    char quote = 0;
+    for (int i = sql.length() - 1; i >= 0; i--) {
+      char c = sql.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '\'' || c == '"') {
+        quote = c;
+      } else if (c == ')') {
+        depth++;
+      } else if (c == '(' && --depth == 0) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int countParameters(String sql, int start, int end) {
+    int count = 0;
+    char quote = 0;
+    for (int i = start; i < end; i++) {
+      char c = sql.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '\'' || c == '"') {
+        quote = c;
+      } else if (c == '?') {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  void addRow(BoundSql boundSql) {
+    Configuration configuration = mappedStatement.getConfiguration();
+    TypeHandlerRegistry typeHandlerRegistry = configuration.getTypeHandlerRegistry();
+    Object parameterObject = boundSql.getParameterObject();
+    MetaObject metaObject = null;
+    Object[] row = new Object[parameterMappings.size()];
+    for (int i = 0; i < row.length; i++) {
+      String propertyName = parameterMappings.get(i).getProperty();
+      if (boundSql.hasAdditionalParameter(propertyName)) {
+        row[i] = boundSql.getAdditionalParameter(propertyName);
+      } else if (parameterObject == null) {
+        row[i] = null;
+      } else if (typeHandlerRegistry.hasTypeHandler(parameterObject.getClass())) {
+        row[i] = parameterObject;
+      } else {
+        if (metaObject == null) {
+          metaObject = configuration.newMetaObject(parameterObject);
+        }
+        row[i] = metaObject.getValue(propertyName);
+      }
+    }
+    rows.add(row);
+  }
+
+  int size() {
+    return rows.size();
+  }
+
+  /**
+   * Inserts the rows, using as few statements as the parameter limit allows.
+   *
+   * @param parameterObjects the parameter objects of the rows, which receive the generated keys
+   * @return an update count per row: 1, or {@link Statement#SUCCESS_NO_INFO} when a statement reports another
+   *         count than its number of rows
+   * @throws BatchUpdateException when a statement fails, with the update counts of the rows inserted before
+   */
+  int[] execute(Executor executor, Connection connection, Integer transactionTimeout, List<Object> parameterObjects,
+      int parameterLimit) throws SQLException {
+    int rowsPerStatement = Math.max(1, parameterLimit / Math.max(1, parameterMappings.size()));
+    int[] updateCounts = new int[rows.size()];
+    BoundSql fullBoundSql = null;
+    for (int from = 0; from < rows.size(); from += rowsPerStatement) {
+      int to = Math.min(rows.size(), from + rowsPerStatement);
+      BoundSql boundSql;
+      if (to - from == rowsPerStatement) {
+        if (fullBoundSql == null) {
+          fullBoundSql = newBoundSql(rowsPerStatement);
+        }
+        boundSql = fullBoundSql;
+      } else {
+        boundSql = newBoundSql(to - from);
+      }
+      for (int i = from; i < to; i++) {
+        Object[] row = rows.get(i);
+        for (int j = 0; j < row.length; j++) {
+          boundSql.setAdditionalParameter(propertyName(i - from, j), row[j]);
+        }
+      }
+      List<Object> chunk = parameterObjects.subList(from, to);
+      StatementHandler handler = mappedStatement.getConfiguration().newStatementHandler(executor, mappedStatement,
+          chunk, RowBounds.DEFAULT, null, boundSql);
+      Statement stmt = null;
+      try {
+        stmt = handler.prepare(connection, transactionTimeout);
+        handler.parameterize(stmt);
+        int count = ((PreparedStatement) stmt).executeUpdate();
+        Arrays.fill(updateCounts, from, to, count == to - from ? 1 : Statement.SUCCESS_NO_INFO);
+        if (mappedStatement.getKeyGenerator() instanceof Jdbc3KeyGenerator) {
+          ((Jdbc3KeyGenerator) mappedStatement.getKeyGenerator()).processBatch(mappedStatement, stmt, chunk);
+        }
+      } catch (SQLException e) {
+        BatchUpdateException batchUpdateException = new BatchUpdateException(e.getMessage(), e.getSQLState(),
+            e.getErrorCode(), Arrays.copyOf(updateCounts, from));
+        batchUpdateException.initCause(e);
+        throw batchUpdateException;
+      } finally {
+        if (stmt != null) {
+          stmt.close();
+        }
+      }
+    }
+    return updateCounts;
+  }
+
+  private BoundSql newBoundSql(int rowCount) {
+    Configuration configuration = mappedStatement.getConfiguration();
+    StringBuilder sql = new StringBuilder(prefix.length() + rowCount * (values.length() + 2));
+    sql.append(prefix);
+    List<ParameterMapping> mappings = new ArrayList<ParameterMapping>(rowCount * parameterMappings.size());
+    for (int i = 0; i < rowCount; i++) {
+      if (i > 0) {
+        sql.append(", ");
+      }
+      sql.append(values);
+      for (int j = 0; j < parameterMappings.size(); j++) {
+        ParameterMapping parameterMapping = parameterMappings.get(j);
+        mappings.add(new ParameterMapping.Builder(configuration, propertyName(i, j), parameterMapping.getTypeHandler())
+            .javaType(parameterMapping.getJavaType())
+            .jdbcType(parameterMapping.getJdbcType())
+            .jdbcTypeName(parameterMapping.getJdbcTypeName())
+            .numericScale(parameterMapping.getNumericScale())
+            .build());
+      }
+    }
+    return new BoundSql(configuration, sql.toString(), mappings, null);
+  }
+
+  private static String propertyName(int row, int parameter) {
+    return "__row" + row + "_" + parameter;
+  }
+
+}
@@ -29,6 +29,7 @@ import org.apache.ibatis.executor.parameter.ParameterHandler;
 import org.apache.ibatis.executor.result.DefaultResultContext;
 import org.apache.ibatis.executor.result.DefaultResultHandler;
 import org.apache.ibatis.executor.result.ResultMapException;
+import org.apache.ibatis.executor.resultset.RowMappingPlan.ColumnMapping;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.Discriminator;
 import org.apache.ibatis.mapping.MappedStatement;
@@ -40,6 +41,7 @@ import org.apache.ibatis.reflection.MetaClass;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.ReflectorFactory;
 import org.apache.ibatis.reflection.factory.ObjectFactory;
+import org.apache.ibatis.reflection.invoker.Invoker;
 import org.apache.ibatis.session.AutoMappingBehavior;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ResultContext;
@@ -54,8 +56,10 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -70,6 +74,7 @@ import java.util.Set;
 public class DefaultResultSetHandler implements ResultSetHandler {
 
   private static final Object DEFERED = new Object();
+  private static final RowMappingPlan NO_ROW_MAPPING_PLAN = new RowMappingPlan(new ColumnMapping[0], new ColumnMapping[0]);
 
   private final Executor executor;
   private final Configuration configuration;
@@ -86,6 +91,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   private final Map<CacheKey, Object> nestedResultObjects = new HashMap<CacheKey, Object>();
   private final Map<String, Object> ancestorObjects = new HashMap<String, Object>();
   private Object previousRowValue;
+  private CacheKey previousRowKey;
 
   // multiple resultsets
   private final Map<String, ResultMapping> nextResultMaps = new HashMap<String, ResultMapping>();
@@ -94,6 +100,10 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   // Cached Automappings
   private final Map<String, List<UnMappedColumnAutoMapping>> autoMappingsCache = new HashMap<String, List<UnMappedColumnAutoMapping>>();
 
+  // row mapping plans of the simple result maps applied to the current result set
+  private final Map<ResultMap, RowMappingPlan> rowMappingPlans = new IdentityHashMap<ResultMap, RowMappingPlan>();
+  private ResultSetWrapper rowMappingPlansResultSet;
+
   // temporary marking flag that indicate using constructor mapping (use field to reduce memory usage)
   private boolean useConstructorMappings;
 
@@ -162,7 +172,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     try {
       final String resultMapId = parameterMapping.getResultMapId();
       final ResultMap resultMap = configuration.getResultMap(resultMapId);
-      final ResultSetWrapper rsw = new ResultSetWrapper(rs, configuration);
+      final ResultSetWrapper rsw = new ResultSetWrapper(rs, configuration, mappedStatement);
       if (this.resultHandler == null) {
         final DefaultResultHandler resultHandler = new DefaultResultHandler(objectFactory);
         handleRowValues(rsw, resultMap, resultHandler, new RowBounds(), null);
@@ -249,7 +259,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
         }
       }
     }
-    return rs != null ? new ResultSetWrapper(rs, configuration) : null;
+    return rs != null ? new ResultSetWrapper(rs, configuration, mappedStatement) : null;
   }
 
   private ResultSetWrapper getNextResultSet(Statement stmt) throws SQLException {
@@ -262,7 +272,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
           if (rs == null) {
             return getNextResultSet(stmt);
           } else {
-            return new ResultSetWrapper(rs, configuration);
+            return new ResultSetWrapper(rs, configuration, mappedStatement);
           }
         }
       }
@@ -351,15 +361,15 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     DefaultResultContext<Object> resultContext = new DefaultResultContext<Object>();
     skipRows(rsw.getResultSet(), rowBounds);
     while (shouldProcessMoreRows(resultContext, rowBounds) && rsw.getResultSet().next()) {
-      ResultMap discriminatedResultMap = resolveDiscriminatedResultMap(rsw.getResultSet(), resultMap, null);
+      ResultMap discriminatedResultMap = resolveDiscriminatedResultMap(rsw, resultMap, null);
       Object rowValue = getRowValue(rsw, discriminatedResultMap);
-      storeObject(resultHandler, resultContext, rowValue, parentMapping, rsw.getResultSet());
+      storeObject(resultHandler, resultContext, rowValue, parentMapping, rsw);
     }
   }
 
-  private void storeObject(ResultHandler<?> resultHandler, DefaultResultContext<Object> resultContext, Object rowValue, ResultMapping parentMapping, ResultSet rs) throws SQLException {
+  private void storeObject(ResultHandler<?> resultHandler, DefaultResultContext<Object> resultContext, Object rowValue, ResultMapping parentMapping, ResultSetWrapper rsw) throws SQLException {
     if (parentMapping != null) {
-      linkToParents(rs, parentMapping, rowValue);
+      linkToParents(rsw, parentMapping, rowValue);
     } else {
       callResultHandler(resultHandler, resultContext, rowValue);
     }
@@ -392,6 +402,10 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   //
 
   private Object getRowValue(ResultSetWrapper rsw, ResultMap resultMap) throws SQLException {
+    final RowMappingPlan plan = getRowMappingPlan(rsw, resultMap);
+    if (plan != NO_ROW_MAPPING_PLAN) {
+      return getRowValue(rsw, resultMap, plan);
+    }
     final ResultLoaderMap lazyLoader = new ResultLoaderMap();
     Object rowValue = createResultObject(rsw, resultMap, lazyLoader, null);
     if (rowValue != null && !hasTypeHandlerForResultObject(rsw, resultMap.getType())) {
@@ -407,6 +421,21 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     return rowValue;
   }
 
+  private Object getRowValue(ResultSetWrapper rsw, ResultMap resultMap, RowMappingPlan plan) throws SQLException {
+    final ResultLoaderMap lazyLoader = resultMap.hasNestedQueries() ? new ResultLoaderMap() : null;
+    Object rowValue = createResultObject(rsw, resultMap, lazyLoader, null);
+    if (rowValue != null) {
+      final boolean wrapped = configuration.getObjectWrapperFactory().hasWrapperFor(rowValue);
+      final MetaObject metaObject = wrapped || plan.isMetaObjectRequired() ? configuration.newMetaObject(rowValue) : null;
+      boolean foundValues = this.useConstructorMappings;
+      foundValues = applyColumnMappings(rsw, plan.getAutoMappings(), rowValue, metaObject, wrapped, lazyLoader) || foundValues;
+      foundValues = applyColumnMappings(rsw, plan.getPropertyMappings(), rowValue, metaObject, wrapped, lazyLoader) || foundValues;
+      foundValues = lazyLoader != null && lazyLoader.size() > 0 || foundValues;
+      rowValue = foundValues || configuration.isReturnInstanceForEmptyRow() ? rowValue : null;
+    }
+    return rowValue;
+  }
+
   private boolean shouldApplyAutomaticMappings(ResultMap resultMap, boolean isNested) {
     if (resultMap.getAutoMapping() != null) {
       return resultMap.getAutoMapping();
@@ -425,7 +454,6 @@ public class DefaultResultSetHandler implements ResultSetHandler {
 
   private boolean applyPropertyMappings(ResultSetWrapper rsw, ResultMap resultMap, MetaObject metaObject, ResultLoaderMap lazyLoader, String columnPrefix)
       throws SQLException {
-    final List<String> mappedColumnNames = rsw.getMappedColumnNames(resultMap, columnPrefix);
     boolean foundValues = false;
     final List<ResultMapping> propertyMappings = resultMap.getPropertyResultMappings();
     for (ResultMapping propertyMapping : propertyMappings) {
@@ -435,9 +463,9 @@ public class DefaultResultSetHandler implements ResultSetHandler {
         column = null;
       }
       if (propertyMapping.isCompositeResult()
-          || (column != null && mappedColumnNames.contains(column.toUpperCase(Locale.ENGLISH)))
+          || (column != null && rsw.isMappedColumn(resultMap, columnPrefix, column))
           || propertyMapping.getResultSet() != null) {
-        Object value = getPropertyMappingValue(rsw.getResultSet(), metaObject, propertyMapping, lazyLoader, columnPrefix);
+        Object value = getPropertyMappingValue(rsw, metaObject, propertyMapping, lazyLoader, columnPrefix);
         // issue #541 make property optional
         final String property = propertyMapping.getProperty();
         if (property == null) {
@@ -458,17 +486,17 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     return foundValues;
   }
 
-  private Object getPropertyMappingValue(ResultSet rs, MetaObject metaResultObject, ResultMapping propertyMapping, ResultLoaderMap lazyLoader, String columnPrefix)
+  private Object getPropertyMappingValue(ResultSetWrapper rsw, MetaObject metaResultObject, ResultMapping propertyMapping, ResultLoaderMap lazyLoader, String columnPrefix)
       throws SQLException {
     if (propertyMapping.getNestedQueryId() != null) {
-      return getNestedQueryMappingValue(rs, metaResultObject, propertyMapping, lazyLoader, columnPrefix);
+      return getNestedQueryMappingValue(rsw, metaResultObject, propertyMapping, lazyLoader, columnPrefix);
     } else if (propertyMapping.getResultSet() != null) {
-      addPendingChildRelation(rs, metaResultObject, propertyMapping);   // TODO is that OK?
+      addPendingChildRelation(rsw, metaResultObject, propertyMapping);   // TODO is that OK?
       return DEFERED;
     } else {
       final TypeHandler<?> typeHandler = propertyMapping.getTypeHandler();
       final String column = prependPrefix(propertyMapping.getColumn(), columnPrefix);
-      return typeHandler.getResult(rs, column);
+      return getResult(rsw, typeHandler, column);
     }
   }
 
@@ -517,7 +545,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     boolean foundValues = false;
     if (!autoMapping.isEmpty()) {
       for (UnMappedColumnAutoMapping mapping : autoMapping) {
-        final Object value = mapping.typeHandler.getResult(rsw.getResultSet(), mapping.column);
+        final Object value = getResult(rsw, mapping.typeHandler, mapping.column);
         if (value != null) {
           foundValues = true;
         }
@@ -530,10 +558,124 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     return foundValues;
   }
 
+  //
+  // ROW MAPPING PLANS
+  //
+
+  private RowMappingPlan getRowMappingPlan(ResultSetWrapper rsw, ResultMap resultMap) throws SQLException {
+    if (rsw != rowMappingPlansResultSet) {
+      rowMappingPlans.clear();
+      rowMappingPlansResultSet = rsw;
+    }
+    RowMappingPlan plan = rowMappingPlans.get(resultMap);
+    if (plan == null) {
+      final Class<?> resultType = resultMap.getType();
+      if (Map.class.isAssignableFrom(resultType) || Collection.class.isAssignableFrom(resultType)
+          || hasTypeHandlerForResultObject(rsw, resultType)) {
+        plan = NO_ROW_MAPPING_PLAN;
+      } else {
+        final boolean autoMapping = shouldApplyAutomaticMappings(resultMap, false);
+        final String columnLayout = autoMapping + ":" + configuration.isMapUnderscoreToCamelCase() + ":"
+            + configuration.isColumnIndexReadsEnabled() + ":" + rsw.getColumnLayout();
+        final ResultSetMappingCache cache = configuration.getResultSetMappingCache();
+        plan = cache.getRowMappingPlan(resultMap, columnLayout);
+        if (plan == null) {
+          plan = compileRowMappingPlan(rsw, resultMap, autoMapping);
+          cache.addRowMappingPlan(resultMap, columnLayout, plan);
+        }
+      }
+      rowMappingPlans.put(resultMap, plan);
+    }
+    return plan;
+  }
+
+  private RowMappingPlan compileRowMappingPlan(ResultSetWrapper rsw, ResultMap resultMap, boolean autoMapping) throws SQLException {
+    final MetaClass metaClass = MetaClass.forClass(resultMap.getType(), reflectorFactory);
+    final List<ColumnMapping> autoMappings = new ArrayList<ColumnMapping>();
+    if (autoMapping) {
+      for (String columnName : rsw.getUnmappedColumnNames(resultMap, null)) {
+        final String property = metaClass.findProperty(columnName, configuration.isMapUnderscoreToCamelCase());
+        if (property != null && metaClass.hasSetter(property)) {
+          if (resultMap.getMappedProperties().contains(property)) {
+            continue;
+          }
+          final Class<?> propertyType = metaClass.getSetterType(property);
+          if (typeHandlerRegistry.hasTypeHandler(propertyType, rsw.getJdbcType(columnName))) {
+            final TypeHandler<?> typeHandler = rsw.getTypeHandler(propertyType, columnName);
+            autoMappings.add(new ColumnMapping(columnName, rsw.getColumnIndex(columnName), property, typeHandler,
+                rsw.isReadByIndex(typeHandler), setInvoker(metaClass, property), propertyType.isPrimitive(), null));
+          } else {
+            configuration.getAutoMappingUnknownColumnBehavior()
+                .doAction(mappedStatement, columnName, property, propertyType);
+          }
+        } else {
+          configuration.getAutoMappingUnknownColumnBehavior()
+              .doAction(mappedStatement, columnName, (property != null) ? property : columnName, null);
+        }
+      }
+    }
+    final List<ColumnMapping> propertyMappings = new ArrayList<ColumnMapping>();
+    for (ResultMapping propertyMapping : resultMap.getPropertyResultMappings()) {
+      final String property = propertyMapping.getProperty();
+      final boolean primitive = property != null && metaClass.hasSetter(property)
+          && metaClass.getSetterType(property).isPrimitive();
+      final String column = propertyMapping.getColumn();
+      final int columnIndex = column == null ? -1 : rsw.getColumnIndex(column);
+      if (propertyMapping.isCompositeResult() || propertyMapping.getResultSet() != null
+          || (columnIndex > 0 && propertyMapping.getNestedQueryId() != null)) {
+        propertyMappings.add(new ColumnMapping(null, -1, property, null, false, null, primitive, propertyMapping));
+      } else if (columnIndex > 0 && property != null) {
+        propertyMappings.add(new ColumnMapping(column, columnIndex, property, propertyMapping.getTypeHandler(),
+            rsw.isReadByIndex(propertyMapping.getTypeHandler()), setInvoker(metaClass, property), primitive, null));
+      }
+    }
+    return new RowMappingPlan(autoMappings.toArray(new ColumnMapping[autoMappings.size()]),
+        propertyMappings.toArray(new ColumnMapping[propertyMappings.size()]));
+  }
+
+  private Invoker setInvoker(MetaClass metaClass, String property) {
+    if (property.indexOf('.') >= 0 || property.indexOf('[') >= 0) {
+      return null;
+    }
+    return metaClass.getSetInvoker(property);
+  }
+
+  private boolean applyColumnMappings(ResultSetWrapper rsw, ColumnMapping[] mappings, Object rowValue, MetaObject metaObject,
+      boolean wrapped, ResultLoaderMap lazyLoader) throws SQLException {
+    boolean foundValues = false;
+    for (ColumnMapping mapping : mappings) {
+      final Object value;
+      if (mapping.resultMapping == null) {
+        value = mapping.getValue(rsw.getResultSet());
+      } else {
+        value = getPropertyMappingValue(rsw, metaObject, mapping.resultMapping, lazyLoader, null);
+        // issue #541 make property optional
+        if (mapping.property == null) {
+          continue;
+        } else if (value == DEFERED) {
+          foundValues = true;
+          continue;
+        }
+      }
+      if (value != null) {
+        foundValues = true;
+      }
+      if (value != null || (configuration.isCallSettersOnNulls() && !mapping.primitive)) {
+        // gcode issue #377, call setter on nulls (value is not 'found')
+        if (mapping.setter == null || wrapped) {
+          metaObject.setValue(mapping.property, value);
+        } else {
+          mapping.setValue(rowValue, value);
+        }
+      }
+    }
+    return foundValues;
+  }
+
   // MULTIPLE RESULT SETS
 
-  private void linkToParents(ResultSet rs, ResultMapping parentMapping, Object rowValue) throws SQLException {
-    CacheKey parentKey = createKeyForMultipleResults(rs, parentMapping, parentMapping.getColumn(), parentMapping.getForeignColumn());
+  private void linkToParents(ResultSetWrapper rsw, ResultMapping parentMapping, Object rowValue) throws SQLException {
+    CacheKey parentKey = createKeyForMultipleResults(rsw, parentMapping, parentMapping.getColumn(), parentMapping.getForeignColumn());
     List<PendingRelation> parents = pendingRelations.get(parentKey);
     if (parents != null) {
       for (PendingRelation parent : parents) {
@@ -544,8 +686,8 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     }
   }
 
-  private void addPendingChildRelation(ResultSet rs, MetaObject metaResultObject, ResultMapping parentMapping) throws SQLException {
-    CacheKey cacheKey = createKeyForMultipleResults(rs, parentMapping, parentMapping.getColumn(), parentMapping.getColumn());
+  private void addPendingChildRelation(ResultSetWrapper rsw, MetaObject metaResultObject, ResultMapping parentMapping) throws SQLException {
+    CacheKey cacheKey = createKeyForMultipleResults(rsw, parentMapping, parentMapping.getColumn(), parentMapping.getColumn());
     PendingRelation deferLoad = new PendingRelation();
     deferLoad.metaObject = metaResultObject;
     deferLoad.propertyMapping = parentMapping;
@@ -566,14 +708,14 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     }
   }
 
-  private CacheKey createKeyForMultipleResults(ResultSet rs, ResultMapping resultMapping, String names, String columns) throws SQLException {
+  private CacheKey createKeyForMultipleResults(ResultSetWrapper rsw, ResultMapping resultMapping, String names, String columns) throws SQLException {
     CacheKey cacheKey = new CacheKey();
     cacheKey.update(resultMapping);
     if (columns != null && names != null) {
       String[] columnsArray = columns.split(",");
       String[] namesArray = names.split(",");
       for (int i = 0; i < columnsArray.length; i++) {
-        Object value = rs.getString(columnsArray[i]);
+        Object value = rsw.getString(columnsArray[i]);
         if (value != null) {
           cacheKey.update(namesArray[i]);
           cacheKey.update(value);
@@ -632,13 +774,13 @@ public class DefaultResultSetHandler implements ResultSetHandler {
       final Object value;
       try {
         if (constructorMapping.getNestedQueryId() != null) {
-          value = getNestedQueryConstructorValue(rsw.getResultSet(), constructorMapping, columnPrefix);
+          value = getNestedQueryConstructorValue(rsw, constructorMapping, columnPrefix);
         } else if (constructorMapping.getNestedResultMapId() != null) {
           final ResultMap resultMap = configuration.getResultMap(constructorMapping.getNestedResultMapId());
           value = getRowValue(rsw, resultMap);
         } else {
           final TypeHandler<?> typeHandler = constructorMapping.getTypeHandler();
-          value = typeHandler.getResult(rsw.getResultSet(), prependPrefix(column, columnPrefix));
+          value = getResult(rsw, typeHandler, prependPrefix(column, columnPrefix));
         }
       } catch (ResultMapException e) {
         throw new ExecutorException("Could not process result for mapping: " + constructorMapping, e);
@@ -674,7 +816,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
       Class<?> parameterType = constructor.getParameterTypes()[i];
       String columnName = rsw.getColumnNames().get(i);
       TypeHandler<?> typeHandler = rsw.getTypeHandler(parameterType, columnName);
-      Object value = typeHandler.getResult(rsw.getResultSet(), prependPrefix(columnName, columnPrefix));
+      Object value = getResult(rsw, typeHandler, prependPrefix(columnName, columnPrefix));
       constructorArgTypes.add(parameterType);
       constructorArgs.add(value);
       foundValues = value != null || foundValues;
@@ -725,18 +867,18 @@ public class DefaultResultSetHandler implements ResultSetHandler {
       columnName = rsw.getColumnNames().get(0);
     }
     final TypeHandler<?> typeHandler = rsw.getTypeHandler(resultType, columnName);
-    return typeHandler.getResult(rsw.getResultSet(), columnName);
+    return getResult(rsw, typeHandler, columnName);
   }
 
   //
   // NESTED QUERY
   //
 
-  private Object getNestedQueryConstructorValue(ResultSet rs, ResultMapping constructorMapping, String columnPrefix) throws SQLException {
+  private Object getNestedQueryConstructorValue(ResultSetWrapper rsw, ResultMapping constructorMapping, String columnPrefix) throws SQLException {
     final String nestedQueryId = constructorMapping.getNestedQueryId();
     final MappedStatement nestedQuery = configuration.getMappedStatement(nestedQueryId);
     final Class<?> nestedQueryParameterType = nestedQuery.getParameterMap().getType();
-    final Object nestedQueryParameterObject = prepareParameterForNestedQuery(rs, constructorMapping, nestedQueryParameterType, columnPrefix);
+    final Object nestedQueryParameterObject = prepareParameterForNestedQuery(rsw, constructorMapping, nestedQueryParameterType, columnPrefix);
     Object value = null;
     if (nestedQueryParameterObject != null) {
       final BoundSql nestedBoundSql = nestedQuery.getBoundSql(nestedQueryParameterObject);
@@ -748,13 +890,13 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     return value;
   }
 
-  private Object getNestedQueryMappingValue(ResultSet rs, MetaObject metaResultObject, ResultMapping propertyMapping, ResultLoaderMap lazyLoader, String columnPrefix)
+  private Object getNestedQueryMappingValue(ResultSetWrapper rsw, MetaObject metaResultObject, ResultMapping propertyMapping, ResultLoaderMap lazyLoader, String columnPrefix)
       throws SQLException {
     final String nestedQueryId = propertyMapping.getNestedQueryId();
     final String property = propertyMapping.getProperty();
     final MappedStatement nestedQuery = configuration.getMappedStatement(nestedQueryId);
     final Class<?> nestedQueryParameterType = nestedQuery.getParameterMap().getType();
-    final Object nestedQueryParameterObject = prepareParameterForNestedQuery(rs, propertyMapping, nestedQueryParameterType, columnPrefix);
+    final Object nestedQueryParameterObject = prepareParameterForNestedQuery(rsw, propertyMapping, nestedQueryParameterType, columnPrefix);
     Object value = null;
     if (nestedQueryParameterObject != null) {
       final BoundSql nestedBoundSql = nestedQuery.getBoundSql(nestedQueryParameterObject);
@@ -776,32 +918,32 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     return value;
   }
 
-  private Object prepareParameterForNestedQuery(ResultSet rs, ResultMapping resultMapping, Class<?> parameterType, String columnPrefix) throws SQLException {
+  private Object prepareParameterForNestedQuery(ResultSetWrapper rsw, ResultMapping resultMapping, Class<?> parameterType, String columnPrefix) throws SQLException {
     if (resultMapping.isCompositeResult()) {
-      return prepareCompositeKeyParameter(rs, resultMapping, parameterType, columnPrefix);
+      return prepareCompositeKeyParameter(rsw, resultMapping, parameterType, columnPrefix);
     } else {
-      return prepareSimpleKeyParameter(rs, resultMapping, parameterType, columnPrefix);
+      return prepareSimpleKeyParameter(rsw, resultMapping, parameterType, columnPrefix);
     }
   }
 
-  private Object prepareSimpleKeyParameter(ResultSet rs, ResultMapping resultMapping, Class<?> parameterType, String columnPrefix) throws SQLException {
+  private Object prepareSimpleKeyParameter(ResultSetWrapper rsw, ResultMapping resultMapping, Class<?> parameterType, String columnPrefix) throws SQLException {
     final TypeHandler<?> typeHandler;
     if (typeHandlerRegistry.hasTypeHandler(parameterType)) {
       typeHandler = typeHandlerRegistry.getTypeHandler(parameterType);
     } else {
       typeHandler = typeHandlerRegistry.getUnknownTypeHandler();
     }
-    return typeHandler.getResult(rs, prependPrefix(resultMapping.getColumn(), columnPrefix));
+    return getResult(rsw, typeHandler, prependPrefix(resultMapping.getColumn(), columnPrefix));
   }
 
-  private Object prepareCompositeKeyParameter(ResultSet rs, ResultMapping resultMapping, Class<?> parameterType, String columnPrefix) throws SQLException {
+  private Object prepareCompositeKeyParameter(ResultSetWrapper rsw, ResultMapping resultMapping, Class<?> parameterType, String columnPrefix) throws SQLException {
     final Object parameterObject = instantiateParameterObject(parameterType);
     final MetaObject metaObject = configuration.newMetaObject(parameterObject);
     boolean foundValues = false;
     for (ResultMapping innerResultMapping : resultMapping.getComposites()) {
       final Class<?> propType = metaObject.getSetterType(innerResultMapping.getProperty());
       final TypeHandler<?> typeHandler = typeHandlerRegistry.getTypeHandler(propType);
-      final Object propValue = typeHandler.getResult(rs, prependPrefix(innerResultMapping.getColumn(), columnPrefix));
+      final Object propValue = getResult(rsw, typeHandler, prependPrefix(innerResultMapping.getColumn(), columnPrefix));
       // issue #353 & #560 do not execute nested query if key is null
       if (propValue != null) {
         metaObject.setValue(innerResultMapping.getProperty(), propValue);
@@ -826,10 +968,17 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   //
 
   public ResultMap resolveDiscriminatedResultMap(ResultSet rs, ResultMap resultMap, String columnPrefix) throws SQLException {
+    if (resultMap.getDiscriminator() == null) {
+      return resultMap;
+    }
+    return resolveDiscriminatedResultMap(new ResultSetWrapper(rs, configuration, mappedStatement), resultMap, columnPrefix);
+  }
+
+  private ResultMap resolveDiscriminatedResultMap(ResultSetWrapper rsw, ResultMap resultMap, String columnPrefix) throws SQLException {
     Set<String> pastDiscriminators = new HashSet<String>();
     Discriminator discriminator = resultMap.getDiscriminator();
     while (discriminator != null) {
-      final Object value = getDiscriminatorValue(rs, discriminator, columnPrefix);
+      final Object value = getDiscriminatorValue(rsw, discriminator, columnPrefix);
       final String discriminatedMapId = discriminator.getMapIdFor(String.valueOf(value));
       if (configuration.hasResultMap(discriminatedMapId)) {
         resultMap = configuration.getResultMap(discriminatedMapId);
@@ -845,10 +994,10 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     return resultMap;
   }
 
-  private Object getDiscriminatorValue(ResultSet rs, Discriminator discriminator, String columnPrefix) throws SQLException {
+  private Object getDiscriminatorValue(ResultSetWrapper rsw, Discriminator discriminator, String columnPrefix) throws SQLException {
     final ResultMapping resultMapping = discriminator.getResultMapping();
     final TypeHandler<?> typeHandler = resultMapping.getTypeHandler();
-    return typeHandler.getResult(rs, prependPrefix(resultMapping.getColumn(), columnPrefix));
+    return getResult(rsw, typeHandler, prependPrefix(resultMapping.getColumn(), columnPrefix));
   }
 
   private String prependPrefix(String columnName, String prefix) {
@@ -858,6 +1007,16 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     return prefix + columnName;
   }
 
+  /*
+   * Reads a column of the current row with a type handler, by its index when the wrapper reads the columns of
+   * that type handler by index and the column is in the result set.
+   */
+  private Object getResult(ResultSetWrapper rsw, TypeHandler<?> typeHandler, String columnName) throws SQLException {
+    final int columnIndex = rsw.isReadByIndex(typeHandler) ? rsw.getColumnIndex(columnName) : -1;
+    return columnIndex == -1 ? typeHandler.getResult(rsw.getResultSet(), columnName)
+        : typeHandler.getResult(rsw.getResultSet(), columnIndex);
+  }
+
   //
   // HANDLE NESTED RESULT MAPS
   //
@@ -866,29 +1025,39 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     final DefaultResultContext<Object> resultContext = new DefaultResultContext<Object>();
     skipRows(rsw.getResultSet(), rowBounds);
     Object rowValue = previousRowValue;
+    CacheKey rowValueKey = previousRowKey;
     while (shouldProcessMoreRows(resultContext, rowBounds) && rsw.getResultSet().next()) {
-      final ResultMap discriminatedResultMap = resolveDiscriminatedResultMap(rsw.getResultSet(), resultMap, null);
+      final ResultMap discriminatedResultMap = resolveDiscriminatedResultMap(rsw, resultMap, null);
       final CacheKey rowKey = createRowKey(discriminatedResultMap, rsw, null);
-      Object partialObject = nestedResultObjects.get(rowKey);
       // issue #577 && #542
       if (mappedStatement.isResultOrdered()) {
-        if (partialObject == null && rowValue != null) {
+        // the rows of an object follow each other: it is complete as soon as the key changes, and only its
+        // nested objects are kept to merge the next rows into
+        Object partialObject = null;
+        if (rowKey != CacheKey.NULL_CACHE_KEY && rowKey.equals(rowValueKey)) {
+          partialObject = rowValue;
+        } else if (rowValue != null) {
           nestedResultObjects.clear();
-          storeObject(resultHandler, resultContext, rowValue, parentMapping, rsw.getResultSet());
+          storeObject(resultHandler, resultContext, rowValue, parentMapping, rsw);
         }
         rowValue = getRowValue(rsw, discriminatedResultMap, rowKey, null, partialObject);
+        rowValueKey = rowKey;
       } else {
+        Object partialObject = nestedResultObjects.get(rowKey);
         rowValue = getRowValue(rsw, discriminatedResultMap, rowKey, null, partialObject);
         if (partialObject == null) {
-          storeObject(resultHandler, resultContext, rowValue, parentMapping, rsw.getResultSet());
+          storeObject(resultHandler, resultContext, rowValue, parentMapping, rsw);
         }
       }
     }
     if (rowValue != null && mappedStatement.isResultOrdered() && shouldProcessMoreRows(resultContext, rowBounds)) {
-      storeObject(resultHandler, resultContext, rowValue, parentMapping, rsw.getResultSet());
+      nestedResultObjects.clear();
+      storeObject(resultHandler, resultContext, rowValue, parentMapping, rsw);
       previousRowValue = null;
+      previousRowKey = null;
     } else if (rowValue != null) {
       previousRowValue = rowValue;
+      previousRowKey = rowValueKey;
     }
   }
 
@@ -942,7 +1111,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
       if (nestedResultMapId != null && resultMapping.getResultSet() == null) {
         try {
           final String columnPrefix = getColumnPrefix(parentPrefix, resultMapping);
-          final ResultMap nestedResultMap = getNestedResultMap(rsw.getResultSet(), nestedResultMapId, columnPrefix);
+          final ResultMap nestedResultMap = getNestedResultMap(rsw, nestedResultMapId, columnPrefix);
           if (resultMapping.getColumnPrefix() == null) {
             // try to fill circular reference only when columnPrefix
             // is not specified for the nested result map (issue #215)
@@ -988,10 +1157,9 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   private boolean anyNotNullColumnHasValue(ResultMapping resultMapping, String columnPrefix, ResultSetWrapper rsw) throws SQLException {
     Set<String> notNullColumns = resultMapping.getNotNullColumns();
     if (notNullColumns != null && !notNullColumns.isEmpty()) {
-      ResultSet rs = rsw.getResultSet();
       for (String column : notNullColumns) {
-        rs.getObject(prependPrefix(column, columnPrefix));
-        if (!rs.wasNull()) {
+        rsw.getObject(prependPrefix(column, columnPrefix));
+        if (!rsw.getResultSet().wasNull()) {
           return true;
         }
       }
@@ -1007,9 +1175,9 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     return true;
   }
 
-  private ResultMap getNestedResultMap(ResultSet rs, String nestedResultMapId, String columnPrefix) throws SQLException {
+  private ResultMap getNestedResultMap(ResultSetWrapper rsw, String nestedResultMapId, String columnPrefix) throws SQLException {
     ResultMap nestedResultMap = configuration.getResultMap(nestedResultMapId);
-    return resolveDiscriminatedResultMap(rs, nestedResultMap, columnPrefix);
+    return resolveDiscriminatedResultMap(rsw, nestedResultMap, columnPrefix);
   }
 
   //
@@ -1067,10 +1235,9 @@ public class DefaultResultSetHandler implements ResultSetHandler {
       } else if (resultMapping.getNestedQueryId() == null) {
         final String column = prependPrefix(resultMapping.getColumn(), columnPrefix);
         final TypeHandler<?> th = resultMapping.getTypeHandler();
-        List<String> mappedColumnNames = rsw.getMappedColumnNames(resultMap, columnPrefix);
         // Issue #114
-        if (column != null && mappedColumnNames.contains(column.toUpperCase(Locale.ENGLISH))) {
-          final Object value = th.getResult(rsw.getResultSet(), column);
+        if (column != null && rsw.isMappedColumn(resultMap, columnPrefix, column)) {
+          final Object value = getResult(rsw, th, column);
           if (value != null || configuration.isReturnInstanceForEmptyRow()) {
             cacheKey.update(column);
             cacheKey.update(value);
@@ -1094,7 +1261,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
         }
       }
       if (metaType.findProperty(property, configuration.isMapUnderscoreToCamelCase()) != null) {
-        String value = rsw.getResultSet().getString(column);
+        String value = rsw.getString(column);
         if (value != null) {
           cacheKey.update(column);
           cacheKey.update(value);
@@ -1106,7 +1273,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   private void createRowKeyForMap(ResultSetWrapper rsw, CacheKey cacheKey) throws SQLException {
     List<String> columnNames = rsw.getColumnNames();
     for (String columnName : columnNames) {
-      final String value = rsw.getResultSet().getString(columnName);
+      final String value = rsw.getString(columnName);
       if (value != null) {
         cacheKey.update(columnName);
         cacheKey.update(value);
@@ -0,0 +1,264 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.type.JdbcType;
+import org.apache.ibatis.type.TypeHandler;
+
+/**
+ * The columns of a result set and what is resolved from them: an index of the column names, the type handlers
+ * chosen per column and the columns each result map maps. It only depends on the column layout, so the
+ * {@link ResultSetWrapper}s of a statement share it through the {@link ResultSetMappingCache} for as long as its
+ * executions return the same columns.
+ * <p>
+ * Column names are looked up ignoring case in an open addressing hash table of the column ordinals, so a lookup
+ * costs the same whatever the number of columns and allocates nothing. Each wrapper remembers the names it
+ * looked up.
+ *
+ * @since 3.4.7
+ */
+public final class ResultSetColumns {
+
+  private final String layout;
+  private final String[] columnNames;
+  private final String[] upperColumnNames;
+  private final JdbcType[] jdbcTypes;
+  private final String[] classNames;
+  private final List<String> columnNameList;
+  private final List<String> classNameList;
+  private final int[] slots;
+  private final int[] slotHashes;
+  private final int shift;
+  private final ConcurrentMap<String, ConcurrentMap<Class<?>, TypeHandler<?>>> typeHandlers = new ConcurrentHashMap<String, ConcurrentMap<Class<?>, TypeHandler<?>>>();
+  private final ConcurrentMap<ResultMap, ConcurrentMap<String, MappedColumns>> mappedColumns = new ConcurrentHashMap<ResultMap, ConcurrentMap<String, MappedColumns>>();
+
+  ResultSetColumns(String[] columnNames, JdbcType[] jdbcTypes, String[] classNames) {
+    this.layout = layoutOf(columnNames, jdbcTypes, classNames);
+    this.columnNames = columnNames;
+    this.jdbcTypes = jdbcTypes;
+    this.classNames = classNames;
+    this.columnNameList = Collections.unmodifiableList(Arrays.asList(columnNames));
+    this.classNameList = Collections.unmodifiableList(Arrays.asList(classNames));
+    this.upperColumnNames = new String[columnNames.length];
+    for (int i = 0; i < columnNames.length; i++) {
+      upperColumnNames[i] = columnNames[i].toUpperCase(Locale.ENGLISH);
+    }
+    int bits = 1;
+    while ((1 << bits) < columnNames.length * 2) {
+      bits++;
+    }
+    this.slots = new int[1 << bits];
+    this.slotHashes = new int[1 << bits];
+    this.shift = 32 - bits;
+    for (int i = 0; i < columnNames.length; i++) {
+      // the first of the columns with the same name wins, as with ResultSet#findColumn
+      if (indexOf(columnNames[i]) == -1) {
+        final int hash = hash(columnNames[i]);
+        int slot = hash >>> shift;
+        while (slots[slot] != 0) {
+          slot = (slot + 1) & (slots.length - 1);
+        }
+        slots[slot] = i + 1;
+        slotHashes[slot] = hash;
+      }
+    }
+  }
+
+  /**
+   * Returns the names, JDBC types and classes of the columns, the key the columns are shared and compiled for.
+   */
+  static String layoutOf(String[] columnNames, JdbcType[] jdbcTypes, String[] classNames) {
+    StringBuilder layout = new StringBuilder();
+    for (int i = 0; i < columnNames.length; i++) {
+      layout.append(columnNames[i]).append(':').append(jdbcTypes[i]).append(':').append(classNames[i]).append(',');
+    }
+    return layout.toString();
+  }
+
+  private static int hash(String columnName) {
+    int h = 0;
+    for (int i = 0; i < columnName.length(); i++) {
+      char c = columnName.charAt(i);
+      if (c >= 'A' && c <= 'Z') {
+        c += 'a' - 'A';
+      } else if (c >= 0x80) {
+        // consistent with String#equalsIgnoreCase
+        c = Character.toLowerCase(Character.toUpperCase(c));
+      }
+      h = 31 * h + c;
+    }
+    // Fibonacci hashing, the table index is taken from the high bits
+    return h * 0x9E3779B9;
+  }
+
+  private static boolean equalsIgnoreCase(String columnName, String otherName) {
+    if (columnName == otherName) {
+      return true;
+    }
+    final int length = columnName.length();
+    if (length != otherName.length()) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      char c1 = columnName.charAt(i);
+      char c2 = otherName.charAt(i);
+      if (c1 != c2) {
+        if (c1 >= 0x80 || c2 >= 0x80) {
+          return columnName.equalsIgnoreCase(otherName);
+        }
+        if (c1 >= 'A' && c1 <= 'Z') {
+          c1 += 'a' - 'A';
+        }
+        if (c2 >= 'A' && c2 <= 'Z') {
+          c2 += 'a' - 'A';
+        }
+        if (c1 != c2) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  String getLayout() {
+    return layout;
+  }
+
+  List<String> getColumnNames() {
+    return columnNameList;
+  }
+
+  List<String> getClassNames() {
+    return classNameList;
+  }
+
+  /**
+   * Returns the index of the first column with this name, ignoring case, starting at 1; or -1 if there is none.
+   */
+  int indexOf(String columnName) {
+    final int hash = hash(columnName);
+    int slot = hash >>> shift;
+    int ordinal;
+    while ((ordinal = slots[slot]) != 0) {
+      if (slotHashes[slot] == hash && equalsIgnoreCase(columnNames[ordinal - 1], columnName)) {
+        return ordinal;
+      }
+      slot = (slot + 1) & (slots.length - 1);
+    }
+    return -1;
+  }
+
+  JdbcType getJdbcType(int columnIndex) {
+    return jdbcTypes[columnIndex - 1];
+  }
+
+  String getClassName(int columnIndex) {
+    return classNames[columnIndex - 1];
+  }
+
+  ConcurrentMap<Class<?>, TypeHandler<?>> getTypeHandlers(String columnName) {
+    ConcurrentMap<Class<?>, TypeHandler<?>> columnHandlers = typeHandlers.get(columnName);
+    if (columnHandlers == null) {
+      columnHandlers = new ConcurrentHashMap<Class<?>, TypeHandler<?>>();
+      ConcurrentMap<Class<?>, TypeHandler<?>> existing = typeHandlers.putIfAbsent(columnName, columnHandlers);
+      if (existing != null) {
+        columnHandlers = existing;
+      }
+    }
+    return columnHandlers;
+  }
+
+  MappedColumns getMappedColumns(ResultMap resultMap, String columnPrefix) {
+    ConcurrentMap<String, MappedColumns> prefixes = mappedColumns.get(resultMap);
+    if (prefixes == null) {
+      prefixes = new ConcurrentHashMap<String, MappedColumns>();
+      ConcurrentMap<String, MappedColumns> existing = mappedColumns.putIfAbsent(resultMap, prefixes);
+      if (existing != null) {
+        prefixes = existing;
+      }
+    }
+    final String prefixKey = columnPrefix == null ? "" : columnPrefix;
+    MappedColumns columns = prefixes.get(prefixKey);
+    if (columns == null) {
+      columns = new MappedColumns(resultMap, columnPrefix);
+      prefixes.putIfAbsent(prefixKey, columns);
+    }
+    return columns;
+  }
+
+  /**
+   * The columns a result map (with a column prefix) maps, and those it does not.
+   */
+  final class MappedColumns {
+    private final boolean[] mapped;
+    private final List<String> mappedColumnNames;
+    private final List<String> unmappedColumnNames;
+
+    private MappedColumns(ResultMap resultMap, String columnPrefix) {
+      final String upperColumnPrefix = columnPrefix == null ? null : columnPrefix.toUpperCase(Locale.ENGLISH);
+      final Set<String> mappedColumnSet = prependPrefixes(resultMap.getMappedColumns(), upperColumnPrefix);
+      final List<String> mappedNames = new ArrayList<String>();
+      final List<String> unmappedNames = new ArrayList<String>();
+      mapped = new boolean[columnNames.length];
+      for (int i = 0; i < columnNames.length; i++) {
+        if (mappedColumnSet.contains(upperColumnNames[i])) {
+          mapped[i] = true;
+          mappedNames.add(upperColumnNames[i]);
+        } else {
+          unmappedNames.add(columnNames[i]);
+        }
+      }
+      mappedColumnNames = Collections.unmodifiableList(mappedNames);
+      unmappedColumnNames = Collections.unmodifiableList(unmappedNames);
+    }
+
+    boolean isMapped(String columnName) {
+      final int columnIndex = indexOf(columnName);
+      return columnIndex != -1 && mapped[columnIndex - 1];
+    }
+
+    List<String> getMappedColumnNames() {
+      return mappedColumnNames;
+    }
+
+    List<String> getUnmappedColumnNames() {
+      return unmappedColumnNames;
+    }
+  }
+
+  private static Set<String> prependPrefixes(Set<String> columnNames, String prefix) {
+    if (columnNames == null || columnNames.isEmpty() || prefix == null || prefix.length() == 0) {
+      return columnNames;
+    }
+    final Set<String> prefixed = new HashSet<String>();
+    for (String columnName : columnNames) {
+      prefixed.add(prefix + columnName);
+    }
+    return prefixed;
+  }
+
+}
@@ -0,0 +1,80 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ResultMap;
+
+/**
+ * What the result set handlers of a configuration resolve from the column layouts they meet, kept for the next
+ * executions: the {@link ResultSetColumns} returned by each mapped statement and the {@link RowMappingPlan}s
+ * compiled for each result map. A statement or a result map only keeps a bounded number of layouts, so a
+ * dynamic select list does not fill the heap.
+ *
+ * @since 3.4.7
+ */
+public final class ResultSetMappingCache {
+
+  private static final int MAX_LAYOUTS = 32;
+
+  private final ConcurrentMap<MappedStatement, ConcurrentMap<String, ResultSetColumns>> resultSetColumns = new ConcurrentHashMap<MappedStatement, ConcurrentMap<String, ResultSetColumns>>();
+  private final ConcurrentMap<ResultMap, ConcurrentMap<String, RowMappingPlan>> rowMappingPlans = new ConcurrentHashMap<ResultMap, ConcurrentMap<String, RowMappingPlan>>();
+
+  ResultSetColumns getResultSetColumns(MappedStatement mappedStatement, String columnLayout) {
+    ConcurrentMap<String, ResultSetColumns> layouts = resultSetColumns.get(mappedStatement);
+    return layouts == null ? null : layouts.get(columnLayout);
+  }
+
+  void addResultSetColumns(MappedStatement mappedStatement, ResultSetColumns columns) {
+    add(layoutsOf(resultSetColumns, mappedStatement), columns.getLayout(), columns);
+  }
+
+  RowMappingPlan getRowMappingPlan(ResultMap resultMap, String columnLayout) {
+    ConcurrentMap<String, RowMappingPlan> layouts = rowMappingPlans.get(resultMap);
+    return layouts == null ? null : layouts.get(columnLayout);
+  }
+
+  void addRowMappingPlan(ResultMap resultMap, String columnLayout, RowMappingPlan plan) {
+    add(layoutsOf(rowMappingPlans, resultMap), columnLayout, plan);
+  }
+
+  int getRowMappingPlanCount(ResultMap resultMap) {
+    ConcurrentMap<String, RowMappingPlan> layouts = rowMappingPlans.get(resultMap);
+    return layouts == null ? 0 : layouts.size();
+  }
+
+  private static <K, V> ConcurrentMap<String, V> layoutsOf(ConcurrentMap<K, ConcurrentMap<String, V>> cache, K owner) {
+    ConcurrentMap<String, V> layouts = cache.get(owner);
+    if (layouts == null) {
+      layouts = new ConcurrentHashMap<String, V>();
+      ConcurrentMap<String, V> existing = cache.putIfAbsent(owner, layouts);
+      if (existing != null) {
+        layouts = existing;
+      }
+    }
+    return layouts;
+  }
+
+  private static <V> void add(ConcurrentMap<String, V> layouts, String columnLayout, V value) {
+    if (layouts.size() < MAX_LAYOUTS) {
+      layouts.putIfAbsent(columnLayout, value);
+    }
+  }
+
+}
@@ -18,17 +18,15 @@ package org.apache.ibatis.executor.resultset;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
+
 import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.mapping.ResultMap;
 import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.type.BaseTypeHandler;
 import org.apache.ibatis.type.JdbcType;
 import org.apache.ibatis.type.ObjectTypeHandler;
 import org.apache.ibatis.type.TypeHandler;
@@ -42,24 +40,46 @@ public class ResultSetWrapper {
 
   private final ResultSet resultSet;
   private final TypeHandlerRegistry typeHandlerRegistry;
-  private final List<String> columnNames = new ArrayList<String>();
-  private final List<String> classNames = new ArrayList<String>();
-  private final List<JdbcType> jdbcTypes = new ArrayList<JdbcType>();
-  private final Map<String, Map<Class<?>, TypeHandler<?>>> typeHandlerMap = new HashMap<String, Map<Class<?>, TypeHandler<?>>>();
-  private final Map<String, List<String>> mappedColumnNamesMap = new HashMap<String, List<String>>();
-  private final Map<String, List<String>> unMappedColumnNamesMap = new HashMap<String, List<String>>();
+  private final ResultSetColumns columns;
+  private final Map<String, Integer> columnIndexes = new HashMap<String, Integer>();
+  private final boolean columnIndexReadsEnabled;
 
   public ResultSetWrapper(ResultSet rs, Configuration configuration) throws SQLException {
+    this(rs, configuration, null);
+  }
+
+  /**
+   * @param mappedStatement the statement that returned the result set, to share what is resolved from its columns
+   *          with the next executions returning the same columns; or null
+   * @since 3.4.7
+   */
+  public ResultSetWrapper(ResultSet rs, Configuration configuration, MappedStatement mappedStatement) throws SQLException {
     super();
     this.typeHandlerRegistry = configuration.getTypeHandlerRegistry();
     this.resultSet = rs;
+    this.columnIndexReadsEnabled = configuration.isColumnIndexReadsEnabled();
     final ResultSetMetaData metaData = rs.getMetaData();
     final int columnCount = metaData.getColumnCount();
+    final String[] columnNames = new String[columnCount];
+    final JdbcType[] jdbcTypes = new JdbcType[columnCount];
+    final String[] classNames = new String[columnCount];
     for (int i = 1; i <= columnCount; i++) {
-      columnNames.add(configuration.isUseColumnLabel() ? metaData.getColumnLabel(i) : metaData.getColumnName(i));
-      jdbcTypes.add(JdbcType.forCode(metaData.getColumnType(i)));
-      classNames.add(metaData.getColumnClassName(i));
+      columnNames[i - 1] = configuration.isUseColumnLabel() ? metaData.getColumnLabel(i) : metaData.getColumnName(i);
+      jdbcTypes[i - 1] = JdbcType.forCode(metaData.getColumnType(i));
+      classNames[i - 1] = metaData.getColumnClassName(i);
+    }
+    ResultSetColumns sharedColumns = null;
+    final ResultSetMappingCache cache = configuration.getResultSetMappingCache();
+    if (mappedStatement != null) {
+      sharedColumns = cache.getResultSetColumns(mappedStatement, ResultSetColumns.layoutOf(columnNames, jdbcTypes, classNames));
     }
+    if (sharedColumns == null) {
+      sharedColumns = new ResultSetColumns(columnNames, jdbcTypes, classNames);
+      if (mappedStatement != null) {
+        cache.addResultSetColumns(mappedStatement, sharedColumns);
+      }
+    }
+    this.columns = sharedColumns;
   }
 
   public ResultSet getResultSet() {
@@ -67,20 +87,74 @@ public class ResultSetWrapper {
   }
 
   public List<String> getColumnNames() {
-    return this.columnNames;
+    return columns.getColumnNames();
   }
 
   public List<String> getClassNames() {
-    return Collections.unmodifiableList(classNames);
+    return columns.getClassNames();
   }
 
-  public JdbcType getJdbcType(String columnName) {
-    for (int i = 0 ; i < columnNames.size(); i++) {
-      if (columnNames.get(i).equalsIgnoreCase(columnName)) {
-        return jdbcTypes.get(i);
-      }
+  /**
+   * Returns the index of the first column with this name, ignoring case, starting at 1; or -1 if there is none.
+   *
+   * @since 3.4.7
+   */
+  public int getColumnIndex(String columnName) {
+    // the names a mapping reads repeat on every row and cache their hash codes
+    Integer columnIndex = columnIndexes.get(columnName);
+    if (columnIndex == null) {
+      columnIndex = columns.indexOf(columnName);
+      columnIndexes.put(columnName, columnIndex);
     }
-    return null;
+    return columnIndex;
+  }
+
+  /**
+   * Reads a column of the current row as a string, by its index when column index reads are enabled and it is
+   * in the result set.
+   *
+   * @since 3.4.7
+   */
+  public String getString(String columnName) throws SQLException {
+    final int columnIndex = columnIndexReadsEnabled ? getColumnIndex(columnName) : -1;
+    return columnIndex == -1 ? resultSet.getString(columnName) : resultSet.getString(columnIndex);
+  }
+
+  /**
+   * Reads a column of the current row as an object, by its index when column index reads are enabled and it is
+   * in the result set.
+   *
+   * @since 3.4.7
+   */
+  public Object getObject(String columnName) throws SQLException {
+    final int columnIndex = columnIndexReadsEnabled ? getColumnIndex(columnName) : -1;
+    return columnIndex == -1 ? resultSet.getObject(columnName) : resultSet.getObject(columnIndex);
+  }
+
+  /**
+   * Tells whether columns are read with a type handler by index. They are when column index reads are enabled and
+   * the type handler extends {@link BaseTypeHandler}, which has to implement reading by index; other type handlers
+   * may only implement reading by label.
+   *
+   * @see Configuration#isColumnIndexReadsEnabled()
+   * @since 3.4.7
+   */
+  public boolean isReadByIndex(TypeHandler<?> typeHandler) {
+    return columnIndexReadsEnabled && typeHandler instanceof BaseTypeHandler;
+  }
+
+  /**
+   * Returns the names, JDBC types and classes of the columns, as a key for what is compiled for them.
+   *
+   * @since 3.4.7
+   */
+  public String getColumnLayout() {
+    return columns.getLayout();
+  }
+
+  public JdbcType getJdbcType(String columnName) {
+    final int columnIndex = getColumnIndex(columnName);
+    return columnIndex == -1 ? null : columns.getJdbcType(columnIndex);
   }
 
   /**
@@ -93,22 +167,16 @@ public class ResultSetWrapper {
    * @return
    */
   public TypeHandler<?> getTypeHandler(Class<?> propertyType, String columnName) {
-    TypeHandler<?> handler = null;
-    Map<Class<?>, TypeHandler<?>> columnHandlers = typeHandlerMap.get(columnName);
-    if (columnHandlers == null) {
-      columnHandlers = new HashMap<Class<?>, TypeHandler<?>>();
-      typeHandlerMap.put(columnName, columnHandlers);
-    } else {
-      handler = columnHandlers.get(propertyType);
-    }
+    final Map<Class<?>, TypeHandler<?>> columnHandlers = columns.getTypeHandlers(columnName);
+    TypeHandler<?> handler = columnHandlers.get(propertyType);
     if (handler == null) {
       JdbcType jdbcType = getJdbcType(columnName);
       handler = typeHandlerRegistry.getTypeHandler(propertyType, jdbcType);
       // Replicate logic of UnknownTypeHandler#resolveTypeHandler
       // See issue #59 comment 10
       if (handler == null || handler instanceof UnknownTypeHandler) {
-        final int index = columnNames.indexOf(columnName);
-        final Class<?> javaType = resolveClass(classNames.get(index));
+        final int index = columns.indexOf(columnName);
+        final Class<?> javaType = resolveClass(columns.getClassName(index));
         if (javaType != null && jdbcType != null) {
           handler = typeHandlerRegistry.getTypeHandler(javaType, jdbcType);
         } else if (javaType != null) {
@@ -137,54 +205,21 @@ public class ResultSetWrapper {
     return null;
   }
 
-  private void loadMappedAndUnmappedColumnNames(ResultMap resultMap, String columnPrefix) throws SQLException {
-    List<String> mappedColumnNames = new ArrayList<String>();
-    List<String> unmappedColumnNames = new ArrayList<String>();
-    final String upperColumnPrefix = columnPrefix == null ? null : columnPrefix.toUpperCase(Locale.ENGLISH);
-    final Set<String> mappedColumns = prependPrefixes(resultMap.getMappedColumns(), upperColumnPrefix);
-    for (String columnName : columnNames) {
-      final String upperColumnName = columnName.toUpperCase(Locale.ENGLISH);
-      if (mappedColumns.contains(upperColumnName)) {
-        mappedColumnNames.add(upperColumnName);
-      } else {
-        unmappedColumnNames.add(columnName);
-      }
-    }
-    mappedColumnNamesMap.put(getMapKey(resultMap, columnPrefix), mappedColumnNames);
-    unMappedColumnNamesMap.put(getMapKey(resultMap, columnPrefix), unmappedColumnNames);
-  }
-
   public List<String> getMappedColumnNames(ResultMap resultMap, String columnPrefix) throws SQLException {
-    List<String> mappedColumnNames = mappedColumnNamesMap.get(getMapKey(resultMap, columnPrefix));
-    if (mappedColumnNames == null) {
-      loadMappedAndUnmappedColumnNames(resultMap, columnPrefix);
-      mappedColumnNames = mappedColumnNamesMap.get(getMapKey(resultMap, columnPrefix));
-    }
-    return mappedColumnNames;
+    return columns.getMappedColumns(resultMap, columnPrefix).getMappedColumnNames();
   }
 
   public List<String> getUnmappedColumnNames(ResultMap resultMap, String columnPrefix) throws SQLException {
-    List<String> unMappedColumnNames = unMappedColumnNamesMap.get(getMapKey(resultMap, columnPrefix));
-    if (unMappedColumnNames == null) {
-      loadMappedAndUnmappedColumnNames(resultMap, columnPrefix);
-      unMappedColumnNames = unMappedColumnNamesMap.get(getMapKey(resultMap, columnPrefix));
-    }
-    return unMappedColumnNames;
+    return columns.getMappedColumns(resultMap, columnPrefix).getUnmappedColumnNames();
   }
 
-  private String getMapKey(ResultMap resultMap, String columnPrefix) {
-    return resultMap.getId() + ":" + columnPrefix;
+  /**
+   * Returns true when the result set has a column with this name, ignoring case, and the result map maps it.
+   *
+   * @since 3.4.7
+   */
+  public boolean isMappedColumn(ResultMap resultMap, String columnPrefix, String columnName) throws SQLException {
+    return columns.getMappedColumns(resultMap, columnPrefix).isMapped(columnName);
   }
 
-  private Set<String> prependPrefixes(Set<String> columnNames, String prefix) {
-    if (columnNames == null || columnNames.isEmpty() || prefix == null || prefix.length() == 0) {
-      return columnNames;
-    }
-    final Set<String> prefixed = new HashSet<String>();
-    for (String columnName : columnNames) {
-      prefixed.add(prefix + columnName);
-    }
-    return prefixed;
-  }
-  
 }
@@ -0,0 +1,121 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.reflection.ExceptionUtil;
+import org.apache.ibatis.reflection.ReflectionException;
+import org.apache.ibatis.reflection.invoker.Invoker;
+import org.apache.ibatis.type.TypeHandler;
+
+/**
+ * How the rows of a result set are mapped to a result map, compiled once for the columns of the result set.
+ * <p>
+ * Each column mapping knows the index of its column, its type handler and, for a plain property of a bean,
+ * the setter to call, so mapping a row needs no column name lookup and no {@code MetaObject}. Property mappings
+ * that run a nested query or wait for another result set are kept as they are and applied by the result set
+ * handler. Plans are kept per result map and column layout in the {@link ResultSetMappingCache}.
+ *
+ * @since 3.4.7
+ */
+public final class RowMappingPlan {
+
+  private final ColumnMapping[] autoMappings;
+  private final ColumnMapping[] propertyMappings;
+  private final boolean metaObjectRequired;
+
+  RowMappingPlan(ColumnMapping[] autoMappings, ColumnMapping[] propertyMappings) {
+    this.autoMappings = autoMappings;
+    this.propertyMappings = propertyMappings;
+    this.metaObjectRequired = requiresMetaObject(autoMappings) || requiresMetaObject(propertyMappings);
+  }
+
+  private static boolean requiresMetaObject(ColumnMapping[] mappings) {
+    for (ColumnMapping mapping : mappings) {
+      if (mapping.setter == null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  ColumnMapping[] getAutoMappings() {
+    return autoMappings;
+  }
+
+  ColumnMapping[] getPropertyMappings() {
+    return propertyMappings;
+  }
+
+  /**
+   * Returns true when a mapping sets a nested property, maps a nested query or another result set.
+   */
+  boolean isMetaObjectRequired() {
+    return metaObjectRequired;
+  }
+
+  static final class ColumnMapping {
+    final String column;
+    final int columnIndex;
+    final String property;
+    final TypeHandler<?> typeHandler;
+    final Invoker setter;
+    final boolean primitive;
+    final ResultMapping resultMapping;
+    private final boolean readByIndex;
+
+    /**
+     * @param column the column label, or null for a mapping that does not read a single column
+     * @param columnIndex the index of the column in the result set, starting at 1
+     * @param readByIndex whether the type handler reads the column by its index rather than by its label
+     * @param setter the setter of the property, or null when it is set through a {@code MetaObject}
+     * @param resultMapping the property mapping, when it is not a plain column read: it is then applied as
+     *          the result set handler always did
+     */
+    ColumnMapping(String column, int columnIndex, String property, TypeHandler<?> typeHandler, boolean readByIndex,
+        Invoker setter, boolean primitive, ResultMapping resultMapping) {
+      this.column = column;
+      this.columnIndex = columnIndex;
+      this.property = property;
+      this.typeHandler = typeHandler;
+      this.setter = setter;
+      this.primitive = primitive;
+      this.resultMapping = resultMapping;
+      this.readByIndex = readByIndex;
+    }
+
+    Object getValue(ResultSet rs) throws SQLException {
+      return readByIndex ? typeHandler.getResult(rs, columnIndex) : typeHandler.getResult(rs, column);
+    }
+
+    void setValue(Object object, Object value) {
+      try {
+        try {
+          setter.invoke(object, new Object[] { value });
+        } catch (Throwable t) {
+          throw ExceptionUtil.unwrapThrowable(t);
+        }
+      } catch (Throwable t) {
+        throw new ReflectionException("Could not set property '" + property + "' of '" + object.getClass()
+            + "' with value '" + value + "' Cause: " + t.toString(), t);
+      }
+    }
+  }
+
+}
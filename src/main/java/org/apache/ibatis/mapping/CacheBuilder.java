@@ -23,14 +23,20 @@ import java.util.Properties;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheStatistics;
 import org.apache.ibatis.builder.InitializingObject;
 import org.apache.ibatis.cache.decorators.BlockingCache;
+import org.apache.ibatis.cache.decorators.DeepCopyCache;
+import org.apache.ibatis.cache.decorators.ExpiringCache;
 import org.apache.ibatis.cache.decorators.LoggingCache;
 import org.apache.ibatis.cache.decorators.LruCache;
 import org.apache.ibatis.cache.decorators.ScheduledCache;
 import org.apache.ibatis.cache.decorators.SerializedCache;
 import org.apache.ibatis.cache.decorators.SynchronizedCache;
+import org.apache.ibatis.cache.decorators.TableInvalidationCache;
+import org.apache.ibatis.cache.impl.OffHeapCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.impl.TinyLfuCache;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.SystemMetaObject;
 
@@ -42,7 +48,11 @@ public class CacheBuilder {
   private Class<? extends Cache> implementation;
   private final List<Class<? extends Cache>> decorators;
   private Integer size;
+  private Long maxBytes;
   private Long clearInterval;
+  private Long timeToLive;
+  private Double timeToLiveJitter;
+  private boolean refreshAhead;
   private boolean readWrite;
   private Properties properties;
   private boolean blocking;
@@ -69,11 +79,31 @@ public class CacheBuilder {
     return this;
   }
 
+  public CacheBuilder maxBytes(Long maxBytes) {
+    this.maxBytes = maxBytes;
+    return this;
+  }
+
   public CacheBuilder clearInterval(Long clearInterval) {
     this.clearInterval = clearInterval;
     return this;
   }
 
+  public CacheBuilder timeToLive(Long timeToLive) {
+    this.timeToLive = timeToLive;
+    return this;
+  }
+
+  public CacheBuilder timeToLiveJitter(Double timeToLiveJitter) {
+    this.timeToLiveJitter = timeToLiveJitter;
+    return this;
+  }
+
+  public CacheBuilder refreshAhead(boolean refreshAhead) {
+    this.refreshAhead = refreshAhead;
+    return this;
+  }
+
   public CacheBuilder readWrite(boolean readWrite) {
     this.readWrite = readWrite;
     return this;
@@ -93,19 +123,42 @@ public class CacheBuilder {
     setDefaultImplementations();
     Cache cache = newBaseCacheInstance(implementation, id);
     setCacheProperties(cache);
+    List<Cache> evictingCaches = new ArrayList<Cache>();
+    evictingCaches.add(cache);
     // issue #352, do not apply decorators to custom caches
-    if (PerpetualCache.class.equals(cache.getClass())) {
+    if (PerpetualCache.class.equals(cache.getClass()) || TinyLfuCache.class.equals(cache.getClass())) {
+      boolean threadSafe = TinyLfuCache.class.equals(cache.getClass()) && decorators.isEmpty();
       for (Class<? extends Cache> decorator : decorators) {
         cache = newCacheDecoratorInstance(decorator, cache);
         setCacheProperties(cache);
+        evictingCaches.add(cache);
       }
-      cache = setStandardDecorators(cache);
+      cache = setStandardDecorators(cache, threadSafe, false);
+    } else if (OffHeapCache.class.equals(cache.getClass())) {
+      // evicts on its own, is thread safe and returns copies
+      cache = setStandardDecorators(cache, true, true);
     } else if (!LoggingCache.class.isAssignableFrom(cache.getClass())) {
       cache = new LoggingCache(cache);
     }
+    setStatistics(evictingCaches, CacheStatistics.of(cache));
     return cache;
   }
 
+  /*
+   * The caches with an eviction policy report the entries they evict to the statistics.
+   */
+  private void setStatistics(List<Cache> caches, CacheStatistics statistics) {
+    if (statistics == null) {
+      return;
+    }
+    for (Cache cache : caches) {
+      MetaObject metaCache = SystemMetaObject.forObject(cache);
+      if (metaCache.hasSetter("statistics") && CacheStatistics.class.equals(metaCache.getSetterType("statistics"))) {
+        metaCache.setValue("statistics", statistics);
+      }
+    }
+  }
+
   private void setDefaultImplementations() {
     if (implementation == null) {
       implementation = PerpetualCache.class;
@@ -113,26 +166,64 @@ public class CacheBuilder {
         decorators.add(LruCache.class);
       }
     }
+    // TINYLFU is a thread safe cache on its own rather than an eviction decorator
+    if (PerpetualCache.class.equals(implementation) && decorators.remove(TinyLfuCache.class)) {
+      implementation = TinyLfuCache.class;
+    }
   }
 
-  private Cache setStandardDecorators(Cache cache) {
+  private Cache setStandardDecorators(Cache cache, boolean threadSafe, boolean copying) {
     try {
       MetaObject metaCache = SystemMetaObject.forObject(cache);
       if (size != null && metaCache.hasSetter("size")) {
         metaCache.setValue("size", size);
       }
+      if (maxBytes != null) {
+        if (!metaCache.hasSetter("maxBytes")) {
+          throw new CacheException("The eviction policy of cache '" + id + "' (" + cache.getClass().getSimpleName()
+              + ") cannot be bounded by maxBytes, use LRU, TINYLFU or an OFFHEAP cache.");
+        }
+        metaCache.setValue("maxBytes", maxBytes);
+      }
+      if (timeToLive != null && cache instanceof OffHeapCache) {
+        // ExpiringCache would serialize its entries into the slabs, the off heap cache expires them on its own
+        OffHeapCache offHeapCache = (OffHeapCache) cache;
+        offHeapCache.setTimeToLive(timeToLive);
+        if (timeToLiveJitter != null) {
+          offHeapCache.setTimeToLiveJitter(timeToLiveJitter);
+        }
+        offHeapCache.setRefreshAhead(refreshAhead);
+      } else if (timeToLive != null) {
+        ExpiringCache expiringCache = new ExpiringCache(cache);
+        expiringCache.setTimeToLive(timeToLive);
+        if (timeToLiveJitter != null) {
+          expiringCache.setTimeToLiveJitter(timeToLiveJitter);
+        }
+        expiringCache.setRefreshAhead(refreshAhead);
+        cache = expiringCache;
+      }
       if (clearInterval != null) {
         cache = new ScheduledCache(cache);
         ((ScheduledCache) cache).setClearInterval(clearInterval);
       }
-      if (readWrite) {
-        cache = new SerializedCache(cache);
+      if (readWrite && !copying) {
+        if (properties != null && "deepCopy".equalsIgnoreCase(properties.getProperty("copyStrategy"))) {
+          cache = new DeepCopyCache(cache);
+        } else {
+          cache = new SerializedCache(cache);
+          setCacheProperties(cache);
+        }
       }
       cache = new LoggingCache(cache);
-      cache = new SynchronizedCache(cache);
+      if (!threadSafe) {
+        cache = new SynchronizedCache(cache);
+      }
       if (blocking) {
         cache = new BlockingCache(cache);
       }
+      if (properties != null && "tables".equalsIgnoreCase(properties.getProperty("invalidation"))) {
+        cache = new TableInvalidationCache(cache);
+      }
       return cache;
     } catch (Exception e) {
       throw new CacheException("Error building standard cache decorators.  Cause: " + e, e);
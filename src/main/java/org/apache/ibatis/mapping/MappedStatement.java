@@ -18,6 +18,7 @@ package org.apache.ibatis.mapping;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
@@ -33,6 +34,7 @@ import org.apache.ibatis.session.Configuration;
  */
 public final class MappedStatement {
 
+
   private String resource;
   private Configuration configuration;
   private String id;
@@ -56,6 +58,7 @@ public final class MappedStatement {
   private Log statementLog;
   private LanguageDriver lang;
   private String[] resultSets;
+  private String[] tables;
 
   MappedStatement() {
     // constructor disabled
@@ -179,6 +182,15 @@ public final class MappedStatement {
       mappedStatement.resultSets = delimitedStringToArray(resultSet);
       return this;
     }
+
+    /**
+     * @param tables comma separated names of the tables read or written by the statement
+     * @since 3.4.7
+     */
+    public Builder tables(String tables) {
+      mappedStatement.tables = tableNames(tables);
+      return this;
+    }
     
     public MappedStatement build() {
       assert mappedStatement.configuration != null;
@@ -287,6 +299,14 @@ public final class MappedStatement {
   public String[] getResulSets() {
     return resultSets;
   }
+
+  /**
+   * The declared tables, in lower case and without their schema, or null.
+   * @since 3.4.7
+   */
+  public String[] getTables() {
+    return tables;
+  }
   
   public BoundSql getBoundSql(Object parameterObject) {
     BoundSql boundSql = sqlSource.getBoundSql(parameterObject);
@@ -317,4 +337,15 @@ public final class MappedStatement {
     }
   }
 
+  private static String[] tableNames(String in) {
+    String[] names = delimitedStringToArray(in);
+    if (names != null) {
+      for (int i = 0; i < names.length; i++) {
+        String name = names[i].trim().toLowerCase(Locale.ENGLISH);
+        names[i] = name.substring(name.lastIndexOf('.') + 1);
+      }
+    }
+    return names;
+  }
+
 }
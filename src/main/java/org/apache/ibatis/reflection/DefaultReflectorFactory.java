@@ -41,13 +41,24 @@ public class DefaultReflectorFactory implements ReflectorFactory {
             // synchronized (type) removed see issue #461
       Reflector cached = reflectorMap.get(type);
       if (cached == null) {
-        cached = new Reflector(type);
+        cached = createReflector(type);
         reflectorMap.put(type, cached);
       }
       return cached;
     } else {
-      return new Reflector(type);
+      return createReflector(type);
     }
   }
 
+  /**
+   * Creates the reflector of a class that is not cached yet.
+   *
+   * @param type the class to reflect
+   * @return the new reflector
+   * @since 3.4.7
+   */
+  protected Reflector createReflector(Class<?> type) {
+    return new Reflector(type);
+  }
+
 }
@@ -34,6 +34,7 @@ import java.util.Map.Entry;
 
 import org.apache.ibatis.reflection.invoker.GetFieldInvoker;
 import org.apache.ibatis.reflection.invoker.Invoker;
+import org.apache.ibatis.reflection.invoker.InvokerFactory;
 import org.apache.ibatis.reflection.invoker.MethodInvoker;
 import org.apache.ibatis.reflection.invoker.SetFieldInvoker;
 import org.apache.ibatis.reflection.property.PropertyNamer;
@@ -47,6 +48,7 @@ import org.apache.ibatis.reflection.property.PropertyNamer;
 public class Reflector {
 
   private final Class<?> type;
+  private final InvokerFactory invokerFactory;
   private final String[] readablePropertyNames;
   private final String[] writeablePropertyNames;
   private final Map<String, Invoker> setMethods = new HashMap<String, Invoker>();
@@ -58,7 +60,17 @@ public class Reflector {
   private Map<String, String> caseInsensitivePropertyMap = new HashMap<String, String>();
 
   public Reflector(Class<?> clazz) {
+    this(clazz, null);
+  }
+
+  /**
+   * @param clazz the class to reflect
+   * @param invokerFactory creates the invokers of getter and setter methods, or {@code null} to use {@link MethodInvoker}
+   * @since 3.4.7
+   */
+  public Reflector(Class<?> clazz, InvokerFactory invokerFactory) {
     type = clazz;
+    this.invokerFactory = invokerFactory;
     addDefaultConstructor(clazz);
     addGetMethods(clazz);
     addSetMethods(clazz);
@@ -145,7 +157,7 @@ public class Reflector {
 
   private void addGetMethod(String name, Method method) {
     if (isValidPropertyName(name)) {
-      getMethods.put(name, new MethodInvoker(method));
+      getMethods.put(name, newMethodInvoker(method));
       Type returnType = TypeParameterResolver.resolveReturnType(method, type);
       getTypes.put(name, typeToClass(returnType));
     }
@@ -224,12 +236,19 @@ public class Reflector {
 
   private void addSetMethod(String name, Method method) {
     if (isValidPropertyName(name)) {
-      setMethods.put(name, new MethodInvoker(method));
+      setMethods.put(name, newMethodInvoker(method));
       Type[] paramTypes = TypeParameterResolver.resolveParamTypes(method, type);
       setTypes.put(name, typeToClass(paramTypes[0]));
     }
   }
 
+  private Invoker newMethodInvoker(Method method) {
+    if (invokerFactory != null) {
+      return invokerFactory.newInvoker(method);
+    }
+    return new MethodInvoker(method);
+  }
+
   private Class<?> typeToClass(Type src) {
     Class<?> result = null;
     if (src instanceof Class) {
@@ -0,0 +1,33 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.reflection.invoker;
+
+import java.lang.reflect.Method;
+
+/**
+ * Creates the {@link Invoker}s a {@link org.apache.ibatis.reflection.Reflector} uses for getter and setter methods.
+ *
+ * @since 3.4.7
+ */
+public interface InvokerFactory {
+
+  /**
+   * @param method a getter (no parameters) or a setter (one parameter)
+   * @return an invoker that calls the method and whose type is the property type, like {@link MethodInvoker}
+   */
+  Invoker newInvoker(Method method);
+
+}
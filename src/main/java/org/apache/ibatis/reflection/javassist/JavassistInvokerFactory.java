@@ -0,0 +1,264 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.reflection.javassist;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.reflection.invoker.Invoker;
+import org.apache.ibatis.reflection.invoker.InvokerFactory;
+import org.apache.ibatis.reflection.invoker.MethodInvoker;
+
+/**
+ * Creates invokers that call getters and setters directly from a class generated with Javassist instead of
+ * through {@link Method#invoke}. The classes generated for a bean class share one class loader, a child of the
+ * bean's. A call that would not succeed (wrong target or argument type, e.g. a widening conversion) is delegated
+ * to a {@link MethodInvoker}, so the results and the exceptions stay those of reflection. Methods that generated
+ * code cannot call (non public classes or parameter types, classes of the bootstrap class loader) are only
+ * invoked through reflection. The Javassist class pools used while generating are kept until
+ * {@link #releaseClassPools()} is called.
+ *
+ * @since 3.4.7
+ */
+public class JavassistInvokerFactory implements InvokerFactory {
+
+  private static final Log log = LogFactory.getLog(JavassistInvokerFactory.class);
+  private static final Map<Class<?>, Class<?>> WRAPPER_TYPES = new HashMap<Class<?>, Class<?>>();
+
+  static {
+    WRAPPER_TYPES.put(boolean.class, Boolean.class);
+    WRAPPER_TYPES.put(byte.class, Byte.class);
+    WRAPPER_TYPES.put(char.class, Character.class);
+    WRAPPER_TYPES.put(short.class, Short.class);
+    WRAPPER_TYPES.put(int.class, Integer.class);
+    WRAPPER_TYPES.put(long.class, Long.class);
+    WRAPPER_TYPES.put(float.class, Float.class);
+    WRAPPER_TYPES.put(double.class, Double.class);
+  }
+
+  private final ConcurrentMap<Class<?>, AccessorClassLoader> classLoaders = new ConcurrentHashMap<Class<?>, AccessorClassLoader>();
+  private final Queue<AccessorClassLoader> classPoolHolders = new ConcurrentLinkedQueue<AccessorClassLoader>();
+
+  public JavassistInvokerFactory() {
+    try {
+      Resources.classForName("javassist.ClassPool");
+    } catch (Throwable e) {
+      throw new IllegalStateException("Cannot generate property accessors because Javassist is not available. Add Javassist to your classpath.", e);
+    }
+  }
+
+  @Override
+  public Invoker newInvoker(Method method) {
+    Invoker methodInvoker = new MethodInvoker(method);
+    if (!isAccessible(method)) {
+      return methodInvoker;
+    }
+    AccessorClassLoader classLoader = getClassLoader(method.getDeclaringClass());
+    try {
+      return classLoader.newInvoker(method, methodInvoker);
+    } catch (Exception e) {
+      return fallBack(method, methodInvoker, e);
+    } catch (LinkageError e) {
+      return fallBack(method, methodInvoker, e);
+    }
+  }
+
+  /**
+   * Drops the class pools used to generate the invokers created so far. A class pool keeps the parsed form of every
+   * class it compiled against, so it is released once the invokers of a reflector exist; an invoker created later
+   * for the same bean class builds a new one.
+   */
+  public void releaseClassPools() {
+    AccessorClassLoader classLoader;
+    while ((classLoader = classPoolHolders.poll()) != null) {
+      classLoader.releaseClassPool();
+    }
+  }
+
+  boolean holdsClassPools() {
+    return !classPoolHolders.isEmpty();
+  }
+
+  private Invoker fallBack(Method method, Invoker methodInvoker, Throwable cause) {
+    if (log.isDebugEnabled()) {
+      log.debug("Could not generate an invoker for " + method + ", falling back to reflection. Cause: " + cause);
+    }
+    return methodInvoker;
+  }
+
+  private AccessorClassLoader getClassLoader(Class<?> type) {
+    AccessorClassLoader classLoader = classLoaders.get(type);
+    if (classLoader == null) {
+      classLoader = new AccessorClassLoader(type, classPoolHolders);
+      AccessorClassLoader existing = classLoaders.putIfAbsent(type, classLoader);
+      if (existing != null) {
+        classLoader = existing;
+      }
+    }
+    return classLoader;
+  }
+
+  private static boolean isAccessible(Method method) {
+    Class<?> type = method.getDeclaringClass();
+    if (type.getClassLoader() == null || !isPublic(type) || !Modifier.isPublic(method.getModifiers())
+        || Modifier.isStatic(method.getModifiers())) {
+      return false;
+    }
+    Class<?>[] parameterTypes = method.getParameterTypes();
+    return parameterTypes.length == 0 || (parameterTypes.length == 1 && isPublic(parameterTypes[0]));
+  }
+
+  private static boolean isPublic(Class<?> type) {
+    Class<?> current = type;
+    while (current.isArray()) {
+      current = current.getComponentType();
+    }
+    if (current.isPrimitive()) {
+      return true;
+    }
+    for (; current != null; current = current.getEnclosingClass()) {
+      if (!Modifier.isPublic(current.getModifiers())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String invokeMethodSource(Method method) {
+    String target = "((" + sourceName(method.getDeclaringClass()) + ") target)";
+    StringBuilder condition = new StringBuilder("target instanceof ").append(sourceName(method.getDeclaringClass()));
+    StringBuilder call = new StringBuilder(target).append('.').append(method.getName()).append('(');
+    Class<?>[] parameterTypes = method.getParameterTypes();
+    if (parameterTypes.length == 0) {
+      condition.append(" && (args == null || args.length == 0)");
+    } else {
+      Class<?> parameterType = parameterTypes[0];
+      String argumentType = sourceName(wrapperType(parameterType));
+      condition.append(" && args != null && args.length == 1 && ");
+      if (parameterType.isPrimitive()) {
+        condition.append("args[0] instanceof ").append(argumentType);
+        call.append("((").append(argumentType).append(") args[0]).").append(parameterType.getName()).append("Value()");
+      } else {
+        condition.append("(args[0] == null || args[0] instanceof ").append(argumentType).append(')');
+        call.append('(').append(argumentType).append(") args[0]");
+      }
+    }
+    call.append(')');
+    StringBuilder source = new StringBuilder();
+    source.append("public Object invoke(Object target, Object[] args) throws IllegalAccessException, java.lang.reflect.InvocationTargetException {\n");
+    source.append("  if (").append(condition).append(") {\n");
+    source.append("    try {\n");
+    Class<?> returnType = method.getReturnType();
+    if (void.class.equals(returnType)) {
+      source.append("      ").append(call).append(";\n");
+      source.append("      return null;\n");
+    } else if (returnType.isPrimitive()) {
+      source.append("      return ").append(wrapperType(returnType).getName()).append(".valueOf(").append(call).append(");\n");
+    } else {
+      source.append("      return ").append(call).append(";\n");
+    }
+    source.append("    } catch (Throwable t) {\n");
+    source.append("      throw new java.lang.reflect.InvocationTargetException(t);\n");
+    source.append("    }\n");
+    source.append("  }\n");
+    source.append("  return methodInvoker.invoke(target, args);\n");
+    source.append("}");
+    return source.toString();
+  }
+
+  private static Class<?> wrapperType(Class<?> type) {
+    Class<?> wrapperType = WRAPPER_TYPES.get(type);
+    return wrapperType == null ? type : wrapperType;
+  }
+
+  private static String sourceName(Class<?> type) {
+    if (type.isArray()) {
+      return sourceName(type.getComponentType()) + "[]";
+    }
+    return type.getName();
+  }
+
+  /**
+   * Defines the invokers of a bean class next to it while resolving {@link Invoker} to the one of this class loader.
+   */
+  private static class AccessorClassLoader extends ClassLoader {
+
+    private final Class<?> type;
+    private final Queue<AccessorClassLoader> classPoolHolders;
+    private ClassPool classPool;
+    private int classCount;
+
+    private AccessorClassLoader(Class<?> type, Queue<AccessorClassLoader> classPoolHolders) {
+      super(type.getClassLoader());
+      this.type = type;
+      this.classPoolHolders = classPoolHolders;
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      if (Invoker.class.getName().equals(name)) {
+        return Invoker.class;
+      }
+      return super.loadClass(name, resolve);
+    }
+
+    private synchronized Invoker newInvoker(Method method, Invoker methodInvoker) throws Exception {
+      if (classPool == null) {
+        classPool = new ClassPool(true);
+        classPool.insertClassPath(new LoaderClassPath(type.getClassLoader()));
+        classPool.insertClassPath(new ClassClassPath(Invoker.class));
+        classPoolHolders.add(this);
+      }
+      String className = type.getName() + "$$" + method.getName() + "$Invoker" + classCount++;
+      CtClass ctClass = classPool.makeClass(className);
+      try {
+        CtClass invokerType = classPool.get(Invoker.class.getName());
+        ctClass.addInterface(invokerType);
+        ctClass.addField(CtField.make("private final " + Invoker.class.getName() + " methodInvoker;", ctClass));
+        ctClass.addConstructor(CtNewConstructor.make(new CtClass[] { invokerType }, new CtClass[0], "{ this.methodInvoker = $1; }", ctClass));
+        ctClass.addMethod(CtNewMethod.make(invokeMethodSource(method), ctClass));
+        ctClass.addMethod(CtNewMethod.make("public Class getType() { return methodInvoker.getType(); }", ctClass));
+        byte[] bytecode = ctClass.toBytecode();
+        Class<?> invokerClass = defineClass(className, bytecode, 0, bytecode.length);
+        return (Invoker) invokerClass.getConstructor(Invoker.class).newInstance(methodInvoker);
+      } finally {
+        ctClass.detach();
+      }
+    }
+
+    private synchronized void releaseClassPool() {
+      classPool = null;
+    }
+  }
+
+}
@@ -0,0 +1,44 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.reflection.javassist;
+
+import org.apache.ibatis.reflection.DefaultReflectorFactory;
+import org.apache.ibatis.reflection.Reflector;
+
+/**
+ * A reflector factory whose reflectors call getters and setters through Javassist generated accessors.
+ * Enable it with {@code <reflectorFactory type="org.apache.ibatis.reflection.javassist.JavassistReflectorFactory"/>}.
+ *
+ * @since 3.4.7
+ */
+public class JavassistReflectorFactory extends DefaultReflectorFactory {
+
+  private final JavassistInvokerFactory invokerFactory = new JavassistInvokerFactory();
+
+  @Override
+  protected Reflector createReflector(Class<?> type) {
+    try {
+      return new Reflector(type, invokerFactory);
+    } finally {
+      invokerFactory.releaseClassPools();
+    }
+  }
+
+  JavassistInvokerFactory getInvokerFactory() {
+    return invokerFactory;
+  }
+
+}
@@ -24,6 +24,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
 
 import org.apache.ibatis.binding.MapperRegistry;
 import org.apache.ibatis.builder.CacheRefResolver;
@@ -31,11 +32,14 @@ import org.apache.ibatis.builder.ResultMapResolver;
 import org.apache.ibatis.builder.annotation.MethodResolver;
 import org.apache.ibatis.builder.xml.XMLStatementBuilder;
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheStatistics;
 import org.apache.ibatis.cache.decorators.FifoCache;
 import org.apache.ibatis.cache.decorators.LruCache;
 import org.apache.ibatis.cache.decorators.SoftCache;
 import org.apache.ibatis.cache.decorators.WeakCache;
+import org.apache.ibatis.cache.impl.OffHeapCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.impl.TinyLfuCache;
 import org.apache.ibatis.datasource.jndi.JndiDataSourceFactory;
 import org.apache.ibatis.datasource.pooled.PooledDataSourceFactory;
 import org.apache.ibatis.datasource.unpooled.UnpooledDataSourceFactory;
@@ -51,6 +55,7 @@ import org.apache.ibatis.executor.loader.javassist.JavassistProxyFactory;
 import org.apache.ibatis.executor.parameter.ParameterHandler;
 import org.apache.ibatis.executor.resultset.DefaultResultSetHandler;
 import org.apache.ibatis.executor.resultset.ResultSetHandler;
+import org.apache.ibatis.executor.resultset.ResultSetMappingCache;
 import org.apache.ibatis.executor.statement.RoutingStatementHandler;
 import org.apache.ibatis.executor.statement.StatementHandler;
 import org.apache.ibatis.io.VFS;
@@ -105,10 +110,17 @@ public class Configuration {
   protected boolean multipleResultSetsEnabled = true;
   protected boolean useGeneratedKeys;
   protected boolean useColumnLabel = true;
+  protected boolean columnIndexReadsEnabled;
   protected boolean cacheEnabled = true;
+  protected boolean cacheMBeansEnabled;
   protected boolean callSettersOnNulls;
   protected boolean useActualParamName = true;
   protected boolean returnInstanceForEmptyRow;
+  protected boolean batchParametersRetained = true;
+  protected boolean batchReorderingEnabled;
+  protected boolean multiRowInsertEnabled;
+  protected int multiRowInsertParameterLimit = 999;
+  protected Map<String, Integer> multiRowInsertParameterLimits = new HashMap<String, Integer>();
 
   protected String logPrefix;
   protected Class <? extends Log> logImpl;
@@ -118,6 +130,9 @@ public class Configuration {
   protected Set<String> lazyLoadTriggerMethods = new HashSet<String>(Arrays.asList(new String[] { "equals", "clone", "hashCode", "toString" }));
   protected Integer defaultStatementTimeout;
   protected Integer defaultFetchSize;
+  protected Integer maxBatchSize;
+  protected Integer maxBatchBufferedParameters;
+  protected Integer maxInFlightBatches;
   protected ExecutorType defaultExecutorType = ExecutorType.SIMPLE;
   protected AutoMappingBehavior autoMappingBehavior = AutoMappingBehavior.PARTIAL;
   protected AutoMappingUnknownColumnBehavior autoMappingUnknownColumnBehavior = AutoMappingUnknownColumnBehavior.NONE;
@@ -144,6 +159,7 @@ public class Configuration {
   protected final TypeHandlerRegistry typeHandlerRegistry = new TypeHandlerRegistry();
   protected final TypeAliasRegistry typeAliasRegistry = new TypeAliasRegistry();
   protected final LanguageDriverRegistry languageRegistry = new LanguageDriverRegistry();
+  protected final ResultSetMappingCache resultSetMappingCache = new ResultSetMappingCache();
 
   protected final Map<String, MappedStatement> mappedStatements = new StrictMap<MappedStatement>("Mapped Statements collection");
   protected final Map<String, Cache> caches = new StrictMap<Cache>("Caches collection");
@@ -184,6 +200,8 @@ public class Configuration {
     typeAliasRegistry.registerAlias("LRU", LruCache.class);
     typeAliasRegistry.registerAlias("SOFT", SoftCache.class);
     typeAliasRegistry.registerAlias("WEAK", WeakCache.class);
+    typeAliasRegistry.registerAlias("TINYLFU", TinyLfuCache.class);
+    typeAliasRegistry.registerAlias("OFFHEAP", OffHeapCache.class);
 
     typeAliasRegistry.registerAlias("DB_VENDOR", VendorDatabaseIdProvider.class);
 
@@ -404,6 +422,22 @@ public class Configuration {
     this.cacheEnabled = cacheEnabled;
   }
 
+  /**
+   * @since 3.4.7
+   */
+  public boolean isCacheMBeansEnabled() {
+    return cacheMBeansEnabled;
+  }
+
+  /**
+   * @param cacheMBeansEnabled registers the statistics of the caches added from now on with the platform MBean server,
+   *          until {@link #unregisterCacheMBeans()} is called
+   * @since 3.4.7
+   */
+  public void setCacheMBeansEnabled(boolean cacheMBeansEnabled) {
+    this.cacheMBeansEnabled = cacheMBeansEnabled;
+  }
+
   public Integer getDefaultStatementTimeout() {
     return defaultStatementTimeout;
   }
@@ -426,6 +460,134 @@ public class Configuration {
     this.defaultFetchSize = defaultFetchSize;
   }
 
+  /**
+   * @since 3.4.7
+   */
+  public Integer getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  /**
+   * @param maxBatchSize number of parameter sets a batched statement takes before the batch executor flushes it
+   * @since 3.4.7
+   */
+  public void setMaxBatchSize(Integer maxBatchSize) {
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  /**
+   * @since 3.4.7
+   */
+  public Integer getMaxBatchBufferedParameters() {
+    return maxBatchBufferedParameters;
+  }
+
+  /**
+   * @param maxBatchBufferedParameters number of parameter sets all the pending statements of a batch executor take
+   *          together before it flushes them
+   * @since 3.4.7
+   */
+  public void setMaxBatchBufferedParameters(Integer maxBatchBufferedParameters) {
+    this.maxBatchBufferedParameters = maxBatchBufferedParameters;
+  }
+
+  /**
+   * @since 3.4.7
+   */
+  public Integer getMaxInFlightBatches() {
+    return maxInFlightBatches;
+  }
+
+  /**
+   * @param maxInFlightBatches number of automatically flushed batches a batch executor lets a background thread
+   *          execute while the caller goes on adding updates
+   * @since 3.4.7
+   */
+  public void setMaxInFlightBatches(Integer maxInFlightBatches) {
+    this.maxInFlightBatches = maxInFlightBatches;
+  }
+
+  /**
+   * @since 3.4.7
+   */
+  public boolean isBatchParametersRetained() {
+    return batchParametersRetained;
+  }
+
+  /**
+   * @param batchParametersRetained keeps the parameter objects in the batch results once their statement is executed
+   * @since 3.4.7
+   */
+  public void setBatchParametersRetained(boolean batchParametersRetained) {
+    this.batchParametersRetained = batchParametersRetained;
+  }
+
+  /**
+   * @since 3.4.7
+   */
+  public boolean isBatchReorderingEnabled() {
+    return batchReorderingEnabled;
+  }
+
+  /**
+   * @param batchReorderingEnabled lets the batch executor add an insert to the earlier batch of the same SQL
+   *          instead of starting a new one when other inserts came in between
+   * @since 3.4.7
+   */
+  public void setBatchReorderingEnabled(boolean batchReorderingEnabled) {
+    this.batchReorderingEnabled = batchReorderingEnabled;
+  }
+
+  /**
+   * @since 3.4.7
+   */
+  public boolean isMultiRowInsertEnabled() {
+    return multiRowInsertEnabled;
+  }
+
+  /**
+   * @param multiRowInsertEnabled lets the batch executor send the rows added by a single row insert as inserts of
+   *          many rows each
+   * @since 3.4.7
+   */
+  public void setMultiRowInsertEnabled(boolean multiRowInsertEnabled) {
+    this.multiRowInsertEnabled = multiRowInsertEnabled;
+  }
+
+  /**
+   * Returns the number of parameters a multi row insert may bind on the database of this configuration.
+   *
+   * @since 3.4.7
+   */
+  public int getMultiRowInsertParameterLimit() {
+    Integer limit = databaseId == null ? null : multiRowInsertParameterLimits.get(databaseId);
+    return limit == null ? multiRowInsertParameterLimit : limit;
+  }
+
+  /**
+   * @param multiRowInsertParameterLimit number of parameters a multi row insert binds at most, unless a limit is
+   *          set for the database id
+   * @since 3.4.7
+   */
+  public void setMultiRowInsertParameterLimit(int multiRowInsertParameterLimit) {
+    this.multiRowInsertParameterLimit = multiRowInsertParameterLimit;
+  }
+
+  /**
+   * @since 3.4.7
+   */
+  public Map<String, Integer> getMultiRowInsertParameterLimits() {
+    return multiRowInsertParameterLimits;
+  }
+
+  /**
+   * @param multiRowInsertParameterLimits number of parameters a multi row insert binds at most, by database id
+   * @since 3.4.7
+   */
+  public void setMultiRowInsertParameterLimits(Map<String, Integer> multiRowInsertParameterLimits) {
+    this.multiRowInsertParameterLimits = multiRowInsertParameterLimits;
+  }
+
   public boolean isUseColumnLabel() {
     return useColumnLabel;
   }
@@ -434,6 +596,22 @@ public class Configuration {
     this.useColumnLabel = useColumnLabel;
   }
 
+  /**
+   * @since 3.4.7
+   */
+  public boolean isColumnIndexReadsEnabled() {
+    return columnIndexReadsEnabled;
+  }
+
+  /**
+   * @param columnIndexReadsEnabled lets result mappings read the columns of the result set through type handlers
+   *          extending {@link org.apache.ibatis.type.BaseTypeHandler} by index instead of by label
+   * @since 3.4.7
+   */
+  public void setColumnIndexReadsEnabled(boolean columnIndexReadsEnabled) {
+    this.columnIndexReadsEnabled = columnIndexReadsEnabled;
+  }
+
   public LocalCacheScope getLocalCacheScope() {
     return localCacheScope;
   }
@@ -485,6 +663,13 @@ public class Configuration {
     return mapperRegistry;
   }
 
+  /**
+   * @since 3.4.7
+   */
+  public ResultSetMappingCache getResultSetMappingCache() {
+    return resultSetMappingCache;
+  }
+
   public ReflectorFactory getReflectorFactory() {
 	  return reflectorFactory;
   }
@@ -604,6 +789,24 @@ public class Configuration {
 
   public void addCache(Cache cache) {
     caches.put(cache.getId(), cache);
+    if (cacheMBeansEnabled) {
+      CacheStatistics statistics = CacheStatistics.of(cache);
+      if (statistics != null) {
+        statistics.registerMBean(environment != null ? environment.getId() : null);
+      }
+    }
+  }
+
+  /**
+   * Unregisters the statistics of the caches of this configuration from the platform MBean server. Call it when
+   * the configuration is discarded, the server would otherwise keep its caches and their values reachable.
+   *
+   * @since 3.4.7
+   */
+  public void unregisterCacheMBeans() {
+    for (CacheStatistics statistics : getCacheStatistics()) {
+      statistics.unregisterMBean();
+    }
   }
 
   public Collection<String> getCacheNames() {
@@ -614,6 +817,22 @@ public class Configuration {
     return caches.values();
   }
 
+  /**
+   * @return the statistics of the caches that keep them, ordered by cache id
+   * @since 3.4.7
+   */
+  public Collection<CacheStatistics> getCacheStatistics() {
+    Map<String, CacheStatistics> statistics = new TreeMap<String, CacheStatistics>();
+    // each cache is also under its short name, or an ambiguity marker when the short name is shared
+    for (Object cache : caches.values()) {
+      CacheStatistics cacheStatistics = cache instanceof Cache ? CacheStatistics.of((Cache) cache) : null;
+      if (cacheStatistics != null) {
+        statistics.put(cacheStatistics.getId(), cacheStatistics);
+      }
+    }
+    return statistics.values();
+  }
+
   public Cache getCache(String id) {
     return caches.get(id);
   }
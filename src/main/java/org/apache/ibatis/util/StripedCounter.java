@@ -0,0 +1,77 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A sum spread over several cells so that threads updating it concurrently seldom touch the same one,
+ * in the spirit of java.util.concurrent.atomic.LongAdder which is not available on Java 6.
+ * Cells are 64 bytes apart to avoid false sharing, the sum is only computed when read.
+ *
+ * @since 3.4.7
+ */
+public final class StripedCounter {
+
+  private static final int PADDING = 8;
+  private static final int STRIPES = stripes();
+
+  private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+  public void increment() {
+    add(1);
+  }
+
+  public void add(long value) {
+    cells.addAndGet(cellOf(Thread.currentThread()), value);
+  }
+
+  public long get() {
+    long sum = 0;
+    for (int i = 0; i < STRIPES; i++) {
+      sum += cells.get(i * PADDING);
+    }
+    return sum;
+  }
+
+  public void reset() {
+    for (int i = 0; i < STRIPES; i++) {
+      cells.set(i * PADDING, 0);
+    }
+  }
+
+  private static int cellOf(Thread thread) {
+    long id = thread.getId();
+    // spread the sequential thread ids over the stripes
+    int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+    return ((hash >>> 16) & (STRIPES - 1)) * PADDING;
+  }
+
+  private static int stripes() {
+    int wanted = Math.min(64, Runtime.getRuntime().availableProcessors() * 2);
+    int stripes = 1;
+    while (stripes < wanted) {
+      stripes <<= 1;
+    }
+    return stripes;
+  }
+
+  @Override
+  public String toString() {
+    return String.valueOf(get());
+  }
+
+}
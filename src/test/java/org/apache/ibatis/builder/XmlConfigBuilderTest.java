@@ -79,15 +79,25 @@ public class XmlConfigBuilderTest {
     assertThat(config.getAutoMappingBehavior()).isEqualTo(AutoMappingBehavior.PARTIAL);
     assertThat(config.getAutoMappingUnknownColumnBehavior()).isEqualTo(AutoMappingUnknownColumnBehavior.NONE);
     assertThat(config.isCacheEnabled()).isTrue();
+    assertThat(config.isCacheMBeansEnabled()).isFalse();
     assertThat(config.getProxyFactory()).isInstanceOf(JavassistProxyFactory.class);
     assertThat(config.isLazyLoadingEnabled()).isFalse();
     assertThat(config.isAggressiveLazyLoading()).isFalse();
     assertThat(config.isMultipleResultSetsEnabled()).isTrue();
     assertThat(config.isUseColumnLabel()).isTrue();
+    assertThat(config.isColumnIndexReadsEnabled()).isFalse();
     assertThat(config.isUseGeneratedKeys()).isFalse();
     assertThat(config.getDefaultExecutorType()).isEqualTo(ExecutorType.SIMPLE);
     assertNull(config.getDefaultStatementTimeout());
     assertNull(config.getDefaultFetchSize());
+    assertNull(config.getMaxBatchSize());
+    assertNull(config.getMaxBatchBufferedParameters());
+    assertNull(config.getMaxInFlightBatches());
+    assertThat(config.isBatchParametersRetained()).isTrue();
+    assertThat(config.isBatchReorderingEnabled()).isFalse();
+    assertThat(config.isMultiRowInsertEnabled()).isFalse();
+    assertThat(config.getMultiRowInsertParameterLimit()).isEqualTo(999);
+    assertThat(config.getMultiRowInsertParameterLimits()).isEmpty();
     assertThat(config.isMapUnderscoreToCamelCase()).isFalse();
     assertThat(config.isSafeRowBoundsEnabled()).isFalse();
     assertThat(config.getLocalCacheScope()).isEqualTo(LocalCacheScope.SESSION);
@@ -172,15 +182,25 @@ public class XmlConfigBuilderTest {
       assertThat(config.getAutoMappingBehavior()).isEqualTo(AutoMappingBehavior.NONE);
       assertThat(config.getAutoMappingUnknownColumnBehavior()).isEqualTo(AutoMappingUnknownColumnBehavior.WARNING);
       assertThat(config.isCacheEnabled()).isFalse();
+      assertThat(config.isCacheMBeansEnabled()).isTrue();
       assertThat(config.getProxyFactory()).isInstanceOf(CglibProxyFactory.class);
       assertThat(config.isLazyLoadingEnabled()).isTrue();
       assertThat(config.isAggressiveLazyLoading()).isTrue();
       assertThat(config.isMultipleResultSetsEnabled()).isFalse();
       assertThat(config.isUseColumnLabel()).isFalse();
+      assertThat(config.isColumnIndexReadsEnabled()).isTrue();
       assertThat(config.isUseGeneratedKeys()).isTrue();
       assertThat(config.getDefaultExecutorType()).isEqualTo(ExecutorType.BATCH);
       assertThat(config.getDefaultStatementTimeout()).isEqualTo(10);
       assertThat(config.getDefaultFetchSize()).isEqualTo(100);
+      assertThat(config.getMaxBatchSize()).isEqualTo(500);
+      assertThat(config.getMaxBatchBufferedParameters()).isEqualTo(2000);
+      assertThat(config.getMaxInFlightBatches()).isEqualTo(2);
+      assertThat(config.isBatchParametersRetained()).isFalse();
+      assertThat(config.isBatchReorderingEnabled()).isTrue();
+      assertThat(config.isMultiRowInsertEnabled()).isTrue();
+      assertThat(config.getMultiRowInsertParameterLimit()).isEqualTo(500);
+      assertThat(config.getMultiRowInsertParameterLimits()).hasSize(2).containsEntry("sqlserver", 2100);
       assertThat(config.isMapUnderscoreToCamelCase()).isTrue();
       assertThat(config.isSafeRowBoundsEnabled()).isTrue();
       assertThat(config.getLocalCacheScope()).isEqualTo(LocalCacheScope.STATEMENT);
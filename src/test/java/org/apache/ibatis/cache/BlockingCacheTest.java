@@ -0,0 +1,149 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.cache.decorators.BlockingCache;
+import org.apache.ibatis.cache.decorators.SynchronizedCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.junit.Test;
+
+public class BlockingCacheTest {
+
+  @Test
+  public void shouldLoadAMissedKeyOnlyOnce() throws Exception {
+    final Cache cache = new BlockingCache(new SynchronizedCache(new PerpetualCache("default")));
+    final AtomicInteger queries = new AtomicInteger();
+    final CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      Future<?>[] results = new Future<?>[8];
+      for (int i = 0; i < results.length; i++) {
+        results[i] = executor.submit(new Callable<Object>() {
+          @Override
+          public Object call() throws Exception {
+            start.await();
+            Object value = cache.getObject("key");
+            if (value == null) {
+              queries.incrementAndGet();
+              Thread.sleep(100);
+              value = "value";
+              cache.putObject("key", value);
+            }
+            return value;
+          }
+        });
+      }
+      start.countDown();
+      for (Future<?> result : results) {
+        assertEquals("value", result.get(10, TimeUnit.SECONDS));
+      }
+      assertEquals(1, queries.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void shouldLetAnotherThreadLoadWhenTheLoaderGivesUp() throws Exception {
+    final Cache cache = new BlockingCache(new PerpetualCache("default"));
+    assertNull(cache.getObject("key"));
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Object> waiter = executor.submit(new Callable<Object>() {
+        @Override
+        public Object call() {
+          // another session releasing the key must not wake up the waiters
+          cache.removeObject("key");
+          return cache.getObject("key");
+        }
+      });
+      Thread.sleep(100);
+      assertFalse(waiter.isDone());
+      cache.removeObject("key");
+      assertNull(waiter.get(10, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void shouldReturnNullToTheLoaderMissingItsKeyAgain() {
+    Cache cache = new BlockingCache(new PerpetualCache("default"));
+    assertNull(cache.getObject("key"));
+    assertNull(cache.getObject("key"));
+    cache.putObject("key", "value");
+    assertEquals("value", cache.getObject("key"));
+  }
+
+  @Test
+  public void shouldTimeOutWaitingForAnotherThread() throws Exception {
+    final BlockingCache cache = new BlockingCache(new PerpetualCache("default"));
+    cache.setTimeout(50);
+    assertNull(cache.getObject("key"));
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Object> waiter = executor.submit(new Callable<Object>() {
+        @Override
+        public Object call() {
+          return cache.getObject("key");
+        }
+      });
+      try {
+        waiter.get(10, TimeUnit.SECONDS);
+        fail();
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof CacheException);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void shouldOnlyTrackTheKeysBeingLoaded() throws Exception {
+    Cache cache = new BlockingCache(new PerpetualCache("default"));
+    for (int i = 0; i < 10000; i++) {
+      assertNull(cache.getObject(i));
+      if (i % 2 == 0) {
+        cache.putObject(i, i);
+      } else {
+        cache.removeObject(i);
+      }
+      assertEquals(0, loads(cache).size());
+    }
+    assertEquals(5000, cache.getSize());
+  }
+
+  private static Map<?, ?> loads(Cache cache) throws Exception {
+    Field field = BlockingCache.class.getDeclaredField("loads");
+    field.setAccessible(true);
+    return (Map<?, ?>) field.get(cache);
+  }
+
+}
@@ -90,6 +90,61 @@ public class CacheKeyTest {
     assertTrue(key1.equals(key2));
   }
 
+  @Test
+  public void shouldGrowPastExpectedUpdates() {
+    CacheKey key1 = new CacheKey(1);
+    CacheKey key2 = new CacheKey();
+    for (int i = 0; i < 20; i++) {
+      key1.update(i);
+      key2.update(i);
+    }
+    assertEquals(20, key1.getUpdateCount());
+    assertEquals(key1, key2);
+    assertEquals(key1.hashCode(), key2.hashCode());
+  }
+
+  @Test
+  public void shouldEqualSameKeyOnceFrozen() {
+    CacheKey key1 = new CacheKey(new Object[] { 1, "hello", null });
+    CacheKey key2 = new CacheKey(new Object[] { 1, "hello", null });
+    int hashCode = key1.hashCode();
+    assertSame(key1, key1.freeze());
+    assertTrue(key1.isFrozen());
+    assertFalse(key2.isFrozen());
+    assertEquals(hashCode, key1.hashCode());
+    assertEquals(key1, key2);
+    assertEquals(key2, key1);
+    assertEquals(key1.toString(), key2.toString());
+  }
+
+  @Test(expected = CacheException.class)
+  public void shouldNotUpdateFrozenKey() {
+    CacheKey key = new CacheKey(new Object[] { 1 }).freeze();
+    key.update(2);
+  }
+
+  @Test
+  public void shouldCloneFrozenKeyIntoUpdatableKey() throws Exception {
+    CacheKey key = new CacheKey(new Object[] { 1, "hello" }).freeze();
+    CacheKey clone = key.clone();
+    assertFalse(clone.isFrozen());
+    assertEquals(key, clone);
+    clone.update("world");
+    assertEquals(2, key.getUpdateCount());
+    assertEquals(3, clone.getUpdateCount());
+    assertFalse(key.equals(clone));
+    assertEquals(new CacheKey(new Object[] { 1, "hello", "world" }), clone);
+  }
+
+  @Test
+  public void shouldKeepFrozenStateWhenSerialized() throws Exception {
+    CacheKey key = new CacheKey(new Object[] { 1, "hello" }).freeze();
+    CacheKey copy = serialize(key);
+    assertEquals(key, copy);
+    assertEquals(key.hashCode(), copy.hashCode());
+    assertTrue(copy.isFrozen());
+  }
+
   @Test (expected = NotSerializableException.class)
   public void serializationExceptionTest() throws Exception {
     CacheKey cacheKey = new CacheKey();
@@ -0,0 +1,257 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.ibatis.cache.decorators.FifoCache;
+import org.apache.ibatis.cache.decorators.LoggingCache;
+import org.apache.ibatis.cache.decorators.SynchronizedCache;
+import org.apache.ibatis.cache.impl.OffHeapCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.impl.TinyLfuCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.Test;
+
+public class CacheStatisticsTest {
+
+  @Test
+  public void shouldCountHitsMissesAndPuts() {
+    Cache cache = new LoggingCache(new PerpetualCache("default"));
+    CacheStatistics statistics = CacheStatistics.of(cache);
+    cache.putObject(1, "one");
+    cache.putObject(2, "two");
+    assertEquals("one", cache.getObject(1));
+    assertEquals("one", cache.getObject(1));
+    assertNull(cache.getObject(3));
+    assertEquals("default", statistics.getId());
+    assertEquals(2, statistics.getSize());
+    assertEquals(2, statistics.getHits());
+    assertEquals(1, statistics.getMisses());
+    assertEquals(2, statistics.getPuts());
+    assertEquals(2d / 3d, statistics.getHitRatio(), 0.001);
+    assertTrue(statistics.getEstimatedBytes() > 0);
+  }
+
+  @Test
+  public void shouldEstimateSampledValuesWhenRead() {
+    Cache cache = new LoggingCache(new PerpetualCache("default"));
+    CacheStatistics statistics = CacheStatistics.of(cache);
+    List<String> value = new ArrayList<String>();
+    cache.putObject(1, value);
+    // nothing is walked on put
+    for (int i = 0; i < 1000; i++) {
+      value.add("value" + i);
+    }
+    long estimatedBytes = statistics.getEstimatedBytes();
+    assertTrue(estimatedBytes > 1000 * 24);
+    value.clear();
+    // the sample was released once estimated
+    assertEquals(estimatedBytes, statistics.getEstimatedBytes());
+  }
+
+  @Test
+  public void shouldNotKeepSampledValuesReachable() throws Exception {
+    Cache cache = new LoggingCache(new PerpetualCache("default"));
+    Object value = new byte[1024];
+    WeakReference<Object> reference = new WeakReference<Object>(value);
+    cache.putObject(1, value);
+    cache.clear();
+    value = null;
+    for (int i = 0; i < 50 && reference.get() != null; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertNull(reference.get());
+    assertEquals(0, CacheStatistics.of(cache).getEstimatedBytes());
+  }
+
+  @Test
+  public void shouldEstimateFromTheLastSamples() {
+    Cache cache = new LoggingCache(new PerpetualCache("default"));
+    CacheStatistics statistics = CacheStatistics.of(cache);
+    for (int i = 0; i < 200; i++) {
+      cache.putObject(i, new byte[10000]);
+      statistics.getEstimatedBytes();
+    }
+    assertTrue(statistics.getEstimatedBytes() / cache.getSize() >= 10000);
+    cache.clear();
+    for (int i = 0; i < 200; i++) {
+      cache.putObject(i, new byte[10]);
+      statistics.getEstimatedBytes();
+    }
+    // the large values sampled before are forgotten
+    assertTrue(statistics.getEstimatedBytes() / cache.getSize() < 100);
+  }
+
+  @Test
+  public void shouldReportNoRatioBeforeAnyRequest() {
+    CacheStatistics statistics = new CacheStatistics(new PerpetualCache("default"));
+    assertEquals(0, statistics.getHitRatio(), 0);
+    assertEquals(0, statistics.getAverageLoadTime(), 0);
+    assertEquals(0, statistics.getEstimatedBytes());
+  }
+
+  @Test
+  public void shouldAccumulateLoadTime() {
+    CacheStatistics statistics = new CacheStatistics(new PerpetualCache("default"));
+    statistics.recordLoad(3000000);
+    statistics.recordLoad(1000000);
+    assertEquals(4, statistics.getLoadTime());
+    assertEquals(2, statistics.getAverageLoadTime(), 0.001);
+  }
+
+  @Test
+  public void shouldReset() {
+    Cache cache = new LoggingCache(new PerpetualCache("default"));
+    CacheStatistics statistics = CacheStatistics.of(cache);
+    cache.putObject(1, "one");
+    cache.getObject(1);
+    cache.getObject(2);
+    statistics.recordEviction();
+    statistics.recordLoad(1000000);
+    statistics.reset();
+    assertEquals(0, statistics.getHits());
+    assertEquals(0, statistics.getMisses());
+    assertEquals(0, statistics.getPuts());
+    assertEquals(0, statistics.getEvictions());
+    assertEquals(0, statistics.getLoadTime());
+    assertEquals(0, statistics.getEstimatedBytes());
+    assertEquals(1, statistics.getSize());
+  }
+
+  @Test
+  public void shouldFindStatisticsThroughDecorators() {
+    LoggingCache loggingCache = new LoggingCache(new PerpetualCache("default"));
+    assertSame(loggingCache.getStatistics(), CacheStatistics.of(new SynchronizedCache(loggingCache)));
+    assertNull(CacheStatistics.of(new SynchronizedCache(new PerpetualCache("default"))));
+    assertNull(CacheStatistics.of(new PerpetualCache("default")));
+  }
+
+  @Test
+  public void shouldCountLruEvictions() {
+    Cache cache = new CacheBuilder("default").size(2).build();
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, i);
+    }
+    CacheStatistics statistics = CacheStatistics.of(cache);
+    assertEquals(3, statistics.getEvictions());
+    assertEquals(2, statistics.getSize());
+  }
+
+  @Test
+  public void shouldCountFifoEvictions() {
+    Cache cache = new CacheBuilder("default").addDecorator(FifoCache.class).size(2).blocking(true).build();
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, i);
+      cache.getObject(i);
+    }
+    assertEquals(3, CacheStatistics.of(cache).getEvictions());
+  }
+
+  @Test
+  public void shouldCountTinyLfuEvictions() throws Exception {
+    Cache cache = new CacheBuilder("default").addDecorator(TinyLfuCache.class).size(10).build();
+    for (int i = 0; i < 100; i++) {
+      cache.putObject(i, i);
+    }
+    CacheStatistics statistics = CacheStatistics.of(cache);
+    assertEquals(100 - cache.getSize(), statistics.getEvictions());
+    assertEquals(((TinyLfuCache) unwrapped(cache)).getEvictionCount(), statistics.getEvictions());
+  }
+
+  @Test
+  public void shouldCountOffHeapEvictions() {
+    Properties properties = new Properties();
+    properties.setProperty("slabSize", "1024");
+    Cache cache = new CacheBuilder("default").implementation(OffHeapCache.class).maxBytes(2048L)
+        .properties(properties).build();
+    for (int i = 0; i < 100; i++) {
+      cache.putObject(i, "value " + i);
+    }
+    CacheStatistics statistics = CacheStatistics.of(cache);
+    assertTrue(statistics.getEvictions() > 0);
+    assertEquals(100 - cache.getSize(), statistics.getEvictions());
+  }
+
+  @Test
+  public void shouldKeepStatisticsOfCustomCaches() {
+    Cache cache = new CacheBuilder("default").implementation(CustomCache.class).build();
+    cache.getObject(1);
+    assertEquals(1, CacheStatistics.of(cache).getMisses());
+  }
+
+  @Test
+  public void shouldRegisterMBean() throws Exception {
+    Cache cache = new LoggingCache(new PerpetualCache("org.apache.ibatis.MBeanMapper"));
+    cache.putObject(1, "one");
+    cache.getObject(1);
+    ObjectName name = CacheStatistics.of(cache).registerMBean("test");
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      assertEquals("org.apache.ibatis.MBeanMapper", server.getAttribute(name, "Id"));
+      assertEquals(1L, server.getAttribute(name, "Hits"));
+      assertEquals(1, server.getAttribute(name, "Size"));
+
+      // the statistics of another cache with the same id do not replace the registered ones
+      Cache otherCache = new LoggingCache(new PerpetualCache("org.apache.ibatis.MBeanMapper"));
+      ObjectName otherName = CacheStatistics.of(otherCache).registerMBean("test");
+      try {
+        assertEquals(new ObjectName(name + ",instance=2"), otherName);
+        assertEquals(1L, server.getAttribute(name, "Hits"));
+        assertEquals(0L, server.getAttribute(otherName, "Hits"));
+
+        otherCache.getObject(1);
+        assertEquals(1L, server.getAttribute(otherName, "Misses"));
+        server.invoke(otherName, "reset", null, null);
+        assertEquals(0, CacheStatistics.of(otherCache).getMisses());
+        assertEquals(1, CacheStatistics.of(cache).getHits());
+      } finally {
+        CacheStatistics.of(otherCache).unregisterMBean();
+      }
+      assertFalse(server.isRegistered(otherName));
+      assertTrue(server.isRegistered(name));
+    } finally {
+      CacheStatistics.of(cache).unregisterMBean();
+    }
+    assertFalse(server.isRegistered(name));
+    // unregistering twice does nothing
+    CacheStatistics.of(cache).unregisterMBean();
+  }
+
+  private static Cache unwrapped(Cache cache) throws Exception {
+    Field delegate = LoggingCache.class.getDeclaredField("delegate");
+    delegate.setAccessible(true);
+    return (Cache) delegate.get(cache);
+  }
+
+  public static class CustomCache extends PerpetualCache {
+    public CustomCache(String id) {
+      super(id);
+    }
+  }
+
+}
@@ -0,0 +1,135 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.cache.decorators.DeepCopyCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.domain.blog.Author;
+import org.apache.ibatis.domain.blog.Blog;
+import org.apache.ibatis.domain.blog.ImmutableAuthor;
+import org.apache.ibatis.domain.blog.Post;
+import org.apache.ibatis.domain.blog.Section;
+import org.junit.Test;
+
+public class DeepCopyCacheTest {
+
+  @Test
+  public void shouldReturnCopiesOfTheCachedObjects() {
+    Cache cache = new DeepCopyCache(new PerpetualCache("default"));
+    List<Author> authors = authors();
+    cache.putObject(0, authors);
+    Object copy = cache.getObject(0);
+    assertNotSame(authors, copy);
+    assertEquals(authors, copy);
+    assertNotSame(authors.get(0), ((List<?>) copy).get(0));
+    assertNotSame(copy, cache.getObject(0));
+  }
+
+  @Test
+  public void shouldNotSeeChangesMadeAfterPutOrToCopies() {
+    Cache cache = new DeepCopyCache(new PerpetualCache("default"));
+    List<Author> authors = authors();
+    cache.putObject(0, authors);
+    authors.get(0).setUsername("changed");
+    @SuppressWarnings("unchecked")
+    List<Author> copy = (List<Author>) cache.getObject(0);
+    assertEquals("user0", copy.get(0).getUsername());
+    copy.get(0).setUsername("changed");
+    copy.clear();
+    assertEquals(100, ((List<?>) cache.getObject(0)).size());
+  }
+
+  @Test
+  public void shouldCopyNestedResultObjectsKeepingSharedReferencesAndCycles() {
+    Cache cache = new DeepCopyCache(new PerpetualCache("default"));
+    Author author = new Author(101, "jim", "********", "jim@ibatis.apache.org", "", Section.NEWS);
+    Blog blog = new Blog(1, "Blog", author, new ArrayList<Post>());
+    for (int i = 0; i < 3; i++) {
+      Post post = new Post();
+      post.setId(i);
+      post.setAuthor(author);
+      post.setBlog(blog);
+      post.setCreatedOn(new Date(i));
+      blog.getPosts().add(post);
+    }
+    cache.putObject(0, blog);
+    Blog copy = (Blog) cache.getObject(0);
+    assertNotSame(blog, copy);
+    assertEquals("Blog", copy.getTitle());
+    assertEquals(author, copy.getAuthor());
+    assertNotSame(author, copy.getAuthor());
+    assertEquals(3, copy.getPosts().size());
+    for (int i = 0; i < 3; i++) {
+      Post post = copy.getPosts().get(i);
+      assertEquals(i, post.getId());
+      assertSame(copy, post.getBlog());
+      assertSame(copy.getAuthor(), post.getAuthor());
+      assertEquals(new Date(i), post.getCreatedOn());
+      assertNotSame(blog.getPosts().get(i).getCreatedOn(), post.getCreatedOn());
+    }
+  }
+
+  @Test
+  public void shouldCopyMapsAndArrays() {
+    Cache cache = new DeepCopyCache(new PerpetualCache("default"));
+    Map<String, Object> row = new HashMap<String, Object>();
+    row.put("id", 1);
+    row.put("data", new byte[] { 1, 2, 3 });
+    row.put("authors", authors().toArray(new Author[0]));
+    cache.putObject(0, row);
+    @SuppressWarnings("unchecked")
+    Map<String, Object> copy = (Map<String, Object>) cache.getObject(0);
+    assertNotSame(row, copy);
+    assertEquals(1, copy.get("id"));
+    assertArrayEquals((byte[]) row.get("data"), (byte[]) copy.get("data"));
+    assertNotSame(row.get("data"), copy.get("data"));
+    assertArrayEquals((Author[]) row.get("authors"), (Author[]) copy.get("authors"));
+    assertNotSame(((Author[]) row.get("authors"))[0], ((Author[]) copy.get("authors"))[0]);
+  }
+
+  @Test
+  public void shouldFallBackToSerializationForObjectsWithoutDefaultConstructor() {
+    Cache cache = new DeepCopyCache(new PerpetualCache("default"));
+    ImmutableAuthor author = new ImmutableAuthor(1, "jim", "********", "jim@ibatis.apache.org", "", Section.NEWS);
+    cache.putObject(0, author);
+    ImmutableAuthor copy = (ImmutableAuthor) cache.getObject(0);
+    assertNotSame(author, copy);
+    assertEquals("jim", copy.getUsername());
+    assertEquals(Section.NEWS, copy.getFavouriteSection());
+  }
+
+  @Test(expected = CacheException.class)
+  public void shouldRejectObjectsThatCannotBeCopied() {
+    new DeepCopyCache(new PerpetualCache("default")).putObject(0, new Thread());
+  }
+
+  private static List<Author> authors() {
+    List<Author> authors = new ArrayList<Author>();
+    for (int i = 0; i < 100; i++) {
+      authors.add(new Author(i, "user" + i, "********", "user" + i + "@ibatis.apache.org", "Something...", Section.NEWS));
+    }
+    return authors;
+  }
+
+}
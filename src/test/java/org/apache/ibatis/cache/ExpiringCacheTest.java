@@ -0,0 +1,92 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import org.apache.ibatis.cache.decorators.ExpiringCache;
+import org.apache.ibatis.cache.decorators.LoggingCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.junit.Test;
+
+public class ExpiringCacheTest {
+
+  @Test
+  public void shouldExpireEachItemOnItsOwn() throws Exception {
+    ExpiringCache expiringCache = new ExpiringCache(new PerpetualCache("DefaultCache"));
+    expiringCache.setTimeToLive(500);
+    Cache cache = new LoggingCache(expiringCache);
+    cache.putObject(0, 0);
+    Thread.sleep(300);
+    cache.putObject(1, 1);
+    Thread.sleep(300);
+    assertNull(cache.getObject(0));
+    assertEquals(1, cache.getObject(1));
+  }
+
+  @Test
+  public void shouldShortenTimeToLiveWithJitter() throws Exception {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("DefaultCache"));
+    cache.setTimeToLive(1000);
+    cache.setTimeToLiveJitter(0.5);
+    for (int i = 0; i < 100; i++) {
+      cache.putObject(i, i);
+    }
+    Thread.sleep(400);
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i, cache.getObject(i));
+    }
+    Thread.sleep(700);
+    for (int i = 0; i < 100; i++) {
+      assertNull(cache.getObject(i));
+    }
+  }
+
+  @Test
+  public void shouldRequestOneRefreshShortlyBeforeExpiration() throws Exception {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("DefaultCache"));
+    cache.setTimeToLive(500);
+    cache.setRefreshAhead(true);
+    cache.putObject("key", "value");
+    assertEquals("value", cache.getObject("key"));
+    assertFalse(ExpiringCache.isRefreshRequested("key"));
+    Thread.sleep(420);
+    assertEquals("value", cache.getObject("key"));
+    assertTrue(ExpiringCache.isRefreshRequested("key"));
+    assertEquals("value", cache.getObject("key"));
+    assertFalse(ExpiringCache.isRefreshRequested("key"));
+  }
+
+  @Test
+  public void shouldNotRequestRefreshByDefault() throws Exception {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("DefaultCache"));
+    cache.setTimeToLive(100);
+    cache.putObject("key", "value");
+    Thread.sleep(90);
+    assertEquals("value", cache.getObject("key"));
+    assertFalse(ExpiringCache.isRefreshRequested("key"));
+  }
+
+  @Test
+  public void shouldRemoveItemOnDemand() {
+    Cache cache = new ExpiringCache(new PerpetualCache("DefaultCache"));
+    cache.putObject(0, 0);
+    assertNotNull(cache.getObject(0));
+    assertEquals(0, cache.removeObject(0));
+    assertNull(cache.getObject(0));
+  }
+
+}
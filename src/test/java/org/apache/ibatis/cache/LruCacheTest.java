@@ -57,4 +57,31 @@ public class LruCacheTest {
     assertNull(cache.getObject(4));
   }
 
-}
\ No newline at end of file
+  @Test
+  public void shouldRemoveLeastRecentlyUsedItemsBeyondMaxBytes() {
+    LruCache cache = new LruCache(new PerpetualCache("default"));
+    cache.setMaxBytes(1000);
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, new byte[184]);
+    }
+    assertNotNull(cache.getObject(0));
+    cache.putObject(5, new byte[184]);
+    assertNull(cache.getObject(1));
+    assertEquals(5, cache.getSize());
+    cache.putObject(6, new byte[584]);
+    assertEquals(3, cache.getSize());
+    assertNull(cache.getObject(4));
+    assertNotNull(cache.getObject(0));
+    assertNotNull(cache.getObject(6));
+  }
+
+  @Test
+  public void shouldNotKeepItemLargerThanMaxBytes() {
+    LruCache cache = new LruCache(new PerpetualCache("default"));
+    cache.setMaxBytes(1000);
+    cache.putObject(0, new byte[100]);
+    cache.putObject(1, new byte[2000]);
+    assertEquals(0, cache.getSize());
+  }
+
+}
@@ -0,0 +1,97 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.domain.blog.Author;
+import org.apache.ibatis.domain.blog.Section;
+import org.apache.ibatis.session.Configuration;
+import org.junit.Test;
+
+public class ObjectSizeEstimatorTest {
+
+  @Test
+  public void shouldWeighByteArraysExactly() {
+    assertEquals(16, ObjectSizeEstimator.estimate(new byte[0]));
+    assertEquals(1016, ObjectSizeEstimator.estimate(new byte[1000]));
+    assertEquals(0, ObjectSizeEstimator.estimate(null));
+  }
+
+  @Test
+  public void shouldWeighStringsByLength() {
+    assertEquals(24 + 16, ObjectSizeEstimator.estimate(""));
+    assertEquals(24 + 216, ObjectSizeEstimator.estimate(new String(new char[100])));
+  }
+
+  @Test
+  public void shouldWeighLargeListsInProportionToTheirRows() {
+    long one = ObjectSizeEstimator.estimate(rows(1));
+    long thousand = ObjectSizeEstimator.estimate(rows(1000));
+    long fiftyThousand = ObjectSizeEstimator.estimate(rows(50000));
+    assertTrue(thousand > 500 * one);
+    assertTrue(fiftyThousand > 40 * thousand);
+    assertTrue(fiftyThousand < 60 * thousand);
+  }
+
+  @Test
+  public void shouldWeighMapsByTheirEntries() {
+    Map<Integer, Author> small = new HashMap<Integer, Author>();
+    Map<Integer, Author> large = new HashMap<Integer, Author>();
+    for (int i = 0; i < 1000; i++) {
+      large.put(i, author(i));
+    }
+    small.put(0, author(0));
+    assertTrue(ObjectSizeEstimator.estimate(large) > 500 * ObjectSizeEstimator.estimate(small));
+  }
+
+  @Test
+  public void shouldCountSharedObjectsOnce() {
+    Author author = author(1);
+    List<Object> list = new ArrayList<Object>();
+    list.add(author);
+    long single = ObjectSizeEstimator.estimate(list);
+    list.add(author);
+    assertEquals(single, ObjectSizeEstimator.estimate(list));
+  }
+
+  @Test
+  public void shouldNotCountMyBatisObjects() {
+    List<Object> list = new ArrayList<Object>();
+    list.add(new Configuration());
+    assertTrue(ObjectSizeEstimator.estimate(list) < 100);
+  }
+
+  private static List<Author> rows(int count) {
+    List<Author> rows = new ArrayList<Author>(count);
+    for (int i = 0; i < count; i++) {
+      rows.add(author(i));
+    }
+    return rows;
+  }
+
+  private static Author author(int id) {
+    return new Author(id, "user" + id, "secret" + new Date(id).getTime(), "user" + id + "@example.com",
+        "A biography long enough to matter", Section.NEWS);
+  }
+
+}
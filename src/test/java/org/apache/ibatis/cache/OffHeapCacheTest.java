@@ -0,0 +1,183 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.ibatis.cache.decorators.LoggingCache;
+import org.apache.ibatis.cache.decorators.LruCache;
+import org.apache.ibatis.cache.impl.OffHeapCache;
+import org.apache.ibatis.domain.blog.Author;
+import org.apache.ibatis.domain.blog.Section;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.Test;
+
+public class OffHeapCacheTest {
+
+  @Test
+  public void shouldReturnCopiesOfTheCachedObjects() {
+    Cache cache = new OffHeapCache("default");
+    List<Author> authors = authors(100);
+    cache.putObject(0, authors);
+    Object copy = cache.getObject(0);
+    assertNotSame(authors, copy);
+    assertEquals(authors, copy);
+    assertEquals(1, cache.getSize());
+  }
+
+  @Test
+  public void shouldReplaceAndRemoveEntries() {
+    Cache cache = new OffHeapCache("default");
+    for (int i = 0; i < 1000; i++) {
+      cache.putObject(i, "value " + i);
+    }
+    cache.putObject(10, "replaced");
+    cache.putObject(11, null);
+    cache.removeObject(12);
+    assertEquals("replaced", cache.getObject(10));
+    assertNull(cache.getObject(11));
+    assertNull(cache.getObject(12));
+    assertEquals("value 13", cache.getObject(13));
+    assertEquals(998, cache.getSize());
+    cache.clear();
+    assertEquals(0, cache.getSize());
+    assertNull(cache.getObject(13));
+    cache.putObject(13, "again");
+    assertEquals("again", cache.getObject(13));
+  }
+
+  @Test
+  public void shouldEvictLeastRecentlyUsedEntriesOfTheSameSize() {
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.setSlabSize(1024);
+    cache.setMaxBytes(4096);
+    // 64 bytes chunks, 16 per slab
+    for (int i = 0; i < 64; i++) {
+      cache.putObject(i, i);
+    }
+    assertEquals(64, cache.getSize());
+    cache.getObject(0);
+    cache.putObject(64, 64);
+    assertEquals(64, cache.getSize());
+    assertEquals(0, cache.getObject(0));
+    assertNull(cache.getObject(1));
+    assertEquals(64, cache.getObject(64));
+  }
+
+  @Test
+  public void shouldMoveSlabsBetweenSizeClasses() {
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.setSlabSize(1024);
+    cache.setMaxBytes(4096);
+    for (int i = 0; i < 64; i++) {
+      cache.putObject(i, i);
+    }
+    char[] large = new char[600];
+    Arrays.fill(large, 'x');
+    for (int i = 0; i < 4; i++) {
+      cache.putObject("large" + i, new String(large));
+    }
+    for (int i = 0; i < 4; i++) {
+      assertEquals(new String(large), cache.getObject("large" + i));
+    }
+    assertEquals(4, cache.getSize());
+  }
+
+  @Test
+  public void shouldNotCacheValuesLargerThanASlab() {
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.setSlabSize(1024);
+    cache.putObject(0, authors(100));
+    assertNull(cache.getObject(0));
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  public void shouldStoreEntriesInAMappedFile() throws Exception {
+    File file = File.createTempFile("mybatis-cache", ".bin");
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.setFile(file.getAbsolutePath());
+    cache.setSlabSize(64 * 1024);
+    cache.setSerializer("java");
+    cache.setCompression(true);
+    for (int i = 0; i < 100; i++) {
+      cache.putObject(i, authors(10));
+    }
+    assertEquals(authors(10), cache.getObject(99));
+    assertTrue(file.length() >= 64 * 1024);
+    cache.close();
+    assertTrue(file.delete());
+  }
+
+  @Test
+  public void shouldNotShareAMappedFile() throws Exception {
+    File file = File.createTempFile("mybatis-cache", ".bin");
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.setFile(file.getAbsolutePath());
+    OffHeapCache other = new OffHeapCache("other");
+    other.setFile(file.getAbsolutePath());
+    cache.putObject(0, "value");
+    try {
+      other.putObject(0, "other value");
+      fail("Should not have used the file of another cache");
+    } catch (CacheException e) {
+      assertTrue(e.getMessage().contains("is used by another cache"));
+    }
+    assertEquals("value", cache.getObject(0));
+
+    cache.close();
+    assertNull(cache.getObject(0));
+    other.putObject(0, "other value");
+    assertEquals("other value", other.getObject(0));
+    other.close();
+    assertTrue(file.delete());
+  }
+
+  @Test(expected = CacheException.class)
+  public void shouldNotBeConfiguredOnceInUse() {
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.putObject(0, 0);
+    cache.setMaxBytes(1024);
+  }
+
+  @Test
+  public void shouldBeBuiltWithoutEvictionNorSerializingDecorators() {
+    Properties properties = new Properties();
+    properties.setProperty("slabSize", "1024");
+    Cache cache = new CacheBuilder("default").implementation(OffHeapCache.class).addDecorator(LruCache.class)
+        .maxBytes(4096L).readWrite(true).properties(properties).build();
+    assertTrue(cache instanceof LoggingCache);
+    for (int i = 0; i < 1000; i++) {
+      cache.putObject(i, i);
+    }
+    assertEquals(64, cache.getSize());
+  }
+
+  private static List<Author> authors(int count) {
+    List<Author> authors = new ArrayList<Author>();
+    for (int i = 0; i < count; i++) {
+      authors.add(new Author(i, "user" + i, "********", "user" + i + "@ibatis.apache.org", "Something...", Section.NEWS));
+    }
+    return authors;
+  }
+
+}
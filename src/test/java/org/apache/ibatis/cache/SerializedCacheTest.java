@@ -0,0 +1,82 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.ibatis.cache.decorators.SerializedCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.serializer.BinarySerializer;
+import org.apache.ibatis.domain.blog.Author;
+import org.apache.ibatis.domain.blog.Section;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.Test;
+
+public class SerializedCacheTest {
+
+  @Test
+  public void shouldReturnCopiesOfTheCachedObjects() {
+    Cache cache = new SerializedCache(new PerpetualCache("default"));
+    List<Author> authors = authors();
+    cache.putObject(0, authors);
+    Object copy = cache.getObject(0);
+    assertNotSame(authors, copy);
+    assertEquals(authors, copy);
+  }
+
+  @Test
+  public void shouldUseSerializerAndCompressionFromCacheProperties() {
+    Properties properties = new Properties();
+    properties.setProperty("serializer", "binary");
+    properties.setProperty("compression", "true");
+    Cache cache = new CacheBuilder("default").readWrite(true).properties(properties).build();
+    List<Author> authors = authors();
+    cache.putObject(0, authors);
+    assertEquals(authors, cache.getObject(0));
+    assertNotSame(cache.getObject(0), cache.getObject(0));
+  }
+
+  @Test
+  public void shouldAcceptSerializerClassName() {
+    SerializedCache cache = new SerializedCache(new PerpetualCache("default"));
+    cache.setSerializer(BinarySerializer.class.getName());
+    cache.putObject(0, authors());
+    assertEquals(authors(), cache.getObject(0));
+  }
+
+  @Test(expected = CacheException.class)
+  public void shouldRejectUnknownSerializer() {
+    new SerializedCache(new PerpetualCache("default")).setSerializer("org.example.UnknownSerializer");
+  }
+
+  @Test(expected = CacheException.class)
+  public void shouldRejectNonSerializableObjects() {
+    new SerializedCache(new PerpetualCache("default")).putObject(0, new Object());
+  }
+
+  private static List<Author> authors() {
+    List<Author> authors = new ArrayList<Author>();
+    for (int i = 0; i < 100; i++) {
+      authors.add(new Author(i, "user" + i, "********", "user" + i + "@ibatis.apache.org", "Something...", Section.NEWS));
+    }
+    return authors;
+  }
+
+}
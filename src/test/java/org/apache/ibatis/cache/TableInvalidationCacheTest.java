@@ -0,0 +1,109 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.ibatis.cache.decorators.DeepCopyCache;
+import org.apache.ibatis.cache.decorators.SerializedCache;
+import org.apache.ibatis.cache.decorators.TableInvalidationCache;
+import org.apache.ibatis.cache.decorators.TableInvalidationCache.Dependencies;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.junit.Test;
+
+public class TableInvalidationCacheTest {
+
+  @Test
+  public void shouldInvalidateOnlyTheEntriesReadingTheTables() {
+    TableInvalidationCache cache = new TableInvalidationCache(new PerpetualCache("default"));
+    cache.putObject("person", "Jane", cache.dependencies(new String[] { "person" }));
+    cache.putObject("pet", "Rex", cache.dependencies(new String[] { "pet" }));
+    cache.putObject("owner", "Jane", cache.dependencies(new String[] { "person", "pet" }));
+    cache.invalidate(Arrays.asList("pet"));
+    assertEquals("Jane", cache.getObject("person"));
+    assertNull(cache.getObject("pet"));
+    assertNull(cache.getObject("owner"));
+  }
+
+  @Test
+  public void shouldInvalidateEntriesOfUnknownTablesOnEveryWrite() {
+    TableInvalidationCache cache = new TableInvalidationCache(new PerpetualCache("default"));
+    cache.putObject("unknown", "Jane");
+    cache.putObject("person", "Jane", cache.dependencies(new String[] { "person" }));
+    cache.invalidate(Arrays.asList("pet"));
+    assertNull(cache.getObject("unknown"));
+    assertEquals("Jane", cache.getObject("person"));
+    cache.invalidate(null);
+    assertNull(cache.getObject("person"));
+  }
+
+  @Test
+  public void shouldNotKeepEntriesQueriedBeforeAnInvalidation() {
+    TableInvalidationCache cache = new TableInvalidationCache(new PerpetualCache("default"));
+    Dependencies dependencies = cache.dependencies(new String[] { "person" });
+    // the write commits while the entry is being queried
+    cache.invalidate(Arrays.asList("person"));
+    cache.putObject("person", "Jane", dependencies);
+    assertNull(cache.getObject("person"));
+    cache.putObject("person", "Joan", cache.dependencies(new String[] { "person" }));
+    assertEquals("Joan", cache.getObject("person"));
+  }
+
+  @Test
+  public void shouldExcludeTablesBeingWritten() {
+    TableInvalidationCache cache = new TableInvalidationCache(new PerpetualCache("default"));
+    cache.putObject("person", "Jane", cache.dependencies(new String[] { "person" }));
+    assertNull(cache.getObject("person", Collections.singleton("person")));
+    assertEquals("Jane", cache.getObject("person", Collections.singleton("pet")));
+  }
+
+  @Test
+  public void shouldWorkOverCopyingCaches() {
+    TableInvalidationCache serialized = new TableInvalidationCache(new SerializedCache(new PerpetualCache("default")));
+    TableInvalidationCache copied = new TableInvalidationCache(new DeepCopyCache(new PerpetualCache("default")));
+    for (TableInvalidationCache cache : Arrays.asList(serialized, copied)) {
+      cache.putObject("person", "Jane", cache.dependencies(new String[] { "person" }));
+      assertEquals("Jane", cache.getObject("person"));
+      cache.invalidate(Arrays.asList("person"));
+      assertNull(cache.getObject("person"));
+    }
+  }
+
+  @Test
+  public void shouldFindTheTablesOfStatements() {
+    assertTables("select * from person", "person");
+    assertTables("SELECT p.name FROM app.Person p, \"Pet\" AS x, `order` o WHERE p.id = x.owner", "person", "pet", "order");
+    assertTables("select * from person p left outer join pet on pet.owner = p.id inner join toy t on t.pet = pet.id",
+        "person", "pet", "toy");
+    assertTables("select * from (select id from person) p natural join pet", "person", "pet");
+    assertTables("insert into person (id, name) values (1, 'from nowhere')", "person");
+    assertTables("insert into person (id, name) select id, name from employee", "person", "employee");
+    assertTables("update person set name = ? where id = ?", "person");
+    assertTables("delete from pet where owner in (select id from person)", "pet", "person");
+    assertTables("merge into person p using employee e on p.id = e.id when matched then update set p.name = e.name",
+        "person", "employee");
+    assertTables("select * from person -- join pet\n where id = ? for update of person", "person");
+    assertNull(TableInvalidationCache.tablesOf("{call refresh_person(?)}"));
+  }
+
+  private static void assertTables(String sql, String... tables) {
+    assertArrayEquals(tables, TableInvalidationCache.tablesOf(sql));
+  }
+
+}
@@ -0,0 +1,182 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.cache.impl.TinyLfuCache;
+import org.junit.Test;
+
+public class TinyLfuCacheTest {
+
+  @Test
+  public void shouldNeverExceedItsSize() {
+    TinyLfuCache cache = new TinyLfuCache("default");
+    cache.setSize(10);
+    for (int i = 0; i < 100; i++) {
+      cache.putObject(i, i);
+    }
+    assertEquals(10, cache.getSize());
+    assertEquals(90, cache.getEvictionCount());
+  }
+
+  @Test
+  public void shouldKeepFrequentlyUsedItemsWhenScanned() {
+    TinyLfuCache cache = new TinyLfuCache("default");
+    cache.setSize(100);
+    for (int i = 0; i < 100; i++) {
+      cache.putObject(i, i);
+    }
+    for (int round = 0; round < 5; round++) {
+      for (int i = 0; i < 50; i++) {
+        assertEquals(i, cache.getObject(i));
+      }
+    }
+    // one-off keys must not push the popular ones out
+    for (int i = 1000; i < 2000; i++) {
+      cache.putObject(i, i);
+      cache.getObject(i);
+    }
+    int kept = 0;
+    for (int i = 0; i < 50; i++) {
+      if (cache.getObject(i) != null) {
+        kept++;
+      }
+    }
+    assertTrue("only " + kept + " popular items left", kept >= 45);
+    assertEquals(100, cache.getSize());
+  }
+
+  @Test
+  public void shouldCountHitsAndMisses() {
+    TinyLfuCache cache = new TinyLfuCache("default");
+    cache.putObject("a", "A");
+    assertEquals("A", cache.getObject("a"));
+    assertEquals("A", cache.getObject("a"));
+    assertNull(cache.getObject("b"));
+    assertEquals(2, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+    assertEquals(2.0 / 3, cache.getHitRatio(), 0.0001);
+  }
+
+  @Test
+  public void shouldReplaceAndRemoveItemOnDemand() {
+    Cache cache = new TinyLfuCache("default");
+    cache.putObject(0, 0);
+    cache.putObject(0, 1);
+    assertEquals(1, cache.getSize());
+    assertEquals(1, cache.getObject(0));
+    assertEquals(1, cache.removeObject(0));
+    assertNull(cache.getObject(0));
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  public void shouldNotStoreNullValues() {
+    Cache cache = new TinyLfuCache("default");
+    cache.putObject(0, 0);
+    cache.putObject(0, null);
+    assertNull(cache.getObject(0));
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  public void shouldFlushAllItemsOnDemand() {
+    Cache cache = new TinyLfuCache("default");
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, i);
+    }
+    assertNotNull(cache.getObject(0));
+    assertNotNull(cache.getObject(4));
+    cache.clear();
+    assertNull(cache.getObject(0));
+    assertNull(cache.getObject(4));
+    cache.putObject(5, 5);
+    assertEquals(1, cache.getSize());
+  }
+
+  @Test
+  public void shouldShrinkWhenSizeIsReduced() {
+    TinyLfuCache cache = new TinyLfuCache("default");
+    for (int i = 0; i < 100; i++) {
+      cache.putObject(i, i);
+    }
+    cache.setSize(10);
+    assertEquals(10, cache.getSize());
+  }
+
+  @Test
+  public void shouldStayConsistentUnderConcurrentAccess() throws Exception {
+    final TinyLfuCache cache = new TinyLfuCache("default");
+    cache.setSize(64);
+    final CountDownLatch done = new CountDownLatch(8);
+    final AtomicInteger failures = new AtomicInteger();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < 8; t++) {
+      final int seed = t;
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < 20000; i++) {
+              Integer key = (i * 31 + seed) % 256;
+              Object value = cache.getObject(key);
+              if (value != null && !value.equals(key)) {
+                failures.incrementAndGet();
+              }
+              if (value == null) {
+                cache.putObject(key, key);
+              }
+              if (i % 1000 == 0) {
+                cache.removeObject(key);
+              }
+            }
+          } catch (RuntimeException e) {
+            failures.incrementAndGet();
+          } finally {
+            done.countDown();
+          }
+        }
+      });
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    done.await();
+    assertEquals(0, failures.get());
+    assertTrue(cache.getSize() <= 64);
+    assertEquals(8 * 20000, cache.getHitCount() + cache.getMissCount());
+  }
+
+  @Test
+  public void shouldBoundTotalWeightWithMaxBytes() {
+    TinyLfuCache cache = new TinyLfuCache("default");
+    cache.setMaxBytes(10000);
+    for (int i = 0; i < 100; i++) {
+      cache.putObject(i, new byte[1000 - 16]);
+    }
+    assertEquals(10, cache.getSize());
+    cache.putObject("big", new byte[20000]);
+    assertNull(cache.getObject("big"));
+    assertEquals(10, cache.getSize());
+  }
+
+}
@@ -0,0 +1,177 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.serializer;
+
+import static org.junit.Assert.*;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.domain.blog.Author;
+import org.apache.ibatis.domain.blog.Section;
+import org.junit.Test;
+
+public class BinarySerializerTest {
+
+  private final CacheSerializer serializer = new BinarySerializer();
+
+  @Test
+  public void shouldCopySimpleValues() {
+    Object[] values = { null, "", "plain", "été € 😀", 0, -1, Integer.MIN_VALUE, Integer.MAX_VALUE,
+        Long.MIN_VALUE, 42L, Double.NaN, -0.5d, 1.25f, (short) -7, (byte) 3, 'x', true, false,
+        new BigDecimal("-12345678901234567890.0042"), new BigInteger("98765432109876543210"), new Date(123456789L),
+        new java.sql.Date(86400000L), new Time(3600000L), Section.NEWS };
+    for (Object value : values) {
+      assertEquals(value, copy(value));
+    }
+    Timestamp timestamp = new Timestamp(1500000000123L);
+    timestamp.setNanos(123456789);
+    assertEquals(timestamp, copy(timestamp));
+    assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[]) copy(new byte[] { 1, 2, 3 }));
+    assertArrayEquals(new String[] { "a", null }, (String[]) copy(new String[] { "a", null }));
+    assertArrayEquals(new int[] { 1, 2 }, (int[]) copy(new int[] { 1, 2 }));
+  }
+
+  @Test
+  public void shouldCopyCollectionsAndMaps() {
+    List<Object> list = new ArrayList<Object>(Arrays.asList(1, "two", null));
+    assertEquals(list, copy(list));
+    assertEquals(new LinkedList<Object>(list), copy(new LinkedList<Object>(list)));
+    assertEquals(new HashSet<Object>(list), copy(new HashSet<Object>(list)));
+    assertEquals(new TreeSet<String>(Arrays.asList("b", "a")), copy(new TreeSet<String>(Arrays.asList("b", "a"))));
+    Map<String, Object> map = new LinkedHashMap<String, Object>();
+    map.put("z", 1);
+    map.put("a", null);
+    Object copy = copy(map);
+    assertEquals(LinkedHashMap.class, copy.getClass());
+    assertEquals(Arrays.<Object> asList("z", "a"), new ArrayList<Object>(((Map<?, ?>) copy).keySet()));
+    assertEquals(new HashMap<String, Object>(map), copy(new HashMap<String, Object>(map)));
+    assertEquals(new TreeMap<String, Object>(map), copy(new TreeMap<String, Object>(map)));
+  }
+
+  @Test
+  public void shouldCopyBeans() {
+    Author author = new Author(101, "jim", "********", "jim@ibatis.apache.org", "Something...", Section.NEWS);
+    Author copy = (Author) copy(author);
+    assertNotSame(author, copy);
+    assertEquals(author, copy);
+    assertTrue(serializer.serialize(author).length < new JavaSerializer().serialize(author).length / 2);
+  }
+
+  @Test
+  public void shouldPreserveSharedReferencesAndCycles() {
+    Node parent = new Node("parent");
+    Node child = new Node("child");
+    child.parent = parent;
+    parent.children.add(child);
+    parent.children.add(child);
+    Node copy = (Node) copy(parent);
+    assertEquals("parent", copy.name);
+    assertSame(copy.children.get(0), copy.children.get(1));
+    assertSame(copy, copy.children.get(0).parent);
+  }
+
+  @Test
+  public void shouldSkipTransientFieldsAndCopySuperclassFields() {
+    SpecialNode node = new SpecialNode("node");
+    node.level = 3;
+    node.scratch = "lost";
+    SpecialNode copy = (SpecialNode) copy(node);
+    assertEquals("node", copy.name);
+    assertEquals(3, copy.level);
+    assertNull(copy.scratch);
+  }
+
+  @Test
+  public void shouldFallBackToJavaSerializationForCustomizedClasses() {
+    Replaced replaced = new Replaced();
+    List<Object> list = new ArrayList<Object>();
+    list.add(replaced);
+    list.add(new NoDefaultConstructor("value"));
+    List<?> copy = (List<?>) copy(list);
+    assertEquals("replacement", copy.get(0));
+    assertEquals("value", ((NoDefaultConstructor) copy.get(1)).value);
+  }
+
+  @Test(expected = CacheException.class)
+  public void shouldFailOnNonSerializableObjects() {
+    serializer.serialize(Arrays.asList(new Object()));
+  }
+
+  private Object copy(Object value) {
+    return serializer.deserialize(serializer.serialize(value));
+  }
+
+  static class Node implements Serializable {
+    private static final long serialVersionUID = 1L;
+    String name;
+    Node parent;
+    List<Node> children = new ArrayList<Node>();
+
+    Node() {
+    }
+
+    Node(String name) {
+      this.name = name;
+    }
+  }
+
+  static class SpecialNode extends Node {
+    private static final long serialVersionUID = 1L;
+    int level;
+    transient String scratch;
+
+    SpecialNode() {
+    }
+
+    SpecialNode(String name) {
+      super(name);
+    }
+  }
+
+  static class Replaced implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private Object writeReplace() {
+      return "replacement";
+    }
+  }
+
+  static class NoDefaultConstructor implements Serializable {
+    private static final long serialVersionUID = 1L;
+    final String value;
+
+    NoDefaultConstructor(String value) {
+      this.value = value;
+    }
+  }
+
+}
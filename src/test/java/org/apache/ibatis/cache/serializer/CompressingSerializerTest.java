@@ -0,0 +1,73 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.serializer;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CompressingSerializerTest {
+
+  private final CacheSerializer serializer = new CompressingSerializer(new PassThroughSerializer());
+
+  @Test
+  public void shouldShrinkRepetitiveData() {
+    byte[] data = new byte[10000];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) "select * from author where id = ?".charAt(i % 33);
+    }
+    byte[] compressed = serializer.serialize(data);
+    assertTrue(compressed.length < data.length / 10);
+    assertArrayEquals(data, (byte[]) serializer.deserialize(compressed));
+  }
+
+  @Test
+  public void shouldStoreIncompressibleDataAsItIs() {
+    byte[] data = new byte[1000];
+    new Random(42).nextBytes(data);
+    byte[] stored = serializer.serialize(data);
+    assertEquals(data.length + 1, stored.length);
+    assertArrayEquals(data, (byte[]) serializer.deserialize(stored));
+  }
+
+  @Test
+  public void shouldCopyAnyLength() {
+    Random random = new Random(7);
+    for (int length = 0; length < 600; length++) {
+      byte[] data = new byte[length];
+      for (int i = 0; i < length; i++) {
+        // runs of a few symbols produce short, long and overlapping matches
+        data[i] = (byte) (random.nextInt(8) == 0 ? random.nextInt(4) : (i > 0 ? data[i - 1] : 0));
+      }
+      assertArrayEquals("length " + length, data, (byte[]) serializer.deserialize(serializer.serialize(data)));
+    }
+  }
+
+  private static class PassThroughSerializer implements CacheSerializer {
+    @Override
+    public byte[] serialize(Object value) {
+      return ((byte[]) value).clone();
+    }
+
+    @Override
+    public Object deserialize(byte[] data) {
+      return data;
+    }
+  }
+
+}
@@ -0,0 +1,89 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.serializer;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.decorators.DeepCopyCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.domain.blog.Author;
+import org.apache.ibatis.domain.blog.Section;
+import org.apache.ibatis.test.SlowTests;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Round trip time and size of a large result list with each serializer. Run it with
+ * -Dtest=SerializerBenchmarkTest -Dmaven.surefire.excludeGroups=org.apache.ibatis.test.EmbeddedPostgresqlTests
+ */
+@Category(SlowTests.class)
+public class SerializerBenchmarkTest {
+
+  private static final int ROWS = 10000;
+  private static final int ROUNDS = 50;
+
+  @Test
+  public void compareSerializers() {
+    List<Author> rows = new ArrayList<Author>(ROWS);
+    for (int i = 0; i < ROWS; i++) {
+      rows.add(new Author(i, "user" + i, "password" + i, "user" + i + "@ibatis.apache.org",
+          "Biography of user " + i, Section.values()[i % Section.values().length]));
+    }
+    CacheSerializer[] serializers = { new JavaSerializer(), new BinarySerializer(),
+        new CompressingSerializer(new BinarySerializer()) };
+    String[] names = { "java", "binary", "binary + compression" };
+
+    // warm up
+    for (CacheSerializer serializer : serializers) {
+      run(serializer, rows);
+    }
+
+    System.out.println("Serializers, " + ROUNDS + " round trips of a list of " + ROWS + " authors");
+    for (int i = 0; i < serializers.length; i++) {
+      long nanos = run(serializers[i], rows);
+      int size = serializers[i].serialize(rows).length;
+      System.out.println("  " + names[i] + " : " + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms, " + size + " bytes");
+    }
+
+    // the copies of a deep copy cache are made without serializing
+    Cache deepCopyCache = new DeepCopyCache(new PerpetualCache("default"));
+    run(deepCopyCache, rows);
+    System.out.println("  deep copy : " + TimeUnit.NANOSECONDS.toMillis(run(deepCopyCache, rows)) + " ms");
+  }
+
+  private long run(Cache cache, List<Author> rows) {
+    long start = System.nanoTime();
+    for (int i = 0; i < ROUNDS; i++) {
+      cache.putObject(0, rows);
+      assertEquals(rows.size(), ((List<?>) cache.getObject(0)).size());
+    }
+    return System.nanoTime() - start;
+  }
+
+  private long run(CacheSerializer serializer, List<Author> rows) {
+    long start = System.nanoTime();
+    for (int i = 0; i < ROUNDS; i++) {
+      assertEquals(rows.size(), ((List<?>) serializer.deserialize(serializer.serialize(rows))).size());
+    }
+    return System.nanoTime() - start;
+  }
+
+}
@@ -0,0 +1,96 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void shouldReportPercentilesWithinBucketPrecision() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i);
+    }
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    assertEquals(1000, snapshot.getCount());
+    assertEquals(500, snapshot.getMean());
+    assertEquals(1000, snapshot.getMax());
+    assertEquals(500, snapshot.getValueAtPercentile(50), 500 * 0.0625);
+    assertEquals(990, snapshot.getValueAtPercentile(99), 990 * 0.0625);
+    assertEquals(1000, snapshot.getValueAtPercentile(100));
+  }
+
+  @Test
+  public void shouldKeepSmallValuesExact() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(3);
+    histogram.record(-1);
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    assertEquals(2, snapshot.getCount());
+    assertEquals(0, snapshot.getValueAtPercentile(50));
+    assertEquals(3, snapshot.getValueAtPercentile(100));
+  }
+
+  @Test
+  public void shouldNotChangeSnapshotWhenRecordingAfterwards() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(10);
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    histogram.record(Long.MAX_VALUE);
+    assertEquals(1, snapshot.getCount());
+    assertEquals(10, snapshot.getValueAtPercentile(99));
+    assertEquals(2, histogram.snapshot().getCount());
+  }
+
+  @Test
+  public void shouldAddUpValuesRecordedConcurrently() throws Exception {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = 1; i <= 10000; i++) {
+            histogram.record(i);
+          }
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    assertEquals(80000, snapshot.getCount());
+    assertEquals(8 * 10000L * 10001 / 2, snapshot.getTotal());
+    assertEquals(10000, snapshot.getMax());
+    histogram.reset();
+    assertEquals(0, histogram.snapshot().getTotal());
+  }
+
+  @Test
+  public void shouldMapEveryValueToABucketThatHoldsIt() {
+    for (long value : new long[] { 0, 15, 16, 17, 31, 32, 1000, 123456789L, Long.MAX_VALUE }) {
+      int index = LatencyHistogram.indexOf(value);
+      assertTrue(LatencyHistogram.highestValueOf(index) >= value);
+      assertTrue(index == 0 || LatencyHistogram.highestValueOf(index - 1) < value);
+    }
+  }
+
+}
@@ -0,0 +1,128 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.ibatis.BaseDataTest;
+import org.junit.Test;
+
+public class PooledDataSourceWaiterTest {
+
+  @Test
+  public void shouldNotStallWaiterHandedOverABadConnection() throws Exception {
+    final Thread owner = Thread.currentThread();
+    final boolean[] failHandOff = { true };
+    final PooledDataSource ds = new PooledDataSource() {
+      @Override
+      protected boolean pingConnection(PooledConnection conn) {
+        synchronized (failHandOff) {
+          // the returning thread validates the connection, the waiter it is handed over to finds it broken
+          if (failHandOff[0] && Thread.currentThread() != owner) {
+            failHandOff[0] = false;
+            return false;
+          }
+        }
+        return super.pingConnection(conn);
+      }
+    };
+    PooledDataSource template = BaseDataTest.createPooledDataSource(BaseDataTest.JPETSTORE_PROPERTIES);
+    ds.setDriver(template.getDriver());
+    ds.setUrl(template.getUrl());
+    ds.setUsername(template.getUsername());
+    ds.setPassword(template.getPassword());
+    try {
+      ds.setPoolMaximumActiveConnections(1);
+      ds.setPoolMaximumCheckoutTime(60000);
+      ds.setPoolTimeToWait(60000);
+      final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+      Connection c = ds.getConnection();
+      Thread first = checkOutAndClose(ds, "first", order);
+      while (ds.getPoolState().getWaitingThreadCount() < 1) {
+        Thread.sleep(1);
+      }
+      Thread second = checkOutAndClose(ds, "second", order);
+      while (ds.getPoolState().getWaitingThreadCount() < 2) {
+        Thread.sleep(1);
+      }
+      c.close();
+      first.join(10000);
+      second.join(10000);
+      assertEquals(Arrays.asList("first", "second"), order);
+      assertEquals(1, ds.getPoolState().getBadConnectionCount());
+      assertEquals(0, ds.getPoolState().getWaitingThreadCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldNotOpenAConnectionForANewcomerWhileOneIsHandedOver() throws Exception {
+    PooledDataSource ds = BaseDataTest.createPooledDataSource(BaseDataTest.JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolMaximumActiveConnections(1);
+      ds.setPoolMaximumCheckoutTime(60000);
+      ds.setPoolTimeToWait(60000);
+      ds.setPoolMaximumWaitTime(200);
+      final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+      Connection c = ds.getConnection();
+      Thread waiting = checkOutAndClose(ds, "waiting", order);
+      while (ds.getPoolState().getWaitingThreadCount() < 1) {
+        Thread.sleep(1);
+      }
+      synchronized (ds.getPoolState()) {
+        // the waiting thread is handed the connection but cannot take it before the newcomer asks for one
+        c.close();
+        try {
+          ds.getConnection();
+          fail("A second connection was opened in a pool of one");
+        } catch (SQLException e) {
+          assertTrue(e.getMessage().contains("Timed out"));
+        }
+      }
+      waiting.join(10000);
+      assertEquals(Collections.singletonList("waiting"), order);
+      assertEquals(0, ds.getPoolState().getActiveConnectionCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  private Thread checkOutAndClose(final PooledDataSource ds, final String name, final List<String> order) {
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          Connection c = ds.getConnection();
+          order.add(name);
+          c.close();
+        } catch (SQLException e) {
+          // the order assertion will fail
+        }
+      }
+    };
+    thread.start();
+    return thread;
+  }
+
+}
@@ -0,0 +1,100 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.domain.blog.Author;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.test.SlowTests;
+import org.apache.ibatis.transaction.jdbc.JdbcTransaction;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Time spent building the cache keys of typical statements and looking them up in a local cache. Run it with
+ * -Dtest=CacheKeyBenchmarkTest -Dmaven.surefire.excludeGroups=org.apache.ibatis.test.EmbeddedPostgresqlTests
+ */
+@Category(SlowTests.class)
+public class CacheKeyBenchmarkTest {
+
+  private static final int KEYS = 1000;
+  private static final int ROUNDS = 500;
+
+  @Test
+  public void createAndLookUpCacheKeys() {
+    Configuration config = new Configuration();
+    Executor executor = new SimpleExecutor(config, new JdbcTransaction(null, null, false));
+    MappedStatement selectAuthor = ExecutorTestHelper.prepareSelectOneAuthorMappedStatement(config);
+    MappedStatement selectBlog = ExecutorTestHelper.prepareSelectBlogByIdAndAuthor(config);
+
+    Object[] parameters = new Object[KEYS];
+    MappedStatement[] statements = new MappedStatement[KEYS];
+    BoundSql[] boundSqls = new BoundSql[KEYS];
+    for (int i = 0; i < KEYS; i++) {
+      if (i % 2 == 0) {
+        statements[i] = selectAuthor;
+        parameters[i] = new Author(i);
+      } else {
+        Map<String, Object> parameter = new HashMap<String, Object>();
+        parameter.put("blogId", i);
+        parameter.put("authorId", i + 1);
+        statements[i] = selectBlog;
+        parameters[i] = parameter;
+      }
+      boundSqls[i] = statements[i].getBoundSql(parameters[i]);
+    }
+
+    PerpetualCache localCache = new PerpetualCache("LocalCache");
+    for (int i = 0; i < KEYS; i++) {
+      localCache.putObject(executor.createCacheKey(statements[i], parameters[i], RowBounds.DEFAULT, boundSqls[i]).freeze(), i);
+    }
+
+    // warm up
+    for (int i = 0; i < 3; i++) {
+      run(executor, localCache, statements, parameters, boundSqls);
+    }
+
+    long nanos = Long.MAX_VALUE;
+    for (int i = 0; i < 5; i++) {
+      nanos = Math.min(nanos, run(executor, localCache, statements, parameters, boundSqls));
+    }
+    System.out.println("Cache keys, " + ROUNDS + " rounds of " + KEYS + " keys created and looked up, best of 5 : "
+        + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms");
+  }
+
+  private long run(Executor executor, PerpetualCache localCache, MappedStatement[] statements, Object[] parameters,
+      BoundSql[] boundSqls) {
+    long start = System.nanoTime();
+    for (int round = 0; round < ROUNDS; round++) {
+      for (int i = 0; i < KEYS; i++) {
+        CacheKey key = executor.createCacheKey(statements[i], parameters[i], RowBounds.DEFAULT, boundSqls[i]);
+        assertEquals(i, localCache.getObject(key));
+      }
+    }
+    return System.nanoTime() - start;
+  }
+
+}
@@ -17,11 +17,16 @@ package org.apache.ibatis.executor.resultset;
 
 import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -33,6 +38,7 @@ import java.util.HashMap;
 import java.util.List;
 
 import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.domain.blog.Author;
 import org.apache.ibatis.executor.Executor;
 import org.apache.ibatis.executor.ExecutorException;
 import org.apache.ibatis.executor.parameter.ParameterHandler;
@@ -44,6 +50,7 @@ import org.apache.ibatis.mapping.SqlCommandType;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.type.JdbcType;
 import org.apache.ibatis.type.TypeHandler;
 import org.apache.ibatis.type.TypeHandlerRegistry;
 import org.junit.Assert;
@@ -102,6 +109,32 @@ public class DefaultResultSetHandlerTest {
     assertEquals(Integer.valueOf(100), ((HashMap) results.get(0)).get("cOlUmN1"));
   }
 
+  @Test
+  public void shouldReadMappedColumnsByIndexWhenEnabled() throws Exception {
+    final MappedStatement ms = getMappedStatement();
+    ms.getConfiguration().setColumnIndexReadsEnabled(true);
+    final DefaultResultSetHandler resultSetHandler = new DefaultResultSetHandler(null, ms, null, null, null, new RowBounds(0, 100));
+
+    when(stmt.getResultSet()).thenReturn(rs);
+    when(rs.getMetaData()).thenReturn(rsmd);
+    when(rs.getType()).thenReturn(ResultSet.TYPE_FORWARD_ONLY);
+    when(rs.next()).thenReturn(true).thenReturn(false);
+    when(rs.getInt(1)).thenReturn(100);
+    when(rs.wasNull()).thenReturn(false);
+    when(rsmd.getColumnCount()).thenReturn(1);
+    when(rsmd.getColumnLabel(1)).thenReturn("CoLuMn1");
+    when(rsmd.getColumnType(1)).thenReturn(Types.INTEGER);
+    when(rsmd.getColumnClassName(1)).thenReturn(Integer.class.getCanonicalName());
+    when(stmt.getConnection()).thenReturn(conn);
+    when(conn.getMetaData()).thenReturn(dbmd);
+    when(dbmd.supportsMultipleResultSets()).thenReturn(false);
+
+    final List<Object> results = resultSetHandler.handleResultSets(stmt);
+    assertEquals(1, results.size());
+    assertEquals(Integer.valueOf(100), ((HashMap) results.get(0)).get("cOlUmN1"));
+    verify(rs, never()).getInt("CoLuMn1");
+  }
+
   @Test
   public void shouldThrowExceptionWithColumnName() throws Exception {
     final MappedStatement ms = getMappedStatement();
@@ -130,6 +163,124 @@ public class DefaultResultSetHandlerTest {
     }
   }
 
+  @Test
+  public void shouldThrowExceptionWithColumnNameWhenReadByIndex() throws Exception {
+    final MappedStatement ms = getMappedStatement();
+    final RowBounds rowBounds = new RowBounds(0, 100);
+
+    final DefaultResultSetHandler defaultResultSetHandler = new DefaultResultSetHandler(null/*executor*/, ms,
+            null/*parameterHandler*/, null/*resultHandler*/, null/*boundSql*/, rowBounds);
+
+    final ResultSetWrapper rsw = mock(ResultSetWrapper.class);
+    when(rsw.getResultSet()).thenReturn(mock(ResultSet.class));
+
+    final ResultMapping resultMapping = mock(ResultMapping.class);
+    final TypeHandler typeHandler = mock(TypeHandler.class);
+    when(resultMapping.getColumn()).thenReturn("column");
+    when(resultMapping.getTypeHandler()).thenReturn(typeHandler);
+    when(rsw.isReadByIndex(typeHandler)).thenReturn(true);
+    when(rsw.getColumnIndex("column")).thenReturn(1);
+    when(typeHandler.getResult(any(ResultSet.class), eq(1))).thenThrow(new SQLException("exception"));
+    List<ResultMapping> constructorMappings = Collections.singletonList(resultMapping);
+
+    try {
+      defaultResultSetHandler.createParameterizedResultObject(rsw, null/*resultType*/, constructorMappings,
+              null/*constructorArgTypes*/, null/*constructorArgs*/, null/*columnPrefix*/);
+      Assert.fail("Should have thrown ExecutorException");
+    } catch (Exception e) {
+      Assert.assertTrue("Expected ExecutorException", e instanceof ExecutorException);
+      Assert.assertTrue("", e.getMessage().contains("mapping: " + resultMapping.toString()));
+    }
+  }
+
+  @Test
+  public void shouldMapRowsWithAPlanCompiledOnceForTheColumns() throws Exception {
+    final Configuration config = new Configuration();
+    config.setColumnIndexReadsEnabled(true);
+    final ResultMap resultMap = new ResultMap.Builder(config, "authorMap", Author.class,
+        Collections.singletonList(new ResultMapping.Builder(config, "id", "ID", config.getTypeHandlerRegistry().getTypeHandler(int.class)).build())).build();
+    final MappedStatement ms = new MappedStatement.Builder(config, "selectAuthor", new StaticSqlSource(config, "select"), SqlCommandType.SELECT)
+        .resultMaps(Collections.singletonList(resultMap)).build();
+
+    when(stmt.getResultSet()).thenReturn(rs);
+    when(rs.getMetaData()).thenReturn(rsmd);
+    when(rs.getType()).thenReturn(ResultSet.TYPE_FORWARD_ONLY);
+    when(rs.next()).thenReturn(true, true, false, true, false);
+    when(rs.getInt(1)).thenReturn(100, 101, 102);
+    when(rs.getString(2)).thenReturn("jim", "sally", "bob");
+    when(rsmd.getColumnCount()).thenReturn(2);
+    when(rsmd.getColumnLabel(1)).thenReturn("id");
+    when(rsmd.getColumnType(1)).thenReturn(Types.INTEGER);
+    when(rsmd.getColumnClassName(1)).thenReturn(Integer.class.getCanonicalName());
+    when(rsmd.getColumnLabel(2)).thenReturn("username");
+    when(rsmd.getColumnType(2)).thenReturn(Types.VARCHAR);
+    when(rsmd.getColumnClassName(2)).thenReturn(String.class.getCanonicalName());
+    when(stmt.getConnection()).thenReturn(conn);
+    when(conn.getMetaData()).thenReturn(dbmd);
+    when(dbmd.supportsMultipleResultSets()).thenReturn(false);
+
+    List<Object> results = new DefaultResultSetHandler(null, ms, null, null, null, new RowBounds()).handleResultSets(stmt);
+    assertEquals(2, results.size());
+    assertEquals(100, ((Author) results.get(0)).getId());
+    assertEquals("sally", ((Author) results.get(1)).getUsername());
+
+    assertEquals(1, config.getResultSetMappingCache().getRowMappingPlanCount(resultMap));
+
+    // another result set with the same columns
+    results = new DefaultResultSetHandler(null, ms, null, null, null, new RowBounds()).handleResultSets(stmt);
+    assertEquals(1, results.size());
+    assertEquals(102, ((Author) results.get(0)).getId());
+    assertEquals("bob", ((Author) results.get(0)).getUsername());
+    assertEquals(1, config.getResultSetMappingCache().getRowMappingPlanCount(resultMap));
+    verify(rs, never()).getInt("id");
+  }
+
+  @Test
+  public void shouldReadColumnsByLabelForCustomTypeHandlers() throws Exception {
+    final Configuration config = new Configuration();
+    config.setColumnIndexReadsEnabled(true);
+    final TypeHandler<String> typeHandler = new TypeHandler<String>() {
+      @Override
+      public void setParameter(PreparedStatement ps, int i, String parameter, JdbcType jdbcType) {
+      }
+
+      @Override
+      public String getResult(ResultSet rs, String columnName) throws SQLException {
+        return rs.getString(columnName).toUpperCase();
+      }
+
+      @Override
+      public String getResult(ResultSet rs, int columnIndex) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public String getResult(CallableStatement cs, int columnIndex) {
+        throw new UnsupportedOperationException();
+      }
+    };
+    final ResultMap resultMap = new ResultMap.Builder(config, "authorMap", Author.class,
+        Collections.singletonList(new ResultMapping.Builder(config, "username", "username", typeHandler).build())).build();
+    final MappedStatement ms = new MappedStatement.Builder(config, "selectAuthor", new StaticSqlSource(config, "select"), SqlCommandType.SELECT)
+        .resultMaps(Collections.singletonList(resultMap)).build();
+
+    when(stmt.getResultSet()).thenReturn(rs);
+    when(rs.getMetaData()).thenReturn(rsmd);
+    when(rs.getType()).thenReturn(ResultSet.TYPE_FORWARD_ONLY);
+    when(rs.next()).thenReturn(true, false);
+    when(rs.getString("username")).thenReturn("jim");
+    when(rsmd.getColumnCount()).thenReturn(1);
+    when(rsmd.getColumnLabel(1)).thenReturn("username");
+    when(rsmd.getColumnType(1)).thenReturn(Types.VARCHAR);
+    when(rsmd.getColumnClassName(1)).thenReturn(String.class.getCanonicalName());
+    when(stmt.getConnection()).thenReturn(conn);
+    when(conn.getMetaData()).thenReturn(dbmd);
+    when(dbmd.supportsMultipleResultSets()).thenReturn(false);
+
+    List<Object> results = new DefaultResultSetHandler(null, ms, null, null, null, new RowBounds()).handleResultSets(stmt);
+    assertEquals("JIM", ((Author) results.get(0)).getUsername());
+  }
+
   MappedStatement getMappedStatement() {
     final Configuration config = new Configuration();
     final TypeHandlerRegistry registry = config.getTypeHandlerRegistry();
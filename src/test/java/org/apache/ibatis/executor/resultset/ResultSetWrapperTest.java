@@ -0,0 +1,208 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.type.BaseTypeHandler;
+import org.apache.ibatis.type.IntegerTypeHandler;
+import org.apache.ibatis.type.JdbcType;
+import org.apache.ibatis.type.TypeHandler;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ResultSetWrapperTest {
+
+  @Mock
+  private ResultSet rs;
+  @Mock
+  private ResultSetMetaData rsmd;
+
+  private ResultSetWrapper rsw;
+
+  @Before
+  public void setUp() throws Exception {
+    when(rs.getMetaData()).thenReturn(rsmd);
+    when(rsmd.getColumnCount()).thenReturn(2);
+    when(rsmd.getColumnLabel(1)).thenReturn("ID");
+    when(rsmd.getColumnLabel(2)).thenReturn("NAME");
+    when(rsmd.getColumnType(1)).thenReturn(Types.INTEGER);
+    when(rsmd.getColumnType(2)).thenReturn(Types.VARCHAR);
+    when(rsmd.getColumnClassName(1)).thenReturn(Integer.class.getName());
+    when(rsmd.getColumnClassName(2)).thenReturn(String.class.getName());
+    Configuration configuration = new Configuration();
+    configuration.setColumnIndexReadsEnabled(true);
+    rsw = new ResultSetWrapper(rs, configuration);
+  }
+
+  @Test
+  public void shouldReadColumnsOfBaseTypeHandlersByIndex() throws Exception {
+    assertTrue(rsw.isReadByIndex(new IntegerTypeHandler()));
+    assertTrue(rsw.isReadByIndex(new UpperCaseTypeHandler()));
+    assertEquals(1, rsw.getColumnIndex("id"));
+    assertEquals(2, rsw.getColumnIndex("name"));
+  }
+
+  @Test
+  public void shouldReadColumnsOfOtherTypeHandlersByLabel() throws Exception {
+    assertFalse(rsw.isReadByIndex(new LabelOnlyTypeHandler()));
+  }
+
+  @Test
+  public void shouldReadColumnsByLabelUnlessEnabled() throws Exception {
+    ResultSetWrapper labelReads = new ResultSetWrapper(rs, new Configuration());
+    when(rs.getString("Name")).thenReturn("Bob");
+    assertFalse(labelReads.isReadByIndex(new IntegerTypeHandler()));
+    assertEquals("Bob", labelReads.getString("Name"));
+    verify(rs, never()).getString(2);
+  }
+
+  @Test
+  public void shouldReadMissingColumnsByLabel() throws Exception {
+    // the driver decides whether it knows the column
+    when(rs.getString("other")).thenReturn("Bob");
+    assertEquals("Bob", rsw.getString("other"));
+    assertEquals(-1, rsw.getColumnIndex("other"));
+  }
+
+  @Test
+  public void shouldReadStringsByIndex() throws Exception {
+    when(rs.getString(2)).thenReturn("Bob");
+    assertEquals("Bob", rsw.getString("Name"));
+    assertEquals(2, rsw.getColumnIndex("name"));
+  }
+
+  @Test
+  public void shouldLookUpColumnsIgnoringCase() {
+    String[] columnNames = new String[100];
+    JdbcType[] jdbcTypes = new JdbcType[columnNames.length];
+    String[] classNames = new String[columnNames.length];
+    for (int i = 0; i < columnNames.length; i++) {
+      columnNames[i] = "Column_" + i;
+      jdbcTypes[i] = JdbcType.VARCHAR;
+      classNames[i] = String.class.getName();
+    }
+    columnNames[99] = "COLUMN_7";
+    ResultSetColumns columns = new ResultSetColumns(columnNames, jdbcTypes, classNames);
+    for (int i = 0; i < 99; i++) {
+      assertEquals(i + 1, columns.indexOf("column_" + i));
+    }
+    // the first of the columns with the same name
+    assertEquals(8, columns.indexOf("Column_7"));
+    assertEquals(-1, columns.indexOf("column_100"));
+    assertEquals(-1, columns.indexOf(""));
+  }
+
+  @Test
+  public void shouldTellMappedColumns() throws Exception {
+    Configuration configuration = new Configuration();
+    ResultMap resultMap = new ResultMap.Builder(configuration, "map", Object.class,
+        Collections.singletonList(new ResultMapping.Builder(configuration, "id", "id", Integer.class).build())).build();
+    assertTrue(rsw.isMappedColumn(resultMap, null, "Id"));
+    assertFalse(rsw.isMappedColumn(resultMap, null, "name"));
+    assertFalse(rsw.isMappedColumn(resultMap, null, "other"));
+    assertEquals(Collections.singletonList("ID"), rsw.getMappedColumnNames(resultMap, null));
+    assertEquals(Collections.singletonList("NAME"), rsw.getUnmappedColumnNames(resultMap, null));
+  }
+
+  @Test
+  public void shouldShareColumnsBetweenExecutionsOfAStatement() throws Exception {
+    Configuration configuration = new Configuration();
+    MappedStatement ms = new MappedStatement.Builder(configuration, "select", new StaticSqlSource(configuration, "select"),
+        SqlCommandType.SELECT).build();
+    ResultSetWrapper first = new ResultSetWrapper(rs, configuration, ms);
+    ResultSetWrapper second = new ResultSetWrapper(rs, configuration, ms);
+    assertSame(first.getColumnNames(), second.getColumnNames());
+    assertSame(first.getTypeHandler(Integer.class, "ID"), second.getTypeHandler(Integer.class, "ID"));
+
+    when(rsmd.getColumnType(2)).thenReturn(Types.CLOB);
+    ResultSetWrapper otherColumns = new ResultSetWrapper(rs, configuration, ms);
+    assertNotSame(first.getColumnNames(), otherColumns.getColumnNames());
+    assertEquals(Arrays.asList("ID", "NAME"), otherColumns.getColumnNames());
+    assertEquals(JdbcType.CLOB, otherColumns.getJdbcType("name"));
+  }
+
+  public static class UpperCaseTypeHandler extends BaseTypeHandler<String> {
+    @Override
+    public void setNonNullParameter(PreparedStatement ps, int i, String parameter, JdbcType jdbcType) throws SQLException {
+      ps.setString(i, parameter);
+    }
+
+    @Override
+    public String getNullableResult(ResultSet rs, String columnName) throws SQLException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getNullableResult(ResultSet rs, int columnIndex) throws SQLException {
+      return rs.getString(columnIndex);
+    }
+
+    @Override
+    public String getNullableResult(CallableStatement cs, int columnIndex) throws SQLException {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  public static class LabelOnlyTypeHandler implements TypeHandler<String> {
+    @Override
+    public void setParameter(PreparedStatement ps, int i, String parameter, JdbcType jdbcType) throws SQLException {
+      ps.setString(i, parameter);
+    }
+
+    @Override
+    public String getResult(ResultSet rs, String columnName) throws SQLException {
+      return rs.getString(columnName);
+    }
+
+    @Override
+    public String getResult(ResultSet rs, int columnIndex) throws SQLException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getResult(CallableStatement cs, int columnIndex) throws SQLException {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+}
@@ -0,0 +1,394 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.annotations.Result;
+import org.apache.ibatis.annotations.ResultType;
+import org.apache.ibatis.annotations.Results;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.reflection.javassist.JavassistReflectorFactory;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.test.SlowTests;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Time spent selecting and mapping a million rows, through a result map and through auto mapping, with reflective
+ * and with generated property accessors, a million rows of a wide table into maps, and a million joined rows
+ * into objects with nested collections streamed from an ordered statement. Run it with
+ * -Dtest=RowMappingBenchmarkTest -Dmaven.surefire.excludeGroups=org.apache.ibatis.test.EmbeddedPostgresqlTests
+ */
+@Category(SlowTests.class)
+public class RowMappingBenchmarkTest {
+
+  private static final int ROWS = 100000;
+  private static final int ROUNDS = 10;
+  private static final int WIDE_COLUMNS = 30;
+  private static final int ITEMS_PER_OWNER = 10;
+
+  private static SqlSessionFactory sqlSessionFactory;
+  private static SqlSessionFactory generatedAccessorsSqlSessionFactory;
+
+  public interface Mapper {
+    @Select("select id, name, email, score, created from row_mapping_bench")
+    @Results({
+        @Result(property = "id", column = "id", id = true),
+        @Result(property = "name", column = "name"),
+        @Result(property = "email", column = "email"),
+        @Result(property = "score", column = "score"),
+        @Result(property = "created", column = "created")
+    })
+    @ResultType(Row.class)
+    void selectWithResultMap(ResultHandler<Row> handler);
+
+    @Select("select id, name, email, score, created from row_mapping_bench")
+    @ResultType(Row.class)
+    void selectWithAutoMapping(ResultHandler<Row> handler);
+
+    @Select("select * from row_mapping_bench_wide")
+    @ResultType(HashMap.class)
+    void selectWideMaps(ResultHandler<Map<String, Object>> handler);
+  }
+
+  public static class Owner {
+    private int id;
+    private String name;
+    private List<Item> items;
+
+    public int getId() {
+      return id;
+    }
+
+    public void setId(int id) {
+      this.id = id;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+
+    public List<Item> getItems() {
+      return items;
+    }
+
+    public void setItems(List<Item> items) {
+      this.items = items;
+    }
+  }
+
+  public static class Item {
+    private int id;
+    private String name;
+
+    public int getId() {
+      return id;
+    }
+
+    public void setId(int id) {
+      this.id = id;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+  }
+
+  public static class Row {
+    private int id;
+    private String name;
+    private String email;
+    private double score;
+    private java.util.Date created;
+
+    public int getId() {
+      return id;
+    }
+
+    public void setId(int id) {
+      this.id = id;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+
+    public String getEmail() {
+      return email;
+    }
+
+    public void setEmail(String email) {
+      this.email = email;
+    }
+
+    public double getScore() {
+      return score;
+    }
+
+    public void setScore(double score) {
+      this.score = score;
+    }
+
+    public java.util.Date getCreated() {
+      return created;
+    }
+
+    public void setCreated(java.util.Date created) {
+      this.created = created;
+    }
+  }
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    UnpooledDataSource dataSource = new UnpooledDataSource("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:row_mapping_bench", "sa", "");
+    Configuration configuration = new Configuration(new Environment("bench", new JdbcTransactionFactory(), dataSource));
+    configuration.setColumnIndexReadsEnabled(true);
+    configuration.addMapper(Mapper.class);
+    String resource = "org/apache/ibatis/executor/resultset/RowMappingBenchmarkMapper.xml";
+    new XMLMapperBuilder(Resources.getResourceAsStream(resource), configuration, resource, configuration.getSqlFragments()).parse();
+    sqlSessionFactory = new SqlSessionFactoryBuilder().build(configuration);
+    Configuration generatedAccessorsConfiguration = new Configuration(configuration.getEnvironment());
+    generatedAccessorsConfiguration.setReflectorFactory(new JavassistReflectorFactory());
+    generatedAccessorsConfiguration.setColumnIndexReadsEnabled(true);
+    generatedAccessorsConfiguration.addMapper(Mapper.class);
+    generatedAccessorsSqlSessionFactory = new SqlSessionFactoryBuilder().build(generatedAccessorsConfiguration);
+
+    Connection connection = dataSource.getConnection();
+    try {
+      Statement stmt = connection.createStatement();
+      stmt.execute("drop table row_mapping_bench if exists");
+      stmt.execute("create table row_mapping_bench (id int, name varchar(20), email varchar(40), score double, created timestamp)");
+      stmt.close();
+      PreparedStatement insert = connection.prepareStatement("insert into row_mapping_bench values (?, ?, ?, ?, ?)");
+      for (int i = 0; i < ROWS; i++) {
+        insert.setInt(1, i);
+        insert.setString(2, "name" + i);
+        insert.setString(3, "name" + i + "@example.com");
+        insert.setDouble(4, i / 3.0);
+        insert.setTimestamp(5, new java.sql.Timestamp(i * 1000L));
+        insert.addBatch();
+      }
+      insert.executeBatch();
+      insert.close();
+
+      stmt = connection.createStatement();
+      stmt.execute("drop table row_mapping_bench_items if exists");
+      stmt.execute("create table row_mapping_bench_items (id int, owner int, name varchar(20))");
+      stmt.execute("create index row_mapping_bench_items_owner on row_mapping_bench_items (owner, id)");
+      stmt.close();
+      insert = connection.prepareStatement("insert into row_mapping_bench_items values (?, ?, ?)");
+      for (int i = 0; i < ROWS; i++) {
+        insert.setInt(1, i);
+        insert.setInt(2, i / ITEMS_PER_OWNER);
+        insert.setString(3, "item" + i);
+        insert.addBatch();
+      }
+      insert.executeBatch();
+      insert.close();
+
+      StringBuilder columns = new StringBuilder("id int");
+      StringBuilder parameters = new StringBuilder("?");
+      for (int c = 1; c < WIDE_COLUMNS; c++) {
+        columns.append(", column_").append(c).append(c % 2 == 0 ? " int" : " varchar(20)");
+        parameters.append(", ?");
+      }
+      stmt = connection.createStatement();
+      stmt.execute("drop table row_mapping_bench_wide if exists");
+      stmt.execute("create table row_mapping_bench_wide (" + columns + ")");
+      stmt.close();
+      insert = connection.prepareStatement("insert into row_mapping_bench_wide values (" + parameters + ")");
+      for (int i = 0; i < ROWS; i++) {
+        insert.setInt(1, i);
+        for (int c = 1; c < WIDE_COLUMNS; c++) {
+          if (c % 2 == 0) {
+            insert.setInt(c + 1, i + c);
+          } else {
+            insert.setString(c + 1, "value" + c);
+          }
+        }
+        insert.addBatch();
+      }
+      insert.executeBatch();
+      insert.close();
+    } finally {
+      connection.close();
+    }
+  }
+
+  @Test
+  public void mapRowsWithResultMap() {
+    report("result map", sqlSessionFactory, true);
+  }
+
+  @Test
+  public void mapRowsWithAutoMapping() {
+    report("auto mapping", sqlSessionFactory, false);
+  }
+
+  @Test
+  public void mapRowsWithResultMapAndGeneratedAccessors() {
+    report("result map, generated accessors", generatedAccessorsSqlSessionFactory, true);
+  }
+
+  @Test
+  public void mapRowsWithAutoMappingAndGeneratedAccessors() {
+    report("auto mapping, generated accessors", generatedAccessorsSqlSessionFactory, false);
+  }
+
+  @Test
+  public void mapWideRowsToMaps() {
+    // warm up
+    for (int i = 0; i < 3; i++) {
+      runWide();
+    }
+    long nanos = Long.MAX_VALUE;
+    for (int i = 0; i < 5; i++) {
+      nanos = Math.min(nanos, runWide());
+    }
+    System.out.println("Row mapping, " + WIDE_COLUMNS + " columns into maps, " + ROUNDS * ROWS
+        + " rows selected and mapped, best of 5 : " + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms");
+  }
+
+  @Test
+  public void streamOrderedNestedResults() {
+    // warm up
+    for (int i = 0; i < 3; i++) {
+      runNested();
+    }
+    long nanos = Long.MAX_VALUE;
+    for (int i = 0; i < 5; i++) {
+      nanos = Math.min(nanos, runNested());
+    }
+    System.out.println("Row mapping, " + ITEMS_PER_OWNER + " items per owner streamed, " + ROUNDS * ROWS
+        + " rows selected and mapped, best of 5 : " + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms");
+  }
+
+  private void report(String name, SqlSessionFactory sqlSessionFactory, boolean resultMap) {
+    // warm up
+    for (int i = 0; i < 3; i++) {
+      run(sqlSessionFactory, resultMap);
+    }
+    long nanos = Long.MAX_VALUE;
+    for (int i = 0; i < 5; i++) {
+      nanos = Math.min(nanos, run(sqlSessionFactory, resultMap));
+    }
+    System.out.println("Row mapping, " + name + ", " + ROUNDS * ROWS + " rows selected and mapped, best of 5 : "
+        + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms");
+  }
+
+  private long run(SqlSessionFactory sqlSessionFactory, boolean resultMap) {
+    final long[] sum = new long[1];
+    ResultHandler<Row> handler = new ResultHandler<Row>() {
+      @Override
+      public void handleResult(ResultContext<? extends Row> context) {
+        sum[0] += context.getResultObject().getId();
+      }
+    };
+    long start = System.nanoTime();
+    SqlSession session = sqlSessionFactory.openSession();
+    try {
+      Mapper mapper = session.getMapper(Mapper.class);
+      for (int round = 0; round < ROUNDS; round++) {
+        if (resultMap) {
+          mapper.selectWithResultMap(handler);
+        } else {
+          mapper.selectWithAutoMapping(handler);
+        }
+      }
+    } finally {
+      session.close();
+    }
+    assertEquals((long) ROUNDS * ROWS * (ROWS - 1) / 2, sum[0]);
+    return System.nanoTime() - start;
+  }
+
+  private long runNested() {
+    final long[] items = new long[1];
+    ResultHandler<Owner> handler = new ResultHandler<Owner>() {
+      @Override
+      public void handleResult(ResultContext<? extends Owner> context) {
+        assertEquals(ITEMS_PER_OWNER, context.getResultObject().getItems().size());
+        items[0] += context.getResultObject().getItems().size();
+      }
+    };
+    long start = System.nanoTime();
+    SqlSession session = sqlSessionFactory.openSession();
+    try {
+      for (int round = 0; round < ROUNDS; round++) {
+        session.select("org.apache.ibatis.executor.resultset.RowMappingBenchmarkMapper.selectOwnersWithItems", handler);
+      }
+    } finally {
+      session.close();
+    }
+    assertEquals((long) ROUNDS * ROWS, items[0]);
+    return System.nanoTime() - start;
+  }
+
+  private long runWide() {
+    final long[] sum = new long[1];
+    ResultHandler<Map<String, Object>> handler = new ResultHandler<Map<String, Object>>() {
+      @Override
+      public void handleResult(ResultContext<? extends Map<String, Object>> context) {
+        sum[0] += (Integer) context.getResultObject().get("ID");
+      }
+    };
+    long start = System.nanoTime();
+    SqlSession session = sqlSessionFactory.openSession();
+    try {
+      Mapper mapper = session.getMapper(Mapper.class);
+      for (int round = 0; round < ROUNDS; round++) {
+        mapper.selectWideMaps(handler);
+      }
+    } finally {
+      session.close();
+    }
+    assertEquals((long) ROUNDS * ROWS * (ROWS - 1) / 2, sum[0]);
+    return System.nanoTime() - start;
+  }
+
+}
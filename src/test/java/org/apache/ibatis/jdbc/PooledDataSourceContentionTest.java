@@ -0,0 +1,103 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.jdbc;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.test.SlowTests;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Checkout/return throughput of the synchronous pool against the concurrent bag with many more
+ * threads than connections. Run it with -Dtest=PooledDataSourceContentionTest
+ * -Dmaven.surefire.excludeGroups=org.apache.ibatis.test.EmbeddedPostgresqlTests
+ */
+@Category(SlowTests.class)
+public class PooledDataSourceContentionTest extends BaseDataTest {
+
+  private static final int THREADS = 200;
+  private static final int CONNECTIONS = 10;
+  private static final int CHECKOUTS_PER_THREAD = 2000;
+
+  @Test
+  public void compareSynchronizedPoolWithConcurrentBag() throws Exception {
+    // warm up both
+    run(false);
+    run(true);
+
+    long synchronizedNanos = run(false);
+    long concurrentBagNanos = run(true);
+
+    System.out.println("PooledDataSource contention, " + THREADS + " threads on " + CONNECTIONS + " connections, "
+        + (THREADS * CHECKOUTS_PER_THREAD) + " checkouts");
+    System.out.println("  synchronized   : " + TimeUnit.NANOSECONDS.toMillis(synchronizedNanos) + " ms");
+    System.out.println("  concurrent bag : " + TimeUnit.NANOSECONDS.toMillis(concurrentBagNanos) + " ms");
+  }
+
+  private long run(boolean concurrentBag) throws Exception {
+    final PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    ds.setPoolConcurrentBagEnabled(concurrentBag);
+    ds.setPoolMaximumActiveConnections(CONNECTIONS);
+    ds.setPoolMaximumIdleConnections(CONNECTIONS);
+    ds.setPoolMaximumCheckoutTime(60000);
+    ds.setPoolTimeToWait(60000);
+    try {
+      final CountDownLatch start = new CountDownLatch(1);
+      final CountDownLatch done = new CountDownLatch(THREADS);
+      final AtomicInteger failures = new AtomicInteger();
+      for (int i = 0; i < THREADS; i++) {
+        new Thread() {
+          @Override
+          public void run() {
+            try {
+              start.await();
+              for (int j = 0; j < CHECKOUTS_PER_THREAD; j++) {
+                Connection conn = ds.getConnection();
+                conn.getAutoCommit();
+                conn.close();
+              }
+            } catch (Exception e) {
+              failures.incrementAndGet();
+            } finally {
+              done.countDown();
+            }
+          }
+        }.start();
+      }
+      long begin = System.nanoTime();
+      start.countDown();
+      done.await();
+      long elapsed = System.nanoTime() - begin;
+
+      assertEquals(0, failures.get());
+      assertEquals(THREADS * CHECKOUTS_PER_THREAD, ds.getPoolState().getRequestCount());
+      assertEquals(0, ds.getPoolState().getActiveConnectionCount());
+      assertEquals(0, ds.getPoolState().getBadConnectionCount());
+      return elapsed;
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+}
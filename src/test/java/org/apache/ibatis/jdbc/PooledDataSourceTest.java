@@ -22,11 +22,14 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.datasource.pooled.PoolStatistics;
 import org.apache.ibatis.datasource.pooled.PooledDataSource;
 import org.hsqldb.jdbc.JDBCConnection;
 import org.junit.Ignore;
@@ -75,6 +78,503 @@ public class PooledDataSourceTest extends BaseDataTest {
     }
   }
 
+  @Test
+  public void shouldProperlyMaintainConcurrentBagOf3ActiveAnd2IdleConnections() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolConcurrentBagEnabled(true);
+      runScript(ds, JPETSTORE_DDL);
+      ds.setDefaultAutoCommit(false);
+      ds.setPoolMaximumActiveConnections(3);
+      ds.setPoolMaximumIdleConnections(2);
+      ds.setPoolPingConnectionsNotUsedFor(1);
+      ds.setPoolPingEnabled(true);
+      ds.setPoolPingQuery("SELECT * FROM PRODUCT");
+      List<Connection> connections = new ArrayList<Connection>();
+      for (int i = 0; i < 3; i++) {
+        connections.add(ds.getConnection());
+      }
+      assertEquals(3, ds.getPoolState().getActiveConnectionCount());
+      for (Connection c : connections) {
+        c.close();
+      }
+      assertEquals(0, ds.getPoolState().getActiveConnectionCount());
+      assertEquals(2, ds.getPoolState().getIdleConnectionCount());
+      assertEquals(4, ds.getPoolState().getRequestCount());
+      assertEquals(0, ds.getPoolState().getBadConnectionCount());
+      assertEquals(0, ds.getPoolState().getHadToWaitCount());
+      assertNotNull(ds.getPoolState().toString());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldHandOffReturnedConnectionToWaitingThreadInConcurrentBag() throws Exception {
+    final PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolConcurrentBagEnabled(true);
+      ds.setPoolMaximumActiveConnections(1);
+      ds.setPoolTimeToWait(10000);
+      Connection c = ds.getConnection();
+      final Connection[] waited = new Connection[1];
+      Thread waiter = new Thread() {
+        @Override
+        public void run() {
+          try {
+            waited[0] = ds.getConnection();
+          } catch (SQLException e) {
+            // asserted below
+          }
+        }
+      };
+      waiter.start();
+      while (ds.getPoolState().getHadToWaitCount() == 0) {
+        Thread.sleep(1);
+      }
+      c.close();
+      waiter.join(10000);
+      assertNotNull(waited[0]);
+      assertEquals(1, ds.getPoolState().getActiveConnectionCount());
+      assertEquals(2, ds.getPoolState().getRequestCount());
+      waited[0].close();
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test(expected = SQLException.class)
+  public void shouldNotUseConnectionReturnedToConcurrentBag() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolConcurrentBagEnabled(true);
+      Connection c = ds.getConnection();
+      c.close();
+      // closing twice is harmless, using it is not
+      c.close();
+      c.getAutoCommit();
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldHandOverReturnedConnectionsToWaitingThreadsInArrivalOrder() throws Exception {
+    final PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolMaximumActiveConnections(1);
+      ds.setPoolMaximumCheckoutTime(60000);
+      ds.setPoolTimeToWait(60000);
+      final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+      Connection c = ds.getConnection();
+      Thread first = checkOutAndClose(ds, "first", order);
+      while (ds.getPoolState().getWaitingThreadCount() < 1) {
+        Thread.sleep(1);
+      }
+      Thread second = checkOutAndClose(ds, "second", order);
+      while (ds.getPoolState().getWaitingThreadCount() < 2) {
+        Thread.sleep(1);
+      }
+      c.close();
+      first.join(10000);
+      second.join(10000);
+      assertEquals(Arrays.asList("first", "second"), order);
+      assertEquals(0, ds.getPoolState().getWaitingThreadCount());
+      assertEquals(2, ds.getPoolState().getHadToWaitCount());
+      assertEquals(2, ds.getPoolState().getWaitTimeHistogram().getCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldGiveUpAfterMaximumWaitTime() throws Exception {
+    for (boolean concurrentBag : new boolean[] { false, true }) {
+      PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+      try {
+        ds.setPoolConcurrentBagEnabled(concurrentBag);
+        ds.setPoolMaximumActiveConnections(1);
+        ds.setPoolMaximumCheckoutTime(60000);
+        ds.setPoolTimeToWait(50);
+        ds.setPoolMaximumWaitTime(200);
+        Connection c = ds.getConnection();
+        long start = System.currentTimeMillis();
+        try {
+          ds.getConnection();
+          fail("Should have timed out");
+        } catch (SQLException e) {
+          assertTrue(e.getMessage().contains("Timed out"));
+        }
+        assertTrue(System.currentTimeMillis() - start >= 200);
+        assertEquals(0, ds.getPoolState().getWaitingThreadCount());
+        c.close();
+      } finally {
+        ds.forceCloseAll();
+      }
+    }
+  }
+
+  @Test
+  public void shouldKeepMinimumIdleConnectionsAndEvictIdleOnes() throws Exception {
+    for (boolean concurrentBag : new boolean[] { false, true }) {
+      PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+      try {
+        ds.setPoolConcurrentBagEnabled(concurrentBag);
+        ds.setPoolMinimumIdleConnections(2);
+        ds.setPoolMaintenanceInterval(10);
+        waitForIdleConnections(ds, 2);
+        assertEquals(0, ds.getPoolState().getActiveConnectionCount());
+
+        ds.setPoolMinimumIdleConnections(0);
+        ds.setPoolMaximumIdleTime(1);
+        waitForIdleConnections(ds, 0);
+      } finally {
+        ds.setPoolMaintenanceInterval(0);
+        ds.forceCloseAll();
+      }
+    }
+  }
+
+  @Test
+  public void shouldCloseExpiredConnectionsWhenReturned() throws Exception {
+    for (boolean concurrentBag : new boolean[] { false, true }) {
+      PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+      try {
+        ds.setPoolConcurrentBagEnabled(concurrentBag);
+        ds.setPoolMaximumLifetime(1);
+        Connection c = ds.getConnection();
+        Thread.sleep(5);
+        c.close();
+        assertEquals(0, ds.getPoolState().getIdleConnectionCount());
+      } finally {
+        ds.forceCloseAll();
+      }
+    }
+  }
+
+  @Test
+  public void shouldValidateIdleConnectionsInTheBackgroundOnly() throws Exception {
+    for (boolean concurrentBag : new boolean[] { false, true }) {
+      PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+      try {
+        ds.setPoolConcurrentBagEnabled(concurrentBag);
+        ds.setPoolPingEnabled(true);
+        ds.setPoolPingQuery("NOT A VALID PING QUERY");
+        ds.setPoolPingConnectionsNotUsedFor(0);
+        ds.setPoolMaintenanceInterval(60000);
+        // no ping on checkout, so the broken ping query goes unnoticed
+        Connection c = ds.getConnection();
+        c.close();
+        assertEquals(0, ds.getPoolState().getBadConnectionCount());
+
+        Thread.sleep(5);
+        ds.setPoolMaintenanceInterval(10);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (ds.getPoolState().getBadConnectionCount() == 0 && System.currentTimeMillis() < deadline) {
+          Thread.sleep(5);
+        }
+        assertEquals(1, ds.getPoolState().getBadConnectionCount());
+        assertEquals(0, ds.getPoolState().getIdleConnectionCount());
+      } finally {
+        ds.setPoolMaintenanceInterval(0);
+        ds.forceCloseAll();
+      }
+    }
+  }
+
+  @Test
+  public void shouldOpenConnectionsOnCreatorThreads() throws Exception {
+    for (boolean concurrentBag : new boolean[] { false, true }) {
+      PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+      try {
+        ds.setPoolConcurrentBagEnabled(concurrentBag);
+        ds.setPoolConnectionCreatorThreads(1);
+        ds.setPoolMaximumActiveConnections(2);
+        Connection c1 = ds.getConnection();
+        Connection c2 = ds.getConnection();
+        assertEquals(2, ds.getPoolState().getActiveConnectionCount());
+        assertEquals(2, ds.getPoolState().getCreationTimeHistogram().getCount());
+        c1.close();
+        c2.close();
+        assertEquals(2, ds.getPoolState().getIdleConnectionCount());
+      } finally {
+        ds.setPoolConnectionCreatorThreads(0);
+        ds.forceCloseAll();
+      }
+    }
+  }
+
+  @Test
+  public void shouldReportErrorOfConnectionOpenedOnCreatorThread() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setUrl("jdbc:unknown:database");
+      ds.setPoolConnectionCreatorThreads(1);
+      ds.getConnection();
+      fail("Should have failed to open a connection");
+    } catch (SQLException e) {
+      assertEquals(0, ds.getPoolState().getWaitingThreadCount());
+    } finally {
+      ds.setPoolConnectionCreatorThreads(0);
+      ds.forceCloseAll();
+    }
+  }
+
+  private void waitForIdleConnections(PooledDataSource ds, int expected) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (ds.getPoolState().getIdleConnectionCount() != expected && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertEquals(expected, ds.getPoolState().getIdleConnectionCount());
+  }
+
+  private Thread checkOutAndClose(final PooledDataSource ds, final String name, final List<String> order) {
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          Connection c = ds.getConnection();
+          order.add(name);
+          c.close();
+        } catch (SQLException e) {
+          // the order assertion will fail
+        }
+      }
+    };
+    thread.start();
+    return thread;
+  }
+
+  @Test
+  public void shouldReportStatisticsSnapshot() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      Connection c1 = ds.getConnection();
+      Connection c2 = ds.getConnection();
+      c1.close();
+      PoolStatistics statistics = ds.getPoolState().getStatistics();
+      c2.close();
+      assertEquals(2, statistics.getRequestCount());
+      assertEquals(1, statistics.getActiveConnectionCount());
+      assertEquals(1, statistics.getIdleConnectionCount());
+      assertEquals(2, statistics.getCreationTimeHistogram().getCount());
+      assertEquals(1, statistics.getCheckoutTimeHistogram().getCount());
+      assertEquals(0, statistics.getWaitTimeHistogram().getCount());
+      assertEquals(2, ds.getPoolState().getCheckoutTimeHistogram().getCount());
+
+      ds.getPoolState().resetStatistics();
+      assertEquals(0, ds.getPoolState().getRequestCount());
+      assertEquals(0, ds.getPoolState().getCreationTimeHistogram().getCount());
+      assertEquals(2, ds.getPoolState().getIdleConnectionCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldReusePreparedStatementsAcrossCheckouts() throws Exception {
+    shouldReusePreparedStatementsAcrossCheckouts(false);
+  }
+
+  @Test
+  public void shouldReusePreparedStatementsAcrossCheckoutsOfConcurrentBag() throws Exception {
+    shouldReusePreparedStatementsAcrossCheckouts(true);
+  }
+
+  private void shouldReusePreparedStatementsAcrossCheckouts(boolean concurrentBag) throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      runScript(ds, JPETSTORE_DDL);
+      ds.setPoolConcurrentBagEnabled(concurrentBag);
+      ds.setPoolMaximumActiveConnections(1);
+      ds.setPoolPreparedStatementCacheSize(2);
+      String sql = "SELECT * FROM PRODUCT WHERE PRODUCTID = ?";
+
+      Connection c = ds.getConnection();
+      PreparedStatement ps = c.prepareStatement(sql);
+      PreparedStatement real = ps.unwrap(PreparedStatement.class);
+      ps.setString(1, "FI-SW-01");
+      ps.setMaxRows(5);
+      ps.executeQuery().close();
+      ps.close();
+      assertTrue(ps.isClosed());
+      assertFalse(real.isClosed());
+      c.close();
+
+      c = ds.getConnection();
+      ps = c.prepareStatement(sql);
+      assertSame(real, ps.unwrap(PreparedStatement.class));
+      assertEquals(0, ps.getMaxRows());
+      ps.setString(1, "FI-SW-02");
+      ps.executeQuery().close();
+      // a different result set type is another statement
+      c.prepareStatement(sql, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY).close();
+      ps.close();
+      c.close();
+
+      assertEquals(1, ds.getPoolState().getStatementCacheHitCount());
+      assertEquals(2, ds.getPoolState().getStatementCacheMissCount());
+      assertEquals(1, ds.getPoolState().getStatistics().getStatementCacheHitCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldNotHandOutPreparedStatementInUse() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      runScript(ds, JPETSTORE_DDL);
+      ds.setPoolPreparedStatementCacheSize(2);
+      String sql = "SELECT * FROM PRODUCT";
+      Connection c = ds.getConnection();
+      PreparedStatement first = c.prepareStatement(sql);
+      PreparedStatement second = c.prepareStatement(sql);
+      PreparedStatement cached = first.unwrap(PreparedStatement.class);
+      PreparedStatement uncached = second.unwrap(PreparedStatement.class);
+      assertNotSame(cached, uncached);
+      second.close();
+      assertTrue(uncached.isClosed());
+      first.close();
+      first.close();
+      PreparedStatement third = c.prepareStatement(sql);
+      assertSame(cached, third.unwrap(PreparedStatement.class));
+      third.close();
+      c.close();
+      assertEquals(1, ds.getPoolState().getStatementCacheHitCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldHandOutThePooledConnectionFromCachedStatements() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      runScript(ds, JPETSTORE_DDL);
+      ds.setPoolPreparedStatementCacheSize(1);
+      Connection c = ds.getConnection();
+      PreparedStatement ps = c.prepareStatement("SELECT * FROM PRODUCT");
+      assertSame(c, ps.getConnection());
+      ps.close();
+      c.close();
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldRestoreEverySettingOfCachedStatements() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      runScript(ds, JPETSTORE_DDL);
+      ds.setPoolMaximumActiveConnections(1);
+      ds.setPoolPreparedStatementCacheSize(1);
+      String sql = "SELECT * FROM PRODUCT";
+      Connection c = ds.getConnection();
+      PreparedStatement ps = c.prepareStatement(sql);
+      PreparedStatement real = ps.unwrap(PreparedStatement.class);
+      int maxFieldSize = ps.getMaxFieldSize();
+      int fetchSize = ps.getFetchSize();
+      boolean poolable = ps.isPoolable();
+      ps.setMaxFieldSize(100);
+      ps.setFetchSize(10);
+      ps.setFetchSize(20);
+      ps.setPoolable(!poolable);
+      ps.close();
+      c.close();
+
+      c = ds.getConnection();
+      ps = c.prepareStatement(sql);
+      assertSame(real, ps.unwrap(PreparedStatement.class));
+      assertEquals(maxFieldSize, ps.getMaxFieldSize());
+      assertEquals(fetchSize, ps.getFetchSize());
+      assertEquals(poolable, ps.isPoolable());
+      ps.close();
+      c.close();
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldCloseCachedStatementsWhoseSettingsCannotBeRestored() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      runScript(ds, JPETSTORE_DDL);
+      ds.setPoolMaximumActiveConnections(1);
+      ds.setPoolPreparedStatementCacheSize(1);
+      String sql = "SELECT * FROM PRODUCT";
+      Connection c = ds.getConnection();
+      PreparedStatement ps = c.prepareStatement(sql);
+      PreparedStatement real = ps.unwrap(PreparedStatement.class);
+      ps.setEscapeProcessing(false);
+      ps.close();
+      assertTrue(real.isClosed());
+      c.close();
+
+      c = ds.getConnection();
+      ps = c.prepareStatement(sql);
+      assertNotSame(real, ps.unwrap(PreparedStatement.class));
+      ps.close();
+      c.close();
+      assertEquals(0, ds.getPoolState().getStatementCacheHitCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldCloseEvictedPreparedStatements() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      runScript(ds, JPETSTORE_DDL);
+      ds.setPoolPreparedStatementCacheSize(1);
+      Connection c = ds.getConnection();
+      PreparedStatement products = c.prepareStatement("SELECT * FROM PRODUCT");
+      PreparedStatement real = products.unwrap(PreparedStatement.class);
+      PreparedStatement items = c.prepareStatement("SELECT * FROM ITEM");
+      // evicted while in use, closed once given back
+      assertFalse(real.isClosed());
+      products.close();
+      assertTrue(real.isClosed());
+      items.close();
+      c.close();
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldGiveBackPreparedStatementsLeftOpenWhenConnectionIsClosed() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      runScript(ds, JPETSTORE_DDL);
+      ds.setPoolMaximumActiveConnections(1);
+      ds.setPoolPreparedStatementCacheSize(1);
+      String sql = "SELECT * FROM PRODUCT";
+      Connection c = ds.getConnection();
+      PreparedStatement leaked = c.prepareStatement(sql);
+      c.close();
+
+      c = ds.getConnection();
+      PreparedStatement ps = c.prepareStatement(sql);
+      assertTrue(leaked.isClosed());
+      try {
+        leaked.executeQuery();
+        fail("Should not use a statement given back to the cache");
+      } catch (SQLException e) {
+        assertTrue(e.getMessage().contains("already been closed"));
+      }
+      ps.executeQuery().close();
+      ps.close();
+      c.close();
+      assertEquals(1, ds.getPoolState().getStatementCacheHitCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
   @Test
   public void shouldNotFailCallingToStringOverAnInvalidConnection() throws Exception {
     PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
@@ -18,11 +18,20 @@ package org.apache.ibatis.mapping;
 import org.apache.ibatis.builder.InitializingObject;
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.decorators.DeepCopyCache;
+import org.apache.ibatis.cache.decorators.ExpiringCache;
+import org.apache.ibatis.cache.decorators.FifoCache;
+import org.apache.ibatis.cache.decorators.LoggingCache;
+import org.apache.ibatis.cache.decorators.SerializedCache;
+import org.apache.ibatis.cache.decorators.SynchronizedCache;
+import org.apache.ibatis.cache.impl.OffHeapCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.impl.TinyLfuCache;
 import org.assertj.core.api.Assertions;
 import org.junit.Test;
 
 import java.lang.reflect.Field;
+import java.util.Properties;
 
 import static com.googlecode.catchexception.apis.BDDCatchException.*;
 import static org.assertj.core.api.BDDAssertions.then;
@@ -43,6 +52,64 @@ public class CacheBuilderTest {
       .hasMessage("Failed cache initialization for 'test' on 'org.apache.ibatis.mapping.CacheBuilderTest$InitializingFailureCache'");
   }
 
+  @Test
+  public void testTinyLfuIsNotSynchronized() throws Exception {
+    Cache cache = new CacheBuilder("test").addDecorator(TinyLfuCache.class).size(10).build();
+
+    Assertions.assertThat(cache).isInstanceOf(LoggingCache.class);
+    TinyLfuCache tinyLfuCache = unwrap(cache);
+    for (int i = 0; i < 20; i++) {
+      tinyLfuCache.putObject(i, i);
+    }
+    Assertions.assertThat(tinyLfuCache.getSize()).isEqualTo(10);
+  }
+
+  @Test
+  public void testMaxBytesRequiresWeighingEviction() throws Exception {
+    when(new CacheBuilder("test").addDecorator(FifoCache.class).maxBytes(1000L)).build();
+    then(caughtException()).isInstanceOf(CacheException.class)
+      .hasMessageContaining("cannot be bounded by maxBytes");
+  }
+
+  @Test
+  public void testDeepCopyStrategyReplacesSerialization() throws Exception {
+    Properties properties = new Properties();
+    properties.setProperty("copyStrategy", "deepCopy");
+    Cache cache = new CacheBuilder("test").readWrite(true).properties(properties).build();
+
+    Assertions.assertThat(cache).isInstanceOf(SynchronizedCache.class);
+    Cache loggingCache = unwrap(cache);
+    Assertions.assertThat((Cache) unwrap(loggingCache)).isInstanceOf(DeepCopyCache.class);
+    cache = new CacheBuilder("test").readWrite(true).build();
+    Assertions.assertThat((Cache) unwrap((Cache) unwrap(cache))).isInstanceOf(SerializedCache.class);
+  }
+
+  @Test
+  public void testOffHeapCacheExpiresEntriesOnItsOwn() throws Exception {
+    Cache cache = new CacheBuilder("test").implementation(OffHeapCache.class).timeToLive(50L).build();
+
+    cache.putObject("key", "value");
+    Assertions.assertThat(cache.getObject("key")).isEqualTo("value");
+    Thread.sleep(100);
+    Assertions.assertThat(cache.getObject("key")).isNull();
+    Assertions.assertThat(cache.getSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void testOffHeapCacheRequestsOneRefreshAhead() throws Exception {
+    Cache cache = new CacheBuilder("test").implementation(OffHeapCache.class).timeToLive(1000L).refreshAhead(true)
+        .build();
+
+    cache.putObject("key", "value");
+    Assertions.assertThat(cache.getObject("key")).isEqualTo("value");
+    Assertions.assertThat(ExpiringCache.isRefreshRequested("key")).isFalse();
+    Thread.sleep(850);
+    Assertions.assertThat(cache.getObject("key")).isEqualTo("value");
+    Assertions.assertThat(ExpiringCache.isRefreshRequested("key")).isTrue();
+    Assertions.assertThat(cache.getObject("key")).isEqualTo("value");
+    Assertions.assertThat(ExpiringCache.isRefreshRequested("key")).isFalse();
+  }
+
   @SuppressWarnings("unchecked")
   private <T> T unwrap(Cache cache){
     Field field;
@@ -0,0 +1,260 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.reflection.javassist;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationTargetException;
+
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.Reflector;
+import org.apache.ibatis.reflection.ReflectorFactory;
+import org.apache.ibatis.reflection.factory.DefaultObjectFactory;
+import org.apache.ibatis.reflection.invoker.Invoker;
+import org.apache.ibatis.reflection.invoker.MethodInvoker;
+import org.apache.ibatis.reflection.wrapper.DefaultObjectWrapperFactory;
+import org.junit.Test;
+
+public class JavassistReflectorFactoryTest {
+
+  private final ReflectorFactory reflectorFactory = new JavassistReflectorFactory();
+
+  @Test
+  public void shouldGenerateInvokersForPublicBeans() {
+    Reflector reflector = reflectorFactory.findForClass(Bean.class);
+    for (String property : reflector.getGetablePropertyNames()) {
+      assertFalse(property, reflector.getGetInvoker(property) instanceof MethodInvoker);
+    }
+    for (String property : reflector.getSetablePropertyNames()) {
+      assertFalse(property, reflector.getSetInvoker(property) instanceof MethodInvoker);
+    }
+  }
+
+  @Test
+  public void shouldGetAndSetPropertiesThroughGeneratedAccessors() throws Exception {
+    Reflector reflector = reflectorFactory.findForClass(Bean.class);
+    Bean bean = new Bean();
+
+    Invoker setAge = reflector.getSetInvoker("age");
+    assertEquals(int.class, setAge.getType());
+    setAge.invoke(bean, new Object[] { 42 });
+    reflector.getSetInvoker("name").invoke(bean, new Object[] { "Bob" });
+    reflector.getSetInvoker("scores").invoke(bean, new Object[] { new double[] { 1.5 } });
+    reflector.getSetInvoker("active").invoke(bean, new Object[] { true });
+    reflector.getSetInvoker("initial").invoke(bean, new Object[] { 'B' });
+
+    assertEquals(42, reflector.getGetInvoker("age").invoke(bean, null));
+    assertEquals("Bob", reflector.getGetInvoker("name").invoke(bean, null));
+    assertEquals(1.5, ((double[]) reflector.getGetInvoker("scores").invoke(bean, null))[0], 0);
+    assertEquals(Boolean.TRUE, reflector.getGetInvoker("active").invoke(bean, null));
+    assertEquals('B', reflector.getGetInvoker("initial").invoke(bean, null));
+    assertEquals(double[].class, reflector.getGetInvoker("scores").getType());
+  }
+
+  @Test
+  public void shouldUseGeneratedAccessorsOfSuperclasses() throws Exception {
+    Reflector reflector = reflectorFactory.findForClass(Child.class);
+    Child child = new Child();
+    Invoker setId = reflector.getSetInvoker("id");
+    assertFalse(setId instanceof MethodInvoker);
+    setId.invoke(child, new Object[] { 7L });
+    reflector.getSetInvoker("nickname").invoke(child, new Object[] { "kid" });
+    assertEquals(7L, child.getId().longValue());
+    assertEquals("kid", reflector.getGetInvoker("nickname").invoke(child, null));
+  }
+
+  @Test
+  public void shouldBehaveLikeReflectionForInvalidArguments() throws Exception {
+    Reflector reflector = reflectorFactory.findForClass(Bean.class);
+    Bean bean = new Bean();
+    try {
+      reflector.getSetInvoker("age").invoke(bean, new Object[] { null });
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected, as with Method.invoke
+    }
+    try {
+      reflector.getSetInvoker("name").invoke(bean, new Object[] { 1 });
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected, as with Method.invoke
+    }
+    reflector.getSetInvoker("total").invoke(bean, new Object[] { 3 });
+    assertEquals(3L, bean.getTotal());
+  }
+
+  @Test
+  public void shouldWrapExceptionsThrownByTheBean() throws Exception {
+    Reflector reflector = reflectorFactory.findForClass(Bean.class);
+    try {
+      reflector.getGetInvoker("broken").invoke(new Bean(), null);
+      fail();
+    } catch (InvocationTargetException e) {
+      assertEquals("broken", e.getCause().getMessage());
+    }
+  }
+
+  @Test
+  public void shouldFallBackToReflectionForNonPublicClasses() throws Exception {
+    Reflector reflector = reflectorFactory.findForClass(HiddenBean.class);
+    Invoker setValue = reflector.getSetInvoker("value");
+    assertTrue(setValue instanceof MethodInvoker);
+    HiddenBean bean = new HiddenBean();
+    setValue.invoke(bean, new Object[] { "hidden" });
+    assertEquals("hidden", reflector.getGetInvoker("value").invoke(bean, null));
+  }
+
+  @Test
+  public void shouldSetNestedPropertiesThroughMetaObject() {
+    Child child = new Child();
+    MetaObject metaObject = MetaObject.forObject(child, new DefaultObjectFactory(), new DefaultObjectWrapperFactory(), reflectorFactory);
+    metaObject.setValue("parent.name", "Alice");
+    metaObject.setValue("parent.age", 30);
+    assertEquals("Alice", child.getParent().getName());
+    assertEquals(30, metaObject.getValue("parent.age"));
+  }
+
+  @Test
+  public void shouldReleaseClassPoolsOnceTheReflectorIsCreated() throws Exception {
+    JavassistReflectorFactory javassistReflectorFactory = new JavassistReflectorFactory();
+    javassistReflectorFactory.findForClass(Child.class);
+    assertFalse(javassistReflectorFactory.getInvokerFactory().holdsClassPools());
+  }
+
+  @Test
+  public void shouldGenerateInvokersAfterReleasingClassPools() throws Exception {
+    JavassistInvokerFactory invokerFactory = new JavassistInvokerFactory();
+    new Reflector(Bean.class, invokerFactory);
+    assertTrue(invokerFactory.holdsClassPools());
+    invokerFactory.releaseClassPools();
+    assertFalse(invokerFactory.holdsClassPools());
+
+    Invoker getAge = invokerFactory.newInvoker(Bean.class.getMethod("getAge"));
+    assertFalse(getAge instanceof MethodInvoker);
+    Bean bean = new Bean();
+    bean.setAge(5);
+    assertEquals(5, getAge.invoke(bean, null));
+    invokerFactory.releaseClassPools();
+  }
+
+  public static class Bean {
+    private String name;
+    private int age;
+    private long total;
+    private double[] scores;
+    private boolean active;
+    private char initial;
+
+    public String getName() {
+      return name;
+    }
+
+    public Bean setName(String name) {
+      this.name = name;
+      return this;
+    }
+
+    public int getAge() {
+      return age;
+    }
+
+    public void setAge(int age) {
+      this.age = age;
+    }
+
+    public long getTotal() {
+      return total;
+    }
+
+    public void setTotal(long total) {
+      this.total = total;
+    }
+
+    public double[] getScores() {
+      return scores;
+    }
+
+    public void setScores(double[] scores) {
+      this.scores = scores;
+    }
+
+    public boolean isActive() {
+      return active;
+    }
+
+    public void setActive(boolean active) {
+      this.active = active;
+    }
+
+    public char getInitial() {
+      return initial;
+    }
+
+    public void setInitial(char initial) {
+      this.initial = initial;
+    }
+
+    public String getBroken() {
+      throw new IllegalStateException("broken");
+    }
+  }
+
+  public static class Entity<T> {
+    private T id;
+
+    public T getId() {
+      return id;
+    }
+
+    public void setId(T id) {
+      this.id = id;
+    }
+  }
+
+  public static class Child extends Entity<Long> {
+    private String nickname;
+    private Bean parent;
+
+    public String getNickname() {
+      return nickname;
+    }
+
+    public void setNickname(String nickname) {
+      this.nickname = nickname;
+    }
+
+    public Bean getParent() {
+      return parent;
+    }
+
+    public void setParent(Bean parent) {
+      this.parent = parent;
+    }
+  }
+
+  static class HiddenBean {
+    private String value;
+
+    public String getValue() {
+      return value;
+    }
+
+    public void setValue(String value) {
+      this.value = value;
+    }
+  }
+
+}
@@ -0,0 +1,379 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.batch_auto_flush;
+
+import static org.junit.Assert.*;
+
+import java.io.Reader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.executor.BatchExecutorException;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchAutoFlushTest {
+
+  private SqlSessionFactory sqlSessionFactory;
+
+  @Before
+  public void setUp() throws Exception {
+    Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/batch_auto_flush/mybatis-config.xml");
+    try {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    } finally {
+      reader.close();
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/batch_auto_flush/CreateDB.sql");
+  }
+
+  @After
+  public void tearDown() {
+    Configuration configuration = sqlSessionFactory.getConfiguration();
+    configuration.setMaxBatchSize(null);
+    configuration.setMaxBatchBufferedParameters(null);
+    configuration.setMaxInFlightBatches(null);
+    configuration.setBatchParametersRetained(true);
+  }
+
+  @Test
+  public void shouldFlushAStatementOnceItReachesTheMaxBatchSize() throws Exception {
+    sqlSessionFactory.getConfiguration().setMaxBatchSize(3);
+    SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH);
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      for (int i = 1; i <= 10; i++) {
+        mapper.insertUser(i, "User" + i);
+      }
+      assertEquals(9, count(sqlSession.getConnection(), "users"));
+
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(4, results.size());
+      assertEquals(3, results.get(0).getUpdateCounts().length);
+      assertEquals(1, results.get(3).getUpdateCounts().length);
+      assertEquals(3, results.get(0).getParameterObjects().size());
+      assertEquals(10, count(sqlSession.getConnection(), "users"));
+
+      assertTrue(sqlSession.flushStatements().isEmpty());
+      sqlSession.commit();
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldFlushAllStatementsOnceTheyReachTheMaxBufferedParameters() throws Exception {
+    sqlSessionFactory.getConfiguration().setMaxBatchBufferedParameters(4);
+    SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH);
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.insertUser(1, "User1");
+      mapper.insertUser(2, "User2");
+      mapper.insertLog(1, "Log1");
+      assertEquals(0, count(sqlSession.getConnection(), "users"));
+      mapper.insertLog(2, "Log2");
+      assertEquals(2, count(sqlSession.getConnection(), "users"));
+      assertEquals(2, count(sqlSession.getConnection(), "logs"));
+      mapper.insertUser(3, "User3");
+
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(3, results.size());
+      assertEquals(3, count(sqlSession.getConnection(), "users"));
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldDropTheParametersOfExecutedStatementsWhenNotRetained() {
+    Configuration configuration = sqlSessionFactory.getConfiguration();
+    configuration.setMaxBatchSize(2);
+    configuration.setBatchParametersRetained(false);
+    SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH);
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      for (int i = 1; i <= 5; i++) {
+        mapper.insertUser(i, "User" + i);
+      }
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(3, results.size());
+      for (BatchResult result : results) {
+        assertTrue(result.getParameterObjects().isEmpty());
+        assertNotNull(result.getUpdateCounts());
+      }
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldDiscardAutomaticallyFlushedResultsOnRollback() throws Exception {
+    sqlSessionFactory.getConfiguration().setMaxBatchSize(2);
+    SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH);
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      for (int i = 1; i <= 3; i++) {
+        mapper.insertUser(i, "User" + i);
+      }
+      sqlSession.rollback(true);
+      assertTrue(sqlSession.flushStatements().isEmpty());
+      assertEquals(0, count(sqlSession.getConnection(), "users"));
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldExecuteBatchesFlushedInBackgroundInOrder() throws Exception {
+    Configuration configuration = sqlSessionFactory.getConfiguration();
+    configuration.setMaxBatchSize(3);
+    configuration.setMaxInFlightBatches(2);
+    SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH);
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      for (int i = 1; i <= 10; i++) {
+        mapper.insertUser(i, "User" + i);
+      }
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(4, results.size());
+      for (int i = 0; i < 4; i++) {
+        Map<?, ?> firstParameter = (Map<?, ?>) results.get(i).getParameterObjects().get(0);
+        assertEquals(i * 3 + 1, firstParameter.get("id"));
+      }
+      assertEquals(10, count(sqlSession.getConnection(), "users"));
+      sqlSession.commit();
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldThrowTheFailureOfABackgroundFlushOnTheNextFlush() throws Exception {
+    Configuration configuration = sqlSessionFactory.getConfiguration();
+    configuration.setMaxBatchSize(2);
+    configuration.setMaxInFlightBatches(4);
+    SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH);
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.insertUser(1, "User1");
+      mapper.insertUser(2, "User2");
+      mapper.insertUser(3, "User3");
+      mapper.insertUser(1, "Duplicate");
+      mapper.insertUser(5, "User5");
+      mapper.insertUser(6, "User6");
+      try {
+        sqlSession.flushStatements();
+        fail("Expected a BatchExecutorException");
+      } catch (PersistenceException e) {
+        BatchExecutorException cause = (BatchExecutorException) e.getCause();
+        assertEquals(1, cause.getSuccessfulBatchResults().size());
+      }
+      sqlSession.rollback(true);
+      assertEquals(0, count(sqlSession.getConnection(), "users"));
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldPrepareMultiRowInsertsOnTheThreadOfTheSession() throws Exception {
+    Configuration configuration = sqlSessionFactory.getConfiguration();
+    configuration.setMaxBatchSize(2);
+    configuration.setMaxInFlightBatches(2);
+    configuration.setMultiRowInsertEnabled(true);
+    final Set<Thread> preparingThreads = Collections.synchronizedSet(new HashSet<Thread>());
+    configuration.addInterceptor(new PreparingThreadInterceptor(preparingThreads));
+    SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH);
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      for (int i = 1; i <= 10; i++) {
+        mapper.insertUser(i, "User" + i);
+      }
+      sqlSession.flushStatements();
+      assertEquals(Collections.singleton(Thread.currentThread()), preparingThreads);
+      assertEquals(10, count(sqlSession.getConnection(), "users"));
+      sqlSession.commit();
+    } finally {
+      sqlSession.close();
+      configuration.setMultiRowInsertEnabled(false);
+    }
+  }
+
+  @Test
+  public void shouldNotRollBackWhileABatchStillRunsAfterAnInterrupt() throws Exception {
+    Configuration configuration = sqlSessionFactory.getConfiguration();
+    configuration.setMaxBatchSize(2);
+    configuration.setMaxInFlightBatches(1);
+    final CountDownLatch executing = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicBoolean batchRunning = new AtomicBoolean();
+    final AtomicBoolean usedWhileRunning = new AtomicBoolean();
+    Connection connection = configuration.getEnvironment().getDataSource().getConnection();
+    connection.setAutoCommit(false);
+    SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH,
+        blockingConnection(connection, executing, release, batchRunning, usedWhileRunning));
+    final Thread sessionThread = Thread.currentThread();
+    Thread interrupter = new Thread() {
+      @Override
+      public void run() {
+        try {
+          executing.await();
+          while (sessionThread.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+          }
+          sessionThread.interrupt();
+          Thread.sleep(200);
+        } catch (InterruptedException e) {
+          // released below
+        } finally {
+          release.countDown();
+        }
+      }
+    };
+    interrupter.start();
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.insertUser(1, "User1");
+      mapper.insertUser(2, "User2");
+      mapper.insertUser(3, "User3");
+      try {
+        mapper.insertUser(4, "User4");
+        fail("Expected the wait for the first batch to be interrupted");
+      } catch (PersistenceException e) {
+        assertTrue(Thread.interrupted());
+      }
+      sqlSession.rollback(true);
+    } finally {
+      sqlSession.close();
+      interrupter.join(10000);
+      connection.close();
+    }
+    assertFalse(usedWhileRunning.get());
+  }
+
+  private static Connection blockingConnection(final Connection connection, final CountDownLatch executing,
+      final CountDownLatch release, final AtomicBoolean batchRunning, final AtomicBoolean usedWhileRunning) {
+    return (Connection) Proxy.newProxyInstance(BatchAutoFlushTest.class.getClassLoader(), new Class<?>[] { Connection.class },
+        new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (batchRunning.get() && ("rollback".equals(name) || "commit".equals(name) || "close".equals(name))) {
+              usedWhileRunning.set(true);
+            }
+            Object result = invokeOn(connection, method, args);
+            if ("prepareStatement".equals(name)) {
+              final PreparedStatement statement = (PreparedStatement) result;
+              return Proxy.newProxyInstance(BatchAutoFlushTest.class.getClassLoader(), new Class<?>[] { PreparedStatement.class },
+                  new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                      if (!"executeBatch".equals(method.getName())) {
+                        return invokeOn(statement, method, args);
+                      }
+                      batchRunning.set(true);
+                      try {
+                        executing.countDown();
+                        release.await();
+                        return invokeOn(statement, method, args);
+                      } finally {
+                        batchRunning.set(false);
+                      }
+                    }
+                  });
+            }
+            return result;
+          }
+        });
+  }
+
+  private static Object invokeOn(Object target, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  @Intercepts(@Signature(type = StatementHandler.class, method = "prepare", args = { Connection.class, Integer.class }))
+  private static class PreparingThreadInterceptor implements Interceptor {
+
+    private final Set<Thread> preparingThreads;
+
+    PreparingThreadInterceptor(Set<Thread> preparingThreads) {
+      this.preparingThreads = preparingThreads;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+      preparingThreads.add(Thread.currentThread());
+      return invocation.proceed();
+    }
+
+    @Override
+    public Object plugin(Object target) {
+      return Plugin.wrap(target, this);
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+    }
+  }
+
+  private int count(Connection connection, String table) throws SQLException {
+    Statement stmt = connection.createStatement();
+    try {
+      ResultSet rs = stmt.executeQuery("select count(*) from " + table);
+      rs.next();
+      return rs.getInt(1);
+    } finally {
+      stmt.close();
+    }
+  }
+
+}
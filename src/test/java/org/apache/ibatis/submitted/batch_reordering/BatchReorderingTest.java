@@ -0,0 +1,127 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.batch_reordering;
+
+import static org.junit.Assert.*;
+
+import java.io.Reader;
+import java.util.List;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchReorderingTest {
+
+  private SqlSessionFactory sqlSessionFactory;
+
+  @Before
+  public void setUp() throws Exception {
+    Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/batch_reordering/mybatis-config.xml");
+    try {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    } finally {
+      reader.close();
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/batch_reordering/CreateDB.sql");
+  }
+
+  @Test
+  public void shouldBatchInterleavedInsertsOncePerStatement() {
+    SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH);
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      for (int i = 1; i <= 5; i++) {
+        mapper.insertParent(i, "Parent" + i);
+        mapper.insertChild(i * 10, i, "Child" + i);
+        mapper.insertChild(i * 10 + 1, i, "Child" + i);
+      }
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(2, results.size());
+      assertEquals("org.apache.ibatis.submitted.batch_reordering.Mapper.insertParent", results.get(0).getMappedStatement().getId());
+      assertEquals(5, results.get(0).getUpdateCounts().length);
+      assertEquals(10, results.get(1).getUpdateCounts().length);
+      sqlSession.commit();
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldNotMoveAnInsertBeforeARowOfATableItDeclares() {
+    SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH);
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.insertParent(1, "Parent1");
+      sqlSession.flushStatements();
+      mapper.insertChild(10, 1, "Child");
+      mapper.insertParent(2, "Parent2");
+      mapper.insertChild(20, 2, "Child");
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(3, results.size());
+      assertEquals("org.apache.ibatis.submitted.batch_reordering.Mapper.insertParent", results.get(1).getMappedStatement().getId());
+      assertEquals("org.apache.ibatis.submitted.batch_reordering.Mapper.insertChild", results.get(2).getMappedStatement().getId());
+      assertEquals(2, mapper.countChildrenNamed("Child"));
+      sqlSession.commit();
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldNotMoveInsertsBeforeAnUpdate() {
+    SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH);
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.insertParent(1, "Parent1");
+      mapper.insertChild(10, 1, "Child1");
+      mapper.renameParents("Renamed");
+      mapper.insertParent(2, "Parent2");
+      mapper.insertChild(20, 2, "Child2");
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(5, results.size());
+      assertEquals(1, results.get(2).getUpdateCounts()[0]);
+      sqlSession.commit();
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldKeepTheOrderWhenDisabled() {
+    sqlSessionFactory.getConfiguration().setBatchReorderingEnabled(false);
+    SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH);
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      for (int i = 1; i <= 3; i++) {
+        mapper.insertParent(i, "Parent" + i);
+        mapper.insertChild(i * 10, i, "Child");
+      }
+      assertEquals(6, sqlSession.flushStatements().size());
+      assertEquals(3, mapper.countChildrenNamed("Child"));
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+}
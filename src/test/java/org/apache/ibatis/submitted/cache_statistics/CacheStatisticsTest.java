@@ -0,0 +1,114 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.cache_statistics;
+
+import static org.junit.Assert.*;
+
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.util.Collection;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.ibatis.cache.CacheStatistics;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CacheStatisticsTest {
+
+  private static final String NAMESPACE = "org.apache.ibatis.submitted.cache_statistics.person";
+
+  private static SqlSessionFactory sqlSessionFactory;
+
+  @Before
+  public void setUp() throws Exception {
+    // create a SqlSessionFactory
+    Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/cache_statistics/mybatis-config.xml");
+    sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    reader.close();
+
+    // populate in-memory database
+    SqlSession session = sqlSessionFactory.openSession();
+    Connection conn = session.getConnection();
+    reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/cache_statistics/CreateDB.sql");
+    ScriptRunner runner = new ScriptRunner(conn);
+    runner.setLogWriter(null);
+    runner.runScript(reader);
+    conn.close();
+    reader.close();
+    session.close();
+  }
+
+  @After
+  public void tearDown() {
+    sqlSessionFactory.getConfiguration().unregisterCacheMBeans();
+  }
+
+  @Test
+  public void shouldReportStatisticsOfTheNamespaceCache() {
+    assertEquals("Jane", select(1));
+    assertEquals("Jane", select(1));
+    assertEquals("John", select(2));
+
+    Collection<CacheStatistics> allStatistics = sqlSessionFactory.getConfiguration().getCacheStatistics();
+    assertEquals(1, allStatistics.size());
+    CacheStatistics statistics = allStatistics.iterator().next();
+    assertSame(statistics, CacheStatistics.of(sqlSessionFactory.getConfiguration().getCache(NAMESPACE)));
+    assertEquals(NAMESPACE, statistics.getId());
+    assertEquals(1, statistics.getHits());
+    assertEquals(2, statistics.getMisses());
+    assertEquals(2, statistics.getPuts());
+    assertEquals(1, statistics.getEvictions());
+    assertEquals(1, statistics.getSize());
+    assertTrue(statistics.getAverageLoadTime() > 0);
+    assertTrue(statistics.getEstimatedBytes() > 0);
+  }
+
+  @Test
+  public void shouldRegisterTheStatisticsAsMBean() throws Exception {
+    select(1);
+    select(1);
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName("org.apache.ibatis:type=CacheStatistics,environment=\"development\",id=\""
+        + NAMESPACE + "\"");
+    assertEquals(1L, server.getAttribute(name, "Hits"));
+    assertEquals(1L, server.getAttribute(name, "Misses"));
+    assertEquals(0.5d, server.getAttribute(name, "HitRatio"));
+
+    sqlSessionFactory.getConfiguration().unregisterCacheMBeans();
+    assertFalse(server.isRegistered(name));
+  }
+
+  private String select(int id) {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      String firstname = sqlSession.selectOne(NAMESPACE + ".findFirstname", id);
+      sqlSession.commit();
+      return firstname;
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+}
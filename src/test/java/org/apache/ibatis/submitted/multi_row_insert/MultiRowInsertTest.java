@@ -0,0 +1,159 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.multi_row_insert;
+
+import static org.junit.Assert.*;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.executor.BatchExecutorException;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MultiRowInsertTest {
+
+  private SqlSessionFactory sqlSessionFactory;
+
+  @Before
+  public void setUp() throws Exception {
+    Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/multi_row_insert/mybatis-config.xml");
+    try {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    } finally {
+      reader.close();
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/multi_row_insert/CreateDB.sql");
+    PreparedSqlRecorder.PREPARED_SQL.clear();
+  }
+
+  @Test
+  public void shouldInsertRowsInChunksAndSetGeneratedKeys() {
+    SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH);
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      List<User> users = new ArrayList<User>();
+      for (int i = 1; i <= 14; i++) {
+        User user = new User(null, "User" + i);
+        users.add(user);
+        mapper.insertUser(user);
+      }
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(1, results.size());
+      int[] expectedCounts = new int[14];
+      Arrays.fill(expectedCounts, 1);
+      assertArrayEquals(expectedCounts, results.get(0).getUpdateCounts());
+
+      assertEquals(3, PreparedSqlRecorder.PREPARED_SQL.size());
+      assertEquals("insert into users (name, note) values (?, 'it''s (a) note?'), (?, 'it''s (a) note?')",
+          PreparedSqlRecorder.PREPARED_SQL.get(2));
+      for (int i = 0; i < users.size(); i++) {
+        assertEquals(Integer.valueOf(i + 1), users.get(i).getId());
+      }
+      assertEquals(14, mapper.selectNames().size());
+      assertEquals("User14", mapper.selectNames().get(13));
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldReadTheValuesOfARowWhenItIsAdded() {
+    SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH);
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      User user = new User();
+      for (int i = 1; i <= 5; i++) {
+        user.setId(i);
+        user.setName("User" + i);
+        mapper.insertUserWithId(user);
+      }
+      sqlSession.flushStatements();
+      assertEquals(2, PreparedSqlRecorder.PREPARED_SQL.size());
+      assertEquals(Arrays.asList("User1", "User2", "User3", "User4", "User5"), mapper.selectNames());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldUseTheParameterLimitOfTheDatabase() {
+    sqlSessionFactory.getConfiguration().setDatabaseId("hsql");
+    sqlSessionFactory.getConfiguration().getMultiRowInsertParameterLimits().put("hsql", 100);
+    SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH);
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      for (int i = 1; i <= 20; i++) {
+        mapper.insertUserWithId(new User(i, "User" + i));
+      }
+      sqlSession.flushStatements();
+      assertEquals(1, PreparedSqlRecorder.PREPARED_SQL.size());
+      assertEquals(20, mapper.selectNames().size());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldBatchOtherInsertsAsUsual() {
+    SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH);
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.insertUserWithId(new User(1, "User1"));
+      sqlSession.flushStatements();
+      mapper.copyUser(1);
+      mapper.copyUser(1);
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertArrayEquals(new int[] { 1, 1 }, results.get(0).getUpdateCounts());
+      assertEquals("insert into users (name) select name from users where id = ?", PreparedSqlRecorder.PREPARED_SQL.get(1));
+      assertEquals(3, mapper.selectNames().size());
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void shouldReportAFailedChunkAsABatchFailure() {
+    SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH);
+    try {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      for (int i = 1; i <= 5; i++) {
+        mapper.insertUserWithId(new User(i == 5 ? 1 : i, "User" + i));
+      }
+      try {
+        sqlSession.flushStatements();
+        fail("Expected a BatchExecutorException");
+      } catch (PersistenceException e) {
+        BatchExecutorException cause = (BatchExecutorException) e.getCause();
+        assertArrayEquals(new int[] { 1, 1, 1 }, cause.getBatchUpdateException().getUpdateCounts());
+      }
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+}
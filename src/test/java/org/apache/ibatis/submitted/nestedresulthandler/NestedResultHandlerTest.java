@@ -17,8 +17,12 @@ package org.apache.ibatis.submitted.nestedresulthandler;
 
 import java.io.Reader;
 import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
+import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.exceptions.PersistenceException;
 import org.apache.ibatis.io.Resources;
 import org.apache.ibatis.jdbc.ScriptRunner;
@@ -100,6 +104,61 @@ public class NestedResultHandlerTest {
     }
   }
 
+  @Test
+  public void testGetPersonsStreamedCompleteWithHandler() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      final List<String> persons = new ArrayList<String>();
+      sqlSession.select("getPersons", new ResultHandler() {
+        public void handleResult(ResultContext context) {
+          Person person = (Person) context.getResultObject();
+          persons.add(person.getName() + ":" + person.getItems().size());
+        }
+      });
+      Assert.assertEquals(Arrays.asList("grandma:2", "sister:2", "brother:1"), persons);
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  @Test
+  public void testGetPersonsCursorLeavesStreamedPersonsUnchanged() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      Cursor<Person> cursor = sqlSession.selectCursor("getPersons");
+      final List<Person> persons = new ArrayList<Person>();
+      final List<String> streamed = new ArrayList<String>();
+      for (Person person : cursor) {
+        // the persons handed over before are complete, no later row is merged into them
+        for (int i = 0; i < persons.size(); i++) {
+          Assert.assertEquals(streamed.get(i), describe(persons.get(i)));
+        }
+        persons.add(person);
+        streamed.add(describe(person));
+      }
+      Assert.assertEquals(Arrays.asList("grandma:book,tv", "sister:phone,shoes", "brother:car"), streamed);
+      Assert.assertTrue(cursor.isConsumed());
+      for (int i = 0; i < persons.size(); i++) {
+        Assert.assertEquals(streamed.get(i), describe(persons.get(i)));
+      }
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  private static String describe(Person person) {
+    final List<String> items = new ArrayList<String>();
+    for (Item item : person.getItems()) {
+      items.add(item.getName());
+    }
+    Collections.sort(items);
+    StringBuilder description = new StringBuilder(person.getName()).append(':');
+    for (int i = 0; i < items.size(); i++) {
+      description.append(i == 0 ? "" : ",").append(items.get(i));
+    }
+    return description.toString();
+  }
+
   @Test(expected=PersistenceException.class)
   public void testUnorderedGetPersonWithHandler() {
     SqlSession sqlSession = sqlSessionFactory.openSession();
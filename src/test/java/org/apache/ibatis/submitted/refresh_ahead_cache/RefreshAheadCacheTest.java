@@ -0,0 +1,98 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.refresh_ahead_cache;
+
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.Statement;
+
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RefreshAheadCacheTest {
+
+  private static SqlSessionFactory sqlSessionFactory;
+
+  @Before
+  public void setUp() throws Exception {
+    // create a SqlSessionFactory
+    Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/refresh_ahead_cache/mybatis-config.xml");
+    sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    reader.close();
+
+    // populate in-memory database
+    SqlSession session = sqlSessionFactory.openSession();
+    Connection conn = session.getConnection();
+    reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/refresh_ahead_cache/CreateDB.sql");
+    ScriptRunner runner = new ScriptRunner(conn);
+    runner.setLogWriter(null);
+    runner.runScript(reader);
+    conn.close();
+    reader.close();
+    session.close();
+  }
+
+  @Test
+  public void shouldReloadHotEntryBeforeItExpires() throws Exception {
+    Assert.assertEquals("Jane", findFirstname());
+    long start = System.currentTimeMillis();
+    rename("Janet");
+
+    // in the last fifth of its life the entry is still served and reloaded in the background
+    sleepUntil(start + 1700);
+    Assert.assertEquals("Jane", findFirstname());
+
+    // past its original expiration the refreshed entry is served instead of a fresh query
+    sleepUntil(start + 2100);
+    rename("Joan");
+    Assert.assertEquals("Janet", findFirstname());
+  }
+
+  private String findFirstname() {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      return sqlSession.getMapper(PersonMapper.class).findFirstname(1);
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  private void rename(String firstname) throws Exception {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      Statement statement = sqlSession.getConnection().createStatement();
+      statement.executeUpdate("update person set firstname = '" + firstname + "' where id = 1");
+      statement.close();
+      sqlSession.getConnection().commit();
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  private static void sleepUntil(long time) throws InterruptedException {
+    long remaining = time - System.currentTimeMillis();
+    if (remaining > 0) {
+      Thread.sleep(remaining);
+    }
+  }
+
+}
@@ -0,0 +1,151 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.table_invalidation_cache;
+
+import static org.junit.Assert.*;
+
+import java.io.Reader;
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+/*
+ * The cache is read only, so a cache hit returns the very same list.
+ */
+public class TableInvalidationCacheTest {
+
+  private static SqlSessionFactory sqlSessionFactory;
+
+  @Before
+  public void setUp() throws Exception {
+    // create a SqlSessionFactory
+    Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/table_invalidation_cache/mybatis-config.xml");
+    sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    reader.close();
+
+    // populate in-memory database
+    SqlSession session = sqlSessionFactory.openSession();
+    Connection conn = session.getConnection();
+    reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/table_invalidation_cache/CreateDB.sql");
+    ScriptRunner runner = new ScriptRunner(conn);
+    runner.setLogWriter(null);
+    runner.runScript(reader);
+    conn.close();
+    reader.close();
+    session.close();
+  }
+
+  @Test
+  public void shouldInvalidateOnlyTheEntriesReadingTheWrittenTable() {
+    List<String> firstnames = select("findFirstnames");
+    List<String> petNames = select("findPetNames");
+    List<String> ownerNames = select("findOwnerNames");
+    List<String> adultNames = select("findAdultNames");
+
+    update("renamePet", 1, "name", "Max");
+
+    assertSame(firstnames, select("findFirstnames"));
+    assertSame(adultNames, select("findAdultNames"));
+    assertNotSame(petNames, select("findPetNames"));
+    assertEquals(Arrays.asList("Max"), select("findPetNames"));
+    assertNotSame(ownerNames, select("findOwnerNames"));
+  }
+
+  @Test
+  public void shouldInvalidateTheDeclaredTables() {
+    List<String> petNames = select("findPetNames");
+    assertEquals(Arrays.asList("Jane"), select("findAdultNames"));
+
+    update("setAge", 2, "age", 20);
+
+    assertEquals(Arrays.asList("Jane", "John"), select("findAdultNames"));
+    assertSame(petNames, select("findPetNames"));
+  }
+
+  @Test
+  public void shouldNotReadEntriesOfTablesWrittenInTheSession() {
+    List<String> firstnames = select("findFirstnames");
+    List<String> petNames = select("findPetNames");
+    List<String> adultNames = select("findAdultNames");
+
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      sqlSession.update("person.setAge", parameter(2, "age", 20));
+      assertNotSame(firstnames, sqlSession.selectList("person.findFirstnames"));
+      assertSame(petNames, sqlSession.selectList("person.findPetNames"));
+      sqlSession.rollback();
+    } finally {
+      sqlSession.close();
+    }
+
+    // the write was rolled back, nothing was invalidated
+    assertSame(adultNames, select("findAdultNames"));
+  }
+
+  @Test
+  public void shouldClearTheCacheWhenTheTablesAreUnknown() {
+    List<String> firstnames = select("findFirstnames");
+    List<String> petNames = select("findPetNames");
+
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      sqlSession.update("person.callProcedure");
+      sqlSession.commit();
+    } finally {
+      sqlSession.close();
+    }
+
+    assertNotSame(firstnames, select("findFirstnames"));
+    assertNotSame(petNames, select("findPetNames"));
+  }
+
+  private List<String> select(String statement) {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      return sqlSession.selectList("person." + statement);
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  private void update(String statement, int id, String property, Object value) {
+    SqlSession sqlSession = sqlSessionFactory.openSession();
+    try {
+      sqlSession.update("person." + statement, parameter(id, property, value));
+      sqlSession.commit();
+    } finally {
+      sqlSession.close();
+    }
+  }
+
+  private static Map<String, Object> parameter(int id, String property, Object value) {
+    Map<String, Object> parameter = new HashMap<String, Object>();
+    parameter.put("id", id);
+    parameter.put(property, value);
+    return parameter;
+  }
+
+}